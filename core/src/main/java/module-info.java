@@ -0,0 +1,17 @@
+module pl.edu.pg.eti.ksr.project.core {
+    requires lombok;
+    requires org.json;
+    requires java.management;
+
+    exports pl.edu.pg.eti.ksr.project.accounts;
+    exports pl.edu.pg.eti.ksr.project.communication;
+    exports pl.edu.pg.eti.ksr.project.communication.data;
+    exports pl.edu.pg.eti.ksr.project.concurrent;
+    exports pl.edu.pg.eti.ksr.project.crypto;
+    exports pl.edu.pg.eti.ksr.project.daemon;
+    exports pl.edu.pg.eti.ksr.project.metrics;
+    exports pl.edu.pg.eti.ksr.project.network;
+    exports pl.edu.pg.eti.ksr.project.network.data;
+    exports pl.edu.pg.eti.ksr.project.observer;
+    exports pl.edu.pg.eti.ksr.project.relay;
+}
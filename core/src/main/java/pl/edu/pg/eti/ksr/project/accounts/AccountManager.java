@@ -133,6 +133,40 @@ public class AccountManager {
         }
     }
 
+    /**
+     * Gets private key of the logged in user.
+     * @return private key, null if it could not be read or decrypted
+     */
+    public static PrivateKey loadPrivateKey() {
+        try {
+            byte[] privateKeyBytes = decryptFile(mainFilepath + "/private/" + username + "_encprivate.key", passHash);
+
+            KeyFactory keyFactory = KeyFactory.getInstance("RSA");
+            PKCS8EncodedKeySpec privateKeySpec = new PKCS8EncodedKeySpec(privateKeyBytes);
+            return keyFactory.generatePrivate(privateKeySpec);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Gets public key of the logged in user.
+     * @return public key, null if it could not be read or decrypted
+     */
+    public static PublicKey loadPublicKey() {
+        try {
+            byte[] publicKeyBytes = decryptFile(mainFilepath + "/public/" + username + "_encpublic.key", passHash);
+
+            KeyFactory keyFactory = KeyFactory.getInstance("RSA");
+            X509EncodedKeySpec publicKeySpec = new X509EncodedKeySpec(publicKeyBytes);
+            return keyFactory.generatePublic(publicKeySpec);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
     public static byte[] encryptBytes(byte[] bytes, Integer key) {
         //Generate key and IV
         IvParameterSpec ivParams = generateIv();
@@ -0,0 +1,60 @@
+package pl.edu.pg.eti.ksr.project.communication;
+
+import pl.edu.pg.eti.ksr.project.concurrent.BudgetedQueue;
+import pl.edu.pg.eti.ksr.project.concurrent.MemoryBudget;
+import pl.edu.pg.eti.ksr.project.observer.Observer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded queue of received file parts, granting credits to the sender as the parts are taken by the decryptor.
+ *
+ * Credits are granted in batches to limit the number of credit frames, every batch is published to the observer
+ * as the number of parts taken since the previous grant.
+ * Queue is meant to have a single consumer.
+ */
+class CreditingQueue extends BudgetedQueue<byte[]> {
+
+    /**
+     * Number of taken parts after which credits are granted.
+     */
+    private final int batch;
+
+    /**
+     * Observer granting credits to the sender.
+     */
+    private final transient Observer grant;
+
+    /**
+     * Number of parts taken since the last grant, accessed by the consumer thread only.
+     */
+    private int taken;
+
+    @Override
+    public byte[] take() throws InterruptedException {
+        byte[] data = super.take();
+        taken();
+        return data;
+    }
+
+    @Override
+    public byte[] poll(long timeout, TimeUnit unit) throws InterruptedException {
+        byte[] data = super.poll(timeout, unit);
+        if (data != null) taken();
+        return data;
+    }
+
+    private void taken() {
+        if (++taken >= batch) {
+            grant.update(taken);
+            taken = 0;
+        }
+    }
+
+    CreditingQueue(int capacity, MemoryBudget budget, int batch, Observer grant) {
+        super(capacity, budget, data -> data.length);
+        this.batch = batch;
+        this.grant = grant;
+        this.taken = 0;
+    }
+}
@@ -0,0 +1,74 @@
+package pl.edu.pg.eti.ksr.project.communication;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+import pl.edu.pg.eti.ksr.project.communication.data.Message;
+import pl.edu.pg.eti.ksr.project.network.NetworkManager;
+import pl.edu.pg.eti.ksr.project.network.data.Frame;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Used for taking encrypted data from the transfer queue and sending it to the other client via tcp manager,
+ * or via the datagram manager if chosen for the transfer.
+ * Data is sent on the stream of the transfer, so many senders can share the connection.
+ * Every sent part takes a credit, sender waits when all credits granted by the receiver are used.
+ * Parts are sent no faster than the bandwidth limits of the transfer, the peer and the process allow.
+ * Parts are coalesced by the network manager, which is flushed whenever the sender is about to wait.
+ */
+@AllArgsConstructor
+@Getter
+@Setter
+public class EncryptedFileSender implements Runnable {
+
+    /**
+     * Time in milliseconds between checks of the transfer running flag while waiting for data.
+     */
+    private static final long POLL_TIMEOUT = 100;
+
+    /**
+     * Reference to the communicator object.
+     */
+    EncryptedTcpCommunicator communicator;
+
+    /**
+     * Transfer which data is sent.
+     */
+    Transfer transfer;
+
+    @Override
+    public void run() {
+        try {
+            NetworkManager manager = communicator.dataManager(transfer);
+            // stopped by the running flag, interrupting a thread blocked on socket write could close the socket
+            while (transfer.running.get()) {
+                byte[] data = transfer.queue.poll();
+                if (data == null) {
+                    manager.flush();
+                    data = transfer.queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+                    if (data == null) continue;
+                }
+                // receiver grants new credits only for parts it already got
+                if (!transfer.hasCredit()) manager.flush();
+                if (!transfer.acquireCredit()) break;
+                if (!transfer.acquireBandwidth(data.length)) break;
+
+                if (!manager.send(new Frame(Frame.Type.TRANSFER_DATA, data, transfer.getId()))) {
+                    communicator.interrupted(transfer);
+                    break;
+                }
+                if (data.length == 0) {
+                    manager.flush();
+                    communicator.removeTransfer(transfer);
+                    communicator.newMessage(Message.Type.FILE_READY, transfer.getFileData());
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        } finally {
+            communicator.removeTransfer(transfer);
+        }
+    }
+}
@@ -0,0 +1,1453 @@
+package pl.edu.pg.eti.ksr.project.communication;
+
+import lombok.Getter;
+import lombok.Setter;
+import pl.edu.pg.eti.ksr.project.concurrent.BudgetedQueue;
+import pl.edu.pg.eti.ksr.project.concurrent.ExecutionMode;
+import pl.edu.pg.eti.ksr.project.concurrent.MemoryBudget;
+import pl.edu.pg.eti.ksr.project.concurrent.TokenBucket;
+import pl.edu.pg.eti.ksr.project.communication.data.CommunicationData;
+import pl.edu.pg.eti.ksr.project.communication.data.FileData;
+import pl.edu.pg.eti.ksr.project.communication.data.Message;
+import pl.edu.pg.eti.ksr.project.communication.data.SessionData;
+import pl.edu.pg.eti.ksr.project.crypto.EncryptionManager;
+import pl.edu.pg.eti.ksr.project.crypto.FileToBlockingQueueEncryptor;
+import pl.edu.pg.eti.ksr.project.crypto.Transformation;
+import pl.edu.pg.eti.ksr.project.metrics.MetricsRegistry;
+import pl.edu.pg.eti.ksr.project.network.LinkEstimator;
+import pl.edu.pg.eti.ksr.project.network.NetworkManager;
+import pl.edu.pg.eti.ksr.project.network.UdpManager;
+import pl.edu.pg.eti.ksr.project.network.data.CommunicationInfo;
+import pl.edu.pg.eti.ksr.project.network.data.FileInfo;
+import pl.edu.pg.eti.ksr.project.network.data.Frame;
+import pl.edu.pg.eti.ksr.project.network.data.HandshakeInfo;
+import pl.edu.pg.eti.ksr.project.network.data.ResumeInfo;
+import pl.edu.pg.eti.ksr.project.network.data.SessionInfo;
+import pl.edu.pg.eti.ksr.project.network.data.StripeInfo;
+import pl.edu.pg.eti.ksr.project.network.data.TicketInfo;
+import pl.edu.pg.eti.ksr.project.observer.Observer;
+import pl.edu.pg.eti.ksr.project.observer.Subject;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.*;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Communication manager.
+ *
+ * Used for initiating communication, stopping communication, sending and receiving supported formats of messages.
+ * Uses tcp communication to perform data exchange and encryption manager for data cyphering.
+ * Connection itself should be managed externally.
+ * Can modify transformation algorithm of encryption manager depending on the current data exchange needs.
+ *
+ * All received messages are placed in message queue, as well as published to subscribers.
+ * Messages should be removed from the message queue when received and handled by external object.
+ *
+ * Should be initiated on creation by calling init() to activate the automatic start of receiver thread on connection
+ * state change.
+ *
+ * Should be closed by calling close() on teardown.
+ */
+@Getter
+public class EncryptedTcpCommunicator implements Observer, Subject {
+
+    /**
+     * Size in bytes from which files are sent over striped data connections by default.
+     */
+    public static final long STRIPING_THRESHOLD = 64L * 1024 * 1024;
+
+    /**
+     * Default number of striped data connections used for large files.
+     */
+    public static final int DEFAULT_STRIPES = 4;
+
+    /**
+     * Memory quota in bytes of all messages and file parts buffered for a single peer.
+     */
+    public static final long PEER_QUOTA = 32L * 1024 * 1024;
+
+    /**
+     * Time in milliseconds a received file waits for the hash announced by the sender, if not known yet.
+     */
+    static final long HASH_TIMEOUT = 10000;
+
+    /**
+     * Estimated memory used by a message apart from its text.
+     */
+    private static final long MESSAGE_OVERHEAD = 64;
+
+    /**
+     * Number of communicators created so far, distinguishes scopes of their metrics.
+     */
+    private static final AtomicInteger instances = new AtomicInteger();
+
+    /**
+     * Path to a directory where received files will be stored.
+     * Should end with '/', e.g. ".../directory/"
+     */
+    @Setter
+    String savedFilesPath;
+
+    /**
+     * Username of this client.
+     */
+    @Setter
+    String username;
+
+    /**
+     * Username of the other client.
+     * Will be set after establishing communication.
+     */
+    String otherUsername;
+
+    /**
+     * Public key of this client.
+     */
+    PublicKey userPublicKey;
+
+    /**
+     * Private key of this client.
+     */
+    PrivateKey userPrivateKey;
+
+    /**
+     * Public key of the other client.
+     * Will be set after establishing communication.
+     */
+    PublicKey otherUserPublicKey;
+
+    /**
+     * Transformation used in asymmetric key pair generation.
+     */
+    Transformation asymmetricTransformation;
+
+    /**
+     * True if communication is established.
+     */
+    boolean communicationEstablished;
+
+    /**
+     * Session key used in symmetric cyphering of data.
+     * Will be set after establishing new session.
+     */
+    Key sessionKey;
+
+    /**
+     * Transformation used in symmetric cyphering of data.
+     * Will be set after establishing new session.
+     */
+    Transformation symmetricTransformation;
+
+    /**
+     * IV used in symmetric cyphering of data.
+     * Will be set after establishing new session.
+     */
+    IvParameterSpec sessionIV;
+
+    /**
+     * True if session is established.
+     */
+    boolean sessionEstablished;
+
+    /**
+     * Session tickets cached for resuming communication, by addresses and key fingerprints of the other clients.
+     */
+    final Map<String, SessionTicket> tickets;
+
+    /**
+     * Ticket used by own resumption request waiting for a reply, null if there is none.
+     */
+    SessionTicket pendingTicket;
+
+    /**
+     * Own nonce of the resumption request waiting for a reply.
+     */
+    byte[] pendingNonce;
+
+    /**
+     * Transformation of the first session requested from the signed handshake,
+     * null if the legacy challenge handshake was requested.
+     */
+    Transformation handshakeTransformation;
+
+    /**
+     * Own signed handshake waiting for a reply, null if there is none.
+     */
+    Handshake pendingHandshake;
+
+    /**
+     * Public keys of clients met before, letting the signed handshake skip sending keys.
+     * Kept in memory only unless a store backed by a file is set.
+     */
+    @Getter
+    @Setter
+    KnownPeers knownPeers;
+
+    /**
+     * Interval between heartbeat pings in milliseconds, takes effect from the next connection.
+     */
+    @Setter
+    long heartbeatInterval;
+
+    /**
+     * Number of heartbeat pings in a row which may stay unanswered before the connection is closed,
+     * takes effect from the next connection.
+     */
+    @Setter
+    int heartbeatMisses;
+
+    /**
+     * Heartbeat of the current connection, null if not connected.
+     */
+    volatile Heartbeat heartbeat;
+
+    /**
+     * Thread sending heartbeat pings.
+     */
+    Thread heartbeatThread;
+
+    /**
+     * Latest round trip time to the other client measured by the heartbeat in nanoseconds,
+     * -1 before the first measurement. Published as gauge "rtt" in the metrics scope of the communicator.
+     */
+    volatile long latestRtt;
+
+    /**
+     * Memory budget of the peer, quota carved out of the process-wide budget.
+     * Reserved bytes, peak and waiting threads of this and the process-wide budget are published as gauges
+     * "budget.peer.*" and "budget.global.*" in the metrics scope of the communicator.
+     * Shared by the message queue and the queues of all transfers.
+     */
+    final MemoryBudget budget;
+
+    /**
+     * Limit of the rate file data is sent to the peer at, carved out of the process-wide limit.
+     * Shared by all outgoing transfers, unlimited unless its rate is set. Chat and control frames are never limited.
+     */
+    final TokenBucket bandwidth;
+
+    /**
+     * Scope of the metrics of this communicator in the process-wide metrics registry.
+     */
+    final String metricsScope;
+
+    /**
+     * Time in nanoseconds the current handshake started, 0 if no handshake is in progress.
+     */
+    volatile long handshakeStart;
+
+    /**
+     * Incoming messages queue.
+     * Bounded by the peer memory budget, so handling of incoming frames waits when messages are not taken.
+     */
+    BlockingQueue<Message> messageQueue;
+
+    /**
+     * File transfers sent to the other client, by their ids.
+     */
+    final Map<Integer, Transfer> outgoingTransfers;
+
+    /**
+     * File transfers received from the other client, by their ids.
+     */
+    final Map<Integer, Transfer> incomingTransfers;
+
+    /**
+     * Ids of incoming transfers rejected, stopped or finished during the current connection.
+     * Their data still arriving over the datagram channel is dropped at once.
+     */
+    final Set<Integer> closedStreams;
+
+    /**
+     * Inits of incoming transfers awaited by the datagram handler, which data arrived first, by transfer ids.
+     */
+    final Map<Integer, CompletableFuture<Transfer>> announcements;
+
+    /**
+     * Transfers interrupted by connection loss, by their stable resume ids.
+     * Resumed after the same peer connects and establishes session again.
+     */
+    final Map<String, Transfer> suspendedTransfers;
+
+    /**
+     * Object consisting latest sent or received file data.
+     * Will be set after initiation of file transfer.
+     */
+    FileData latestFileData;
+
+    /**
+     * True if currently in process of file decryption or encryption.
+     * Set as long as at least one transfer is in progress.
+     */
+    volatile boolean cyphering;
+
+    /**
+     * Source of stream ids of outgoing transfers, stream 0 is reserved for control frames.
+     */
+    private final AtomicInteger nextStreamId;
+
+    /**
+     * Reference to the network manager used for data exchange, a tcp manager unless set otherwise.
+     */
+    @Setter
+    NetworkManager tcpManager;
+
+    /**
+     * Reference to the encryption manager used data cyphering.
+     */
+    @Setter
+    EncryptionManager encryptionManager;
+
+    /**
+     * Datagram manager used for sending transfer data, null if all frames are sent over tcp.
+     * Control frames always use tcp. Datagram channel is offered to the other client after connecting
+     * and used by transfers started once it is connected.
+     */
+    @Getter
+    UdpManager datagramManager;
+
+    /**
+     * Datagram handler running flag used for stopping the thread, every handler gets a new flag.
+     */
+    private volatile AtomicBoolean datagramRunning;
+
+    /**
+     * Whether datagram channel offered by the other client was accepted on the current connection.
+     * Offer of the other client may be handled before the own one is made, which is then skipped.
+     */
+    private boolean datagramAccepted;
+
+    /**
+     * Incoming handler running flag used for stopping the thread.
+     * Every handler gets a new flag, so a handler stopped late never reads frames of the next connection.
+     */
+    private volatile AtomicBoolean running;
+
+    /**
+     * Reference to the currently running incoming handler.
+     */
+    private Thread incomingHandler;
+
+    /**
+     * List of all observers subscribing to this object.
+     */
+    private final Queue<Observer> observers;
+
+    @Override
+    public void attach(Observer observer) {
+        this.observers.add(observer);
+    }
+
+    @Override
+    public void detach(Observer observer) {
+        this.observers.remove(observer);
+    }
+
+    @Override
+    public void notifyObs(Object o) {
+        for (Observer observer : this.observers) {
+            observer.update(o);
+        }
+    }
+
+    /**
+     * Estimates memory used by a message.
+     * @param message queued message
+     * @return estimated size in bytes
+     */
+    private static long sizeOf(Message message) {
+        return MESSAGE_OVERHEAD + (message.data instanceof String text ? 2L * text.length() : 0);
+    }
+
+    /**
+     * Internal method for publishing new message arrival.
+     * @param type type of the message
+     * @param data data related to the message
+     * @throws InterruptedException when thread interrupted
+     */
+    void newMessage(Message.Type type, Object data) throws InterruptedException {
+        Message message = new Message(type, new Date(System.currentTimeMillis()), data);
+        messageQueue.put(message);
+        notifyObs(message);
+    }
+
+    /**
+     * Internal method used for updating cyphering flag after transfer was added or removed.
+     */
+    void updateCyphering() {
+        cyphering = !outgoingTransfers.isEmpty() || !incomingTransfers.isEmpty();
+    }
+
+    /**
+     * Internal method used for removing finished or stopped transfer.
+     * @param transfer transfer to be removed
+     */
+    void removeTransfer(Transfer transfer) {
+        if (transfer.getDirection() == Transfer.Direction.OUTGOING) {
+            outgoingTransfers.remove(transfer.getId(), transfer);
+        } else {
+            if (incomingTransfers.remove(transfer.getId(), transfer)) closeStream(transfer.getId());
+        }
+        MetricsRegistry.global().remove(transferScope(transfer));
+        updateCyphering();
+    }
+
+    /**
+     * Internal method used for publishing new incoming transfer, also to the datagram handler waiting for its data.
+     * @param transfer new incoming transfer
+     */
+    void announceTransfer(Transfer transfer) {
+        closedStreams.remove(transfer.getId());
+        incomingTransfers.put(transfer.getId(), transfer);
+        CompletableFuture<Transfer> announcement = announcements.remove(transfer.getId());
+        if (announcement != null) announcement.complete(transfer);
+    }
+
+    /**
+     * Internal method used for marking incoming stream which data will not be received, so it is dropped at once.
+     * @param transferId id of the rejected, stopped or finished transfer
+     */
+    void closeStream(int transferId) {
+        closedStreams.add(transferId);
+        CompletableFuture<Transfer> announcement = announcements.remove(transferId);
+        if (announcement != null) announcement.complete(null);
+    }
+
+    /**
+     * Internal method used for awaiting init of an incoming transfer which data arrived first.
+     * @param transferId id of the transfer
+     * @return future completed with the transfer, or with null once the stream is closed
+     */
+    CompletableFuture<Transfer> announcement(int transferId) {
+        CompletableFuture<Transfer> announcement = announcements.computeIfAbsent(transferId,
+                id -> new CompletableFuture<>());
+        // init or close may have been handled before the future was registered
+        Transfer transfer = incomingTransfers.get(transferId);
+        if (transfer != null) {
+            announcement.complete(transfer);
+        } else if (closedStreams.contains(transferId)) {
+            announcement.complete(null);
+        }
+        return announcement;
+    }
+
+    /**
+     * Internal method used for naming metrics of a transfer.
+     * Ids of own transfers and of transfers of the peer are independent, so they are kept in separate scopes.
+     * @param transfer transfer to name metrics of
+     * @return scope of metrics of the transfer
+     */
+    private String transferScope(Transfer transfer) {
+        String direction = transfer.getDirection() == Transfer.Direction.OUTGOING ? ".transfer.out." : ".transfer.in.";
+        return metricsScope + direction + transfer.getId();
+    }
+
+    /**
+     * Internal method used for registering metrics of a new transfer: depth of its queue of file parts and,
+     * for incoming transfers, time to the first byte of the file.
+     * @param transfer new transfer
+     */
+    void watchTransfer(Transfer transfer) {
+        MetricsRegistry metrics = MetricsRegistry.global();
+        String scope = transferScope(transfer);
+        metrics.gauge(scope + ".queue", transfer.queue::size);
+        if (transfer.getDirection() == Transfer.Direction.INCOMING) {
+            transfer.firstByteTimer = metrics.timer(metricsScope + ".firstByte");
+            metrics.gauge(scope + ".firstByte", () -> transfer.getFirstByteTime() < 0 ? null :
+                    transfer.getFirstByteTime() / 1e6);
+        }
+    }
+
+    /**
+     * Internal method used for recording credits granted by the receiver of own transfer as delivered data.
+     * Every credit confirms a file part taken by the receiver, so their rate is the delivery rate of the path,
+     * which sizes socket buffers of later connections and paces datagrams.
+     * @param credits number of granted credits
+     */
+    void recordDelivered(int credits) {
+        String host = tcpManager.getHost();
+        if (host == null) return;
+        LinkEstimator.forHost(host).recordDelivered((long) credits * FileToBlockingQueueEncryptor.BUFFER_SIZE,
+                System.nanoTime());
+    }
+
+    /**
+     * Internal method used for marking start of a handshake, unless one is already in progress.
+     */
+    void handshakeStarted() {
+        if (handshakeStart == 0) handshakeStart = System.nanoTime();
+    }
+
+    /**
+     * Internal method used for recording duration of the handshake once the session is established.
+     */
+    void handshakeFinished() {
+        long start = handshakeStart;
+        if (start == 0) return;
+        handshakeStart = 0;
+        MetricsRegistry.global().timer(metricsScope + ".handshake").recordSince(start);
+    }
+
+    /**
+     * Stops a single transfer in progress.
+     * @param transfer transfer to be stopped
+     */
+    public void stopTransfer(Transfer transfer) {
+        transfer.stop();
+        removeTransfer(transfer);
+    }
+
+    /**
+     * Stops all transfers that can be resumed and keeps them for resuming after reconnection.
+     * Outgoing transfers can be resumed once the hash of their file is known, unless sent by a multicast.
+     * Data of incoming transfers saved so far stays on the disk.
+     */
+    void suspendTransfers() {
+        for (Transfer transfer : outgoingTransfers.values()) {
+            if (transfer.resumeId != null && transfer.hash != null) suspend(transfer);
+        }
+        for (Transfer transfer : incomingTransfers.values()) {
+            if (transfer.resumeId != null) suspend(transfer);
+        }
+    }
+
+    /**
+     * Handles outgoing transfer which data could not be sent.
+     * Transfer interrupted by connection loss is suspended if it can be resumed, otherwise it is stopped.
+     * Called by the senders, since the transfer may be removed before connection status is published.
+     * @param transfer interrupted transfer
+     */
+    void interrupted(Transfer transfer) {
+        if (!tcpManager.isConnected() && transfer.resumeId != null && transfer.hash != null) {
+            suspend(transfer);
+        } else {
+            stopTransfer(transfer);
+        }
+    }
+
+    private void suspend(Transfer transfer) {
+        stopTransfer(transfer);
+        transfer.peerKey = otherUserPublicKey;
+        suspendedTransfers.put(transfer.resumeId, transfer);
+    }
+
+    /**
+     * Asks the other client to resume transfers it was sending before the connection was lost.
+     * Should be called after session is established, the other client has to be the same peer as before.
+     */
+    void resumeTransfers() {
+        for (Transfer transfer : suspendedTransfers.values()) {
+            if (transfer.getDirection() != Transfer.Direction.INCOMING) continue;
+            if (!Objects.equals(transfer.peerKey, otherUserPublicKey)) continue;
+
+            tcpManager.send(new Frame(Frame.Type.TRANSFER_RESUME,
+                    new ResumeInfo(transfer.resumeId, transfer.getSavedLength())));
+        }
+    }
+
+    /**
+     * Resumes suspended outgoing transfer from the offset saved by the receiver.
+     * @param suspended transfer interrupted by connection loss
+     * @param offset number of bytes of the file saved by the receiver
+     * @return resumed transfer
+     */
+    Transfer resume(Transfer suspended, long offset) {
+        int transferId = nextStreamId.incrementAndGet();
+        FileData previous = suspended.getFileData();
+        FileData fileData = new FileData(previous.getOriginalFileName(), previous.getFileName(),
+                previous.getFilePath(), transferId);
+
+        Transfer transfer = new Transfer(transferId, Transfer.Direction.OUTGOING, fileData, budget);
+        transfer.resumeId = suspended.resumeId;
+        transfer.hash = suspended.hash;
+        transfer.fileSize = suspended.fileSize;
+        transfer.stripeCount = suspended.stripeCount;
+        transfer.bandwidth = bandwidth.child("transfer-" + transferId);
+        outgoingTransfers.put(transferId, transfer);
+        watchTransfer(transfer);
+        cyphering = true;
+
+        long start = offset >= 0 && offset <= transfer.fileSize ? offset : 0;
+        transfer.senderThread = ExecutionMode.start(() -> {
+            try {
+                // file has to be the same as the one partially sent before
+                byte[] hash = EncryptionManager.hash(Path.of(fileData.getFilePath()), transfer.running);
+                if (hash == null) {
+                    removeTransfer(transfer);
+                    return;
+                }
+                if (!Arrays.equals(hash, transfer.hash)) {
+                    transfer.hash = hash;
+                    transfer.fileSize = Files.size(Path.of(fileData.getFilePath()));
+                    transfer.offset = 0;
+                } else {
+                    transfer.offset = start;
+                }
+
+                announce(transfer);
+                startCyphering(transfer);
+                sender(transfer).run();
+            } catch (IOException | GeneralSecurityException e) {
+                e.printStackTrace();
+                stopTransfer(transfer);
+            }
+        }, "file-sender");
+        return transfer;
+    }
+
+    /**
+     * Sends transfer info to the other client.
+     * @param transfer outgoing transfer
+     * @throws NoSuchPaddingException problem with padding
+     * @throws NoSuchAlgorithmException problem with chosen transformation
+     * @throws InvalidAlgorithmParameterException wrong algorithm parameters
+     * @throws InvalidKeyException problem with key
+     * @throws IllegalBlockSizeException problem with block size
+     * @throws BadPaddingException problem with padding
+     */
+    private void announce(Transfer transfer) throws NoSuchPaddingException, NoSuchAlgorithmException,
+            InvalidAlgorithmParameterException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        if (!Objects.equals(encryptionManager.getTransformation(), symmetricTransformation.getText())) {
+            encryptionManager.setTransformation(symmetricTransformation.getText());
+        }
+        tcpManager.send(new Frame(Frame.Type.TRANSFER_INIT, fileInfo(transfer), transfer.getId()));
+    }
+
+    /**
+     * Starts encryption of the file of outgoing transfer from its offset.
+     * @param transfer outgoing transfer
+     * @throws InvalidAlgorithmParameterException wrong algorithm parameters
+     * @throws InvalidKeyException problem with key
+     */
+    private void startCyphering(Transfer transfer) throws InvalidAlgorithmParameterException, InvalidKeyException {
+        IvParameterSpec iv = Objects.equals(symmetricTransformation.getMode(), "CBC") ? sessionIV : null;
+        transfer.cypheringThread = encryptionManager.encrypt(Path.of(transfer.getFileData().getFilePath()),
+                transfer.queue, sessionKey, iv, transfer.fileSize, transfer.running, transfer::updateProgress,
+                transfer.offset);
+    }
+
+    /**
+     * Creates sender of encrypted data of outgoing transfer.
+     * @param transfer outgoing transfer
+     * @return striped sender if extra data connections are requested, simple sender otherwise
+     */
+    private Runnable sender(Transfer transfer) {
+        transfer.datagram = transfer.stripeCount == 0 && datagramManager != null && datagramManager.isConnected();
+        return transfer.stripeCount > 0 ?
+                new StripedFileSender(this, transfer, transfer.stripeCount) : new EncryptedFileSender(this, transfer);
+    }
+
+    /**
+     * Creates transfer info with file name, size and hash encrypted with the session key.
+     * @param transfer outgoing transfer, hash is left out if not computed yet
+     * @return transfer info
+     * @throws InvalidAlgorithmParameterException wrong algorithm parameters
+     * @throws InvalidKeyException problem with key
+     * @throws IllegalBlockSizeException problem with block size
+     * @throws BadPaddingException problem with padding
+     */
+    private FileInfo fileInfo(Transfer transfer) throws InvalidAlgorithmParameterException, InvalidKeyException,
+            IllegalBlockSizeException, BadPaddingException {
+        String fileName = transfer.getFileData().getFileName();
+        String fileSize = String.valueOf(transfer.fileSize);
+        String hash = transfer.hash == null ? null : Base64.getEncoder().encodeToString(transfer.hash);
+
+        FileInfo info;
+        if (Objects.equals(symmetricTransformation.getMode(), "CBC")) {
+            info = new FileInfo(encryptionManager.encrypt(fileName, sessionKey, sessionIV),
+                    encryptionManager.encrypt(fileSize, sessionKey, sessionIV), transfer.stripeCount,
+                    transfer.resumeId, hash == null ? null : encryptionManager.encrypt(hash, sessionKey, sessionIV),
+                    transfer.offset);
+        } else {
+            info = new FileInfo(encryptionManager.encrypt(fileName, sessionKey),
+                    encryptionManager.encrypt(fileSize, sessionKey), transfer.stripeCount,
+                    transfer.resumeId, hash == null ? null : encryptionManager.encrypt(hash, sessionKey),
+                    transfer.offset);
+        }
+
+        if (transfer.contentKey != null) {
+            info.setContentKey(wrap(transfer.contentKey));
+            info.setContentIv(transfer.contentIv == null ? null : transfer.contentIv.getIV());
+            info.setContentTransformation(transfer.contentTransformation);
+        }
+        return info;
+    }
+
+    /**
+     * Encrypts key of a file encrypted once for many clients with the session key.
+     * @param key content key
+     * @return encrypted key
+     * @throws InvalidAlgorithmParameterException wrong algorithm parameters
+     * @throws InvalidKeyException problem with key
+     * @throws IllegalBlockSizeException problem with block size
+     * @throws BadPaddingException problem with padding
+     */
+    byte[] wrap(Key key) throws InvalidAlgorithmParameterException, InvalidKeyException,
+            IllegalBlockSizeException, BadPaddingException {
+        if (Objects.equals(symmetricTransformation.getMode(), "CBC")) {
+            return encryptionManager.encrypt(Cipher.ENCRYPT_MODE, key.getEncoded(), sessionKey, sessionIV);
+        }
+        return encryptionManager.encrypt(key, sessionKey);
+    }
+
+    /**
+     * Decrypts key of a file encrypted once for many clients with the session key.
+     * @param wrapped encrypted key
+     * @param algorithm algorithm of the key
+     * @return content key
+     * @throws InvalidAlgorithmParameterException wrong algorithm parameters
+     * @throws InvalidKeyException problem with key
+     * @throws IllegalBlockSizeException problem with block size
+     * @throws BadPaddingException problem with padding
+     */
+    Key unwrap(byte[] wrapped, String algorithm) throws InvalidAlgorithmParameterException, InvalidKeyException,
+            IllegalBlockSizeException, BadPaddingException {
+        if (Objects.equals(symmetricTransformation.getMode(), "CBC")) {
+            return new SecretKeySpec(encryptionManager.encrypt(Cipher.DECRYPT_MODE, wrapped, sessionKey, sessionIV),
+                    algorithm);
+        }
+        return encryptionManager.decrypt(wrapped, sessionKey, algorithm);
+    }
+
+    /**
+     * Starts thread computing hash of the file of outgoing transfer, in parallel with the transfer itself.
+     * @param transfer outgoing transfer
+     */
+    private void startHashing(Transfer transfer) {
+        ExecutionMode.start(() -> {
+            try {
+                transfer.hash = EncryptionManager.hash(Path.of(transfer.getFileData().getFilePath()),
+                        transfer.running);
+                if (transfer.hash != null && transfer.running.get()) sendHash(transfer);
+            } catch (IOException | InvalidAlgorithmParameterException | InvalidKeyException |
+                    IllegalBlockSizeException | BadPaddingException e) {
+                e.printStackTrace();
+            }
+        }, "file-hasher");
+    }
+
+    /**
+     * Sends hash of the file of outgoing transfer encrypted with the session key, so the receiver can verify it.
+     * @param transfer outgoing transfer which hash is known
+     * @throws InvalidAlgorithmParameterException wrong algorithm parameters
+     * @throws InvalidKeyException problem with key
+     * @throws IllegalBlockSizeException problem with block size
+     * @throws BadPaddingException problem with padding
+     */
+    private void sendHash(Transfer transfer) throws InvalidAlgorithmParameterException, InvalidKeyException,
+            IllegalBlockSizeException, BadPaddingException {
+        String hash = Base64.getEncoder().encodeToString(transfer.hash);
+        byte[] encrypted = Objects.equals(symmetricTransformation.getMode(), "CBC") ?
+                encryptionManager.encrypt(hash, sessionKey, sessionIV) : encryptionManager.encrypt(hash, sessionKey);
+        tcpManager.send(new Frame(Frame.Type.TRANSFER_HASH, encrypted, transfer.getId()));
+    }
+
+    /**
+     * Internal method used for finishing incoming transfer which whole file has been passed to the decryptor.
+     * The saved file is verified against the hash announced by the sender, which is waited for if the sender
+     * has not computed it yet. File which does not match, or which hash did not arrive, is published as failed.
+     * @param transfer incoming transfer
+     * @throws InterruptedException when interrupted while waiting for the decryptor
+     */
+    void finish(Transfer transfer) throws InterruptedException {
+        transfer.cypheringThread.join();
+
+        boolean verified = false;
+        try {
+            byte[] expected = transfer.announcedHash.get(HASH_TIMEOUT, TimeUnit.MILLISECONDS);
+            byte[] actual = EncryptionManager.hash(Path.of(transfer.getFileData().getFilePath()), transfer.running);
+            if (actual == null) return;
+            verified = Arrays.equals(expected, actual);
+        } catch (TimeoutException e) {
+            // sender stopped before sending the hash, the file cannot be verified
+        } catch (ExecutionException | IOException e) {
+            e.printStackTrace();
+        }
+
+        removeTransfer(transfer);
+        newMessage(verified ? Message.Type.FILE_READY : Message.Type.FILE_FAILED, transfer.getFileData());
+    }
+
+    /**
+     * Stop current cyphering work of all transfers.
+     */
+    public void stopCyphering() {
+        encryptionManager.stopCurrentWork();
+        for (Transfer transfer : outgoingTransfers.values()) stopTransfer(transfer);
+        for (Transfer transfer : incomingTransfers.values()) stopTransfer(transfer);
+        cyphering = false;
+    }
+
+    /**
+     * Used for communicator initialization.
+     * After init incoming handler will be started automatically whenever connection is established
+     * and stop when connection is lost.
+     */
+    public void init() {
+        tcpManager.attach(this);
+        MetricsRegistry.global().gauge(metricsScope + ".messageQueue", () -> messageQueue.size());
+        MetricsRegistry.global().gauge(metricsScope + ".rtt", () -> latestRtt < 0 ? null : latestRtt);
+        budgetGauges(metricsScope + ".budget.peer", budget);
+        budgetGauges(metricsScope + ".budget.global", MemoryBudget.global());
+        if (tcpManager.isConnected()) {
+            startIncomingHandler();
+        }
+    }
+
+    /**
+     * Registers gauges of reserved bytes, peak reserved bytes and waiting threads of a memory budget.
+     * @param name name of the gauges without the trailing value name
+     * @param memory budget to be observed
+     */
+    private static void budgetGauges(String name, MemoryBudget memory) {
+        MetricsRegistry metrics = MetricsRegistry.global();
+        metrics.gauge(name + ".used", memory::getUsed);
+        metrics.gauge(name + ".peak", memory::getPeak);
+        metrics.gauge(name + ".waiting", memory::getWaiting);
+    }
+
+    /**
+     * Should be called on teardown if was initiated.
+     * Detaches communicator object from tcp manager.
+     */
+    public void close() {
+        tcpManager.detach(this);
+        stopCyphering();
+        stopHeartbeat();
+        stopIncomingHandler();
+        closeDatagrams();
+        datagramRunning.set(false);
+        MetricsRegistry.global().remove(metricsScope);
+    }
+
+    /**
+     * Starts and stops incoming handler and heartbeat depending on connection state.
+     * @param o data related to event
+     */
+    @Override
+    public void update(Object o) {
+        NetworkManager.Status status = (NetworkManager.Status) o;
+
+        if (status == NetworkManager.Status.CONNECTED) {
+            // ids of streams closed on the previous connection may be used again by a restarted peer
+            closedStreams.clear();
+            startIncomingHandler();
+            startHeartbeat();
+            offerDatagrams();
+        } else {
+            stopHeartbeat();
+            closeDatagrams();
+            stopIncomingHandler();
+            pendingTicket = null;
+            pendingNonce = null;
+            pendingHandshake = null;
+            handshakeStart = 0;
+            suspendTransfers();
+            stopCyphering();
+            communicationEstablished = false;
+            sessionEstablished = false;
+        }
+    }
+
+    /**
+     * Starts incoming handler.
+     */
+    public void startIncomingHandler() {
+        if (!running.get()) {
+            running = new AtomicBoolean(true);
+            incomingHandler = ExecutionMode.start(new IncomingHandler(this, running), "incoming-handler");
+        }
+    }
+
+    /**
+     * Stops incoming handler.
+     */
+    public void stopIncomingHandler() {
+        running.set(false);
+        if (incomingHandler != null && incomingHandler.isAlive()) incomingHandler.interrupt();
+    }
+
+    /**
+     * Sets datagram manager used for sending transfer data, takes effect from the next connection.
+     * @param datagramManager datagram manager, null for sending all frames over tcp
+     */
+    public void setDatagramManager(UdpManager datagramManager) {
+        this.datagramManager = datagramManager;
+        if (datagramManager != null) datagramManager.attach(this::datagramStatus);
+    }
+
+    /**
+     * Starts or stops handling frames received over the datagram channel.
+     * @param o new status of the datagram manager
+     */
+    private void datagramStatus(Object o) {
+        if (o == NetworkManager.Status.CONNECTED) {
+            datagramRunning.set(false);
+            datagramRunning = new AtomicBoolean(true);
+            ExecutionMode.start(new IncomingHandler(this, datagramRunning, datagramManager), "datagram-handler");
+        } else {
+            datagramRunning.set(false);
+            // handler waiting for init of a transfer stops at once
+            announcements.values().forEach(announcement -> announcement.complete(null));
+        }
+    }
+
+    /**
+     * Offers datagram channel to the connected client, with a random token identifying the connection.
+     */
+    synchronized void offerDatagrams() {
+        UdpManager manager = datagramManager;
+        if (manager == null || datagramAccepted) return;
+
+        manager.setToken(SessionTicket.nonce());
+        if (manager.listenOn(0)) {
+            tcpManager.send(new Frame(Frame.Type.DATAGRAM_INIT, new StripeInfo(manager.getListeningPort(),
+                    manager.getToken())));
+        }
+    }
+
+    /**
+     * Connects to the datagram channel offered by the other client.
+     * When both clients offer their channels at once, the offer with the lower token wins.
+     * @param info port and token of the offered channel
+     */
+    synchronized void datagramOffered(StripeInfo info) {
+        UdpManager manager = datagramManager;
+        if (manager == null || manager.isConnected() || info.getToken() == null) return;
+        if (manager.isListening() && Arrays.compare(manager.getToken(), info.getToken()) < 0) return;
+
+        String host = tcpManager.getHost();
+        datagramAccepted = true;
+        manager.stop();
+        manager.setToken(info.getToken());
+        // connecting waits for the answer, frames of the control connection keep being handled
+        ExecutionMode.start(() -> manager.connect(host, info.getPort()), "datagram-connect");
+    }
+
+    /**
+     * Closes datagram channel together with the control connection.
+     */
+    synchronized void closeDatagrams() {
+        datagramAccepted = false;
+        UdpManager manager = datagramManager;
+        if (manager == null) return;
+        manager.stop();
+        manager.disconnect();
+    }
+
+    /**
+     * Chooses manager sending data of a transfer.
+     * @param transfer outgoing transfer
+     * @return datagram manager if chosen for the transfer, tcp manager otherwise
+     */
+    NetworkManager dataManager(Transfer transfer) {
+        return transfer.datagram ? datagramManager : tcpManager;
+    }
+
+    /**
+     * Starts heartbeat of the current connection.
+     */
+    void startHeartbeat() {
+        stopHeartbeat();
+        heartbeat = new Heartbeat(this, heartbeatInterval, heartbeatMisses);
+        heartbeatThread = ExecutionMode.start(heartbeat, "heartbeat");
+    }
+
+    /**
+     * Stops heartbeat of the current connection.
+     */
+    void stopHeartbeat() {
+        Heartbeat current = heartbeat;
+        heartbeat = null;
+        if (current != null) current.stop();
+        // heartbeat itself closes connection of a dead peer
+        if (heartbeatThread != null && heartbeatThread != Thread.currentThread()) heartbeatThread.interrupt();
+    }
+
+    /**
+     * Generates random challenge string.
+     * @return random challenge string.
+     */
+    public static String generateChallenge() {
+        int randomInt = new Random().nextInt(9999) + 10000;
+        return String.valueOf(randomInt);
+    }
+
+    /**
+     * Initiates communication by sending username, public key and challenge text to the other client.
+     * Make sure that provided algorithm is an asymmetric algorithm to be used in key exchange.
+     * Session has to be initiated separately after the communication is established.
+     *
+     * If a ticket cached during the previous session with the connected client is still valid, communication
+     * and session are resumed with it in a single round trip instead. When the other client rejects the ticket,
+     * the full handshake is started automatically.
+     * @throws CommunicationException when called during ongoing cyphering operation
+     */
+    public void initiateCommunication() throws CommunicationException {
+        initiateCommunication(null);
+    }
+
+    /**
+     * Initiates communication together with the first session using signed handshake, see Handshake.
+     * Both are established in a single round trip, with public keys sent once and the session key agreed
+     * from ephemeral keys of both clients.
+     *
+     * If a ticket cached during the previous session with the connected client is still valid, communication
+     * and session are resumed with it instead, keeping transformation of the previous session.
+     * @param transformation transformation of the first session, null for the legacy challenge handshake
+     * @throws CommunicationException when called during ongoing cyphering operation
+     */
+    public void initiateCommunication(Transformation transformation) throws CommunicationException {
+        if (cyphering) {
+            throw new CommunicationException("Cannot initiate session during ongoing cyphering process.");
+        }
+        handshakeTransformation = transformation;
+        handshakeStart = System.nanoTime();
+        if (resumeCommunication()) return;
+
+        startHandshake();
+    }
+
+    /**
+     * Starts the full handshake, signed one if transformation of the first session was requested,
+     * legacy challenge handshake otherwise.
+     */
+    void startHandshake() {
+        startHandshake(true);
+    }
+
+    /**
+     * Starts the full handshake.
+     * @param compact true if own public key may be left out of the signed hello when the other client is known
+     */
+    void startHandshake(boolean compact) {
+        if (handshakeTransformation != null) {
+            byte[] peerFingerprint = compact ? knownPeers.fingerprintAt(tcpManager.getHost()) : null;
+            KeyPair ephemeral = EncryptionManager.generateEphemeralKeyPair();
+            HandshakeInfo hello = HandshakeInfo.builder()
+                    .num(0)
+                    .username(username)
+                    .userPublicKey(userPublicKey)
+                    .keyFingerprint(KnownPeers.fingerprint(userPublicKey))
+                    .peerFingerprint(peerFingerprint)
+                    .nonce(SessionTicket.nonce())
+                    .transformation(handshakeTransformation)
+                    .ephemeralKey(ephemeral.getPublic())
+                    .build();
+            // the other client met before is expected to know own key as well
+            boolean omitKey = peerFingerprint != null;
+            pendingHandshake = new Handshake(hello, omitKey);
+            pendingHandshake.setEphemeralKey(ephemeral.getPrivate());
+            HandshakeInfo sent = omitKey ? hello.toBuilder().userPublicKey(null).build() : hello;
+            tcpManager.send(new Frame(Frame.Type.HANDSHAKE, sent));
+            return;
+        }
+
+        CommunicationInfo info = CommunicationInfo.builder()
+                .username(username)
+                .userPublicKey(userPublicKey)
+                .num(0)
+                .build();
+        Frame frame = new Frame(Frame.Type.COMMUNICATION_INIT, info);
+
+        tcpManager.send(frame);
+    }
+
+    /**
+     * Sends communication-stop message to announce to the other client that current communication is no longer active.
+     * Ticket of the current session is dropped, so the next communication needs the full handshake.
+     */
+    public void stopCommunication() {
+        communicationEstablished = false;
+        sessionEstablished = false;
+        dropTicket();
+
+        Frame frame = new Frame(Frame.Type.COMMUNICATION_STOP, null);
+        tcpManager.send(frame);
+    }
+
+    /**
+     * Initiates session by sending session info to the other client.
+     * Before sending generates session key and IV based on provided transformation.
+     * One communication can consist of multiple sessions with different parameters.
+     * @param transformation algorithm to be used in symmetric cyphering
+     * @throws CommunicationException when called during ongoing cyphering operation
+     * @throws NoSuchAlgorithmException provided incorrect algorithm
+     * @throws IllegalBlockSizeException problem with block size
+     * @throws BadPaddingException problem with padding
+     * @throws InvalidKeyException problem with key
+     * @throws NoSuchPaddingException problem with padding
+     */
+    public void initiateSession(Transformation transformation) throws CommunicationException, NoSuchAlgorithmException,
+            IllegalBlockSizeException, BadPaddingException, InvalidKeyException, NoSuchPaddingException {
+        if (cyphering) {
+            throw new CommunicationException("Cannot initiate session during ongoing cyphering process.");
+        }
+        if (!communicationEstablished) return;
+
+        if (!Objects.equals(encryptionManager.getTransformation(), asymmetricTransformation.getText())) {
+            encryptionManager.setTransformation(asymmetricTransformation.getText());
+        }
+
+        sessionKey = EncryptionManager.generateKey(transformation.getKeySize(), transformation.getAlgorithm());
+        sessionIV = EncryptionManager.generateIv(transformation.getBlockSize());
+        symmetricTransformation = transformation;
+
+        SessionInfo info = SessionInfo.builder()
+                .encryptedSessionKey(encryptionManager.encrypt(sessionKey, otherUserPublicKey))
+                .iv(sessionIV.getIV())
+                .transformation(symmetricTransformation)
+                .build();
+
+        Frame frame = new Frame(Frame.Type.SESSION_INIT, info);
+
+        tcpManager.send(frame);
+
+        sessionEstablished = true;
+        handshakeFinished();
+        issueTicket();
+        resumeTransfers();
+    }
+
+    /**
+     * Caches ticket of the established session for resuming communication after reconnection.
+     * Replaces previous ticket of the connected client, other clients at the same address keep theirs.
+     */
+    void issueTicket() {
+        String host = tcpManager.getHost();
+        if (host == null) return;
+        try {
+            SessionTicket ticket = SessionTicket.derive(host, otherUsername, otherUserPublicKey,
+                    symmetricTransformation, sessionKey, sessionIV);
+            tickets.put(ticket.index(), ticket);
+        } catch (InvalidKeyException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Remembers public key of the other client confirmed by the handshake.
+     */
+    void rememberPeer() {
+        knownPeers.remember(tcpManager.getHost(), otherUsername, otherUserPublicKey);
+    }
+
+    /**
+     * Drops ticket of the connected client.
+     */
+    void dropTicket() {
+        String host = tcpManager.getHost();
+        if (host != null && otherUserPublicKey != null) {
+            tickets.remove(SessionTicket.index(host, KnownPeers.fingerprint(otherUserPublicKey)));
+        }
+    }
+
+    /**
+     * Finds ticket with a given id, leaving it in the cache.
+     * Ticket id is sent in clear, so the ticket is taken only once the request proves knowing its secret.
+     * @param id id of the ticket
+     * @return ticket or null if there is no valid ticket with that id
+     */
+    SessionTicket findTicket(byte[] id) {
+        for (SessionTicket ticket : tickets.values()) {
+            if (Arrays.equals(ticket.getId(), id)) {
+                if (!ticket.isExpired()) return ticket;
+                tickets.remove(ticket.index(), ticket);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Takes ticket out of the cache, every ticket is used once.
+     * @param ticket ticket found before
+     * @return true if the ticket was still cached and is now taken
+     */
+    boolean takeTicket(SessionTicket ticket) {
+        return tickets.remove(ticket.index(), ticket);
+    }
+
+    /**
+     * Requests resuming communication and session with the connected client using cached ticket.
+     * Ticket of the client last seen at the address is offered, other clients at that address keep theirs.
+     * @return true if request was sent, false if there is no valid ticket of the connected client
+     */
+    boolean resumeCommunication() {
+        String host = tcpManager.getHost();
+        byte[] fingerprint = knownPeers.fingerprintAt(host);
+        SessionTicket ticket = fingerprint == null ? null : tickets.remove(SessionTicket.index(host, fingerprint));
+        if (ticket == null || ticket.isExpired()) return false;
+
+        try {
+            byte[] nonce = SessionTicket.nonce();
+            TicketInfo info = new TicketInfo(0, ticket.getId(), nonce, ticket.mac("client", nonce));
+            pendingTicket = ticket;
+            pendingNonce = nonce;
+            if (tcpManager.send(new Frame(Frame.Type.SESSION_RESUME, info))) return true;
+        } catch (InvalidKeyException e) {
+            e.printStackTrace();
+        }
+        pendingTicket = null;
+        pendingNonce = null;
+        return false;
+    }
+
+    /**
+     * Establishes communication and session resumed with a ticket.
+     * Session uses the transformation of the previous one, with key and IV derived from nonces of both clients.
+     * @param ticket ticket of the previous session
+     * @param clientNonce nonce of the resuming client
+     * @param serverNonce nonce of the accepting client
+     * @throws InvalidKeyException problem with key
+     * @throws InterruptedException blocking method was interrupted
+     */
+    void resumeSession(SessionTicket ticket, byte[] clientNonce, byte[] serverNonce)
+            throws InvalidKeyException, InterruptedException {
+        establish(ticket.getOtherUsername(), ticket.getOtherUserPublicKey(), ticket.getTransformation(),
+                ticket.sessionKey(clientNonce, serverNonce), ticket.sessionIV(clientNonce, serverNonce));
+    }
+
+    /**
+     * Establishes communication and session at once, after signed handshake or resumption.
+     * @param otherUsername username of the other client
+     * @param otherUserPublicKey confirmed public key of the other client
+     * @param transformation transformation of the session
+     * @param key session key
+     * @param iv session IV
+     * @throws InterruptedException blocking method was interrupted
+     */
+    void establish(String otherUsername, PublicKey otherUserPublicKey, Transformation transformation, Key key,
+                   IvParameterSpec iv) throws InterruptedException {
+        this.otherUsername = otherUsername;
+        this.otherUserPublicKey = otherUserPublicKey;
+        symmetricTransformation = transformation;
+        sessionKey = key;
+        sessionIV = iv;
+        sessionEstablished = true;
+        communicationEstablished = true;
+        handshakeFinished();
+        issueTicket();
+        rememberPeer();
+
+        newMessage(Message.Type.COMMUNICATION, new CommunicationData(otherUsername));
+        newMessage(Message.Type.SESSION, new SessionData(symmetricTransformation));
+        resumeTransfers();
+    }
+
+    /**
+     * Sends text message to the other client.
+     * Uses established session info to perform text encryption.
+     * If no session has been established it will take no effect.
+     * @param message text to be sent
+     * @throws InvalidAlgorithmParameterException wrong algorithm parameters
+     * @throws IllegalBlockSizeException problem with block size
+     * @throws BadPaddingException problem with padding
+     * @throws InvalidKeyException problem with key
+     * @throws NoSuchPaddingException problem with padding
+     * @throws NoSuchAlgorithmException provided incorrect algorithm
+     */
+    public void send(String message) throws InvalidAlgorithmParameterException, IllegalBlockSizeException,
+            BadPaddingException, InvalidKeyException, NoSuchPaddingException, NoSuchAlgorithmException {
+        if (!sessionEstablished) return;
+
+        if (!Objects.equals(encryptionManager.getTransformation(), symmetricTransformation.getText())) {
+            encryptionManager.setTransformation(symmetricTransformation.getText());
+        }
+
+        byte[] encMessage;
+
+        if (Objects.equals(symmetricTransformation.getMode(), "CBC")) {
+            encMessage = encryptionManager.encrypt(message, sessionKey, sessionIV);
+        } else {
+            encMessage = encryptionManager.encrypt(message, sessionKey);
+        }
+
+        Frame frame = new Frame(Frame.Type.MESSAGE, encMessage);
+
+        tcpManager.send(frame);
+    }
+
+    /**
+     * Initiates file transfer over the connection managed by tcp manager.
+     * @see #send(Path, int)
+     * @param pathToFile file to be encrypted and send
+     * @return started transfer or null if no session is established
+     * @throws IOException provided incorrect file path
+     * @throws NoSuchPaddingException problem with padding
+     * @throws NoSuchAlgorithmException problem with chosen transformation
+     * @throws InvalidAlgorithmParameterException wrong algorithm parameters
+     * @throws InvalidKeyException problem with key
+     * @throws IllegalBlockSizeException problem with block size
+     * @throws BadPaddingException problem with padding
+     */
+    public Transfer send(Path pathToFile) throws IOException, NoSuchPaddingException,
+            NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException,
+            IllegalBlockSizeException, BadPaddingException {
+        return send(pathToFile, 0);
+    }
+
+    /**
+     * Initiates file transfer and starts file encryption and sending threads.
+     * Used for sending files to the other client.
+     *
+     * If stripes are requested, encrypted data is sent over that many extra data connections opened to the other
+     * client, while the connection managed by tcp manager stays the control connection. Striping helps large files
+     * fill links with high bandwidth and high latency, which a single connection cannot.
+     *
+     * Every transfer is sent on its own stream with its own encryptor, so many files can be sent at the same time
+     * and text messages can still be sent during transfers.
+     *
+     * Hash of the file is computed in parallel with the transfer. Transfers interrupted by connection loss after
+     * the hash is known are resumed from the offset saved by the receiver, after the same peer connects
+     * and establishes session again.
+     *
+     * NOTE: Before all transfers complete (cyphering flag set to false) or are cancelled (stopCyphering)
+     *       it is not possible to initiate new session.
+     *
+     * @param pathToFile file to be encrypted and send
+     * @param stripes number of extra data connections, 0 to send data over the control connection
+     * @return started transfer or null if no session is established
+     * @throws IOException provided incorrect file path
+     * @throws NoSuchPaddingException problem with padding
+     * @throws NoSuchAlgorithmException problem with chosen transformation
+     * @throws InvalidAlgorithmParameterException wrong algorithm parameters
+     * @throws InvalidKeyException problem with key
+     * @throws IllegalBlockSizeException problem with block size
+     * @throws BadPaddingException problem with padding
+     */
+    public Transfer send(Path pathToFile, int stripes) throws IOException, NoSuchPaddingException,
+            NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException,
+            IllegalBlockSizeException, BadPaddingException {
+        if (!sessionEstablished) return null;
+
+        Transfer transfer = outgoing(pathToFile);
+        transfer.resumeId = UUID.randomUUID().toString();
+        transfer.stripeCount = stripes;
+        outgoingTransfers.put(transfer.getId(), transfer);
+        watchTransfer(transfer);
+        cyphering = true;
+
+        announce(transfer);
+        startCyphering(transfer);
+        startHashing(transfer);
+
+        transfer.senderThread = ExecutionMode.start(sender(transfer), "file-sender");
+        return transfer;
+    }
+
+    /**
+     * Initiates transfer of a file encrypted once for many clients by a multicast and starts its sending thread.
+     * Encrypted data is put into the queue of the transfer by the multicast, the content key is sent to
+     * the other client encrypted with the session key.
+     * Such transfers are not resumed after reconnecting, as the content key is not kept.
+     * @param pathToFile file to be sent
+     * @param contentKey key the file is encrypted with
+     * @param contentIv IV the file is encrypted with, null if the transformation uses no IV
+     * @param contentTransformation transformation the file is encrypted with
+     * @return started transfer or null if no session is established
+     * @throws IOException provided incorrect file path
+     * @throws NoSuchPaddingException problem with padding
+     * @throws NoSuchAlgorithmException problem with chosen transformation
+     * @throws InvalidAlgorithmParameterException wrong algorithm parameters
+     * @throws InvalidKeyException problem with key
+     * @throws IllegalBlockSizeException problem with block size
+     * @throws BadPaddingException problem with padding
+     */
+    Transfer send(Path pathToFile, Key contentKey, IvParameterSpec contentIv, Transformation contentTransformation)
+            throws IOException, NoSuchPaddingException, NoSuchAlgorithmException, InvalidAlgorithmParameterException,
+            InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        if (!sessionEstablished) return null;
+
+        Transfer transfer = outgoing(pathToFile);
+        transfer.contentKey = contentKey;
+        transfer.contentIv = contentIv;
+        transfer.contentTransformation = contentTransformation;
+        outgoingTransfers.put(transfer.getId(), transfer);
+        watchTransfer(transfer);
+        cyphering = true;
+
+        announce(transfer);
+        startHashing(transfer);
+
+        transfer.senderThread = ExecutionMode.start(sender(transfer), "file-sender");
+        return transfer;
+    }
+
+    /**
+     * Creates outgoing transfer of a file on a new stream.
+     * @param pathToFile file to be sent
+     * @return new transfer
+     * @throws IOException provided incorrect file path
+     */
+    private Transfer outgoing(Path pathToFile) throws IOException {
+        long fileSize = Files.size(pathToFile);
+        String fileName = pathToFile.getFileName().toString();
+
+        int transferId = nextStreamId.incrementAndGet();
+        FileData fileData = new FileData(fileName, fileName, pathToFile.toString(), transferId);
+        latestFileData = fileData;
+
+        Transfer transfer = new Transfer(transferId, Transfer.Direction.OUTGOING, fileData, budget);
+        transfer.fileSize = fileSize;
+        transfer.bandwidth = bandwidth.child("transfer-" + transferId);
+        return transfer;
+    }
+
+    public EncryptedTcpCommunicator(String savedFilesPath, String username, PublicKey userPublicKey,
+                                    PrivateKey userPrivateKey, Transformation asymmetricTransformation,
+                                    NetworkManager tcpManager, EncryptionManager encryptionManager) {
+        this.savedFilesPath = savedFilesPath;
+        this.username = username;
+        this.userPublicKey = userPublicKey;
+        this.userPrivateKey = userPrivateKey;
+        this.asymmetricTransformation = asymmetricTransformation;
+        this.tcpManager = tcpManager;
+        this.encryptionManager = encryptionManager;
+        this.running = new AtomicBoolean(false);
+        this.datagramRunning = new AtomicBoolean(false);
+        this.nextStreamId = new AtomicInteger(Frame.CONTROL_STREAM);
+        this.budget = MemoryBudget.global().child("peer", PEER_QUOTA);
+        this.bandwidth = TokenBucket.global().child("peer");
+        this.metricsScope = "communicator." + username + "." + instances.incrementAndGet();
+        this.messageQueue = new BudgetedQueue<>(budget, EncryptedTcpCommunicator::sizeOf);
+        this.outgoingTransfers = new ConcurrentHashMap<>();
+        this.incomingTransfers = new ConcurrentHashMap<>();
+        this.closedStreams = ConcurrentHashMap.newKeySet();
+        this.announcements = new ConcurrentHashMap<>();
+        this.suspendedTransfers = new ConcurrentHashMap<>();
+        this.tickets = new ConcurrentHashMap<>();
+        this.knownPeers = new KnownPeers(null);
+        this.heartbeatInterval = Heartbeat.readProperty(Heartbeat.INTERVAL_PROPERTY, Heartbeat.DEFAULT_INTERVAL);
+        this.heartbeatMisses = (int) Heartbeat.readProperty(Heartbeat.MISSES_PROPERTY, Heartbeat.DEFAULT_MISSES);
+        this.latestRtt = -1;
+        this.observers = new ConcurrentLinkedQueue<>();
+        this.communicationEstablished = false;
+        this.sessionEstablished = false;
+        this.cyphering = false;
+    }
+}
@@ -0,0 +1,184 @@
+package pl.edu.pg.eti.ksr.project.communication;
+
+import lombok.Getter;
+import lombok.Setter;
+import pl.edu.pg.eti.ksr.project.crypto.EncryptionManager;
+import pl.edu.pg.eti.ksr.project.network.data.HandshakeInfo;
+
+import javax.crypto.spec.IvParameterSpec;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SignatureException;
+
+/**
+ * State of the signed handshake, establishing communication and the first session in a single round trip.
+ *
+ * Client 1                 Client 2
+ * =====================================
+ * num = 0
+ * username     ------->
+ * public key
+ * nonce 1                  num = 1
+ * transformation           username
+ * ephemeral key 1          public key
+ *                          nonce 2
+ *                          ephemeral key 2
+ *  VERIFY      <-------    iv
+ *  DONE                    SIGN transcript
+ * num = 2
+ * SIGN transcript ---->     VERIFY
+ *                           DONE
+ * =====================================
+ *
+ * Both signatures cover the whole transcript, so every field of both hello and reply is authenticated
+ * and bound to fresh nonces of both clients. Public keys are sent once. The first session key is never sent,
+ * both clients derive it from the ECDH agreement of their ephemeral keys and the transcript, so recorded
+ * traffic stays secret even if private keys of the clients leak later.
+ * Client 1 can send data right after its finish, client 2 after receiving it.
+ *
+ * Clients which met before send only fingerprints of their keys, see KnownPeers. The transcript always covers
+ * full keys, taken from known peers by the receiving client, so a wrong cached key fails verification.
+ * When client 2 does not know the key of client 1, it replies without session key and client 1 sends
+ * a new hello with the key.
+ */
+@Getter
+class Handshake {
+
+    /**
+     * Role of the client starting the handshake.
+     */
+    static final String INITIATOR = "initiator";
+
+    /**
+     * Role of the client answering the handshake.
+     */
+    static final String RESPONDER = "responder";
+
+    /**
+     * Version of the handshake, part of the transcript.
+     */
+    private static final String VERSION = "bsk-handshake-2";
+
+    /**
+     * Label of the transcript the session key is derived from.
+     */
+    private static final String SESSION = "session";
+
+    /**
+     * Hello sent by the initiating client.
+     */
+    private final HandshakeInfo hello;
+
+    /**
+     * True if the hello was sent without the public key.
+     */
+    private final boolean compact;
+
+    /**
+     * Reply sent by the answering client, without its signature.
+     */
+    @Setter
+    private HandshakeInfo reply;
+
+    /**
+     * Own ephemeral private key, forgotten once the session key is derived.
+     */
+    @Setter
+    private PrivateKey ephemeralKey;
+
+    /**
+     * Session key derived by the answering client, kept until the initiating client confirms the handshake.
+     */
+    @Setter
+    private Key sessionKey;
+
+    /**
+     * Session IV generated by the answering client, known to the answering client only.
+     */
+    @Setter
+    private IvParameterSpec sessionIV;
+
+    /**
+     * Encodes transcript of the handshake signed by a client of a given role.
+     * @param role role of the signing client
+     * @return transcript
+     */
+    byte[] transcript(String role) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(VERSION);
+            out.writeUTF(role);
+            write(out, hello.getUsername());
+            write(out, hello.getUserPublicKey().getEncoded());
+            write(out, hello.getNonce());
+            write(out, hello.getTransformation().name());
+            write(out, hello.getEphemeralKey().getEncoded());
+            write(out, reply.getUsername());
+            write(out, reply.getUserPublicKey().getEncoded());
+            write(out, reply.getNonce());
+            write(out, reply.getEphemeralKey().getEncoded());
+            write(out, reply.getIv());
+        } catch (IOException e) {
+            // writing to memory does not fail
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void write(DataOutputStream out, String text) throws IOException {
+        out.writeBoolean(text != null);
+        if (text != null) out.writeUTF(text);
+    }
+
+    private static void write(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes == null ? -1 : bytes.length);
+        if (bytes != null) out.write(bytes);
+    }
+
+    /**
+     * Signs transcript as a client of a given role.
+     * @param role role of the signing client
+     * @param key private key of the signing client
+     * @return signature
+     * @throws InvalidKeyException problem with key
+     * @throws SignatureException problem with signing
+     */
+    byte[] sign(String role, PrivateKey key) throws InvalidKeyException, SignatureException {
+        return EncryptionManager.sign(transcript(role), key);
+    }
+
+    /**
+     * Verifies signature of the transcript made by a client of a given role.
+     * @param role role of the signing client
+     * @param signature received signature
+     * @param key public key of the signing client
+     * @return true if signature is valid
+     * @throws InvalidKeyException problem with key
+     */
+    boolean verify(String role, byte[] signature, PublicKey key) throws InvalidKeyException {
+        return EncryptionManager.verify(transcript(role), signature, key);
+    }
+
+    /**
+     * Derives the session key from own ephemeral key and the ephemeral key of the other client.
+     * Own ephemeral key is forgotten afterwards.
+     * @param otherKey ephemeral public key of the other client
+     * @return session key of the transformation proposed in the hello
+     * @throws InvalidKeyException invalid ephemeral key of the other client
+     */
+    Key deriveSessionKey(PublicKey otherKey) throws InvalidKeyException {
+        byte[] secret = EncryptionManager.agree(ephemeralKey, otherKey);
+        ephemeralKey = null;
+        return EncryptionManager.deriveKey(secret, hello.getTransformation(), transcript(SESSION));
+    }
+
+    Handshake(HandshakeInfo hello, boolean compact) {
+        this.hello = hello;
+        this.compact = compact;
+    }
+}
@@ -0,0 +1,137 @@
+package pl.edu.pg.eti.ksr.project.communication;
+
+import pl.edu.pg.eti.ksr.project.network.LinkEstimator;
+import pl.edu.pg.eti.ksr.project.network.data.Frame;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Periodically pings the other client and measures round trip time from its pong replies.
+ *
+ * Every ping carries the time it was sent, echoed back by the pong, so measured time covers the whole path
+ * including queuing on both sides. Measurements feed the estimator of the link, which tunes socket buffers.
+ * Connection is closed when too many pings in a row stay unanswered, so a half-open connection is detected
+ * without waiting for the system to notice it.
+ *
+ * Interval and number of allowed misses are read from system properties "bsk.heartbeat.interval"
+ * as a number of milliseconds and "bsk.heartbeat.misses" (e.g. -Dbsk.heartbeat.interval=1000).
+ */
+class Heartbeat implements Runnable {
+
+    /**
+     * Name of the system property used for setting interval between pings.
+     */
+    public static final String INTERVAL_PROPERTY = "bsk.heartbeat.interval";
+
+    /**
+     * Name of the system property used for setting number of allowed misses.
+     */
+    public static final String MISSES_PROPERTY = "bsk.heartbeat.misses";
+
+    /**
+     * Default interval between pings in milliseconds.
+     */
+    public static final long DEFAULT_INTERVAL = 5000;
+
+    /**
+     * Default number of pings in a row which may stay unanswered before the other client is declared dead.
+     */
+    public static final int DEFAULT_MISSES = 3;
+
+    /**
+     * Reference to the communicator object.
+     */
+    private final EncryptedTcpCommunicator communicator;
+
+    /**
+     * Running flag used for stopping the thread, every connection gets a new heartbeat.
+     */
+    private final AtomicBoolean running;
+
+    /**
+     * Interval between pings in milliseconds.
+     */
+    private final long interval;
+
+    /**
+     * Number of pings in a row which may stay unanswered.
+     */
+    private final int allowedMisses;
+
+    /**
+     * Number of pings sent since the latest pong.
+     */
+    private final AtomicInteger misses;
+
+    /**
+     * Reads positive number from a system property.
+     * @param property name of the property
+     * @param defaultValue value used if property is not set or not a positive number
+     * @return parsed number
+     */
+    static long readProperty(String property, long defaultValue) {
+        String text = System.getProperty(property);
+        if (text == null) return defaultValue;
+        try {
+            long value = Long.parseLong(text.trim());
+            return value > 0 ? value : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Handles pong received from the other client.
+     * @param sent time of sending the answered ping in nanoseconds
+     */
+    void pong(long sent) {
+        long rtt = System.nanoTime() - sent;
+        // time comes back from the other client, so only plausible values are used
+        if (rtt <= 0 || rtt > 2 * interval * (allowedMisses + 1) * 1_000_000L) return;
+
+        misses.set(0);
+        communicator.latestRtt = rtt;
+        LinkEstimator link = communicator.tcpManager.getLink();
+        if (link != null) link.recordRtt(rtt);
+    }
+
+    /**
+     * Stops sending pings.
+     */
+    void stop() {
+        running.set(false);
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running.get()) {
+                Thread.sleep(interval);
+                if (!running.get()) return;
+
+                if (misses.getAndIncrement() >= allowedMisses) {
+                    communicator.tcpManager.disconnect();
+                    return;
+                }
+                communicator.tcpManager.send(new Frame(Frame.Type.PING, System.nanoTime()));
+            }
+        } catch (InterruptedException e) {
+            // stopped together with the connection
+        }
+    }
+
+    /**
+     * Creates heartbeat.
+     * @param communicator reference to the communicator object
+     * @param interval interval between pings in milliseconds
+     * @param allowedMisses number of pings in a row which may stay unanswered
+     */
+    Heartbeat(EncryptedTcpCommunicator communicator, long interval, int allowedMisses) {
+        this.communicator = communicator;
+        this.running = new AtomicBoolean(true);
+        this.interval = interval;
+        this.allowedMisses = allowedMisses;
+        this.misses = new AtomicInteger(0);
+    }
+}
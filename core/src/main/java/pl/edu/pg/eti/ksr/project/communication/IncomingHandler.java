@@ -0,0 +1,942 @@
+package pl.edu.pg.eti.ksr.project.communication;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import pl.edu.pg.eti.ksr.project.communication.data.CommunicationData;
+import pl.edu.pg.eti.ksr.project.communication.data.FileData;
+import pl.edu.pg.eti.ksr.project.communication.data.Message;
+import pl.edu.pg.eti.ksr.project.communication.data.SessionData;
+import pl.edu.pg.eti.ksr.project.concurrent.ExecutionMode;
+import pl.edu.pg.eti.ksr.project.network.data.CommunicationInfo;
+import pl.edu.pg.eti.ksr.project.crypto.EncryptionManager;
+import pl.edu.pg.eti.ksr.project.crypto.Transformation;
+import pl.edu.pg.eti.ksr.project.network.NetworkManager;
+import pl.edu.pg.eti.ksr.project.network.data.FileInfo;
+import pl.edu.pg.eti.ksr.project.network.data.Frame;
+import pl.edu.pg.eti.ksr.project.network.data.HandshakeInfo;
+import pl.edu.pg.eti.ksr.project.network.data.ResumeInfo;
+import pl.edu.pg.eti.ksr.project.network.data.SessionInfo;
+import pl.edu.pg.eti.ksr.project.network.data.StripeInfo;
+import pl.edu.pg.eti.ksr.project.network.data.TicketInfo;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.IvParameterSpec;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.nio.file.Path;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.SignatureException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Receives and handles incoming messages depending on frame type.
+ *
+ * Frames are received on the thread running the handler and handled on a separate thread, in the order
+ * they were received. Heartbeat frames are handled by the receiving thread right away, so round trip time
+ * is measured without waiting for other frames to be handled.
+ */
+@Setter
+@Getter
+@NoArgsConstructor
+public class IncomingHandler implements Runnable {
+
+    /**
+     * Time in milliseconds to wait for the transfer init of data received over the datagram channel.
+     */
+    private static final long TRANSFER_INIT_TIMEOUT = 5000;
+
+    /**
+     * Time in milliseconds to wait before receiving again while the manager is not connected.
+     */
+    private static final long DISCONNECTED_WAIT = 10;
+
+    /**
+     * Maximal number of received frames waiting to be handled.
+     */
+    static final int BACKLOG = 1024;
+
+    /**
+     * Reference to communicator object.
+     */
+    private EncryptedTcpCommunicator communicator;
+
+    /**
+     * Running flag used for stopping the thread.
+     */
+    private AtomicBoolean running;
+
+    /**
+     * Manager frames are received from, null for the tcp manager of the communicator.
+     */
+    private NetworkManager source;
+
+    /**
+     * Username received from other client.
+     */
+    private String otherUsername = "";
+
+    /**
+     * Public key received from other client.
+     */
+    private PublicKey otherPublicKey = null;
+
+    /**
+     * Challenge string used in communication initialization.
+     */
+    private String challenge = "";
+
+    /**
+     * Signed handshake answered by this client, waiting for the finish of the other client.
+     */
+    private Handshake handshake = null;
+
+    /**
+     * Communication initialization procedure.
+     *
+     * Client 1                 Client 2
+     * =====================================
+     * num = 0
+     * username     ------->
+     * public key
+     *                          num = 1
+     *                          username
+     *  ENCRYPT     <-------    public key
+     *                          challenge
+     * num = 2
+     * username
+     * public key
+     * challenge    ------->     CHECK
+     *    response               ENCRYPT
+     * challenge
+     *                          num = 3
+     *                          username
+     *  CHECK       <-------    public key
+     *  DONE                    challenge
+     *                             response
+     * num = 3
+     * username     ------->     DONE
+     * public key
+     * =====================================
+     *
+     * @param frame incoming frame with communication info
+     * @throws NoSuchPaddingException problem with padding
+     * @throws NoSuchAlgorithmException problem with provided transformation
+     * @throws IllegalBlockSizeException problem with block sizes
+     * @throws BadPaddingException problem with padding
+     * @throws InvalidKeyException problem with key
+     * @throws InterruptedException blocking method was interrupted
+     */
+    private void communicationInit(Frame frame) throws NoSuchPaddingException, NoSuchAlgorithmException,
+            IllegalBlockSizeException, BadPaddingException, InvalidKeyException, InterruptedException {
+
+        CommunicationInfo info = (CommunicationInfo) frame.data;
+        communicator.handshakeStarted();
+
+        if (info.getNum() == 0) {
+
+            otherUsername = info.getUsername();
+            otherPublicKey = info.getUserPublicKey();
+            communicator.encryptionManager.setTransformation(
+                    communicator.getAsymmetricTransformation().getText());
+            challenge = EncryptedTcpCommunicator.generateChallenge();
+
+            info.setUsername(communicator.username);
+            info.setUserPublicKey(communicator.userPublicKey);
+            info.setChallenge(challenge);
+
+            info.setNum(info.getNum() + 1);
+
+            frame.data = info;
+            communicator.tcpManager.send(frame);
+
+        } else if (info.getNum() == 1) {
+
+            otherUsername = info.getUsername();
+            otherPublicKey = info.getUserPublicKey();
+            communicator.encryptionManager.setTransformation(
+                    communicator.getAsymmetricTransformation().getText());
+            challenge = EncryptedTcpCommunicator.generateChallenge();
+
+            info.setUsername(communicator.username);
+            info.setUserPublicKey(communicator.userPublicKey);
+            info.setChallengeResponse(communicator.encryptionManager
+                    .encrypt(info.getChallenge(), communicator.userPrivateKey));
+            info.setChallenge(challenge);
+
+            info.setNum(info.getNum() + 1);
+
+            frame.data = info;
+            communicator.tcpManager.send(frame);
+
+        } else if (info.getNum() == 2) {
+
+            if (!Objects.equals(info.getUsername(), otherUsername) ||
+                    !Objects.equals(info.getUserPublicKey(), otherPublicKey) ||
+                    !Objects.equals(communicator.encryptionManager
+                            .decrypt(info.getChallengeResponse(), otherPublicKey), challenge)) {
+
+                otherUsername = "";
+                otherPublicKey = null;
+                challenge = "";
+                return;
+            }
+
+            info.setUsername(communicator.username);
+            info.setUserPublicKey(communicator.userPublicKey);
+            info.setChallengeResponse(communicator.encryptionManager
+                    .encrypt(info.getChallenge(), communicator.userPrivateKey));
+
+            info.setNum(info.getNum() + 1);
+
+            frame.data = info;
+            communicator.tcpManager.send(frame);
+
+        } else if (info.getNum() == 3) {
+
+            if (Objects.equals(info.getUsername(), otherUsername) &&
+                    Objects.equals(info.getUserPublicKey(), otherPublicKey) &&
+                    Objects.equals(communicator.encryptionManager
+                            .decrypt(info.getChallengeResponse(), otherPublicKey), challenge)) {
+
+                info.setUsername(communicator.username);
+                info.setUserPublicKey(communicator.userPublicKey);
+                info.setNum(info.getNum() + 1);
+
+                frame.data = info;
+                communicator.tcpManager.send(frame);
+            }
+
+            // the starting side of the handshake is done and confirmed
+            communicator.otherUsername = otherUsername;
+            communicator.otherUserPublicKey = otherPublicKey;
+            communicator.communicationEstablished = true;
+            communicator.rememberPeer();
+            communicator.newMessage(Message.Type.COMMUNICATION,
+                    new CommunicationData(otherUsername));
+
+            otherUsername = "";
+            otherPublicKey = null;
+            challenge = "";
+
+        } else if (info.getNum() == 4) {
+
+            if (Objects.equals(info.getUsername(), otherUsername) &&
+                    Objects.equals(info.getUserPublicKey(), otherPublicKey)) {
+
+                // the receiving side of the handshake is done and confirmed
+                communicator.otherUsername = otherUsername;
+                communicator.otherUserPublicKey = otherPublicKey;
+                communicator.communicationEstablished = true;
+                communicator.rememberPeer();
+                communicator.newMessage(Message.Type.COMMUNICATION,
+                        new CommunicationData(otherUsername));
+            }
+
+            otherUsername = "";
+            otherPublicKey = null;
+            challenge = "";
+        }
+    }
+
+    /**
+     * Signed handshake procedure, see Handshake.
+     * Frames not matching the current state of the handshake or carrying invalid signatures are ignored.
+     * @param frame incoming frame with handshake info
+     * @throws InvalidKeyException problem with key
+     * @throws SignatureException problem with signing
+     * @throws InterruptedException blocking method was interrupted
+     */
+    private void handshake(Frame frame) throws InvalidKeyException, SignatureException, InterruptedException {
+
+        if (!(frame.data instanceof HandshakeInfo info)) return;
+        communicator.handshakeStarted();
+
+        if (info.getNum() == 0) {
+
+            if (communicator.cyphering || info.getNonce() == null || info.getTransformation() == null ||
+                    info.getEphemeralKey() == null) return;
+
+            if (info.getUserPublicKey() == null) {
+                PublicKey known = communicator.knownPeers.find(info.getUsername(), info.getKeyFingerprint());
+                if (known == null) {
+                    // key is not known, the other client has to send it
+                    communicator.tcpManager.send(new Frame(Frame.Type.HANDSHAKE, HandshakeInfo.builder()
+                            .num(1)
+                            .username(communicator.username)
+                            .build()));
+                    return;
+                }
+                info.setUserPublicKey(known);
+            }
+
+            KeyPair ephemeral = EncryptionManager.generateEphemeralKeyPair();
+            IvParameterSpec sessionIV = EncryptionManager.generateIv(info.getTransformation().getBlockSize());
+
+            HandshakeInfo reply = HandshakeInfo.builder()
+                    .num(1)
+                    .username(communicator.username)
+                    .userPublicKey(communicator.userPublicKey)
+                    .keyFingerprint(KnownPeers.fingerprint(communicator.userPublicKey))
+                    .nonce(SessionTicket.nonce())
+                    .ephemeralKey(ephemeral.getPublic())
+                    .iv(sessionIV.getIV())
+                    .build();
+
+            handshake = new Handshake(info, false);
+            handshake.setReply(reply);
+            handshake.setEphemeralKey(ephemeral.getPrivate());
+            handshake.setSessionKey(handshake.deriveSessionKey(info.getEphemeralKey()));
+            handshake.setSessionIV(sessionIV);
+            reply.setSignature(handshake.sign(Handshake.RESPONDER, communicator.userPrivateKey));
+
+            boolean omitKey = Arrays.equals(info.getPeerFingerprint(), reply.getKeyFingerprint());
+            HandshakeInfo sent = omitKey ? reply.toBuilder().userPublicKey(null).build() : reply;
+            communicator.tcpManager.send(new Frame(Frame.Type.HANDSHAKE, sent));
+
+        } else if (info.getNum() == 1) {
+
+            Handshake own = communicator.pendingHandshake;
+            if (own == null) return;
+
+            if (info.getEphemeralKey() == null) {
+                // own key was left out but the other client does not know it
+                if (own.isCompact()) communicator.startHandshake(false);
+                return;
+            }
+            if (info.getUserPublicKey() == null) {
+                info.setUserPublicKey(communicator.knownPeers.find(info.getUsername(),
+                        own.getHello().getPeerFingerprint()));
+            }
+            if (info.getUserPublicKey() == null || info.getIv() == null) return;
+
+            own.setReply(info);
+            if (!own.verify(Handshake.RESPONDER, info.getSignature(), info.getUserPublicKey())) return;
+            communicator.pendingHandshake = null;
+
+            Transformation transformation = own.getHello().getTransformation();
+            Key sessionKey = own.deriveSessionKey(info.getEphemeralKey());
+
+            HandshakeInfo finish = HandshakeInfo.builder()
+                    .num(2)
+                    .signature(own.sign(Handshake.INITIATOR, communicator.userPrivateKey))
+                    .build();
+            communicator.tcpManager.send(new Frame(Frame.Type.HANDSHAKE, finish));
+
+            // the starting side of the handshake is done and confirmed
+            communicator.establish(info.getUsername(), info.getUserPublicKey(), transformation, sessionKey,
+                    new IvParameterSpec(info.getIv()));
+
+        } else if (info.getNum() == 2) {
+
+            Handshake answered = handshake;
+            handshake = null;
+            if (answered == null) return;
+
+            HandshakeInfo hello = answered.getHello();
+            if (!answered.verify(Handshake.INITIATOR, info.getSignature(), hello.getUserPublicKey())) return;
+
+            // the receiving side of the handshake is done and confirmed
+            communicator.establish(hello.getUsername(), hello.getUserPublicKey(), hello.getTransformation(),
+                    answered.getSessionKey(), answered.getSessionIV());
+        }
+    }
+
+    /**
+     * Stops current communication.
+     * @throws InterruptedException blocking method was interrupted
+     */
+    private void communicationStop() throws InterruptedException {
+        communicator.dropTicket();
+        communicator.newMessage(Message.Type.COMMUNICATION_STOP, null);
+        communicator.communicationEstablished = false;
+        communicator.sessionEstablished = false;
+        communicator.stopCyphering();
+    }
+
+    /**
+     * Initiates session by implementing received transformation settings.
+     * @param frame incoming frame with session info
+     * @throws NoSuchPaddingException problem with padding
+     * @throws NoSuchAlgorithmException problem with provided transformation
+     * @throws IllegalBlockSizeException problem with block sizes
+     * @throws BadPaddingException problem with padding
+     * @throws InvalidKeyException problem with key
+     * @throws InterruptedException blocking method was interrupted
+     */
+    private void sessionInit(Frame frame) throws NoSuchPaddingException, NoSuchAlgorithmException,
+            IllegalBlockSizeException, BadPaddingException, InvalidKeyException, InterruptedException {
+
+        SessionInfo info = (SessionInfo) frame.data;
+
+        communicator.encryptionManager.setTransformation(
+                communicator.asymmetricTransformation.getText());
+
+        communicator.sessionKey = communicator.encryptionManager.decrypt(info.getEncryptedSessionKey(),
+                communicator.userPrivateKey, info.getTransformation().getAlgorithm());
+        communicator.symmetricTransformation = info.getTransformation();
+        communicator.sessionIV = new IvParameterSpec(info.getIv());
+        communicator.sessionEstablished = true;
+        communicator.handshakeFinished();
+        communicator.issueTicket();
+
+        communicator.newMessage(Message.Type.SESSION, new SessionData(info.getTransformation()));
+        communicator.resumeTransfers();
+    }
+
+    /**
+     * Session resumption procedure, replacing both handshakes after reconnection.
+     *
+     * Client 1                 Client 2
+     * =====================================
+     * num = 0
+     * ticket id    ------->
+     * nonce 1                   CHECK
+     * mac 1                     num = 1
+     *                           ticket id
+     *  CHECK       <-------    nonce 2
+     *  DONE                     mac 2
+     *                           DONE
+     * =====================================
+     *
+     * Client 2 rejects unknown or expired ticket by a reply without nonce,
+     * client 1 starts the full handshake requested before then.
+     * @param frame incoming frame with ticket info
+     * @throws InvalidKeyException problem with key
+     * @throws InterruptedException blocking method was interrupted
+     */
+    private void sessionResume(Frame frame) throws InvalidKeyException, InterruptedException {
+        if (!(frame.data instanceof TicketInfo info)) return;
+        communicator.handshakeStarted();
+
+        if (info.getNum() == 0) {
+
+            SessionTicket ticket = communicator.cyphering ? null : communicator.findTicket(info.getTicketId());
+            // ticket id travels in clear, a request with a bogus proof must not use up the ticket
+            if (ticket == null || info.getNonce() == null || !ticket.verify(info.getMac(), "client", info.getNonce())
+                    || !communicator.takeTicket(ticket)) {
+                communicator.tcpManager.send(new Frame(Frame.Type.SESSION_RESUME,
+                        new TicketInfo(1, info.getTicketId(), null, null)));
+                return;
+            }
+
+            byte[] nonce = SessionTicket.nonce();
+            communicator.tcpManager.send(new Frame(Frame.Type.SESSION_RESUME,
+                    new TicketInfo(1, ticket.getId(), nonce, ticket.mac("server", info.getNonce(), nonce))));
+            communicator.resumeSession(ticket, info.getNonce(), nonce);
+
+        } else if (info.getNum() == 1) {
+
+            SessionTicket ticket = communicator.pendingTicket;
+            byte[] ownNonce = communicator.pendingNonce;
+            if (ticket == null || !Arrays.equals(ticket.getId(), info.getTicketId())) return;
+            communicator.pendingTicket = null;
+            communicator.pendingNonce = null;
+
+            if (info.getNonce() == null || !ticket.verify(info.getMac(), "server", ownNonce, info.getNonce())) {
+                communicator.startHandshake();
+                return;
+            }
+            communicator.resumeSession(ticket, ownNonce, info.getNonce());
+        }
+    }
+
+    /**
+     * Receives incoming text message.
+     * @param frame incoming frame with cyphered text.
+     * @throws NoSuchPaddingException problem with padding
+     * @throws NoSuchAlgorithmException problem with provided transformation
+     * @throws InvalidAlgorithmParameterException problem with IV
+     * @throws IllegalBlockSizeException problem with block sizes
+     * @throws BadPaddingException problem with padding
+     * @throws InvalidKeyException problem with key
+     * @throws InterruptedException blocking method was interrupted
+     */
+    private void incomingMessage(Frame frame) throws NoSuchPaddingException, NoSuchAlgorithmException,
+            InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException, InvalidKeyException,
+            InterruptedException {
+
+        if (!Objects.equals(communicator.encryptionManager.getTransformation(),
+                communicator.symmetricTransformation.getText())) {
+
+            communicator.encryptionManager.setTransformation(
+                    communicator.symmetricTransformation.getText());
+        }
+
+        byte[] encMessage = (byte[]) frame.data;
+        String message;
+
+        if (Objects.equals(communicator.symmetricTransformation.getMode(), "CBC")) {
+            message = communicator.encryptionManager.decrypt(
+                    encMessage, communicator.sessionKey, communicator.sessionIV);
+        } else {
+            message = communicator.encryptionManager.decrypt(encMessage, communicator.sessionKey);
+        }
+
+        communicator.newMessage(Message.Type.MESSAGE, message);
+    }
+
+    /**
+     * Checks if a given path is already taken by an existing file or by a file being received.
+     * @param filePath path to be checked
+     * @return true if path is taken
+     */
+    private boolean isTaken(String filePath) {
+        if (new File(filePath).exists()) return true;
+        for (Transfer transfer : communicator.incomingTransfers.values()) {
+            if (Objects.equals(transfer.getFileData().getFilePath(), filePath)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Receives info about incoming transfer.
+     * File decryption thread will be started and provided with the queue of the new transfer.
+     * Many transfers may be received at the same time, each one identified by the id of its stream.
+     *
+     * If file of a given name already exists in a given directory, "_X" will be added
+     * to the end of the file name, where X is the first not taken number.
+     *
+     * Transfer resuming a suspended one is appended to the already saved part of its file.
+     * Data starting from a non zero offset of an unknown transfer is ignored.
+     * @param frame incoming frame with transfer init info
+     * @throws NoSuchPaddingException problem with padding
+     * @throws NoSuchAlgorithmException problem with provided transformation
+     * @throws InvalidAlgorithmParameterException problem with IV
+     * @throws IllegalBlockSizeException problem with block sizes
+     * @throws BadPaddingException problem with padding
+     * @throws InvalidKeyException problem with key
+     * @throws InterruptedException blocking method was interrupted
+     */
+    private void transferInit(Frame frame) throws NoSuchPaddingException, NoSuchAlgorithmException,
+            InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException, InvalidKeyException,
+            InterruptedException {
+
+        FileInfo info = (FileInfo) frame.data;
+
+        if (!Objects.equals(communicator.encryptionManager.getTransformation(),
+                communicator.symmetricTransformation.getText())) {
+
+            communicator.encryptionManager.setTransformation(
+                    communicator.symmetricTransformation.getText());
+        }
+
+        String originalFileName;
+        long originalFileSize;
+        byte[] hash = null;
+
+        if (Objects.equals(communicator.symmetricTransformation.getMode(), "CBC")) {
+            originalFileName = communicator.encryptionManager.decrypt(info.getFileName(),
+                    communicator.sessionKey, communicator.sessionIV);
+            originalFileSize = Long.parseLong(communicator.encryptionManager.decrypt(info.getFileSize(),
+                    communicator.sessionKey, communicator.sessionIV));
+            if (info.getHash() != null) hash = Base64.getDecoder().decode(communicator.encryptionManager.decrypt(
+                    info.getHash(), communicator.sessionKey, communicator.sessionIV));
+        } else {
+            originalFileName = communicator.encryptionManager.decrypt(info.getFileName(),
+                    communicator.sessionKey);
+            originalFileSize = Long.parseLong(communicator.encryptionManager.decrypt(info.getFileSize(),
+                    communicator.sessionKey));
+            if (info.getHash() != null) hash = Base64.getDecoder().decode(communicator.encryptionManager.decrypt(
+                    info.getHash(), communicator.sessionKey));
+        }
+
+        if (info.getContentKey() != null && info.getContentTransformation() == null) {
+            rejectTransfer(frame.streamId);
+            return;
+        }
+
+        Transfer suspended = info.getResumeId() == null ? null :
+                communicator.suspendedTransfers.get(info.getResumeId());
+        if (suspended != null && (suspended.getDirection() != Transfer.Direction.INCOMING ||
+                !Objects.equals(suspended.peerKey, communicator.otherUserPublicKey))) {
+            suspended = null;
+        }
+        // hash is not known to the receiver before the first resume, sender verifies the file then
+        if (info.getOffset() != 0 && (suspended == null ||
+                suspended.hash != null && !Arrays.equals(suspended.hash, hash) ||
+                info.getOffset() > suspended.getSavedLength())) {
+            rejectTransfer(frame.streamId);
+            return;
+        }
+        if (suspended != null) communicator.suspendedTransfers.remove(info.getResumeId(), suspended);
+
+        String filePath;
+        String newFileName;
+
+        if (suspended != null) {
+            filePath = suspended.getFileData().getFilePath();
+            newFileName = suspended.getFileData().getFileName();
+        } else if (isTaken(communicator.savedFilesPath + originalFileName)) {
+            int i = 0;
+            String[] fileNameParts = originalFileName.split("\\.");
+            String name = fileNameParts[0];
+
+            do {
+                i++;
+                fileNameParts[0] = name + "_" + i;
+            } while (isTaken(communicator.savedFilesPath + String.join(".", fileNameParts)));
+
+            filePath = communicator.savedFilesPath + String.join(".", fileNameParts);
+            newFileName = String.join(".", fileNameParts);
+        } else {
+            filePath = communicator.savedFilesPath + originalFileName;
+            newFileName = originalFileName;
+        }
+
+        FileData fileData = new FileData(originalFileName, newFileName, filePath, frame.streamId);
+        communicator.latestFileData = fileData;
+
+        int transferId = frame.streamId;
+        Transfer transfer = new Transfer(transferId, Transfer.Direction.INCOMING, fileData,
+                new CreditingQueue(Transfer.WINDOW, Transfer.quota(communicator.budget, transferId),
+                        Transfer.CREDIT_BATCH, credits ->
+                        communicator.tcpManager.send(new Frame(Frame.Type.TRANSFER_CREDIT, credits, transferId))));
+        transfer.resumeId = info.getResumeId();
+        transfer.hash = hash;
+        if (hash != null) transfer.announcedHash.complete(hash);
+        transfer.offset = info.getOffset();
+        transfer.fileSize = originalFileSize;
+        transfer.stripeCount = info.getStripes();
+        communicator.cyphering = true;
+
+        EncryptionManager decryptor = communicator.encryptionManager;
+        Key key = communicator.sessionKey;
+        IvParameterSpec iv = Objects.equals(communicator.symmetricTransformation.getMode(), "CBC") ?
+                communicator.sessionIV : null;
+        if (info.getContentKey() != null) {
+            // file encrypted once for many clients, with its own key sent under the session key
+            decryptor = new EncryptionManager(info.getContentTransformation().getText());
+            key = communicator.unwrap(info.getContentKey(), info.getContentTransformation().getAlgorithm());
+            iv = info.getContentIv() == null ? null : new IvParameterSpec(info.getContentIv());
+        }
+        transfer.cypheringThread = decryptor.decrypt(transfer.queue, Path.of(filePath), key, iv, originalFileSize,
+                transfer.running, transfer::updateProgress, transfer.offset);
+        communicator.watchTransfer(transfer);
+        // published only when deciphering runs, as datagram handler may already wait for data of the transfer
+        communicator.announceTransfer(transfer);
+
+        if (info.getStripes() > 0) {
+            acceptStripes(transfer, info.getStripes());
+        }
+
+        communicator.newMessage(Message.Type.FILE, fileData);
+    }
+
+    /**
+     * Tells the sender that its transfer will not be received, so it stops sending instead of waiting for credits.
+     * @param transferId id of the rejected transfer
+     */
+    private void rejectTransfer(int transferId) {
+        communicator.closeStream(transferId);
+        communicator.tcpManager.send(new Frame(Frame.Type.TRANSFER_CANCEL, null, transferId));
+    }
+
+    /**
+     * Opens server for data connections of a striped transfer and announces it to the sender.
+     * If server cannot be opened, sender is told to send data over the control connection.
+     * @param transfer striped transfer
+     * @param stripes number of data connections requested by the sender
+     */
+    private void acceptStripes(Transfer transfer, int stripes) {
+        StripeReceiver receiver = new StripeReceiver(communicator, transfer, stripes);
+        StripeInfo stripeInfo;
+        try {
+            stripeInfo = receiver.open();
+        } catch (IOException e) {
+            e.printStackTrace();
+            communicator.tcpManager.send(new Frame(Frame.Type.TRANSFER_STRIPES,
+                    new StripeInfo(-1, null), transfer.getId()));
+            return;
+        }
+
+        ExecutionMode.start(receiver, "stripe-receiver");
+        communicator.tcpManager.send(new Frame(Frame.Type.TRANSFER_STRIPES, stripeInfo, transfer.getId()));
+    }
+
+    /**
+     * Receives data connections setup of own striped transfer from the receiver.
+     * @param frame incoming frame with stripe info
+     */
+    private void transferStripes(Frame frame) {
+        Transfer transfer = communicator.outgoingTransfers.get(frame.streamId);
+        if (transfer != null && frame.data instanceof StripeInfo info) {
+            transfer.stripes.complete(info);
+        }
+    }
+
+    /**
+     * Receives offset saved by the receiver of own transfer interrupted by connection loss and resumes the transfer.
+     * Only transfers suspended while connected to the same peer are resumed.
+     * @param frame incoming frame with resume info
+     */
+    private void transferResume(Frame frame) {
+        if (!(frame.data instanceof ResumeInfo info) || info.getResumeId() == null) return;
+
+        Transfer suspended = communicator.suspendedTransfers.get(info.getResumeId());
+        if (suspended == null || suspended.getDirection() != Transfer.Direction.OUTGOING) return;
+        if (!Objects.equals(suspended.peerKey, communicator.otherUserPublicKey)) return;
+
+        if (communicator.suspendedTransfers.remove(info.getResumeId(), suspended)) {
+            communicator.resume(suspended, info.getOffset());
+        }
+    }
+
+    /**
+     * Receives credits granted by the receiver of own transfer.
+     * @param frame incoming frame with number of granted credits
+     */
+    private void transferCredit(Frame frame) {
+        Transfer transfer = communicator.outgoingTransfers.get(frame.streamId);
+        if (transfer != null && frame.data instanceof Integer credits) {
+            transfer.grantCredits(credits);
+            communicator.recordDelivered(credits);
+        }
+    }
+
+    /**
+     * Stops own transfer rejected by the receiver.
+     * @param frame incoming frame with id of the rejected transfer
+     */
+    private void transferCancel(Frame frame) {
+        Transfer transfer = communicator.outgoingTransfers.get(frame.streamId);
+        if (transfer != null) communicator.stopTransfer(transfer);
+    }
+
+    /**
+     * Receives reply to own heartbeat ping.
+     * @param frame incoming frame with time of sending the ping
+     */
+    private void pong(Frame frame) {
+        Heartbeat heartbeat = communicator.heartbeat;
+        if (heartbeat != null && frame.data instanceof Long sent) {
+            heartbeat.pong(sent);
+        }
+    }
+
+    /**
+     * Receives encrypted file part and puts it in the queue of its transfer for deciphering.
+     * @param transfer transfer the frame belongs to
+     * @param frame incoming frame with encrypted file data
+     * @throws InterruptedException blocking method was interrupted
+     */
+    private void transferData(Transfer transfer, Frame frame) throws InterruptedException {
+        byte[] data = (byte[]) frame.data;
+        transfer.queue.put(data);
+
+        if (data.length == 0) {
+            // hash of the file may arrive after the data, so it is not waited for by this thread
+            ExecutionMode.start(() -> {
+                try {
+                    communicator.finish(transfer);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }, "transfer-verifier");
+        }
+    }
+
+    /**
+     * Receives hash of the file of incoming transfer, sent by the sender once computed.
+     * @param frame incoming frame with the hash encrypted with the session key
+     * @throws InvalidAlgorithmParameterException wrong algorithm parameters
+     * @throws InvalidKeyException problem with key
+     * @throws IllegalBlockSizeException problem with block size
+     * @throws BadPaddingException problem with padding
+     */
+    private void transferHash(Frame frame) throws InvalidAlgorithmParameterException, InvalidKeyException,
+            IllegalBlockSizeException, BadPaddingException {
+        Transfer transfer = communicator.incomingTransfers.get(frame.streamId);
+        if (transfer == null || !(frame.data instanceof byte[] encrypted)) return;
+
+        String hash = Objects.equals(communicator.symmetricTransformation.getMode(), "CBC") ?
+                communicator.encryptionManager.decrypt(encrypted, communicator.sessionKey, communicator.sessionIV) :
+                communicator.encryptionManager.decrypt(encrypted, communicator.sessionKey);
+        if (transfer.hash == null) transfer.hash = Base64.getDecoder().decode(hash);
+        transfer.announcedHash.complete(transfer.hash);
+    }
+
+    /**
+     * Waits for the transfer init of a transfer which data arrived first.
+     * Data of rejected, stopped or finished transfers is not waited for.
+     * @param streamId id of the transfer
+     * @return transfer or null if the stream is closed or its init did not arrive in time
+     * @throws InterruptedException blocking method was interrupted
+     */
+    private Transfer awaitTransfer(int streamId) throws InterruptedException {
+        if (communicator.closedStreams.contains(streamId)) return null;
+
+        CompletableFuture<Transfer> announcement = communicator.announcement(streamId);
+        try {
+            return announcement.get(TRANSFER_INIT_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // init is lost, further data of the stream is dropped without waiting
+            communicator.closeStream(streamId);
+            return null;
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            communicator.announcements.remove(streamId, announcement);
+        }
+    }
+
+    @Override
+    public void run() {
+        BlockingQueue<Frame> received = new ArrayBlockingQueue<>(BACKLOG);
+        Thread handler = ExecutionMode.start(() -> handle(received), "frame-handler");
+        try {
+            receive(received);
+        } finally {
+            handler.interrupt();
+        }
+    }
+
+    /**
+     * Receives frames, answering heartbeat frames at once and passing all other frames to the handling thread.
+     * Never waits for a frame to be handled, so pings are answered while handling blocks, e.g. waiting for
+     * the memory budget or the decryptor of a transfer. Waits only when BACKLOG frames are not handled yet.
+     * @param received queue of frames taken by the handling thread
+     */
+    private void receive(BlockingQueue<Frame> received) {
+        while (running.get()) {
+            Frame frame = new Frame();
+
+            try {
+                NetworkManager manager = source != null ? source : communicator.tcpManager;
+                if (!manager.receive(frame)) {
+                    // handler is stopped shortly after disconnecting, receive() would return at once until then
+                    if (!manager.isConnected()) Thread.sleep(DISCONNECTED_WAIT);
+                    continue;
+                }
+
+                switch (frame.frameType) {
+                    case PING -> communicator.tcpManager.send(new Frame(Frame.Type.PONG, frame.data));
+                    case PONG -> pong(frame);
+                    default -> received.put(frame);
+                }
+            } catch (InterruptedIOException e) {
+                e.printStackTrace();
+            } catch (SocketException | InterruptedException e) {
+                e.printStackTrace();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Handles frames passed by the receiving thread in the order they were received.
+     * @param received queue of received frames
+     */
+    private void handle(BlockingQueue<Frame> received) {
+        while (running.get()) {
+            Frame frame;
+            try {
+                frame = received.take();
+            } catch (InterruptedException e) {
+                // stopped together with the receiving thread
+                return;
+            }
+
+            try {
+                switch (frame.frameType) {
+
+                    case COMMUNICATION_INIT -> communicationInit(frame);
+
+                    case COMMUNICATION_STOP -> communicationStop();
+
+                    case SESSION_INIT -> {
+                        if (!communicator.communicationEstablished) continue;
+                        if (communicator.cyphering) continue;
+                        sessionInit(frame);
+                    }
+
+                    case MESSAGE -> {
+                        if (!communicator.sessionEstablished) continue;
+                        incomingMessage(frame);
+                    }
+
+                    case TRANSFER_INIT -> {
+                        if (!communicator.sessionEstablished) continue;
+                        if (communicator.incomingTransfers.containsKey(frame.streamId)) continue;
+                        transferInit(frame);
+                    }
+
+                    case TRANSFER_DATA -> {
+                        Transfer transfer = communicator.incomingTransfers.get(frame.streamId);
+                        // datagrams may overtake transfer init sent over tcp
+                        if (transfer == null && source != null) transfer = awaitTransfer(frame.streamId);
+                        if (transfer == null) continue;
+                        transferData(transfer, frame);
+                    }
+
+                    case TRANSFER_STRIPES -> transferStripes(frame);
+
+                    case TRANSFER_CREDIT -> transferCredit(frame);
+
+                    case TRANSFER_CANCEL -> transferCancel(frame);
+
+                    case TRANSFER_HASH -> {
+                        if (!communicator.sessionEstablished) continue;
+                        transferHash(frame);
+                    }
+
+                    case TRANSFER_RESUME -> {
+                        if (!communicator.sessionEstablished) continue;
+                        transferResume(frame);
+                    }
+
+                    case SESSION_RESUME -> sessionResume(frame);
+
+                    case HANDSHAKE -> handshake(frame);
+
+                    case DATAGRAM_INIT -> {
+                        if (frame.data instanceof StripeInfo info) communicator.datagramOffered(info);
+                    }
+
+                    default -> { }
+                }
+            } catch (NoSuchPaddingException | NoSuchAlgorithmException | IllegalBlockSizeException |
+                    BadPaddingException | InvalidKeyException | InvalidAlgorithmParameterException |
+                    SignatureException e) {
+
+                e.printStackTrace();
+                otherUsername = "";
+                otherPublicKey = null;
+                challenge = "";
+                handshake = null;
+            } catch (InterruptedException e) {
+                // stopped together with the receiving thread
+                return;
+            }
+        }
+    }
+
+    public IncomingHandler(EncryptedTcpCommunicator communicator, AtomicBoolean running) {
+        this(communicator, running, null);
+    }
+
+    public IncomingHandler(EncryptedTcpCommunicator communicator, AtomicBoolean running, NetworkManager source) {
+        this.communicator = communicator;
+        this.running = running;
+        this.source = source;
+    }
+}
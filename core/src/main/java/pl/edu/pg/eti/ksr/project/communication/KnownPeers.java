@@ -0,0 +1,251 @@
+package pl.edu.pg.eti.ksr.project.communication;
+
+import lombok.Getter;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Store of public keys of clients seen before, letting the signed handshake send key fingerprints instead of keys.
+ *
+ * Keys are indexed by username and SHA-256 fingerprint of their encoding, so a user may have many known keys.
+ * The latest peer seen at every address is remembered as well, telling which key the other client is expected
+ * to have. Entries are appended to a text file, one tab separated line per entry: address, username, algorithm
+ * and encoded key.
+ * Decoded keys are kept in a small LRU cache, so repeated connections do not parse them again.
+ * Lookups never wait for the file, entries are appended holding a separate lock.
+ */
+public class KnownPeers {
+
+    /**
+     * Number of decoded keys kept in memory.
+     */
+    public static final int CACHE_SIZE = 64;
+
+    /**
+     * Known peer.
+     * @param host address the peer was seen at
+     * @param username username of the peer
+     * @param algorithm algorithm of the key
+     * @param encoded encoded public key of the peer
+     */
+    record Entry(String host, String username, String algorithm, byte[] encoded) { }
+
+    /**
+     * File storing the entries, null if entries are kept in memory only.
+     */
+    @Getter
+    private final Path path;
+
+    /**
+     * Known entries, by username and fingerprint.
+     */
+    private final Map<String, Entry> entries;
+
+    /**
+     * Latest entries, by addresses.
+     */
+    private final Map<String, Entry> hosts;
+
+    /**
+     * Decoded keys, by username and fingerprint, least recently used first.
+     */
+    private final LinkedHashMap<String, PublicKey> decoded;
+
+    /**
+     * Guards the maps.
+     */
+    private final ReentrantLock lock;
+
+    /**
+     * Keeps entries appended to the file in the order they were remembered in.
+     */
+    private final ReentrantLock fileLock;
+
+    /**
+     * Computes fingerprint of a public key.
+     * @param key public key
+     * @return SHA-256 hash of the key encoding
+     */
+    public static byte[] fingerprint(PublicKey key) {
+        return fingerprint(key.getEncoded());
+    }
+
+    private static byte[] fingerprint(byte[] encoded) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(encoded);
+        } catch (NoSuchAlgorithmException e) {
+            // every java platform supports SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String index(String username, byte[] fingerprint) {
+        return username + ":" + HexFormat.of().formatHex(fingerprint);
+    }
+
+    /**
+     * Remembers key of a peer seen at a given address.
+     * @param host address of the peer, may be null
+     * @param username username of the peer
+     * @param key public key of the peer
+     */
+    public void remember(String host, String username, PublicKey key) {
+        if (username == null || key == null) return;
+
+        String index = index(username, fingerprint(key));
+        Entry entry;
+        lock.lock();
+        try {
+            Entry known = entries.get(index);
+            decoded.put(index, key);
+            // nothing new is saved for a peer reconnecting from the same address
+            if (known != null && (host == null || hosts.get(host) == known)) return;
+
+            entry = new Entry(host, username, key.getAlgorithm(), key.getEncoded());
+            entries.put(index, entry);
+            if (host != null) hosts.put(host, entry);
+            // taken before the maps are released, so later entries are never written first
+            fileLock.lock();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            append(entry);
+        } finally {
+            fileLock.unlock();
+        }
+    }
+
+    /**
+     * Finds key of a peer by its username and fingerprint.
+     * @param username username of the peer
+     * @param fingerprint fingerprint of the key
+     * @return public key or null if it is not known
+     */
+    public PublicKey find(String username, byte[] fingerprint) {
+        if (username == null || fingerprint == null) return null;
+
+        String index = index(username, fingerprint);
+        lock.lock();
+        try {
+            PublicKey key = decoded.get(index);
+            if (key != null) return key;
+
+            Entry entry = entries.get(index);
+            if (entry == null) return null;
+            key = decode(entry);
+            if (key != null) decoded.put(index, key);
+            return key;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Finds fingerprint of the key of the latest peer seen at a given address.
+     * @param host address of the peer
+     * @return fingerprint or null if no peer was seen at the address
+     */
+    public byte[] fingerprintAt(String host) {
+        if (host == null) return null;
+        Entry entry;
+        lock.lock();
+        try {
+            entry = hosts.get(host);
+        } finally {
+            lock.unlock();
+        }
+        return entry == null ? null : fingerprint(entry.encoded());
+    }
+
+    /**
+     * Number of known keys.
+     * @return number of entries
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static PublicKey decode(Entry entry) {
+        try {
+            return KeyFactory.getInstance(entry.algorithm()).generatePublic(new X509EncodedKeySpec(entry.encoded()));
+        } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private void append(Entry entry) {
+        if (path == null) return;
+        try {
+            if (path.getParent() != null) Files.createDirectories(path.getParent());
+            try (BufferedWriter writer = Files.newBufferedWriter(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND)) {
+                writer.write((entry.host() == null ? "-" : entry.host()) + "\t" + entry.username() + "\t" +
+                        entry.algorithm() + "\t" + Base64.getEncoder().encodeToString(entry.encoded()));
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void load() {
+        if (path == null || !Files.exists(path)) return;
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t");
+                if (parts.length != 4) continue;
+                String host = parts[0].equals("-") ? null : parts[0];
+                Entry entry = new Entry(host, parts[1], parts[2], Base64.getDecoder().decode(parts[3]));
+                // later lines replace earlier ones
+                entries.put(index(entry.username(), fingerprint(entry.encoded())), entry);
+                if (host != null) hosts.put(host, entry);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Creates store of known peers and loads entries saved before.
+     * @param path file storing the entries, null for keeping entries in memory only
+     */
+    public KnownPeers(Path path) {
+        this.path = path;
+        this.entries = new HashMap<>();
+        this.hosts = new HashMap<>();
+        this.lock = new ReentrantLock();
+        this.fileLock = new ReentrantLock();
+        this.decoded = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PublicKey> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        };
+        load();
+    }
+}
@@ -0,0 +1,203 @@
+package pl.edu.pg.eti.ksr.project.communication;
+
+import lombok.Getter;
+import pl.edu.pg.eti.ksr.project.concurrent.ExecutionMode;
+import pl.edu.pg.eti.ksr.project.crypto.EncryptionManager;
+import pl.edu.pg.eti.ksr.project.crypto.Transformation;
+
+import javax.crypto.spec.IvParameterSpec;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Delivery of a single file to many clients, encrypting the file only once.
+ *
+ * File is encrypted by a single encryptor with a random content key, instead of once for every client with
+ * its session key. Content key is sent to every client with the transfer info, encrypted with the session key
+ * of that client, so the file can be read only by the clients of the multicast.
+ * Every encrypted part is handed to the transfers of all clients as the same array, and every transfer sends it
+ * with its own credits, bandwidth limits and connection. Cost of the encryption does not depend on the number
+ * of clients, only sending does.
+ *
+ * Parts are handed out in order, so the multicast goes at the pace of its slowest client, which may fall behind
+ * by the window of its transfer. Clients which transfers are stopped, e.g. after disconnecting, are dropped
+ * and the rest goes on. Transfers of a multicast are not resumed after reconnecting.
+ */
+public class Multicast implements Runnable {
+
+    /**
+     * Transformation the file is encrypted with, unless another one is chosen.
+     */
+    public static final Transformation DEFAULT_TRANSFORMATION = Transformation.AES_CBC_PKCS5Padding;
+
+    /**
+     * Time in milliseconds between checks of the running flags while waiting for data or space of a transfer.
+     */
+    private static final long POLL_TIMEOUT = 100;
+
+    /**
+     * Client receiving the file, with its transfer.
+     */
+    private record Member(EncryptedTcpCommunicator communicator, Transfer transfer) {
+    }
+
+    /**
+     * All clients the file is sent to.
+     */
+    private final List<Member> members;
+
+    /**
+     * Encrypted file parts, filled by the encryptor and handed out to the transfers.
+     */
+    private final BlockingQueue<byte[]> parts;
+
+    /**
+     * Flag used for stopping the encryptor and the distribution of parts.
+     */
+    private final AtomicBoolean running;
+
+    /**
+     * Reference to the encryptor thread.
+     */
+    private Thread encryptor;
+
+    /**
+     * Reference to the thread handing out encrypted parts, null if no client had session established.
+     */
+    @Getter
+    private Thread distributor;
+
+    /**
+     * Sends file to many clients, encrypted once with the default transformation.
+     * @param pathToFile file to be sent
+     * @param communicators communicators of the clients, the ones without established session are skipped
+     * @return started multicast
+     * @throws IOException provided incorrect file path
+     * @throws GeneralSecurityException problem with the content key or its encryption
+     */
+    public static Multicast send(Path pathToFile, Collection<EncryptedTcpCommunicator> communicators)
+            throws IOException, GeneralSecurityException {
+        return send(pathToFile, communicators, DEFAULT_TRANSFORMATION);
+    }
+
+    /**
+     * Sends file to many clients, encrypted once with a given symmetric transformation.
+     * @param pathToFile file to be sent
+     * @param communicators communicators of the clients, the ones without established session are skipped
+     * @param transformation symmetric transformation the file is encrypted with
+     * @return started multicast
+     * @throws IOException provided incorrect file path
+     * @throws GeneralSecurityException problem with the content key or its encryption
+     */
+    public static Multicast send(Path pathToFile, Collection<EncryptedTcpCommunicator> communicators,
+                                 Transformation transformation) throws IOException, GeneralSecurityException {
+        Key key = EncryptionManager.generateKey(transformation.getKeySize(), transformation.getAlgorithm());
+        IvParameterSpec iv = Objects.equals(transformation.getMode(), "CBC") ?
+                EncryptionManager.generateIv(transformation.getBlockSize()) : null;
+
+        Multicast multicast = new Multicast();
+        for (EncryptedTcpCommunicator communicator : communicators) {
+            Transfer transfer = communicator.send(pathToFile, key, iv, transformation);
+            if (transfer != null) multicast.members.add(new Member(communicator, transfer));
+        }
+        if (multicast.members.isEmpty()) return multicast;
+
+        multicast.encryptor = new EncryptionManager(transformation.getText()).encrypt(pathToFile, multicast.parts,
+                key, iv, Files.size(pathToFile), multicast.running, multicast::updateProgress);
+        multicast.distributor = ExecutionMode.start(multicast, "multicast");
+        return multicast;
+    }
+
+    /**
+     * Gets transfers of all clients the file is sent to.
+     * @return list of outgoing transfers, empty if no client had session established
+     */
+    public List<Transfer> getTransfers() {
+        return members.stream().map(Member::transfer).toList();
+    }
+
+    /**
+     * Publishes progress of the encryption as progress of all transfers.
+     * @param state fractional number between [0, 1]
+     */
+    private void updateProgress(Object state) {
+        for (Member member : members) {
+            member.transfer().updateProgress(state);
+        }
+    }
+
+    /**
+     * Stops transfers to all clients.
+     */
+    public void stop() {
+        running.set(false);
+        if (encryptor != null && encryptor.isAlive()) encryptor.interrupt();
+        for (Member member : members) {
+            member.communicator().stopTransfer(member.transfer());
+        }
+    }
+
+    @Override
+    public void run() {
+        List<Member> active = new ArrayList<>(members);
+        try {
+            while (running.get() && !active.isEmpty()) {
+                byte[] part = parts.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+                if (part == null) {
+                    // encryptor failed before the end of the file
+                    if (!encryptor.isAlive() && parts.isEmpty()) break;
+                    continue;
+                }
+
+                handOut(active, part);
+                if (part.length == 0) return;
+            }
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        } finally {
+            running.set(false);
+            if (encryptor.isAlive()) encryptor.interrupt();
+        }
+        // stopped before the end of the file, transfers still waiting for data would never get it
+        for (Member member : active) {
+            member.communicator().stopTransfer(member.transfer());
+        }
+    }
+
+    /**
+     * Hands encrypted part to all active transfers, dropping the ones which have been stopped.
+     * @param active members which transfers are running
+     * @param part encrypted file part, shared by all transfers
+     * @throws InterruptedException when interrupted while waiting for space of a transfer
+     */
+    private void handOut(List<Member> active, byte[] part) throws InterruptedException {
+        Iterator<Member> iterator = active.iterator();
+        while (iterator.hasNext()) {
+            Transfer transfer = iterator.next().transfer();
+            while (!transfer.queue.offer(part, POLL_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                if (!transfer.running.get()) {
+                    iterator.remove();
+                    break;
+                }
+            }
+        }
+    }
+
+    private Multicast() {
+        this.members = new ArrayList<>();
+        this.parts = new ArrayBlockingQueue<>(Transfer.WINDOW);
+        this.running = new AtomicBoolean(true);
+    }
+}
@@ -0,0 +1,119 @@
+package pl.edu.pg.eti.ksr.project.communication;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Restores order of encrypted file segments received over many striped data connections.
+ * Segments are passed to the target queue strictly by their offsets, segments arriving early are kept aside
+ * until all preceding data is available.
+ *
+ * A single thread at a time passes segments to the target queue, without holding the lock while the queue is full.
+ * Other threads adding segments meanwhile wait until it is done, so a slow decryptor still slows down all data
+ * connections, and can be interrupted while waiting.
+ */
+class SegmentReassembler {
+
+    /**
+     * Queue of the decryptor, receives file data in order.
+     */
+    private final BlockingQueue<byte[]> target;
+
+    /**
+     * Segments received ahead of the next expected offset.
+     */
+    private final Map<Long, byte[]> pending;
+
+    /**
+     * Offset of the next segment to be passed to the target queue.
+     */
+    private long nextOffset;
+
+    /**
+     * True if end of the file has been passed to the target queue.
+     */
+    private boolean finished;
+
+    /**
+     * True while a thread is passing segments to the target queue.
+     */
+    private boolean passing;
+
+    /**
+     * Guards state of the reassembler.
+     */
+    private final ReentrantLock lock;
+
+    /**
+     * Signalled when a thread is done passing segments.
+     */
+    private final Condition passed;
+
+    /**
+     * Adds received segment, passing it and all following buffered segments to the target queue if possible.
+     * Duplicated segments and segments received after the end of the file are dropped.
+     * @param offset offset of the segment in the encrypted data
+     * @param data encrypted data, empty array marks the end of the file
+     * @return true if end of the file has just been passed to the target queue
+     * @throws InterruptedException when interrupted while passing data
+     */
+    boolean add(long offset, byte[] data) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (passing) passed.await();
+            if (finished || offset < nextOffset) return false;
+            pending.put(offset, data);
+
+            passing = true;
+            try {
+                byte[] next;
+                while ((next = pending.remove(nextOffset)) != null) {
+                    lock.unlock();
+                    try {
+                        target.put(next);
+                    } finally {
+                        lock.lock();
+                    }
+                    if (next.length == 0) {
+                        finished = true;
+                        pending.clear();
+                        return true;
+                    }
+                    nextOffset += next.length;
+                }
+                return false;
+            } finally {
+                passing = false;
+                passed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets number of segments waiting for preceding data.
+     * @return number of buffered segments
+     */
+    int getPendingCount() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    SegmentReassembler(BlockingQueue<byte[]> target) {
+        this.target = target;
+        this.pending = new TreeMap<>();
+        this.nextOffset = 0;
+        this.finished = false;
+        this.passing = false;
+        this.lock = new ReentrantLock();
+        this.passed = this.lock.newCondition();
+    }
+}
@@ -0,0 +1,205 @@
+package pl.edu.pg.eti.ksr.project.communication;
+
+import lombok.Getter;
+import pl.edu.pg.eti.ksr.project.crypto.EncryptionManager;
+import pl.edu.pg.eti.ksr.project.crypto.Transformation;
+
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resumption secret cached after a session is established, letting the same clients establish communication
+ * and a new session after reconnection in a single round trip, using symmetric cryptography only.
+ *
+ * Both clients derive the ticket from the shared session key, so the secret itself is never sent,
+ * only the ticket id and proofs of knowing the secret are. Key and IV of the resumed session are derived
+ * from the secret and fresh nonces of both clients. Every ticket is used at most once,
+ * the resumed session gives the next one.
+ */
+@Getter
+class SessionTicket {
+
+    /**
+     * Time in nanoseconds for which the ticket can be used.
+     */
+    static final long LIFETIME = TimeUnit.MINUTES.toNanos(10);
+
+    /**
+     * Size of ticket ids and nonces in bytes.
+     */
+    static final int NONCE_SIZE = 16;
+
+    /**
+     * Identifier of the ticket, the same for both clients.
+     */
+    private final byte[] id;
+
+    /**
+     * Resumption secret shared by both clients.
+     */
+    private final byte[] secret;
+
+    /**
+     * Address of the other client.
+     */
+    private final String host;
+
+    /**
+     * Username of the other client.
+     */
+    private final String otherUsername;
+
+    /**
+     * Public key of the other client, confirmed by the handshake of the previous session.
+     */
+    private final PublicKey otherUserPublicKey;
+
+    /**
+     * Transformation of the previous session, used by the resumed one.
+     */
+    private final Transformation transformation;
+
+    /**
+     * Size of session keys of the transformation in bytes.
+     */
+    private final int keyLength;
+
+    /**
+     * Time in nanoseconds after which the ticket can no longer be used.
+     */
+    private final long expires;
+
+    /**
+     * Derives ticket from an established session.
+     * @param host address of the other client
+     * @param otherUsername username of the other client
+     * @param otherUserPublicKey public key of the other client
+     * @param transformation transformation of the session
+     * @param sessionKey session key
+     * @param sessionIV session IV
+     * @return new ticket
+     * @throws InvalidKeyException problem with key
+     */
+    static SessionTicket derive(String host, String otherUsername, PublicKey otherUserPublicKey,
+                                Transformation transformation, Key sessionKey, IvParameterSpec sessionIV)
+            throws InvalidKeyException {
+        byte[] secret = EncryptionManager.hmac(sessionKey.getEncoded(), label("resumption"),
+                sessionIV == null ? new byte[0] : sessionIV.getIV());
+        byte[] id = Arrays.copyOf(EncryptionManager.hmac(secret, label("ticket")), NONCE_SIZE);
+
+        return new SessionTicket(id, secret, host, otherUsername, otherUserPublicKey, transformation,
+                sessionKey.getEncoded().length, System.nanoTime() + LIFETIME);
+    }
+
+    /**
+     * Generates random nonce.
+     * @return new nonce
+     */
+    static byte[] nonce() {
+        byte[] nonce = new byte[NONCE_SIZE];
+        new SecureRandom().nextBytes(nonce);
+        return nonce;
+    }
+
+    /**
+     * Computes index of a ticket in the cache, so clients sharing an address keep separate tickets.
+     * @param host address of the other client
+     * @param fingerprint fingerprint of the public key of the other client
+     * @return index of the ticket
+     */
+    static String index(String host, byte[] fingerprint) {
+        return host + "/" + HexFormat.of().formatHex(fingerprint);
+    }
+
+    /**
+     * Computes index of the ticket in the cache.
+     * @return index of the ticket
+     */
+    String index() {
+        return index(host, KnownPeers.fingerprint(otherUserPublicKey));
+    }
+
+    private static byte[] label(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Checks if the ticket can still be used.
+     * @return true if lifetime of the ticket has passed
+     */
+    boolean isExpired() {
+        return System.nanoTime() - expires > 0;
+    }
+
+    /**
+     * Computes proof of knowing the secret.
+     * @param role role of the proving client, "client" or "server"
+     * @param nonces nonces sent so far
+     * @return proof
+     * @throws InvalidKeyException problem with key
+     */
+    byte[] mac(String role, byte[]... nonces) throws InvalidKeyException {
+        byte[][] parts = new byte[nonces.length + 2][];
+        parts[0] = label(role);
+        parts[1] = id;
+        System.arraycopy(nonces, 0, parts, 2, nonces.length);
+        return EncryptionManager.hmac(secret, parts);
+    }
+
+    /**
+     * Checks proof of knowing the secret in constant time.
+     * @param mac received proof
+     * @param role role of the proving client
+     * @param nonces nonces sent so far
+     * @return true if the proof is valid
+     * @throws InvalidKeyException problem with key
+     */
+    boolean verify(byte[] mac, String role, byte[]... nonces) throws InvalidKeyException {
+        return mac != null && MessageDigest.isEqual(mac, mac(role, nonces));
+    }
+
+    /**
+     * Derives session key of the resumed session.
+     * @param clientNonce nonce of the resuming client
+     * @param serverNonce nonce of the accepting client
+     * @return new session key
+     * @throws InvalidKeyException problem with key
+     */
+    Key sessionKey(byte[] clientNonce, byte[] serverNonce) throws InvalidKeyException {
+        byte[] key = EncryptionManager.hmac(secret, label("key"), clientNonce, serverNonce);
+        return new SecretKeySpec(Arrays.copyOf(key, keyLength), transformation.getAlgorithm());
+    }
+
+    /**
+     * Derives session IV of the resumed session.
+     * @param clientNonce nonce of the resuming client
+     * @param serverNonce nonce of the accepting client
+     * @return new session IV
+     * @throws InvalidKeyException problem with key
+     */
+    IvParameterSpec sessionIV(byte[] clientNonce, byte[] serverNonce) throws InvalidKeyException {
+        byte[] iv = EncryptionManager.hmac(secret, label("iv"), clientNonce, serverNonce);
+        return new IvParameterSpec(Arrays.copyOf(iv, transformation.getBlockSize()));
+    }
+
+    private SessionTicket(byte[] id, byte[] secret, String host, String otherUsername, PublicKey otherUserPublicKey,
+                          Transformation transformation, int keyLength, long expires) {
+        this.id = id;
+        this.secret = secret;
+        this.host = host;
+        this.otherUsername = otherUsername;
+        this.otherUserPublicKey = otherUserPublicKey;
+        this.transformation = transformation;
+        this.keyLength = keyLength;
+        this.expires = expires;
+    }
+}
@@ -0,0 +1,162 @@
+package pl.edu.pg.eti.ksr.project.communication;
+
+import pl.edu.pg.eti.ksr.project.concurrent.ExecutionMode;
+import pl.edu.pg.eti.ksr.project.network.FrameCodec;
+import pl.edu.pg.eti.ksr.project.network.LinkEstimator;
+import pl.edu.pg.eti.ksr.project.network.SocketProfile;
+import pl.edu.pg.eti.ksr.project.network.data.Frame;
+import pl.edu.pg.eti.ksr.project.network.data.SegmentInfo;
+import pl.edu.pg.eti.ksr.project.network.data.StripeInfo;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * Receiving side of a striped transfer.
+ *
+ * Accepts data connections opened by the sender for a single transfer, reads file segments from all of them
+ * and reassembles the segments by offset into the decryption queue of the transfer.
+ * Every data connection has to start with the stripe info frame carrying the token announced to the sender,
+ * connections with wrong token are closed.
+ * Data connections use the throughput socket profile, tuned with the estimator of the sender's host.
+ */
+class StripeReceiver implements Runnable {
+
+    /**
+     * Time in milliseconds to wait for all data connections to be opened.
+     */
+    static final int ACCEPT_TIMEOUT = 5000;
+
+    /**
+     * Size of the random token identifying data connections.
+     */
+    private static final int TOKEN_SIZE = 16;
+
+    /**
+     * Reference to the communicator object.
+     */
+    private final EncryptedTcpCommunicator communicator;
+
+    /**
+     * Transfer which data is received.
+     */
+    private final Transfer transfer;
+
+    /**
+     * Number of data connections requested by the sender.
+     */
+    private final int stripes;
+
+    /**
+     * Reassembles segments received over all data connections.
+     */
+    private final SegmentReassembler reassembler;
+
+    /**
+     * Token expected as the first frame of every data connection.
+     */
+    private final byte[] token;
+
+    /**
+     * Estimator of the path to the sender.
+     */
+    private final LinkEstimator link;
+
+    /**
+     * Server socket accepting data connections.
+     */
+    private ServerSocket serverSocket;
+
+    /**
+     * Opens server socket for data connections.
+     * @return stripe info to be sent to the sender
+     * @throws IOException when server socket cannot be opened
+     */
+    StripeInfo open() throws IOException {
+        serverSocket = new ServerSocket();
+        SocketProfile.THROUGHPUT.apply(serverSocket, link);
+        serverSocket.bind(new InetSocketAddress(0));
+        serverSocket.setSoTimeout(ACCEPT_TIMEOUT);
+        transfer.connections.add(serverSocket);
+        return new StripeInfo(serverSocket.getLocalPort(), token);
+    }
+
+    @Override
+    public void run() {
+        try {
+            for (int i = 0; i < stripes && transfer.running.get(); i++) {
+                Socket socket = serverSocket.accept();
+                SocketProfile.THROUGHPUT.apply(socket, link);
+                transfer.connections.add(socket);
+                ExecutionMode.start(() -> read(socket), "stripe-reader");
+            }
+        } catch (SocketTimeoutException e) {
+            // sender opened less connections than requested or fell back to the control connection
+        } catch (IOException e) {
+            if (transfer.running.get()) e.printStackTrace();
+        } finally {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Reads segments from a single data connection.
+     * @param socket data connection
+     */
+    private void read(Socket socket) {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+            Frame hello = FrameCodec.read(in);
+            if (hello.frameType != Frame.Type.TRANSFER_STRIPES || hello.streamId != transfer.getId() ||
+                    !(hello.data instanceof StripeInfo info) || !Arrays.equals(info.getToken(), token)) {
+                socket.close();
+                return;
+            }
+
+            while (transfer.running.get()) {
+                Frame frame = FrameCodec.read(in);
+                if (!(frame.data instanceof SegmentInfo segment)) continue;
+
+                if (reassembler.add(segment.getOffset(), segment.getData())) {
+                    complete();
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // data connections are closed by the sender when done, or by the transfer when stopped
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Finishes transfer after the whole file has been passed to the decryptor.
+     * @throws InterruptedException when interrupted while waiting for the decryptor
+     */
+    private void complete() throws InterruptedException {
+        transfer.closeConnections();
+        communicator.finish(transfer);
+    }
+
+    StripeReceiver(EncryptedTcpCommunicator communicator, Transfer transfer, int stripes) {
+        this.communicator = communicator;
+        this.transfer = transfer;
+        this.stripes = stripes;
+        this.reassembler = new SegmentReassembler(transfer.queue);
+        this.link = LinkEstimator.forHost(communicator.tcpManager.getHost());
+        this.token = new byte[TOKEN_SIZE];
+        new SecureRandom().nextBytes(token);
+    }
+}
@@ -0,0 +1,179 @@
+package pl.edu.pg.eti.ksr.project.communication;
+
+import pl.edu.pg.eti.ksr.project.communication.data.Message;
+import pl.edu.pg.eti.ksr.project.concurrent.ExecutionMode;
+import pl.edu.pg.eti.ksr.project.network.SocketProfile;
+import pl.edu.pg.eti.ksr.project.network.TcpManager;
+import pl.edu.pg.eti.ksr.project.network.data.Frame;
+import pl.edu.pg.eti.ksr.project.network.data.SegmentInfo;
+import pl.edu.pg.eti.ksr.project.network.data.StripeInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Sending side of a striped transfer.
+ *
+ * Waits for the receiver to announce its data connections port, opens extra data connections to the other client
+ * and sends encrypted file segments over all of them at the same time. Every connection takes the next segment
+ * as soon as it is ready for more data, so faster connections carry more segments. Segments carry their offsets
+ * in the encrypted data, so the receiver can restore their order.
+ * Credits are shared by all connections, so segments kept aside by the receiver are bounded by the window as well.
+ * Bandwidth limits are shared as well, so striping never sends faster than the limits of the transfer allow.
+ *
+ * Falls back to sending data over the control connection if no data connection can be opened.
+ */
+class StripedFileSender implements Runnable {
+
+    /**
+     * Time in milliseconds between checks of the transfer running flag while waiting for data.
+     */
+    private static final long POLL_TIMEOUT = 100;
+
+    /**
+     * Reference to the communicator object.
+     */
+    private final EncryptedTcpCommunicator communicator;
+
+    /**
+     * Transfer which data is sent.
+     */
+    private final Transfer transfer;
+
+    /**
+     * Number of data connections to be opened.
+     */
+    private final int stripes;
+
+    /**
+     * Offset of the next segment, guarded by this object.
+     */
+    private long nextOffset;
+
+    /**
+     * True if end of the file has been taken from the queue, guarded by this object.
+     */
+    private boolean ended;
+
+    /**
+     * Opens data connections announced by the receiver.
+     * @return connected managers, empty if receiver declined or no connection could be opened
+     * @throws InterruptedException when interrupted while waiting for the receiver
+     */
+    private List<TcpManager> openConnections() throws InterruptedException {
+        List<TcpManager> managers = new ArrayList<>();
+
+        StripeInfo info;
+        try {
+            info = transfer.stripes.get(StripeReceiver.ACCEPT_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            return managers;
+        }
+        if (info.getPort() < 0) return managers;
+
+        String host = communicator.tcpManager.getHost();
+        for (int i = 0; i < stripes && host != null; i++) {
+            TcpManager manager = new TcpManager();
+            manager.setProfile(SocketProfile.THROUGHPUT);
+            if (!manager.connect(host, info.getPort())) break;
+
+            transfer.connections.add(manager::disconnect);
+            manager.send(new Frame(Frame.Type.TRANSFER_STRIPES, info, transfer.getId()));
+            managers.add(manager);
+        }
+        return managers;
+    }
+
+    /**
+     * Takes a credit and the next encrypted part from the transfer queue and assigns its offset.
+     * Credits are taken in offset order, otherwise a segment waiting for credit could block the receiver
+     * from draining the following segments and granting more credits.
+     * @return next segment or null if no data is available yet or the end of the file has already been taken
+     * @throws InterruptedException when interrupted while waiting for data
+     */
+    private synchronized SegmentInfo nextSegment() throws InterruptedException {
+        if (ended || !transfer.acquireCredit()) return null;
+
+        byte[] data = transfer.queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+        if (data == null) {
+            transfer.grantCredits(1);
+            return null;
+        }
+
+        SegmentInfo segment = new SegmentInfo(nextOffset, data);
+        nextOffset += data.length;
+        if (data.length == 0) ended = true;
+        return segment;
+    }
+
+    private synchronized boolean isEnded() {
+        return ended;
+    }
+
+    /**
+     * Sends segments over a single data connection until the end of the file has been taken.
+     * @param manager data connection
+     */
+    private void sendStripe(TcpManager manager) {
+        try {
+            while (transfer.running.get() && !isEnded()) {
+                // segments coalesced on this connection may be the ones the receiver needs to grant credits
+                if (!transfer.hasCredit()) manager.flush();
+                SegmentInfo segment = nextSegment();
+                if (segment == null) {
+                    manager.flush();
+                    continue;
+                }
+                if (!transfer.acquireBandwidth(segment.getData().length)) return;
+
+                if (!manager.send(new Frame(Frame.Type.TRANSFER_SEGMENT, segment, transfer.getId()))) {
+                    communicator.interrupted(transfer);
+                    return;
+                }
+            }
+            manager.flush();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            List<TcpManager> managers = openConnections();
+            if (managers.isEmpty()) {
+                new EncryptedFileSender(communicator, transfer).run();
+                return;
+            }
+
+            List<Thread> senders = new ArrayList<>();
+            for (TcpManager manager : managers) {
+                senders.add(ExecutionMode.start(() -> sendStripe(manager), "stripe-sender"));
+            }
+            for (Thread sender : senders) {
+                sender.join();
+            }
+
+            if (transfer.running.get() && isEnded()) {
+                communicator.removeTransfer(transfer);
+                communicator.newMessage(Message.Type.FILE_READY, transfer.getFileData());
+            }
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        } finally {
+            transfer.closeConnections();
+            communicator.removeTransfer(transfer);
+        }
+    }
+
+    StripedFileSender(EncryptedTcpCommunicator communicator, Transfer transfer, int stripes) {
+        this.communicator = communicator;
+        this.transfer = transfer;
+        this.stripes = stripes;
+        this.nextOffset = 0;
+        this.ended = false;
+    }
+}
@@ -0,0 +1,368 @@
+package pl.edu.pg.eti.ksr.project.communication;
+
+import lombok.Getter;
+import pl.edu.pg.eti.ksr.project.communication.data.FileData;
+import pl.edu.pg.eti.ksr.project.concurrent.BudgetedQueue;
+import pl.edu.pg.eti.ksr.project.concurrent.MemoryBudget;
+import pl.edu.pg.eti.ksr.project.concurrent.TokenBucket;
+import pl.edu.pg.eti.ksr.project.crypto.FileToBlockingQueueEncryptor;
+import pl.edu.pg.eti.ksr.project.crypto.Transformation;
+import pl.edu.pg.eti.ksr.project.metrics.Timer;
+import pl.edu.pg.eti.ksr.project.network.data.StripeInfo;
+import pl.edu.pg.eti.ksr.project.observer.Observer;
+import pl.edu.pg.eti.ksr.project.observer.Subject;
+
+import javax.crypto.spec.IvParameterSpec;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.Key;
+import java.security.PublicKey;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Single file transfer in progress, sent or received by the communicator.
+ *
+ * Every transfer has its own stream id, queue of encrypted file parts, cyphering thread and running flag,
+ * so many transfers can run at the same time in both directions.
+ *
+ * Observers are notified on the progress of the transfer with fractional numbers between [0, 1].
+ */
+@Getter
+public class Transfer implements Subject {
+
+    /**
+     * Maximal number of file parts sent and not yet taken by the receiver's decryptor.
+     * Bounds memory used by the transfer on both sides to about WINDOW * BUFFER_SIZE bytes.
+     */
+    public static final int WINDOW = 64;
+
+    /**
+     * Number of file parts taken by the decryptor after which the receiver grants new credits.
+     */
+    public static final int CREDIT_BATCH = WINDOW / 4;
+
+    /**
+     * Memory quota of a single transfer in bytes, enough for a full window of file parts.
+     */
+    public static final long QUOTA = (long) WINDOW * FileToBlockingQueueEncryptor.BUFFER_SIZE;
+
+    /**
+     * Time in milliseconds between checks of the running flag while waiting for credits.
+     */
+    private static final long CREDIT_TIMEOUT = 100;
+
+    /**
+     * Time in milliseconds to wait for the decryptor to save its data after the transfer is stopped.
+     */
+    private static final long STOP_TIMEOUT = 1000;
+
+    /**
+     * Possible directions of the transfer.
+     */
+    public enum Direction {
+
+        // File sent to the other client
+        OUTGOING,
+
+        // File received from the other client
+        INCOMING
+    }
+
+    /**
+     * Identifier of the transfer, equal to the id of the stream carrying its frames.
+     */
+    private final int id;
+
+    /**
+     * Direction of the transfer.
+     */
+    private final Direction direction;
+
+    /**
+     * Data of the transferred file.
+     */
+    private final FileData fileData;
+
+    /**
+     * Bounded queue of encrypted file parts, filled by the encryptor or incoming handler.
+     */
+    final BudgetedQueue<byte[]> queue;
+
+    /**
+     * Flag used for stopping the threads of this transfer.
+     */
+    final AtomicBoolean running;
+
+    /**
+     * Reference to the encryption or decryption thread of this transfer.
+     */
+    Thread cypheringThread;
+
+    /**
+     * Reference to the sender thread, set for outgoing transfers only.
+     */
+    Thread senderThread;
+
+    /**
+     * Credits for sending file parts, granted by the receiver, used by outgoing transfers only.
+     */
+    final Semaphore credits;
+
+    /**
+     * Limit of the sending rate of this transfer, carved out of the limit of the peer.
+     * Set for outgoing transfers only, unlimited unless its rate is set.
+     */
+    TokenBucket bandwidth;
+
+    /**
+     * Stable identifier of the transfer, kept when the transfer is resumed over a new connection.
+     */
+    String resumeId;
+
+    /**
+     * SHA-256 hash of the whole file content, set once known.
+     */
+    byte[] hash;
+
+    /**
+     * Hash of the file announced by the sender, completed for incoming transfers once it arrives.
+     */
+    final CompletableFuture<byte[]> announcedHash;
+
+    /**
+     * Offset of the file the data of this transfer starts from, non zero for resumed transfers.
+     */
+    long offset;
+
+    /**
+     * Size of the whole file in bytes.
+     */
+    long fileSize;
+
+    /**
+     * Number of extra data connections requested for this transfer, 0 if sent over the control connection.
+     */
+    int stripeCount;
+
+    /**
+     * True if data of this transfer is sent over the datagram channel, chosen when the sender starts.
+     */
+    volatile boolean datagram;
+
+    /**
+     * Key the file data is encrypted with instead of the session key, set for outgoing transfers of a multicast only.
+     */
+    Key contentKey;
+
+    /**
+     * IV the file data is encrypted with under the content key, null if its transformation uses no IV.
+     */
+    IvParameterSpec contentIv;
+
+    /**
+     * Transformation the file data is encrypted with under the content key.
+     */
+    Transformation contentTransformation;
+
+    /**
+     * Public key of the other client, set when the transfer is suspended so only the same peer can resume it.
+     */
+    PublicKey peerKey;
+
+    /**
+     * Data connections setup announced by the receiver, completed for outgoing striped transfers only.
+     */
+    final CompletableFuture<StripeInfo> stripes;
+
+    /**
+     * Extra data connections of a striped transfer, closed when the transfer ends.
+     */
+    final Queue<Closeable> connections;
+
+    /**
+     * Latest cyphering progress, fractional number between [0, 1].
+     */
+    private volatile double progress;
+
+    /**
+     * Time in nanoseconds the transfer was created.
+     */
+    private final long created;
+
+    /**
+     * Time in nanoseconds from creating the transfer until its first file part was cyphered, -1 before that.
+     * For incoming transfers it is the time to the first byte of the file received and deciphered.
+     */
+    private volatile long firstByteTime;
+
+    /**
+     * Timer the time to the first byte is recorded with, null if not measured.
+     */
+    Timer firstByteTimer;
+
+    /**
+     * List of all observers subscribing to this object.
+     */
+    private final Queue<Observer> observers;
+
+    @Override
+    public void attach(Observer observer) {
+        this.observers.add(observer);
+    }
+
+    @Override
+    public void detach(Observer observer) {
+        this.observers.remove(observer);
+    }
+
+    @Override
+    public void notifyObs(Object o) {
+        for (Observer observer : this.observers) {
+            observer.update(o);
+        }
+    }
+
+    /**
+     * Internal method used for publishing progress of the transfer.
+     * @param state fractional number between [0, 1]
+     */
+    void updateProgress(Object state) {
+        if (firstByteTime < 0) {
+            firstByteTime = System.nanoTime() - created;
+            if (firstByteTimer != null) firstByteTimer.record(firstByteTime);
+        }
+        progress = (double) state;
+        notifyObs(state);
+    }
+
+    /**
+     * Creates memory quota of a transfer.
+     * @param peerBudget budget of the peer exchanging the file
+     * @param id identifier of the transfer
+     * @return quota carved out of the peer budget
+     */
+    static MemoryBudget quota(MemoryBudget peerBudget, int id) {
+        return peerBudget.child("transfer-" + id, QUOTA);
+    }
+
+    /**
+     * Gets memory budget of the queued file parts.
+     * @return budget of this transfer
+     */
+    public MemoryBudget getBudget() {
+        return queue.getBudget();
+    }
+
+    /**
+     * Checks if a credit can be taken without waiting.
+     * @return true if the receiver granted credits not used yet
+     */
+    boolean hasCredit() {
+        return credits.availablePermits() > 0;
+    }
+
+    /**
+     * Takes a credit for sending a single file part, blocking until granted by the receiver.
+     * @return true if credit was taken, false if the transfer was stopped while waiting
+     * @throws InterruptedException when interrupted while waiting
+     */
+    boolean acquireCredit() throws InterruptedException {
+        while (running.get()) {
+            if (credits.tryAcquire(CREDIT_TIMEOUT, TimeUnit.MILLISECONDS)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Takes tokens of the transfer bandwidth limit and all limits above it for sending a file part,
+     * blocking until the limits allow sending it.
+     * @param bytes size of the file part
+     * @return true if the part may be sent, false if the transfer was stopped while waiting
+     * @throws InterruptedException when interrupted while waiting
+     */
+    boolean acquireBandwidth(int bytes) throws InterruptedException {
+        if (bandwidth == null) return running.get();
+        while (running.get()) {
+            if (bandwidth.tryAcquire(bytes, CREDIT_TIMEOUT, TimeUnit.MILLISECONDS)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns credits granted by the receiver.
+     * @param count number of granted credits
+     */
+    void grantCredits(int count) {
+        credits.release(count);
+    }
+
+    /**
+     * Gets number of bytes of the file saved by this incoming transfer, after its decryptor has finished.
+     * @return length of the saved file, 0 if nothing was saved
+     */
+    long getSavedLength() {
+        try {
+            if (cypheringThread != null) cypheringThread.join(STOP_TIMEOUT);
+            Path path = Path.of(getFileData().getFilePath());
+            return Files.exists(path) ? Math.min(Files.size(path), fileSize) : 0;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+    }
+
+    /**
+     * Closes all extra data connections of this transfer.
+     */
+    void closeConnections() {
+        Closeable connection;
+        while ((connection = connections.poll()) != null) {
+            try {
+                connection.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Stops all threads of this transfer, closes its data connections and drops pending file parts.
+     */
+    void stop() {
+        running.set(false);
+        if (cypheringThread != null && cypheringThread.isAlive()) cypheringThread.interrupt();
+        closeConnections();
+        queue.clear();
+    }
+
+    Transfer(int id, Direction direction, FileData fileData, MemoryBudget peerBudget) {
+        this(id, direction, fileData, new BudgetedQueue<>(WINDOW, quota(peerBudget, id), data -> data.length));
+    }
+
+    Transfer(int id, Direction direction, FileData fileData, BudgetedQueue<byte[]> queue) {
+        this.id = id;
+        this.direction = direction;
+        this.fileData = fileData;
+        this.queue = queue;
+        this.credits = new Semaphore(WINDOW);
+        this.running = new AtomicBoolean(true);
+        this.observers = new ConcurrentLinkedQueue<>();
+        this.stripes = new CompletableFuture<>();
+        this.announcedHash = new CompletableFuture<>();
+        this.connections = new ConcurrentLinkedQueue<>();
+        this.progress = 0;
+        this.offset = 0;
+        this.created = System.nanoTime();
+        this.firstByteTime = -1;
+    }
+}
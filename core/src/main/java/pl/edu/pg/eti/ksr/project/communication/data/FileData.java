@@ -27,4 +27,9 @@ public class FileData {
      * Path to the newly received file.
      */
     String filePath;
+
+    /**
+     * Identifier of the transfer this file is sent or received with.
+     */
+    int transferId;
 }
@@ -36,7 +36,10 @@ public class Message {
         FILE,
 
         // New file ready
-        FILE_READY
+        FILE_READY,
+
+        // New file received, but its content does not match the file sent or could not be verified
+        FILE_FAILED
     }
 
     /**
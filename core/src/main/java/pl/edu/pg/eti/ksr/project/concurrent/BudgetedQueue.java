@@ -0,0 +1,138 @@
+package pl.edu.pg.eti.ksr.project.concurrent;
+
+import java.util.Collection;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+/**
+ * Blocking queue reserving memory of its elements from a memory budget.
+ *
+ * Memory is reserved before an element is inserted and released when the element is removed,
+ * so producers block when either the capacity of the queue or the budget is exhausted.
+ * Only put(), offer(), take(), poll(), clear() and drainTo() account for memory,
+ * other removal methods of the queue should not be used.
+ * @param <E> type of queued elements
+ */
+public class BudgetedQueue<E> extends LinkedBlockingQueue<E> {
+
+    /**
+     * Budget from which memory of queued elements is reserved.
+     */
+    private final transient MemoryBudget budget;
+
+    /**
+     * Estimates memory used by an element in bytes.
+     */
+    private final transient ToLongFunction<? super E> sizeOf;
+
+    @Override
+    public void put(E e) throws InterruptedException {
+        long size = sizeOf.applyAsLong(e);
+        budget.reserve(size);
+        boolean inserted = false;
+        try {
+            super.put(e);
+            inserted = true;
+        } finally {
+            if (!inserted) budget.release(size);
+        }
+    }
+
+    @Override
+    public boolean offer(E e) {
+        long size = sizeOf.applyAsLong(e);
+        try {
+            if (!budget.tryReserve(size, 0, TimeUnit.NANOSECONDS)) return false;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        if (super.offer(e)) return true;
+        budget.release(size);
+        return false;
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        long size = sizeOf.applyAsLong(e);
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        if (!budget.tryReserve(size, timeout, unit)) return false;
+
+        boolean inserted = false;
+        try {
+            inserted = super.offer(e, Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+            return inserted;
+        } finally {
+            if (!inserted) budget.release(size);
+        }
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        return released(super.take());
+    }
+
+    @Override
+    public E poll() {
+        return released(super.poll());
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return released(super.poll(timeout, unit));
+    }
+
+    @Override
+    public void clear() {
+        while (poll() != null) {
+            // memory of every element released by poll()
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        int drained = 0;
+        E e;
+        while (drained < maxElements && (e = poll()) != null) {
+            c.add(e);
+            drained++;
+        }
+        return drained;
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    private E released(E e) {
+        if (e != null) budget.release(sizeOf.applyAsLong(e));
+        return e;
+    }
+
+    public MemoryBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * Creates queue bounded by both number of elements and memory.
+     * @param capacity maximal number of queued elements
+     * @param budget budget from which memory of queued elements is reserved
+     * @param sizeOf estimates memory used by an element in bytes
+     */
+    public BudgetedQueue(int capacity, MemoryBudget budget, ToLongFunction<? super E> sizeOf) {
+        super(capacity);
+        this.budget = budget;
+        this.sizeOf = sizeOf;
+    }
+
+    /**
+     * Creates queue bounded by memory only.
+     * @param budget budget from which memory of queued elements is reserved
+     * @param sizeOf estimates memory used by an element in bytes
+     */
+    public BudgetedQueue(MemoryBudget budget, ToLongFunction<? super E> sizeOf) {
+        this(Integer.MAX_VALUE, budget, sizeOf);
+    }
+}
@@ -0,0 +1,85 @@
+package pl.edu.pg.eti.ksr.project.concurrent;
+
+import java.util.Locale;
+
+/**
+ * Supported modes of running background tasks
+ * (connection listeners, incoming handlers, file senders and encryptors).
+ *
+ * Mode is selected once at startup, either by setting system property "bsk.execution"
+ * (e.g. -Dbsk.execution=virtual) or by calling setCurrent() before any connection is made.
+ */
+public enum ExecutionMode {
+
+    // Every task gets a dedicated platform thread
+    PLATFORM,
+
+    // Every task gets a virtual thread, blocking socket and queue operations do not hold platform threads
+    VIRTUAL;
+
+    /**
+     * Name of the system property used for selecting execution mode.
+     */
+    public static final String PROPERTY = "bsk.execution";
+
+    /**
+     * Currently selected execution mode.
+     */
+    private static volatile ExecutionMode current = fromText(System.getProperty(PROPERTY));
+
+    /**
+     * Gets currently selected execution mode.
+     * @return current mode
+     */
+    public static ExecutionMode getCurrent() {
+        return current;
+    }
+
+    /**
+     * Selects execution mode for all tasks started from now on.
+     * @param mode new mode
+     */
+    public static void setCurrent(ExecutionMode mode) {
+        current = mode;
+    }
+
+    /**
+     * Finds execution mode associated to provided text, ignoring case.
+     * @param text mode text representation
+     * @return associated mode, PLATFORM if text is null or unknown
+     */
+    public static ExecutionMode fromText(String text) {
+        if (text == null) return PLATFORM;
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            if (mode.name().equals(text.trim().toUpperCase(Locale.ROOT))) {
+                return mode;
+            }
+        }
+        return PLATFORM;
+    }
+
+    /**
+     * Creates new, not started thread for a given task.
+     * @param task task to be run
+     * @param name name of the thread
+     * @return unstarted thread
+     */
+    public Thread newThread(Runnable task, String name) {
+        return switch (this) {
+            case PLATFORM -> Thread.ofPlatform().name(name).unstarted(task);
+            case VIRTUAL -> Thread.ofVirtual().name(name).unstarted(task);
+        };
+    }
+
+    /**
+     * Creates and starts new thread in currently selected mode.
+     * @param task task to be run
+     * @param name name of the thread
+     * @return started thread
+     */
+    public static Thread start(Runnable task, String name) {
+        Thread thread = current.newThread(task, name);
+        thread.start();
+        return thread;
+    }
+}
@@ -0,0 +1,254 @@
+package pl.edu.pg.eti.ksr.project.concurrent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limit of memory used by buffered data.
+ *
+ * Budgets form a tree, every budget is a quota carved out of its parent, with the process-wide budget as the root.
+ * Reserving memory from a budget reserves it from all its ancestors, blocking until every one of them
+ * has enough free memory, so buffers filling up slow down their producers instead of growing the heap.
+ * Every reservation has to be paired with a release of the same size.
+ *
+ * Size of the process-wide budget is read once at startup from system property "bsk.memory"
+ * as a number of megabytes (e.g. -Dbsk.memory=128).
+ */
+public class MemoryBudget {
+
+    /**
+     * Name of the system property used for setting the process-wide budget.
+     */
+    public static final String PROPERTY = "bsk.memory";
+
+    /**
+     * Default size of the process-wide budget in megabytes.
+     */
+    public static final long DEFAULT_GLOBAL_MB = 256;
+
+    /**
+     * Process-wide budget, root of all budgets.
+     */
+    private static final MemoryBudget GLOBAL = new MemoryBudget("global", null,
+            parseMegabytes(System.getProperty(PROPERTY)) * 1024 * 1024);
+
+    /**
+     * Name of the budget, used in metrics.
+     */
+    private final String name;
+
+    /**
+     * Budget from which this budget is carved out, null for the process-wide budget.
+     */
+    private final MemoryBudget parent;
+
+    /**
+     * Maximal number of bytes reserved at the same time.
+     */
+    private final long limit;
+
+    /**
+     * Guards state of the budget.
+     */
+    private final ReentrantLock lock;
+
+    /**
+     * Signalled when memory is released.
+     */
+    private final Condition released;
+
+    /**
+     * Number of currently reserved bytes, guarded by the lock.
+     */
+    private long used;
+
+    /**
+     * Highest number of bytes reserved at the same time, guarded by the lock.
+     */
+    private long peak;
+
+    /**
+     * Number of threads waiting for memory, guarded by the lock.
+     */
+    private int waiting;
+
+    /**
+     * Gets process-wide budget.
+     * @return root budget
+     */
+    public static MemoryBudget global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Parses size of the process-wide budget.
+     * @param text number of megabytes
+     * @return parsed number, default if text is null or not a positive number
+     */
+    static long parseMegabytes(String text) {
+        if (text == null) return DEFAULT_GLOBAL_MB;
+        try {
+            long megabytes = Long.parseLong(text.trim());
+            return megabytes > 0 ? megabytes : DEFAULT_GLOBAL_MB;
+        } catch (NumberFormatException e) {
+            return DEFAULT_GLOBAL_MB;
+        }
+    }
+
+    /**
+     * Creates quota carved out of this budget.
+     * @param name name of the new budget
+     * @param limit maximal number of bytes reserved from the new budget at the same time
+     * @return new budget
+     */
+    public MemoryBudget child(String name, long limit) {
+        return new MemoryBudget(name, this, limit);
+    }
+
+    /**
+     * Reserves memory, blocking until this budget and all its ancestors have enough free memory.
+     * Reservation larger than a limit is granted only when nothing else is reserved from that budget.
+     * @param bytes number of bytes to be reserved
+     * @throws InterruptedException when interrupted while waiting, nothing stays reserved then
+     */
+    public void reserve(long bytes) throws InterruptedException {
+        tryReserve(bytes, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Reserves memory, waiting at most given time until this budget and all its ancestors have enough free memory.
+     * @param bytes number of bytes to be reserved
+     * @param timeout maximal time to wait
+     * @param unit unit of the timeout
+     * @return true if reserved, false if time elapsed, nothing stays reserved then
+     * @throws InterruptedException when interrupted while waiting, nothing stays reserved then
+     */
+    public boolean tryReserve(long bytes, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = timeout == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + unit.toNanos(timeout);
+
+        // own quota is taken first, so waiting for an ancestor never holds memory of unrelated budgets
+        if (!reserveOwn(bytes, deadline)) return false;
+        if (parent == null) return true;
+
+        boolean reserved = false;
+        try {
+            long remaining = deadline == Long.MAX_VALUE ? Long.MAX_VALUE : deadline - System.nanoTime();
+            reserved = parent.tryReserve(bytes, Math.max(remaining, 0), TimeUnit.NANOSECONDS);
+            return reserved;
+        } finally {
+            if (!reserved) releaseOwn(bytes);
+        }
+    }
+
+    /**
+     * Releases memory reserved before, from this budget and all its ancestors.
+     * @param bytes number of released bytes
+     */
+    public void release(long bytes) {
+        releaseOwn(bytes);
+        if (parent != null) parent.release(bytes);
+    }
+
+    private boolean reserveOwn(long bytes, long deadline) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            waiting++;
+            try {
+                while (used > 0 && used + bytes > limit) {
+                    if (deadline == Long.MAX_VALUE) {
+                        released.await();
+                    } else {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0) return false;
+                        released.awaitNanos(remaining);
+                    }
+                }
+            } finally {
+                waiting--;
+            }
+            used += bytes;
+            peak = Math.max(peak, used);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void releaseOwn(long bytes) {
+        lock.lock();
+        try {
+            used = Math.max(used - bytes, 0);
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public MemoryBudget getParent() {
+        return parent;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * Gets number of currently reserved bytes.
+     * @return reserved bytes
+     */
+    public long getUsed() {
+        lock.lock();
+        try {
+            return used;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets highest number of bytes reserved at the same time since creation.
+     * @return peak reserved bytes
+     */
+    public long getPeak() {
+        lock.lock();
+        try {
+            return peak;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets number of threads currently blocked waiting for memory of this budget.
+     * @return number of waiting threads
+     */
+    public int getWaiting() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name + ": " + getUsed() + "/" + limit + " bytes used, peak " + getPeak() + ", waiting " + getWaiting();
+    }
+
+    private MemoryBudget(String name, MemoryBudget parent, long limit) {
+        this.name = name;
+        this.parent = parent;
+        this.limit = limit;
+        this.lock = new ReentrantLock();
+        this.released = this.lock.newCondition();
+        this.used = 0;
+        this.peak = 0;
+        this.waiting = 0;
+    }
+}
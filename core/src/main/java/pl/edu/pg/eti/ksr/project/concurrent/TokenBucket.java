@@ -0,0 +1,295 @@
+package pl.edu.pg.eti.ksr.project.concurrent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limit of the rate data is sent at, a token bucket with a burst allowance.
+ *
+ * Bucket is refilled with tokens at the given rate in bytes per second, up to its burst size, and sending
+ * takes one token per byte. When the bucket runs empty, senders wait until enough tokens are refilled, so the
+ * average rate never exceeds the limit while short bursts go through at once.
+ * Amounts larger than the burst are let through when the bucket is full and paid off by waiting afterwards.
+ *
+ * Buckets form a tree like memory budgets, e.g. a bucket per transfer carved out of a bucket per peer, carved out
+ * of the process-wide bucket. Taking tokens from a bucket takes them from all its ancestors, so data is sent at
+ * the lowest rate on the path. Rates can be changed at any time, waiting senders pick up the new rate at once.
+ * Bucket with rate 0 is unlimited.
+ *
+ * Rate of the process-wide bucket is read once at startup from system property "bsk.bandwidth"
+ * as a number of kilobytes per second (e.g. -Dbsk.bandwidth=1024), unlimited if not set.
+ */
+public class TokenBucket {
+
+    /**
+     * Name of the system property used for setting the process-wide rate.
+     */
+    public static final String PROPERTY = "bsk.bandwidth";
+
+    /**
+     * Process-wide bucket, root of all buckets.
+     */
+    private static final TokenBucket GLOBAL = new TokenBucket("global", null,
+            parseKilobytes(System.getProperty(PROPERTY)) * 1024, 0);
+
+    /**
+     * Name of the bucket.
+     */
+    private final String name;
+
+    /**
+     * Bucket this bucket is carved out of, null for the process-wide bucket.
+     */
+    private final TokenBucket parent;
+
+    /**
+     * Guards state of the bucket.
+     */
+    private final ReentrantLock lock;
+
+    /**
+     * Signalled when the rate is changed or tokens are returned.
+     */
+    private final Condition changed;
+
+    /**
+     * Rate of refilling in bytes per second, 0 if unlimited, guarded by the lock.
+     */
+    private long rate;
+
+    /**
+     * Maximal number of tokens in the bucket, guarded by the lock.
+     */
+    private long burst;
+
+    /**
+     * Number of tokens in the bucket, negative after an amount larger than the burst, guarded by the lock.
+     */
+    private double tokens;
+
+    /**
+     * Time in nanoseconds of the latest refill, guarded by the lock.
+     */
+    private long refilled;
+
+    /**
+     * Number of threads waiting for tokens, guarded by the lock.
+     */
+    private int waiting;
+
+    /**
+     * Gets process-wide bucket.
+     * @return root bucket
+     */
+    public static TokenBucket global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Parses rate of the process-wide bucket.
+     * @param text number of kilobytes per second
+     * @return parsed number, 0 (unlimited) if text is null or not a positive number
+     */
+    static long parseKilobytes(String text) {
+        if (text == null) return 0;
+        try {
+            long kilobytes = Long.parseLong(text.trim());
+            return Math.max(kilobytes, 0);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Creates unlimited bucket carved out of this bucket, limited by the ancestors only until its rate is set.
+     * @param name name of the new bucket
+     * @return new bucket
+     */
+    public TokenBucket child(String name) {
+        return child(name, 0, 0);
+    }
+
+    /**
+     * Creates bucket carved out of this bucket.
+     * @param name name of the new bucket
+     * @param rate rate in bytes per second, 0 if unlimited
+     * @param burst maximal number of bytes sent at once, 0 for a second worth of the rate
+     * @return new bucket
+     */
+    public TokenBucket child(String name, long rate, long burst) {
+        return new TokenBucket(name, this, rate, burst);
+    }
+
+    /**
+     * Changes rate of this bucket, threads waiting for tokens pick it up at once.
+     * @param rate rate in bytes per second, 0 if unlimited
+     * @param burst maximal number of bytes sent at once, 0 for a second worth of the rate
+     */
+    public void setRate(long rate, long burst) {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            refill(now);
+            boolean wasUnlimited = this.rate <= 0;
+            this.rate = Math.max(rate, 0);
+            this.burst = burst > 0 ? burst : this.rate;
+            // newly limited bucket starts full, like a new one
+            tokens = wasUnlimited ? this.burst : Math.min(tokens, this.burst);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Changes rate of this bucket, with a second worth of the rate as the burst.
+     * @param rate rate in bytes per second, 0 if unlimited
+     */
+    public void setRate(long rate) {
+        setRate(rate, 0);
+    }
+
+    /**
+     * Takes tokens for sending given amount of data, blocking until this bucket and all its ancestors have them.
+     * @param bytes number of bytes to be sent
+     * @throws InterruptedException when interrupted while waiting, no tokens are taken then
+     */
+    public void acquire(long bytes) throws InterruptedException {
+        tryAcquire(bytes, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Takes tokens for sending given amount of data, waiting at most given time until this bucket
+     * and all its ancestors have them.
+     * @param bytes number of bytes to be sent
+     * @param timeout maximal time to wait
+     * @param unit unit of the timeout
+     * @return true if taken, false if time elapsed, no tokens are taken then
+     * @throws InterruptedException when interrupted while waiting, no tokens are taken then
+     */
+    public boolean tryAcquire(long bytes, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = timeout == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + unit.toNanos(timeout);
+
+        // own tokens are taken first, so the narrowest limit is waited for without holding tokens of ancestors
+        if (!acquireOwn(bytes, deadline)) return false;
+        if (parent == null) return true;
+
+        boolean acquired = false;
+        try {
+            long remaining = deadline == Long.MAX_VALUE ? Long.MAX_VALUE : deadline - System.nanoTime();
+            acquired = parent.tryAcquire(bytes, Math.max(remaining, 0), TimeUnit.NANOSECONDS);
+            return acquired;
+        } finally {
+            if (!acquired) refund(bytes);
+        }
+    }
+
+    private boolean acquireOwn(long bytes, long deadline) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            waiting++;
+            try {
+                while (rate > 0) {
+                    long now = System.nanoTime();
+                    refill(now);
+                    double needed = Math.min(bytes, burst);
+                    if (tokens >= needed) {
+                        tokens -= bytes;
+                        return true;
+                    }
+
+                    long wait = (long) Math.ceil((needed - tokens) * 1e9 / rate);
+                    if (deadline != Long.MAX_VALUE) {
+                        long remaining = deadline - now;
+                        if (remaining <= 0) return false;
+                        wait = Math.min(wait, remaining);
+                    }
+                    changed.awaitNanos(wait);
+                }
+                return true;
+            } finally {
+                waiting--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void refund(long bytes) {
+        lock.lock();
+        try {
+            if (rate > 0) tokens = Math.min(tokens + bytes, burst);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds tokens refilled since the previous refill, guarded by the lock.
+     * @param now current time in nanoseconds
+     */
+    private void refill(long now) {
+        if (rate > 0) tokens = Math.min(tokens + (now - refilled) * (double) rate / 1e9, burst);
+        refilled = now;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public TokenBucket getParent() {
+        return parent;
+    }
+
+    public long getRate() {
+        lock.lock();
+        try {
+            return rate;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getBurst() {
+        lock.lock();
+        try {
+            return burst;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets number of threads currently blocked waiting for tokens of this bucket.
+     * @return number of waiting threads
+     */
+    public int getWaiting() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        long current = getRate();
+        return name + ": " + (current > 0 ? current + " bytes/s, burst " + getBurst() : "unlimited")
+                + ", waiting " + getWaiting();
+    }
+
+    private TokenBucket(String name, TokenBucket parent, long rate, long burst) {
+        this.name = name;
+        this.parent = parent;
+        this.lock = new ReentrantLock();
+        this.changed = this.lock.newCondition();
+        this.rate = Math.max(rate, 0);
+        this.burst = burst > 0 ? burst : this.rate;
+        this.tokens = this.burst;
+        this.refilled = System.nanoTime();
+        this.waiting = 0;
+    }
+}
@@ -0,0 +1,138 @@
+package pl.edu.pg.eti.ksr.project.crypto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import pl.edu.pg.eti.ksr.project.metrics.Meter;
+import pl.edu.pg.eti.ksr.project.metrics.MetricsRegistry;
+import pl.edu.pg.eti.ksr.project.observer.Observer;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Encrypts data in provided input queue to a file.
+ * Output may be appended to already saved part of the file, e.g. when resuming interrupted transfer.
+ * File is synced to the storage device when closed, so its length is a durable offset to resume from.
+ * Deciphered bytes are counted by the "crypto.decrypted" meter of the process-wide metrics registry.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class BlockingQueueToFileEncryptor implements Runnable {
+
+    /**
+     * Sets buffer size for ciphering.
+     * Prevents keeping all file data in memory.
+     */
+    public static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Initialized cipher object to be used in ciphering.
+     */
+    private Cipher cipher;
+
+    /**
+     * Queue with data to perform encryption.
+     */
+    private BlockingQueue<byte[]> queue;
+
+    /**
+     * Path to an output file.
+     */
+    private Path output;
+
+    /**
+     * Flag used for safely stopping thread.
+     */
+    private AtomicBoolean running;
+
+    /**
+     * Size of a file in bytes.
+     */
+    private long fileSize;
+
+    /**
+     * Observer notified on the state of encryption / decryption.
+     * Receives fractional numbers between [0, 1].
+     */
+    private Observer progress;
+
+    /**
+     * Number of already saved bytes of the output file, the file is truncated to this length and appended to.
+     */
+    private long offset;
+
+    public BlockingQueueToFileEncryptor(Cipher cipher, BlockingQueue<byte[]> queue, Path output, AtomicBoolean running,
+                                        long fileSize, Observer progress) {
+        this(cipher, queue, output, running, fileSize, progress, 0);
+    }
+
+    /**
+     * Opens output file, truncated to the offset.
+     * Closing the stream syncs the file with the storage device.
+     * @return output file stream
+     * @throws IOException when file cannot be opened
+     */
+    private FileOutputStream openOutput() throws IOException {
+        if (offset > 0) {
+            try (RandomAccessFile file = new RandomAccessFile(output.toFile(), "rw")) {
+                file.setLength(offset);
+            }
+        }
+        return new FileOutputStream(output.toFile(), offset > 0) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    getFD().sync();
+                } finally {
+                    super.close();
+                }
+            }
+        };
+    }
+
+    @Override
+    public void run() {
+        CipherOutputStream out;
+        long total = offset;
+
+        try {
+            out = new CipherOutputStream(openOutput(), cipher);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        Meter decrypted = MetricsRegistry.global().meter("crypto.decrypted");
+        byte[] buffer;
+        try {
+            while (running.get()) {
+                buffer = queue.take();
+                if (buffer.length == 0) break; // stop condition met
+                decrypted.mark(buffer.length);
+
+                total = Math.min(total + buffer.length, fileSize);
+                progress.update((double)total / fileSize);
+
+                out.write(buffer, 0, buffer.length);
+            }
+        } catch (IOException | InterruptedException exception) {
+            exception.printStackTrace();
+        } finally {
+            try {
+                out.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
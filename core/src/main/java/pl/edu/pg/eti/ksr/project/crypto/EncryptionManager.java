@@ -1,25 +1,38 @@
 package pl.edu.pg.eti.ksr.project.crypto;
 
 import lombok.Getter;
+import pl.edu.pg.eti.ksr.project.concurrent.ExecutionMode;
 import pl.edu.pg.eti.ksr.project.observer.Observer;
 import pl.edu.pg.eti.ksr.project.observer.Subject;
 
 import javax.crypto.*;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.*;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+import java.util.Objects;
 import java.util.Queue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Manager for all encryption and decryption operations.
  */
 public class EncryptionManager implements Subject {
 
+    /**
+     * Curve of ephemeral keys used for key agreement.
+     */
+    private static final String EPHEMERAL_CURVE = "secp256r1";
+
     /**
      * List of all observers subscribing to this object.
      */
@@ -32,11 +45,17 @@ public class EncryptionManager implements Subject {
     private String transformation;
 
     /**
-     * Cipher object used during encryption and decryption.
+     * Cipher object used during encryption and decryption of small buffers.
+     * File operations use their own cipher objects, so buffers can be cyphered during ongoing file operation.
      */
     @Getter
     private Cipher cipher;
 
+    /**
+     * Guards the cipher of small buffers and the transformation.
+     */
+    private final ReentrantLock lock;
+
     /**
      * Flag for stopping running threads.
      */
@@ -67,10 +86,13 @@ public class EncryptionManager implements Subject {
     }
 
     /**
-     * Internal method used for notifying observers on the state of encryption / decryption.
+     * Internal method used for notifying operation observer and observers of this manager
+     * on the state of encryption / decryption.
+     * @param progress observer of the operation
      * @param state fractional number between [0, 1]
      */
-    void publishEncryptionState(double state) {
+    private void publishProgress(Observer progress, Object state) {
+        progress.update(state);
         notifyObs(state);
     }
 
@@ -80,9 +102,36 @@ public class EncryptionManager implements Subject {
      * @throws NoSuchPaddingException wrong padding setting passed
      * @throws NoSuchAlgorithmException wrong algorithm setting passed
      */
-    public void setTransformation(String transformation) throws NoSuchPaddingException, NoSuchAlgorithmException {
-        this.cipher = Cipher.getInstance(transformation);
-        this.transformation = transformation;
+    public void setTransformation(String transformation)
+            throws NoSuchPaddingException, NoSuchAlgorithmException {
+        Cipher newCipher = Cipher.getInstance(transformation);
+        lock.lock();
+        try {
+            this.cipher = newCipher;
+            this.transformation = transformation;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Creates new cipher object for the current transformation, used by a single file operation.
+     * @return new cipher object
+     */
+    private Cipher newCipher() {
+        String current;
+        lock.lock();
+        try {
+            current = transformation;
+        } finally {
+            lock.unlock();
+        }
+        try {
+            return Cipher.getInstance(current);
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+            // transformation has already been accepted by Cipher.getInstance in setTransformation
+            throw new IllegalStateException(e);
+        }
     }
 
     /**
@@ -101,8 +150,13 @@ public class EncryptionManager implements Subject {
             throws InvalidKeyException, IllegalBlockSizeException, BadPaddingException,
             InvalidAlgorithmParameterException {
 
-        cipher.init(opMode, key, iv);
-        return cipher.doFinal(input);
+        lock.lock();
+        try {
+            cipher.init(opMode, key, iv);
+            return cipher.doFinal(input);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -118,8 +172,13 @@ public class EncryptionManager implements Subject {
     public byte[] encrypt(int opMode, byte[] input, Key key)
             throws InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
 
-        cipher.init(opMode, key);
-        return cipher.doFinal(input);
+        lock.lock();
+        try {
+            cipher.init(opMode, key);
+            return cipher.doFinal(input);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -135,12 +194,12 @@ public class EncryptionManager implements Subject {
     public void encrypt(Path source, Path target, Key key, IvParameterSpec iv, long fileSize)
             throws InvalidAlgorithmParameterException, InvalidKeyException {
 
+        Cipher cipher = newCipher();
         cipher.init(Cipher.ENCRYPT_MODE, key, iv);
 
         running.set(true);
-        encryptorThread = new Thread(
-                new FileToFileEncryptor(cipher, source, target, running, fileSize, this));
-        encryptorThread.start();
+        encryptorThread = ExecutionMode.start(
+                new FileToFileEncryptor(cipher, source, target, running, fileSize, this::notifyObs), "encryptor");
     }
 
     /**
@@ -154,12 +213,12 @@ public class EncryptionManager implements Subject {
     public void encrypt(Path source, Path target, Key key, long fileSize)
             throws InvalidKeyException {
 
+        Cipher cipher = newCipher();
         cipher.init(Cipher.ENCRYPT_MODE, key);
 
         running.set(true);
-        encryptorThread = new Thread(
-                new FileToFileEncryptor(cipher, source, target, running, fileSize, this));
-        encryptorThread.start();
+        encryptorThread = ExecutionMode.start(
+                new FileToFileEncryptor(cipher, source, target, running, fileSize, this::notifyObs), "encryptor");
     }
 
     /**
@@ -175,12 +234,12 @@ public class EncryptionManager implements Subject {
     public void encrypt(Path source, BlockingQueue<byte[]> target, Key key, IvParameterSpec iv, long fileSize)
             throws InvalidAlgorithmParameterException, InvalidKeyException {
 
+        Cipher cipher = newCipher();
         cipher.init(Cipher.ENCRYPT_MODE, key, iv);
 
         running.set(true);
-        encryptorThread = new Thread(
-                new FileToBlockingQueueEncryptor(cipher, source, target, running, fileSize, this));
-        encryptorThread.start();
+        encryptorThread = ExecutionMode.start(
+                new FileToBlockingQueueEncryptor(cipher, source, target, running, fileSize, this::notifyObs), "encryptor");
     }
 
     /**
@@ -194,12 +253,61 @@ public class EncryptionManager implements Subject {
     public void encrypt(Path source, BlockingQueue<byte[]> target, Key key, long fileSize)
             throws InvalidKeyException {
 
+        Cipher cipher = newCipher();
         cipher.init(Cipher.ENCRYPT_MODE, key);
 
         running.set(true);
-        encryptorThread = new Thread(
-                new FileToBlockingQueueEncryptor(cipher, source, target, running, fileSize, this));
-        encryptorThread.start();
+        encryptorThread = ExecutionMode.start(
+                new FileToBlockingQueueEncryptor(cipher, source, target, running, fileSize, this::notifyObs), "encryptor");
+    }
+
+    /**
+     * Encrypts provided file and outputs to provided queue, as one of many independent operations.
+     * Operation is controlled by its own running flag and reports its own progress,
+     * progress is published to the observers of this manager as well.
+     * @param source path to a file to be encrypted
+     * @param target queue to which encrypted data will be inserted
+     * @param key key for encryption
+     * @param iv IV for encrypting, null if transformation does not use IV
+     * @param fileSize size of a file in bytes
+     * @param running flag for stopping this operation
+     * @param progress observer notified on the state of this operation
+     * @return started encryptor thread
+     * @throws InvalidAlgorithmParameterException problem with provided IV
+     * @throws InvalidKeyException incorrect key passed, wrong format
+     */
+    public Thread encrypt(Path source, BlockingQueue<byte[]> target, Key key, IvParameterSpec iv, long fileSize,
+                          AtomicBoolean running, Observer progress)
+            throws InvalidAlgorithmParameterException, InvalidKeyException {
+        return encrypt(source, target, key, iv, fileSize, running, progress, 0);
+    }
+
+    /**
+     * Encrypts provided file starting from a given offset and outputs to provided queue,
+     * as one of many independent operations.
+     * @param source path to a file to be encrypted
+     * @param target queue to which encrypted data will be inserted
+     * @param key key for encryption
+     * @param iv IV for encrypting, null if transformation does not use IV
+     * @param fileSize size of a file in bytes
+     * @param running flag for stopping this operation, nothing is encrypted if it is already cleared
+     * @param progress observer notified on the state of this operation
+     * @param offset offset of the file the encryption starts from
+     * @return started encryptor thread
+     * @throws InvalidAlgorithmParameterException problem with provided IV
+     * @throws InvalidKeyException incorrect key passed, wrong format
+     */
+    public Thread encrypt(Path source, BlockingQueue<byte[]> target, Key key, IvParameterSpec iv, long fileSize,
+                          AtomicBoolean running, Observer progress, long offset)
+            throws InvalidAlgorithmParameterException, InvalidKeyException {
+
+        Cipher cipher = newCipher();
+        if (iv != null) cipher.init(Cipher.ENCRYPT_MODE, key, iv);
+        else cipher.init(Cipher.ENCRYPT_MODE, key);
+
+        // flag is owned by the caller, operation stopped before it started must not be revived
+        return ExecutionMode.start(new FileToBlockingQueueEncryptor(cipher, source, target, running,
+                fileSize, state -> publishProgress(progress, state), offset), "encryptor");
     }
 
     /**
@@ -281,12 +389,12 @@ public class EncryptionManager implements Subject {
     public void decrypt(Path source, Path target, Key key, IvParameterSpec iv, long fileSize)
             throws InvalidAlgorithmParameterException, InvalidKeyException {
 
+        Cipher cipher = newCipher();
         cipher.init(Cipher.DECRYPT_MODE, key, iv);
 
         running.set(true);
-        encryptorThread = new Thread(
-                new FileToFileEncryptor(cipher, source, target, running, fileSize, this));
-        encryptorThread.start();
+        encryptorThread = ExecutionMode.start(
+                new FileToFileEncryptor(cipher, source, target, running, fileSize, this::notifyObs), "encryptor");
     }
 
     /**
@@ -300,12 +408,12 @@ public class EncryptionManager implements Subject {
     public void decrypt(Path source, Path target, Key key, long fileSize)
             throws InvalidKeyException {
 
+        Cipher cipher = newCipher();
         cipher.init(Cipher.DECRYPT_MODE, key);
 
         running.set(true);
-        encryptorThread = new Thread(
-                new FileToFileEncryptor(cipher, source, target, running, fileSize, this));
-        encryptorThread.start();
+        encryptorThread = ExecutionMode.start(
+                new FileToFileEncryptor(cipher, source, target, running, fileSize, this::notifyObs), "encryptor");
     }
 
     /**
@@ -321,12 +429,12 @@ public class EncryptionManager implements Subject {
     public void decrypt(BlockingQueue<byte[]> source, Path target, Key key, IvParameterSpec iv, long fileSize)
             throws InvalidAlgorithmParameterException, InvalidKeyException {
 
+        Cipher cipher = newCipher();
         cipher.init(Cipher.DECRYPT_MODE, key, iv);
 
         running.set(true);
-        encryptorThread = new Thread(
-                new BlockingQueueToFileEncryptor(cipher, source, target, running, fileSize, this));
-        encryptorThread.start();
+        encryptorThread = ExecutionMode.start(
+                new BlockingQueueToFileEncryptor(cipher, source, target, running, fileSize, this::notifyObs), "encryptor");
     }
 
     /**
@@ -340,12 +448,61 @@ public class EncryptionManager implements Subject {
     public void decrypt(BlockingQueue<byte[]> source, Path target, Key key, long fileSize)
             throws InvalidKeyException {
 
+        Cipher cipher = newCipher();
         cipher.init(Cipher.DECRYPT_MODE, key);
 
         running.set(true);
-        encryptorThread = new Thread(
-                new BlockingQueueToFileEncryptor(cipher, source, target, running, fileSize, this));
-        encryptorThread.start();
+        encryptorThread = ExecutionMode.start(
+                new BlockingQueueToFileEncryptor(cipher, source, target, running, fileSize, this::notifyObs), "encryptor");
+    }
+
+    /**
+     * Decrypts contents of a blocking queue to a file, as one of many independent operations.
+     * Operation is controlled by its own running flag and reports its own progress,
+     * progress is published to the observers of this manager as well.
+     * @param source queue with encrypted data
+     * @param target path where decrypted file will be saved
+     * @param key key for decryption
+     * @param iv IV for decryption, null if transformation does not use IV
+     * @param fileSize size of an original file in bytes
+     * @param running flag for stopping this operation
+     * @param progress observer notified on the state of this operation
+     * @return started decryptor thread
+     * @throws InvalidAlgorithmParameterException problem with provided IV
+     * @throws InvalidKeyException incorrect key passed, wrong format
+     */
+    public Thread decrypt(BlockingQueue<byte[]> source, Path target, Key key, IvParameterSpec iv, long fileSize,
+                          AtomicBoolean running, Observer progress)
+            throws InvalidAlgorithmParameterException, InvalidKeyException {
+        return decrypt(source, target, key, iv, fileSize, running, progress, 0);
+    }
+
+    /**
+     * Decrypts contents of a blocking queue and appends them to already saved part of a file,
+     * as one of many independent operations.
+     * @param source queue with encrypted data
+     * @param target path where decrypted file will be saved
+     * @param key key for decryption
+     * @param iv IV for decryption, null if transformation does not use IV
+     * @param fileSize size of an original file in bytes
+     * @param running flag for stopping this operation, nothing is decrypted if it is already cleared
+     * @param progress observer notified on the state of this operation
+     * @param offset number of already saved bytes, the file is truncated to this length before appending
+     * @return started decryptor thread
+     * @throws InvalidAlgorithmParameterException problem with provided IV
+     * @throws InvalidKeyException incorrect key passed, wrong format
+     */
+    public Thread decrypt(BlockingQueue<byte[]> source, Path target, Key key, IvParameterSpec iv, long fileSize,
+                          AtomicBoolean running, Observer progress, long offset)
+            throws InvalidAlgorithmParameterException, InvalidKeyException {
+
+        Cipher cipher = newCipher();
+        if (iv != null) cipher.init(Cipher.DECRYPT_MODE, key, iv);
+        else cipher.init(Cipher.DECRYPT_MODE, key);
+
+        // flag is owned by the caller, operation stopped before it started must not be revived
+        return ExecutionMode.start(new BlockingQueueToFileEncryptor(cipher, source, target, running,
+                fileSize, state -> publishProgress(progress, state), offset), "encryptor");
     }
 
     /**
@@ -384,6 +541,7 @@ public class EncryptionManager implements Subject {
     /**
      * Stops currently running threads.
      * Can be used for stopping file encryption or decryption tasks.
+     * Independent operations are not stopped, they are stopped by clearing their own running flags.
      */
     public void stopCurrentWork() {
         running.set(false);
@@ -416,6 +574,161 @@ public class EncryptionManager implements Subject {
         return keyPairGen.generateKeyPair();
     }
 
+    /**
+     * Generates ephemeral EC key pair used for a single key agreement.
+     * @return generated key pair on the P-256 curve
+     */
+    public static KeyPair generateEphemeralKeyPair() {
+        try {
+            KeyPairGenerator keyPairGen = KeyPairGenerator.getInstance("EC");
+            keyPairGen.initialize(new ECGenParameterSpec(EPHEMERAL_CURVE));
+            return keyPairGen.generateKeyPair();
+        } catch (NoSuchAlgorithmException | InvalidAlgorithmParameterException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Computes secret shared with the other client using ECDH key agreement.
+     * @param ownKey own ephemeral private key
+     * @param otherKey ephemeral public key of the other client
+     * @return shared secret
+     * @throws InvalidKeyException key is not an EC key or does not lie on the curve of the own key
+     */
+    public static byte[] agree(PrivateKey ownKey, PublicKey otherKey) throws InvalidKeyException {
+        KeyAgreement agreement;
+        try {
+            agreement = KeyAgreement.getInstance("ECDH");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        agreement.init(ownKey);
+        agreement.doPhase(otherKey, true);
+        return agreement.generateSecret();
+    }
+
+    /**
+     * Derives key of a symmetric transformation from a shared secret.
+     * @param secret shared secret
+     * @param transformation symmetric transformation the key is used with
+     * @param context data binding the key to its use, e.g. the handshake transcript
+     * @return derived key
+     * @throws InvalidKeyException problem with the secret
+     */
+    public static Key deriveKey(byte[] secret, Transformation transformation, byte[] context)
+            throws InvalidKeyException {
+        // DES keys are encoded with parity bits, which are not counted in their key sizes
+        int length = switch (transformation.getAlgorithm()) {
+            case "DES" -> 8;
+            case "DESede" -> 24;
+            default -> transformation.getKeySize() / 8;
+        };
+        byte[] key = hmac(secret, "session key".getBytes(StandardCharsets.UTF_8), context);
+        return new SecretKeySpec(Arrays.copyOf(key, length), transformation.getAlgorithm());
+    }
+
+    /**
+     * Computes SHA-256 hash of a file content.
+     * @param file path to a file
+     * @param running flag for stopping the computation
+     * @return hash of the file or null if stopped before the whole file was read
+     * @throws IOException when file cannot be read
+     */
+    public static byte[] hash(Path file, AtomicBoolean running) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        byte[] buffer = new byte[FileToBlockingQueueEncryptor.BUFFER_SIZE * 8];
+        try (InputStream in = Files.newInputStream(file)) {
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                if (!running.get()) return null;
+                digest.update(buffer, 0, count);
+            }
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Computes HMAC-SHA256 over concatenated parts.
+     * @param key secret key of the mac
+     * @param parts data to be authenticated
+     * @return mac of the data
+     * @throws InvalidKeyException problem with key
+     */
+    public static byte[] hmac(byte[] key, byte[]... parts) throws InvalidKeyException {
+        Mac mac;
+        try {
+            mac = Mac.getInstance("HmacSHA256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        mac.init(new SecretKeySpec(key, "HmacSHA256"));
+        for (byte[] part : parts) {
+            mac.update(part);
+        }
+        return mac.doFinal();
+    }
+
+    /**
+     * Gets name of the signature algorithm matching a key.
+     * @param key private or public key
+     * @return SHA-256 based signature algorithm of the key algorithm
+     */
+    static String signatureAlgorithm(Key key) {
+        return Objects.equals(key.getAlgorithm(), "EC") ? "SHA256withECDSA" : "SHA256with" + key.getAlgorithm();
+    }
+
+    /**
+     * Signs data with a private key.
+     * @param data data to be signed
+     * @param key private key
+     * @return signature
+     * @throws InvalidKeyException problem with key
+     * @throws SignatureException problem with signing
+     */
+    public static byte[] sign(byte[] data, PrivateKey key) throws InvalidKeyException, SignatureException {
+        Signature signature;
+        try {
+            signature = Signature.getInstance(signatureAlgorithm(key));
+        } catch (NoSuchAlgorithmException e) {
+            throw new InvalidKeyException(e);
+        }
+
+        signature.initSign(key);
+        signature.update(data);
+        return signature.sign();
+    }
+
+    /**
+     * Verifies signature of data.
+     * @param data signed data
+     * @param signed signature to be verified
+     * @param key public key of the signer
+     * @return true if signature is valid
+     * @throws InvalidKeyException problem with key
+     */
+    public static boolean verify(byte[] data, byte[] signed, PublicKey key) throws InvalidKeyException {
+        if (signed == null) return false;
+        try {
+            Signature signature = Signature.getInstance(signatureAlgorithm(key));
+            signature.initVerify(key);
+            signature.update(data);
+            return signature.verify(signed);
+        } catch (NoSuchAlgorithmException e) {
+            throw new InvalidKeyException(e);
+        } catch (SignatureException e) {
+            // malformed signature
+            return false;
+        }
+    }
+
     /**
      * Method for generating IVs.
      * @param blockSize block size used later during cyphering
@@ -437,6 +750,7 @@ public class EncryptionManager implements Subject {
 
         this.cipher = Cipher.getInstance(transformation);
         this.transformation = transformation;
+        this.lock = new ReentrantLock();
         this.running = new AtomicBoolean(false);
         this.encryptorThread = null;
         this.observers = new ConcurrentLinkedQueue<>();
@@ -4,11 +4,13 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import pl.edu.pg.eti.ksr.project.metrics.Meter;
+import pl.edu.pg.eti.ksr.project.metrics.MetricsRegistry;
+import pl.edu.pg.eti.ksr.project.observer.Observer;
 
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.concurrent.BlockingQueue;
@@ -16,6 +18,8 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Encrypts given input file to a provided output queue.
+ * Encryption may start from any offset of the file, e.g. when resuming interrupted transfer.
+ * Encrypted bytes are counted by the "crypto.encrypted" meter of the process-wide metrics registry.
  */
 @NoArgsConstructor
 @AllArgsConstructor
@@ -56,30 +60,44 @@ public class FileToBlockingQueueEncryptor implements Runnable {
     private long fileSize;
 
     /**
-     * Reference to the calling class.
-     * Used to publish encryption state.
+     * Observer notified on the state of encryption / decryption.
+     * Receives fractional numbers between [0, 1].
      */
-    private EncryptionManager manager;
+    private Observer progress;
+
+    /**
+     * Offset of the input file the encryption starts from.
+     */
+    private long offset;
+
+    public FileToBlockingQueueEncryptor(Cipher cipher, Path input, BlockingQueue<byte[]> queue, AtomicBoolean running,
+                                        long fileSize, Observer progress) {
+        this(cipher, input, queue, running, fileSize, progress, 0);
+    }
 
     @Override
     public void run() {
         CipherInputStream in;
-        long total = 0;
+        long total = offset;
 
         try {
-            in = new CipherInputStream(new FileInputStream(input.toFile()), cipher);
-        } catch (FileNotFoundException e) {
+            FileInputStream file = new FileInputStream(input.toFile());
+            file.getChannel().position(offset);
+            in = new CipherInputStream(file, cipher);
+        } catch (IOException e) {
             e.printStackTrace();
             return;
         }
 
+        Meter encrypted = MetricsRegistry.global().meter("crypto.encrypted");
         byte[] buffer = new byte[BUFFER_SIZE];
         byte[] cyphered;
         int count;
         try {
             while ((count = in.read(buffer)) > 0 && running.get()) {
+                encrypted.mark(count);
                 total = Math.min(total + count, fileSize);
-                manager.publishEncryptionState((double)total / fileSize);
+                progress.update((double)total / fileSize);
 
                 cyphered = new byte[count];
                 System.arraycopy(buffer, 0, cyphered, 0, count);
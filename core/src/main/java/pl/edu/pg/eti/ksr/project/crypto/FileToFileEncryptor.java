@@ -4,6 +4,7 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import pl.edu.pg.eti.ksr.project.observer.Observer;
 
 import javax.crypto.Cipher;
 import javax.crypto.CipherOutputStream;
@@ -55,10 +56,10 @@ public class FileToFileEncryptor implements Runnable {
     private long fileSize;
 
     /**
-     * Reference to the calling class.
-     * Used to publish encryption state.
+     * Observer notified on the state of encryption / decryption.
+     * Receives fractional numbers between [0, 1].
      */
-    private EncryptionManager manager;
+    private Observer progress;
 
     @Override
     public void run() {
@@ -79,7 +80,7 @@ public class FileToFileEncryptor implements Runnable {
         try {
             while ((count = in.read(buffer)) > 0 && running.get()) {
                 total = Math.min(total + count, fileSize);
-                manager.publishEncryptionState((double)total / fileSize);
+                progress.update((double)total / fileSize);
 
                 out.write(buffer, 0, count);
             }
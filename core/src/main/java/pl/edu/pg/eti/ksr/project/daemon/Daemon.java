@@ -0,0 +1,465 @@
+package pl.edu.pg.eti.ksr.project.daemon;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import pl.edu.pg.eti.ksr.project.accounts.AccountManager;
+import pl.edu.pg.eti.ksr.project.communication.CommunicationException;
+import pl.edu.pg.eti.ksr.project.communication.EncryptedTcpCommunicator;
+import pl.edu.pg.eti.ksr.project.communication.KnownPeers;
+import pl.edu.pg.eti.ksr.project.communication.data.FileData;
+import pl.edu.pg.eti.ksr.project.communication.data.Message;
+import pl.edu.pg.eti.ksr.project.communication.data.SessionData;
+import pl.edu.pg.eti.ksr.project.concurrent.ExecutionMode;
+import pl.edu.pg.eti.ksr.project.crypto.EncryptionManager;
+import pl.edu.pg.eti.ksr.project.crypto.Transformation;
+import pl.edu.pg.eti.ksr.project.network.NetworkManager;
+import pl.edu.pg.eti.ksr.project.network.TcpManager;
+import pl.edu.pg.eti.ksr.project.observer.Observer;
+
+import java.io.BufferedReader;
+import java.io.Console;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Headless client, running the communicator without JavaFX.
+ *
+ * Uses the same accounts, keys and directories as the GUI, so both can be used with a single account.
+ * Messages and events are printed on the standard output and commands are read from the standard input,
+ * so the client can be used from a terminal or a script. With the standard input closed, e.g. when started
+ * as a service, it keeps running until the process is terminated.
+ *
+ * Arguments:
+ * --user=NAME account to log in with, required
+ * --password-file=PATH file with the password of the account in its first line
+ * --create creates the account first, unless it exists
+ * --listen=PORT accepts connections on a port, again after every disconnection
+ * --connect=HOST:PORT connects to another client and establishes communication
+ * --transformation=TEXT symmetric transformation of the sessions, e.g. "AES/CBC/PKCS5Padding"
+ * --files=DIR dir for saving incoming files
+ * --execution=MODE execution mode of the threads, e.g. "virtual"
+ *
+ * Password is never taken from the command line, which other users of the system can read.
+ * It is read from the password file, the BSK_PASSWORD environment variable or the console, in this order.
+ *
+ * Commands: "/file PATH" sends a file, "/session TEXT" establishes a session with another transformation,
+ * "/quit" closes the client, any other line is sent as a chat message.
+ */
+public class Daemon {
+
+    /**
+     * Default dir for saving incoming files, the same as of the GUI.
+     */
+    public static final String FILES_PATH = "./BSK_files/file/";
+
+    /**
+     * Dir with public keys of known peers, one file per local account, the same as of the GUI.
+     */
+    public static final String KNOWN_PEERS_PATH = "./BSK_files/known_peers/";
+
+    /**
+     * Environment variable the password is read from when no password file is given.
+     */
+    public static final String PASSWORD_VARIABLE = "BSK_PASSWORD";
+
+    /**
+     * Options of the client, read from the command line arguments.
+     */
+    @Getter
+    static class Options {
+
+        private String username;
+
+        private String password;
+
+        private Path passwordFile;
+
+        private boolean create;
+
+        private int listenPort = -1;
+
+        private String connectHost;
+
+        private int connectPort = -1;
+
+        private Transformation transformation = Transformation.AES_CBC_PKCS5Padding;
+
+        private String filesPath = FILES_PATH;
+
+        private ExecutionMode executionMode;
+
+        /**
+         * Reads options from command line arguments.
+         * @param args command line arguments
+         * @return parsed options
+         * @throws IllegalArgumentException when an argument is unknown or malformed, or user is missing
+         */
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (String arg : args) {
+                int separator = arg.indexOf('=');
+                String name = separator < 0 ? arg : arg.substring(0, separator);
+                String value = separator < 0 ? null : arg.substring(separator + 1);
+                switch (name) {
+                    case "--user" -> options.username = value;
+                    case "--password" -> throw new IllegalArgumentException("Password is not accepted as an argument,"
+                            + " use --password-file, " + PASSWORD_VARIABLE + " or the console");
+                    case "--password-file" -> {
+                        if (value == null) throw new IllegalArgumentException("Expected path in " + arg);
+                        options.passwordFile = Path.of(value);
+                    }
+                    case "--create" -> options.create = true;
+                    case "--listen" -> options.listenPort = parsePort(value);
+                    case "--connect" -> {
+                        int colon = value == null ? -1 : value.lastIndexOf(':');
+                        if (colon < 0) throw new IllegalArgumentException("Expected HOST:PORT in " + arg);
+                        options.connectHost = value.substring(0, colon);
+                        options.connectPort = parsePort(value.substring(colon + 1));
+                    }
+                    case "--transformation" -> options.transformation = parseTransformation(value);
+                    case "--files" -> {
+                        if (value == null) throw new IllegalArgumentException("Expected dir in " + arg);
+                        options.filesPath = value.endsWith("/") ? value : value + "/";
+                    }
+                    case "--execution" -> options.executionMode = ExecutionMode.fromText(value);
+                    default -> throw new IllegalArgumentException("Unknown argument " + arg);
+                }
+            }
+            if (options.username == null) throw new IllegalArgumentException("--user is required");
+            return options;
+        }
+
+        /**
+         * Reads password from the password file, the environment variable or the console, in this order.
+         * @param environment environment variables of the process
+         * @param console console of the process, null if there is none
+         * @throws IllegalArgumentException when the password file cannot be read or there is no password
+         */
+        void readPassword(Map<String, String> environment, Console console) {
+            if (passwordFile != null) {
+                try {
+                    password = Files.readString(passwordFile, StandardCharsets.UTF_8).lines().findFirst().orElse("");
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("Cannot read password file " + passwordFile);
+                }
+            } else if (environment.get(PASSWORD_VARIABLE) != null) {
+                password = environment.get(PASSWORD_VARIABLE);
+            } else if (console != null) {
+                char[] typed = console.readPassword("Password for %s: ", username);
+                if (typed != null) password = new String(typed);
+            }
+            if (password == null) {
+                throw new IllegalArgumentException("Password is required, use --password-file, "
+                        + PASSWORD_VARIABLE + " or the console");
+            }
+        }
+
+        private static int parsePort(String text) {
+            try {
+                int port = Integer.parseInt(text);
+                if (port < 0 || port > 65535) throw new IllegalArgumentException("Port out of range: " + text);
+                return port;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Expected port number, got " + text);
+            }
+        }
+
+        private static Transformation parseTransformation(String text) {
+            Transformation transformation = Transformation.fromText(text);
+            // asymmetric transformations have no blocks of their own
+            if (transformation == null || transformation.getBlockSize() == 0) {
+                throw new IllegalArgumentException("Unknown symmetric transformation " + text);
+            }
+            return transformation;
+        }
+    }
+
+    /**
+     * Options the client was started with.
+     */
+    private final Options options;
+
+    /**
+     * Output for messages and events.
+     */
+    private final PrintStream out;
+
+    /**
+     * TCP manager used for communication.
+     */
+    @Getter
+    private TcpManager tcpManager;
+
+    /**
+     * Communicator providing functionality of sending and receiving messages and files.
+     */
+    @Getter
+    private EncryptedTcpCommunicator communicator;
+
+    /**
+     * Released when the client is closed.
+     */
+    private final CountDownLatch closed;
+
+    /**
+     * Observer used for reacting to tcp manager status changes.
+     */
+    @AllArgsConstructor
+    private static class TcpManagerObserver implements Observer {
+
+        private Daemon daemon;
+
+        @Override
+        public void update(Object o) {
+            NetworkManager.Status status = (NetworkManager.Status) o;
+            switch (status) {
+                case CONNECTED -> daemon.out.println("Connected");
+                case LISTENING -> daemon.out.println("Listening on port "
+                        + daemon.tcpManager.getListeningPort());
+                case READY -> {
+                    daemon.out.println("Ready");
+                    // a server keeps accepting clients, one at a time
+                    if (daemon.options.listenPort >= 0 && daemon.closed.getCount() > 0) {
+                        daemon.tcpManager.listenOn(daemon.options.listenPort);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Observer used for printing events reported by communicator.
+     */
+    @AllArgsConstructor
+    private static class CommunicatorObserver implements Observer {
+
+        private Daemon daemon;
+
+        @Override
+        public void update(Object o) {
+            Message message = (Message) o;
+            EncryptedTcpCommunicator communicator = daemon.communicator;
+            communicator.getMessageQueue().poll();
+            switch (message.messageType) {
+                case COMMUNICATION_STOP -> {
+                    daemon.out.println(communicator.getOtherUsername() + " exited");
+                    daemon.tcpManager.disconnect();
+                }
+                case COMMUNICATION -> daemon.out.println(communicator.getOtherUsername() + " joined");
+                case MESSAGE -> daemon.out.println("[" + communicator.getOtherUsername() + "]: " + message.data);
+                case SESSION -> daemon.out.println("Session "
+                        + ((SessionData) message.data).getTransformation().getText());
+                case FILE -> daemon.out.println(communicator.getOtherUsername() + " is sending file "
+                        + ((FileData) message.data).getOriginalFileName());
+                case FILE_READY -> daemon.out.println("Transfer of "
+                        + ((FileData) message.data).getOriginalFileName() + " is complete");
+                case FILE_FAILED -> daemon.out.println("Transfer of " + ((FileData) message.data).getOriginalFileName()
+                        + " failed, received file does not match the file sent");
+            }
+        }
+    }
+
+    /**
+     * Starts headless client and serves commands of the standard input.
+     * @param args command line arguments, see the class description
+     */
+    public static void main(String[] args) {
+        Options options;
+        try {
+            options = Options.parse(args);
+            options.readPassword(System.getenv(), System.console());
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: Daemon --user=NAME [--password-file=PATH] [--create] [--listen=PORT]"
+                    + " [--connect=HOST:PORT] [--transformation=TEXT] [--files=DIR] [--execution=MODE]");
+            System.exit(2);
+            return;
+        }
+        if (options.executionMode != null) ExecutionMode.setCurrent(options.executionMode);
+
+        Daemon daemon = new Daemon(options, System.out);
+        if (!daemon.start()) System.exit(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(daemon::close, "daemon-shutdown"));
+
+        try {
+            daemon.serve(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)));
+            // standard input closed, running as a service until terminated
+            daemon.closed.await();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        daemon.close();
+        System.exit(0);
+    }
+
+    /**
+     * Logs in, creates the communicator and starts listening or connects, as selected by the options.
+     * @return true if started, false if logging in, reading keys of the account, listening or connecting failed
+     */
+    public boolean start() {
+        AccountManager.initialize();
+        Integer passHash = options.password.hashCode();
+        if (!AccountManager.getUsers().containsKey(options.username)) {
+            if (!options.create) {
+                out.println("There is no such user!");
+                return false;
+            }
+            AccountManager.addAccount(options.username, passHash);
+            out.println("Added account");
+        }
+        if (!AccountManager.getUsers().get(options.username).equals(passHash)) {
+            out.println("Password is wrong!");
+            return false;
+        }
+        AccountManager.setUsername(options.username);
+        AccountManager.setPassHash(passHash);
+
+        EncryptionManager encryptionManager;
+        try {
+            Files.createDirectories(Path.of(options.filesPath));
+            encryptionManager = new EncryptionManager(Transformation.RSA_ECB_PKCS1Padding.getText());
+        } catch (IOException | GeneralSecurityException e) {
+            e.printStackTrace();
+            return false;
+        }
+
+        PublicKey publicKey = AccountManager.loadPublicKey();
+        PrivateKey privateKey = AccountManager.loadPrivateKey();
+        if (publicKey == null || privateKey == null) {
+            out.println("Keys of the account cannot be read!");
+            return false;
+        }
+
+        tcpManager = new TcpManager();
+        tcpManager.attach(new TcpManagerObserver(this));
+        communicator = new EncryptedTcpCommunicator(options.filesPath, options.username, publicKey, privateKey,
+                Transformation.RSA_ECB_PKCS1Padding, tcpManager, encryptionManager);
+        communicator.setKnownPeers(new KnownPeers(Path.of(KNOWN_PEERS_PATH, options.username + ".txt")));
+        communicator.attach(new CommunicatorObserver(this));
+        communicator.init();
+        out.println("Logged as: " + options.username + " in "
+                + ManagementFactory.getRuntimeMXBean().getUptime() + " ms");
+
+        if (options.listenPort >= 0 && !tcpManager.listenOn(options.listenPort)) return false;
+        if (options.connectHost != null) return connect(options.connectHost, options.connectPort);
+        return true;
+    }
+
+    /**
+     * Connects to another client and establishes communication with the first session.
+     * @param host address of the other client
+     * @param port port the other client listens on
+     * @return true if connected
+     */
+    public boolean connect(String host, int port) {
+        if (!tcpManager.connect(host, port)) return false;
+        try {
+            communicator.initiateCommunication(options.transformation);
+        } catch (CommunicationException e) {
+            e.printStackTrace();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Executes commands until the "/quit" command or the end of input.
+     * @param input source of commands, one per line
+     * @throws IOException when reading failed
+     */
+    public void serve(BufferedReader input) throws IOException {
+        String line;
+        while (closed.getCount() > 0 && (line = input.readLine()) != null) {
+            if (!execute(line)) {
+                close();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Executes single command.
+     * @param line command or chat message
+     * @return false if the client should be closed
+     */
+    boolean execute(String line) {
+        if (line.isBlank()) return true;
+        if (line.equals("/quit")) return false;
+
+        if (line.startsWith("/session ")) {
+            try {
+                options.transformation = Options.parseTransformation(line.substring("/session ".length()).trim());
+            } catch (IllegalArgumentException e) {
+                out.println(e.getMessage());
+                return true;
+            }
+        }
+        if (!communicator.isCommunicationEstablished()) {
+            out.println("Not connected");
+            return true;
+        }
+        updateSession();
+
+        try {
+            if (line.startsWith("/file ")) {
+                Path path = Path.of(line.substring("/file ".length()).trim());
+                communicator.send(path, Files.size(path) >= EncryptedTcpCommunicator.STRIPING_THRESHOLD ?
+                        EncryptedTcpCommunicator.DEFAULT_STRIPES : 0);
+                out.println("Sending file " + path.getFileName() + " to " + communicator.getOtherUsername());
+            } else if (!line.startsWith("/session ")) {
+                communicator.send(line);
+            }
+        } catch (IOException | GeneralSecurityException e) {
+            e.printStackTrace();
+        }
+        return true;
+    }
+
+    /**
+     * Establishes session with the selected transformation, unless it is already established.
+     */
+    private void updateSession() {
+        if (!communicator.isSessionEstablished() ||
+                (communicator.getSymmetricTransformation() != null &&
+                        communicator.getSymmetricTransformation() != options.transformation)) {
+            try {
+                communicator.initiateSession(options.transformation);
+            } catch (CommunicationException | GeneralSecurityException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Gracefully stops the client, can be called many times.
+     */
+    public synchronized void close() {
+        if (closed.getCount() == 0 || communicator == null) {
+            closed.countDown();
+            return;
+        }
+        closed.countDown();
+        if (communicator.isCommunicationEstablished()) communicator.stopCommunication();
+        tcpManager.stop();
+        tcpManager.disconnect();
+        communicator.close();
+    }
+
+    Daemon(Options options, PrintStream out) {
+        this.options = options;
+        this.out = out;
+        this.closed = new CountDownLatch(1);
+    }
+}
@@ -0,0 +1,87 @@
+package pl.edu.pg.eti.ksr.project.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counter of events carrying an amount, e.g. frames and their bytes, measuring rates of both.
+ *
+ * Marking is cheap and safe from many threads, rates are calculated by the registry on every sample
+ * as the growth of the counters since the previous sample.
+ */
+public class Meter {
+
+    /**
+     * Sum of the amounts of all events.
+     */
+    private final LongAdder total;
+
+    /**
+     * Number of all events.
+     */
+    private final LongAdder events;
+
+    /**
+     * Total at the previous sample, used by the sampling thread only.
+     */
+    private long sampledTotal;
+
+    /**
+     * Number of events at the previous sample, used by the sampling thread only.
+     */
+    private long sampledEvents;
+
+    /**
+     * Amount per second between the last two samples.
+     */
+    private volatile double rate;
+
+    /**
+     * Events per second between the last two samples.
+     */
+    private volatile double eventRate;
+
+    /**
+     * Records a single event.
+     * @param amount amount carried by the event, e.g. number of bytes
+     */
+    public void mark(long amount) {
+        total.add(amount);
+        events.increment();
+    }
+
+    /**
+     * Calculates rates since the previous sample.
+     * @param seconds time since the previous sample in seconds
+     */
+    void sample(double seconds) {
+        long currentTotal = total.sum();
+        long currentEvents = events.sum();
+        if (seconds > 0) {
+            rate = (currentTotal - sampledTotal) / seconds;
+            eventRate = (currentEvents - sampledEvents) / seconds;
+        }
+        sampledTotal = currentTotal;
+        sampledEvents = currentEvents;
+    }
+
+    public long getTotal() {
+        return total.sum();
+    }
+
+    public long getEvents() {
+        return events.sum();
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    public double getEventRate() {
+        return eventRate;
+    }
+
+    Meter() {
+        this.total = new LongAdder();
+        this.events = new LongAdder();
+    }
+}
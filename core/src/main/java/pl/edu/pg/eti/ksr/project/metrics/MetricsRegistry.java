@@ -0,0 +1,217 @@
+package pl.edu.pg.eti.ksr.project.metrics;
+
+import pl.edu.pg.eti.ksr.project.observer.Observer;
+import pl.edu.pg.eti.ksr.project.observer.Subject;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Registry of named metrics of the application: meters of events with their rates, timers of durations
+ * and gauges read on demand, e.g. queue depths.
+ *
+ * Names are dot separated, starting with the scope of the metric, e.g. "connection.10.0.0.2:6666.51234.sent"
+ * or "transfer.alice.3.queue", so all metrics of a connection or transfer are removed together when it ends.
+ *
+ * Every sample flattens all metrics into a snapshot of numeric values, which is published to the observers
+ * of the registry. The process-wide registry is sampled every SAMPLE_INTERVAL milliseconds and exposed over JMX
+ * as a single MBean named OBJECT_NAME, with a read-only attribute per value.
+ *
+ * Values of a meter "name" are "name.total", "name.events", "name.rate" (amount per second)
+ * and "name.eventRate" (events per second), values of a timer are "name.count" and durations "name.last",
+ * "name.mean" and "name.max" in milliseconds, value of a gauge is "name".
+ */
+public class MetricsRegistry implements Subject {
+
+    /**
+     * Time in milliseconds between samples of the process-wide registry.
+     */
+    public static final long SAMPLE_INTERVAL = 1000;
+
+    /**
+     * Name of the MBean of the process-wide registry.
+     */
+    public static final String OBJECT_NAME = "pl.edu.pg.eti.ksr.project:type=Metrics";
+
+    /**
+     * Process-wide registry, created on first use.
+     */
+    private static MetricsRegistry global;
+
+    private final Map<String, Meter> meters;
+
+    private final Map<String, Timer> timers;
+
+    private final Map<String, Supplier<? extends Number>> gauges;
+
+    /**
+     * List of all observers subscribing to this object.
+     */
+    private final Queue<Observer> observers;
+
+    /**
+     * Time in nanoseconds of the previous sample.
+     */
+    private long sampled;
+
+    /**
+     * Snapshot taken by the latest sample.
+     */
+    private volatile MetricsSnapshot latest;
+
+    /**
+     * Gets process-wide registry, sampled periodically and registered as an MBean on first use.
+     * @return process-wide registry
+     */
+    public static synchronized MetricsRegistry global() {
+        if (global == null) {
+            global = new MetricsRegistry();
+            global.register();
+            ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(
+                    Thread.ofPlatform().name("metrics-sampler").daemon().factory());
+            sampler.scheduleAtFixedRate(global::sample, SAMPLE_INTERVAL, SAMPLE_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+        return global;
+    }
+
+    /**
+     * Registers this registry with the platform MBean server.
+     */
+    private void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(this),
+                    new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Gets meter of a given name, creating it if needed.
+     * @param name name of the meter
+     * @return meter of the name
+     */
+    public Meter meter(String name) {
+        return meters.computeIfAbsent(name, key -> new Meter());
+    }
+
+    /**
+     * Gets timer of a given name, creating it if needed.
+     * @param name name of the timer
+     * @return timer of the name
+     */
+    public Timer timer(String name) {
+        return timers.computeIfAbsent(name, key -> new Timer());
+    }
+
+    /**
+     * Registers gauge read on every sample, replacing previous gauge of the same name.
+     * @param name name of the gauge
+     * @param value supplier of the current value
+     */
+    public void gauge(String name, Supplier<? extends Number> value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * Removes all metrics of a scope, e.g. of a finished transfer.
+     * @param scope name of the metric or prefix of names of metrics to be removed, without the trailing dot
+     */
+    public void remove(String scope) {
+        String prefix = scope + ".";
+        meters.keySet().removeIf(name -> name.equals(scope) || name.startsWith(prefix));
+        timers.keySet().removeIf(name -> name.equals(scope) || name.startsWith(prefix));
+        gauges.keySet().removeIf(name -> name.equals(scope) || name.startsWith(prefix));
+    }
+
+    /**
+     * Calculates rates since the previous sample and publishes snapshot of all values to the observers.
+     * Gauges and observers throwing an exception are skipped, so the periodic sampling never stops.
+     * @return snapshot of all values
+     */
+    public MetricsSnapshot sample() {
+        MetricsSnapshot snapshot;
+        synchronized (this) {
+            long now = System.nanoTime();
+            double seconds = sampled > 0 ? (now - sampled) / 1e9 : 0;
+            sampled = now;
+
+            Map<String, Double> values = new TreeMap<>();
+            meters.forEach((name, meter) -> {
+                meter.sample(seconds);
+                values.put(name + ".total", (double) meter.getTotal());
+                values.put(name + ".events", (double) meter.getEvents());
+                values.put(name + ".rate", meter.getRate());
+                values.put(name + ".eventRate", meter.getEventRate());
+            });
+            timers.forEach((name, timer) -> {
+                values.put(name + ".count", (double) timer.getCount());
+                values.put(name + ".last", timer.getLast());
+                values.put(name + ".mean", timer.getMean());
+                values.put(name + ".max", timer.getMax());
+            });
+            gauges.forEach((name, gauge) -> {
+                try {
+                    Number value = gauge.get();
+                    if (value != null) values.put(name, value.doubleValue());
+                } catch (RuntimeException e) {
+                    // failing gauge is left out of this sample, the others and later samples are not affected
+                    e.printStackTrace();
+                }
+            });
+
+            snapshot = new MetricsSnapshot(System.currentTimeMillis(), Collections.unmodifiableMap(values));
+            latest = snapshot;
+        }
+        notifyObs(snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Gets snapshot taken by the latest sample.
+     * @return latest snapshot, empty if not sampled yet
+     */
+    public MetricsSnapshot getLatest() {
+        return latest;
+    }
+
+    @Override
+    public void attach(Observer observer) {
+        this.observers.add(observer);
+    }
+
+    @Override
+    public void detach(Observer observer) {
+        this.observers.remove(observer);
+    }
+
+    @Override
+    public void notifyObs(Object o) {
+        for (Observer observer : this.observers) {
+            try {
+                observer.update(o);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public MetricsRegistry() {
+        this.meters = new ConcurrentHashMap<>();
+        this.timers = new ConcurrentHashMap<>();
+        this.gauges = new ConcurrentHashMap<>();
+        this.observers = new ConcurrentLinkedQueue<>();
+        this.latest = new MetricsSnapshot(System.currentTimeMillis(), Map.of());
+    }
+}
@@ -0,0 +1,20 @@
+package pl.edu.pg.eti.ksr.project.metrics;
+
+import java.util.Map;
+
+/**
+ * Values of all metrics taken at a single moment, published to the observers of the registry.
+ * @param time time of the sample in milliseconds since the epoch
+ * @param values values by their names, sorted by name
+ */
+public record MetricsSnapshot(long time, Map<String, Double> values) {
+
+    /**
+     * Gets value of a single metric.
+     * @param name name of the value
+     * @return value or NaN if there is no such metric
+     */
+    public double get(String name) {
+        return values.getOrDefault(name, Double.NaN);
+    }
+}
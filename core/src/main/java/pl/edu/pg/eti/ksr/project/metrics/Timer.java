@@ -0,0 +1,71 @@
+package pl.edu.pg.eti.ksr.project.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Statistics of measured durations, e.g. of handshakes, kept in milliseconds.
+ */
+public class Timer {
+
+    /**
+     * Number of recorded durations.
+     */
+    private long count;
+
+    /**
+     * Sum of recorded durations in nanoseconds.
+     */
+    private long sum;
+
+    /**
+     * Longest recorded duration in nanoseconds.
+     */
+    private long max;
+
+    /**
+     * Latest recorded duration in nanoseconds.
+     */
+    private long last;
+
+    /**
+     * Records a measured duration.
+     * @param nanos duration in nanoseconds
+     */
+    public synchronized void record(long nanos) {
+        count++;
+        sum += nanos;
+        max = Math.max(max, nanos);
+        last = nanos;
+    }
+
+    /**
+     * Records duration from a given start until now.
+     * @param start start time taken from System.nanoTime()
+     */
+    public void recordSince(long start) {
+        record(System.nanoTime() - start);
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized double getMean() {
+        return count > 0 ? millis(sum) / count : 0;
+    }
+
+    public synchronized double getMax() {
+        return millis(max);
+    }
+
+    public synchronized double getLast() {
+        return millis(last);
+    }
+
+    private static double millis(long nanos) {
+        return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    Timer() {
+    }
+}
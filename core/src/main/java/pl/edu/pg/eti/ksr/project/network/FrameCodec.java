@@ -0,0 +1,482 @@
+package pl.edu.pg.eti.ksr.project.network;
+
+import pl.edu.pg.eti.ksr.project.crypto.Transformation;
+import pl.edu.pg.eti.ksr.project.network.data.CommunicationInfo;
+import pl.edu.pg.eti.ksr.project.network.data.FileInfo;
+import pl.edu.pg.eti.ksr.project.network.data.Frame;
+import pl.edu.pg.eti.ksr.project.network.data.HandshakeInfo;
+import pl.edu.pg.eti.ksr.project.network.data.RelayInfo;
+import pl.edu.pg.eti.ksr.project.network.data.ResumeInfo;
+import pl.edu.pg.eti.ksr.project.network.data.SegmentInfo;
+import pl.edu.pg.eti.ksr.project.network.data.SessionInfo;
+import pl.edu.pg.eti.ksr.project.network.data.StripeInfo;
+import pl.edu.pg.eti.ksr.project.network.data.TicketInfo;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.X509EncodedKeySpec;
+
+/**
+ * Compact binary encoding of frames exchanged between clients.
+ *
+ * Every frame is written as a length prefixed record:
+ * =====================================
+ * int      length of the rest of the record
+ * byte     frame type (ordinal of Frame.Type)
+ * int      stream id
+ * byte     payload kind
+ * ...      payload
+ * =====================================
+ *
+ * Payloads of all protocol data objects are encoded by hand, so no class descriptors are sent and no
+ * references to already written objects are kept between frames.
+ * Payloads of any other type are not sent, and java serialization is never used, so a malicious client cannot
+ * make the receiver deserialize arbitrary objects. Records with unknown payload kinds are rejected.
+ */
+public final class FrameCodec {
+
+    /**
+     * Frame carries no data.
+     */
+    static final byte KIND_NULL = 0;
+
+    /**
+     * Frame carries raw byte array.
+     */
+    static final byte KIND_BYTES = 1;
+
+    /**
+     * Frame carries text string.
+     */
+    static final byte KIND_STRING = 2;
+
+    /**
+     * Frame carries communication info object.
+     */
+    static final byte KIND_COMMUNICATION_INFO = 3;
+
+    /**
+     * Frame carries session info object.
+     */
+    static final byte KIND_SESSION_INFO = 4;
+
+    /**
+     * Frame carries file info object.
+     */
+    static final byte KIND_FILE_INFO = 5;
+
+    // kind 6 was used by java serialized payloads, now rejected like any unknown kind
+
+    /**
+     * Frame carries segment info object.
+     */
+    static final byte KIND_SEGMENT_INFO = 7;
+
+    /**
+     * Frame carries stripe info object.
+     */
+    static final byte KIND_STRIPE_INFO = 8;
+
+    /**
+     * Frame carries single integer number.
+     */
+    static final byte KIND_INTEGER = 9;
+
+    /**
+     * Frame carries resume info object.
+     */
+    static final byte KIND_RESUME_INFO = 10;
+
+    /**
+     * Frame carries single long number.
+     */
+    static final byte KIND_LONG = 11;
+
+    /**
+     * Frame carries ticket info object.
+     */
+    static final byte KIND_TICKET_INFO = 12;
+
+    /**
+     * Frame carries handshake info object.
+     */
+    static final byte KIND_HANDSHAKE_INFO = 13;
+
+    /**
+     * Frame carries relay info object.
+     */
+    static final byte KIND_RELAY_INFO = 14;
+
+    /**
+     * Size of the length prefix in bytes.
+     */
+    public static final int LENGTH_SIZE = Integer.BYTES;
+
+    /**
+     * Size of the frame header following the length prefix (frame type, stream id and payload kind).
+     */
+    public static final int HEADER_SIZE = 2 + Integer.BYTES;
+
+    /**
+     * Upper bound for a single frame size.
+     * Protects receiver from allocating huge buffers after reading corrupted length.
+     */
+    public static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Frame types indexed by their ordinals.
+     */
+    private static final Frame.Type[] TYPES = Frame.Type.values();
+
+    /**
+     * Encodes frame to a byte array consisting of the length prefix and the frame record.
+     * @param frame frame to be encoded
+     * @return encoded frame ready to be written to the stream
+     * @throws IOException when payload cannot be encoded, NotSerializableException if its type is not supported
+     */
+    public static byte[] encode(Frame frame) throws IOException {
+        if (frame.data == null || frame.data instanceof byte[]) {
+            // fast path for the most common file data frames
+            byte[] data = (byte[]) frame.data;
+            int bodySize = HEADER_SIZE + (data == null ? 0 : Integer.BYTES + data.length);
+            ByteBuffer buffer = ByteBuffer.allocate(LENGTH_SIZE + bodySize);
+            buffer.putInt(bodySize);
+            buffer.put((byte) frame.frameType.ordinal());
+            buffer.putInt(frame.streamId);
+            if (data == null) {
+                buffer.put(KIND_NULL);
+            } else {
+                buffer.put(KIND_BYTES);
+                buffer.putInt(data.length);
+                buffer.put(data);
+            }
+            return buffer.array();
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0); // length placeholder
+        out.writeByte(frame.frameType.ordinal());
+        out.writeInt(frame.streamId);
+
+        if (frame.data instanceof Integer) {
+            out.writeByte(KIND_INTEGER);
+            out.writeInt((Integer) frame.data);
+        } else if (frame.data instanceof Long) {
+            out.writeByte(KIND_LONG);
+            out.writeLong((Long) frame.data);
+        } else if (frame.data instanceof String) {
+            out.writeByte(KIND_STRING);
+            writeString(out, (String) frame.data);
+        } else if (frame.data instanceof CommunicationInfo) {
+            out.writeByte(KIND_COMMUNICATION_INFO);
+            writeCommunicationInfo(out, (CommunicationInfo) frame.data);
+        } else if (frame.data instanceof SessionInfo) {
+            out.writeByte(KIND_SESSION_INFO);
+            writeSessionInfo(out, (SessionInfo) frame.data);
+        } else if (frame.data instanceof FileInfo) {
+            out.writeByte(KIND_FILE_INFO);
+            writeFileInfo(out, (FileInfo) frame.data);
+        } else if (frame.data instanceof SegmentInfo) {
+            out.writeByte(KIND_SEGMENT_INFO);
+            writeSegmentInfo(out, (SegmentInfo) frame.data);
+        } else if (frame.data instanceof StripeInfo) {
+            out.writeByte(KIND_STRIPE_INFO);
+            writeStripeInfo(out, (StripeInfo) frame.data);
+        } else if (frame.data instanceof ResumeInfo) {
+            out.writeByte(KIND_RESUME_INFO);
+            writeResumeInfo(out, (ResumeInfo) frame.data);
+        } else if (frame.data instanceof TicketInfo) {
+            out.writeByte(KIND_TICKET_INFO);
+            writeTicketInfo(out, (TicketInfo) frame.data);
+        } else if (frame.data instanceof HandshakeInfo) {
+            out.writeByte(KIND_HANDSHAKE_INFO);
+            writeHandshakeInfo(out, (HandshakeInfo) frame.data);
+        } else if (frame.data instanceof RelayInfo) {
+            out.writeByte(KIND_RELAY_INFO);
+            writeRelayInfo(out, (RelayInfo) frame.data);
+        } else {
+            throw new NotSerializableException("Unsupported payload type: " + frame.data.getClass().getName());
+        }
+        out.flush();
+
+        byte[] encoded = bytes.toByteArray();
+        ByteBuffer.wrap(encoded).putInt(encoded.length - LENGTH_SIZE);
+        return encoded;
+    }
+
+    /**
+     * Writes frame to a given stream.
+     * @param out output stream
+     * @param frame frame to be written
+     * @throws IOException when writing failed
+     */
+    public static void write(DataOutputStream out, Frame frame) throws IOException {
+        out.write(encode(frame));
+    }
+
+    /**
+     * Reads single frame record (without the length prefix) from a given stream.
+     * Stream stays aligned to the frame boundary, even if the record cannot be decoded later.
+     * @param in input stream
+     * @return frame record to be decoded
+     * @throws IOException when reading failed or record length is invalid
+     */
+    public static byte[] readRecord(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < HEADER_SIZE || length > MAX_FRAME_SIZE) {
+            throw new StreamCorruptedException("Invalid frame length: " + length);
+        }
+        byte[] record = new byte[length];
+        in.readFully(record);
+        return record;
+    }
+
+    /**
+     * Reads and decodes single frame from a given stream.
+     * @param in input stream
+     * @return decoded frame
+     * @throws IOException when reading or decoding failed
+     */
+    public static Frame read(DataInputStream in) throws IOException {
+        return decode(ByteBuffer.wrap(readRecord(in)));
+    }
+
+    /**
+     * Decodes frame record (without the length prefix).
+     * @param record frame record
+     * @return decoded frame
+     * @throws StreamCorruptedException when record is malformed
+     */
+    public static Frame decode(ByteBuffer record) throws StreamCorruptedException {
+        try {
+            int type = record.get();
+            if (type < 0 || type >= TYPES.length) {
+                throw new StreamCorruptedException("Unknown frame type: " + type);
+            }
+
+            Frame frame = new Frame();
+            frame.frameType = TYPES[type];
+            frame.streamId = record.getInt();
+
+            byte kind = record.get();
+            switch (kind) {
+                case KIND_NULL -> frame.data = null;
+                case KIND_BYTES -> frame.data = readBytes(record);
+                case KIND_STRING -> frame.data = readString(record);
+                case KIND_COMMUNICATION_INFO -> frame.data = readCommunicationInfo(record);
+                case KIND_SESSION_INFO -> frame.data = readSessionInfo(record);
+                case KIND_FILE_INFO -> frame.data = readFileInfo(record);
+                case KIND_SEGMENT_INFO -> frame.data = readSegmentInfo(record);
+                case KIND_STRIPE_INFO -> frame.data = readStripeInfo(record);
+                case KIND_INTEGER -> frame.data = record.getInt();
+                case KIND_RESUME_INFO -> frame.data = readResumeInfo(record);
+                case KIND_LONG -> frame.data = record.getLong();
+                case KIND_TICKET_INFO -> frame.data = readTicketInfo(record);
+                case KIND_HANDSHAKE_INFO -> frame.data = readHandshakeInfo(record);
+                case KIND_RELAY_INFO -> frame.data = readRelayInfo(record);
+                default -> throw new StreamCorruptedException("Unknown payload kind: " + kind);
+            }
+            return frame;
+
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new StreamCorruptedException("Truncated frame record");
+        }
+    }
+
+    private static void writeCommunicationInfo(DataOutputStream out, CommunicationInfo info) throws IOException {
+        writeString(out, info.getUsername());
+        writePublicKey(out, info.getUserPublicKey());
+        out.writeInt(info.getNum());
+        writeString(out, info.getChallenge());
+        writeBytes(out, info.getChallengeResponse());
+    }
+
+    private static CommunicationInfo readCommunicationInfo(ByteBuffer in) throws StreamCorruptedException {
+        return CommunicationInfo.builder()
+                .username(readString(in))
+                .userPublicKey(readPublicKey(in))
+                .num(in.getInt())
+                .challenge(readString(in))
+                .challengeResponse(readBytes(in))
+                .build();
+    }
+
+    private static void writeSessionInfo(DataOutputStream out, SessionInfo info) throws IOException {
+        writeBytes(out, info.getEncryptedSessionKey());
+        writeBytes(out, info.getIv());
+        writeString(out, info.getTransformation() == null ? null : info.getTransformation().name());
+    }
+
+    private static SessionInfo readSessionInfo(ByteBuffer in) throws StreamCorruptedException {
+        byte[] encryptedSessionKey = readBytes(in);
+        byte[] iv = readBytes(in);
+        String transformation = readString(in);
+        return SessionInfo.builder()
+                .encryptedSessionKey(encryptedSessionKey)
+                .iv(iv)
+                .transformation(transformation == null ? null : Transformation.valueOf(transformation))
+                .build();
+    }
+
+    private static void writeFileInfo(DataOutputStream out, FileInfo info) throws IOException {
+        writeBytes(out, info.getFileName());
+        writeBytes(out, info.getFileSize());
+        out.writeInt(info.getStripes());
+        writeString(out, info.getResumeId());
+        writeBytes(out, info.getHash());
+        out.writeLong(info.getOffset());
+        writeBytes(out, info.getContentKey());
+        writeBytes(out, info.getContentIv());
+        writeString(out, info.getContentTransformation() == null ? null : info.getContentTransformation().name());
+    }
+
+    private static FileInfo readFileInfo(ByteBuffer in) throws StreamCorruptedException {
+        FileInfo info = new FileInfo(readBytes(in), readBytes(in), in.getInt(), readString(in), readBytes(in),
+                in.getLong());
+        info.setContentKey(readBytes(in));
+        info.setContentIv(readBytes(in));
+        String transformation = readString(in);
+        info.setContentTransformation(transformation == null ? null : Transformation.valueOf(transformation));
+        return info;
+    }
+
+    private static void writeSegmentInfo(DataOutputStream out, SegmentInfo info) throws IOException {
+        out.writeLong(info.getOffset());
+        writeBytes(out, info.getData());
+    }
+
+    private static SegmentInfo readSegmentInfo(ByteBuffer in) throws StreamCorruptedException {
+        return new SegmentInfo(in.getLong(), readBytes(in));
+    }
+
+    private static void writeStripeInfo(DataOutputStream out, StripeInfo info) throws IOException {
+        out.writeInt(info.getPort());
+        writeBytes(out, info.getToken());
+    }
+
+    private static StripeInfo readStripeInfo(ByteBuffer in) throws StreamCorruptedException {
+        return new StripeInfo(in.getInt(), readBytes(in));
+    }
+
+    private static void writeResumeInfo(DataOutputStream out, ResumeInfo info) throws IOException {
+        writeString(out, info.getResumeId());
+        out.writeLong(info.getOffset());
+    }
+
+    private static ResumeInfo readResumeInfo(ByteBuffer in) throws StreamCorruptedException {
+        return new ResumeInfo(readString(in), in.getLong());
+    }
+
+    private static void writeTicketInfo(DataOutputStream out, TicketInfo info) throws IOException {
+        out.writeInt(info.getNum());
+        writeBytes(out, info.getTicketId());
+        writeBytes(out, info.getNonce());
+        writeBytes(out, info.getMac());
+    }
+
+    private static TicketInfo readTicketInfo(ByteBuffer in) throws StreamCorruptedException {
+        return new TicketInfo(in.getInt(), readBytes(in), readBytes(in), readBytes(in));
+    }
+
+    private static void writeHandshakeInfo(DataOutputStream out, HandshakeInfo info) throws IOException {
+        out.writeInt(info.getNum());
+        writeString(out, info.getUsername());
+        writePublicKey(out, info.getUserPublicKey());
+        writeBytes(out, info.getKeyFingerprint());
+        writeBytes(out, info.getPeerFingerprint());
+        writeBytes(out, info.getNonce());
+        writeString(out, info.getTransformation() == null ? null : info.getTransformation().name());
+        writePublicKey(out, info.getEphemeralKey());
+        writeBytes(out, info.getIv());
+        writeBytes(out, info.getSignature());
+    }
+
+    private static HandshakeInfo readHandshakeInfo(ByteBuffer in) throws StreamCorruptedException {
+        HandshakeInfo.HandshakeInfoBuilder builder = HandshakeInfo.builder()
+                .num(in.getInt())
+                .username(readString(in))
+                .userPublicKey(readPublicKey(in))
+                .keyFingerprint(readBytes(in))
+                .peerFingerprint(readBytes(in))
+                .nonce(readBytes(in));
+        String transformation = readString(in);
+        return builder
+                .transformation(transformation == null ? null : Transformation.valueOf(transformation))
+                .ephemeralKey(readPublicKey(in))
+                .iv(readBytes(in))
+                .signature(readBytes(in))
+                .build();
+    }
+
+    private static void writeRelayInfo(DataOutputStream out, RelayInfo info) throws IOException {
+        writeString(out, info.getUsername());
+        writeString(out, info.getPeer());
+    }
+
+    private static RelayInfo readRelayInfo(ByteBuffer in) throws StreamCorruptedException {
+        return new RelayInfo(readString(in), readString(in));
+    }
+
+    private static void writePublicKey(DataOutputStream out, PublicKey key) throws IOException {
+        if (key == null) {
+            writeString(out, null);
+            return;
+        }
+        writeString(out, key.getAlgorithm());
+        writeBytes(out, key.getEncoded());
+    }
+
+    private static PublicKey readPublicKey(ByteBuffer in) throws StreamCorruptedException {
+        String algorithm = readString(in);
+        if (algorithm == null) return null;
+
+        byte[] encoded = readBytes(in);
+        try {
+            return KeyFactory.getInstance(algorithm).generatePublic(new X509EncodedKeySpec(encoded));
+        } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
+            throw new StreamCorruptedException("Invalid public key: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes nullable byte array as its length followed by contents, length -1 stands for null.
+     */
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static byte[] readBytes(ByteBuffer in) throws StreamCorruptedException {
+        int length = in.getInt();
+        if (length == -1) return null;
+        if (length < 0 || length > in.remaining()) {
+            throw new StreamCorruptedException("Invalid field length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return bytes;
+    }
+
+    private static void writeString(DataOutputStream out, String text) throws IOException {
+        writeBytes(out, text == null ? null : text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readString(ByteBuffer in) throws StreamCorruptedException {
+        byte[] bytes = readBytes(in);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private FrameCodec() {
+    }
+}
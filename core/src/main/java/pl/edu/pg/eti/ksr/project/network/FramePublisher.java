@@ -0,0 +1,181 @@
+package pl.edu.pg.eti.ksr.project.network;
+
+import pl.edu.pg.eti.ksr.project.concurrent.ExecutionMode;
+import pl.edu.pg.eti.ksr.project.network.data.Frame;
+import pl.edu.pg.eti.ksr.project.observer.Observer;
+
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.util.Objects;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Publisher of frames received by a network manager, receiving only as many frames as the subscriber requested.
+ *
+ * Frames are received by a thread of the publisher and passed to the subscriber in order of receiving.
+ * While there is no demand nothing is read from the connection, so a fast sender is held back by the transport
+ * instead of filling memory of the receiver. While the manager is not connected, the thread waits for its status
+ * to change instead of calling receive() in a loop.
+ *
+ * Publisher serves a single subscriber, across reconnections of the manager, until the subscription is cancelled.
+ * Subscriber is never completed, as the manager may always connect again.
+ */
+public class FramePublisher implements Flow.Publisher<Frame> {
+
+    /**
+     * Time in nanoseconds between checks of the subscription state while waiting.
+     */
+    private static final long PARK_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * Subscription given to rejected subscribers, ignoring all calls.
+     */
+    private static final Flow.Subscription REJECTED = new Flow.Subscription() {
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    };
+
+    /**
+     * Manager the frames are received from.
+     */
+    private final NetworkManager manager;
+
+    /**
+     * True once a subscriber was accepted.
+     */
+    private final AtomicBoolean subscribed;
+
+    /**
+     * Subscription of the only subscriber, receiving frames on its own thread.
+     */
+    private class FrameSubscription implements Flow.Subscription, Runnable {
+
+        private final Flow.Subscriber<? super Frame> subscriber;
+
+        /**
+         * Number of frames requested and not delivered yet.
+         */
+        private final AtomicLong demand;
+
+        /**
+         * Set when the subscription is cancelled or failed, the thread finishes.
+         */
+        private volatile boolean cancelled;
+
+        /**
+         * Set when the subscriber requested a non-positive number of frames.
+         */
+        private volatile boolean invalid;
+
+        /**
+         * Receiving thread, null until started.
+         */
+        private volatile Thread thread;
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) invalid = true;
+            else demand.getAndUpdate(d -> d + n < 0 ? Long.MAX_VALUE : d + n);
+            wake();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            Thread current = thread;
+            // receiving thread may be blocked in receive(), which some managers leave on interrupt
+            if (current != null && current != Thread.currentThread()) current.interrupt();
+        }
+
+        /**
+         * Wakes the receiving thread up, after new demand or a status change of the manager.
+         */
+        private void wake() {
+            Thread current = thread;
+            if (current != null) LockSupport.unpark(current);
+        }
+
+        @Override
+        public void run() {
+            Observer statusChanged = o -> wake();
+            manager.attach(statusChanged);
+            try {
+                while (!cancelled) {
+                    if (invalid) {
+                        cancelled = true;
+                        subscriber.onError(new IllegalArgumentException("Number of requested frames must be positive"));
+                        return;
+                    }
+                    if (demand.get() == 0 || !manager.isConnected()) {
+                        LockSupport.parkNanos(this, PARK_TIMEOUT);
+                        continue;
+                    }
+
+                    Frame frame = new Frame();
+                    try {
+                        if (!manager.receive(frame)) continue;
+                    } catch (InterruptedIOException e) {
+                        continue;
+                    } catch (SocketException e) {
+                        // connection is broken, waiting for the next one
+                        manager.disconnect();
+                        continue;
+                    }
+                    if (cancelled) return;
+
+                    demand.decrementAndGet();
+                    try {
+                        subscriber.onNext(frame);
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                        cancelled = true;
+                    }
+                }
+            } finally {
+                manager.detach(statusChanged);
+            }
+        }
+
+        FrameSubscription(Flow.Subscriber<? super Frame> subscriber) {
+            this.subscriber = subscriber;
+            this.demand = new AtomicLong(0);
+        }
+    }
+
+    /**
+     * Subscribes the only subscriber and starts receiving frames once it requests them.
+     * Any further subscriber is rejected with IllegalStateException.
+     * @param subscriber subscriber of received frames
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super Frame> subscriber) {
+        Objects.requireNonNull(subscriber);
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(REJECTED);
+            subscriber.onError(new IllegalStateException("Frames can be published to a single subscriber"));
+            return;
+        }
+
+        FrameSubscription subscription = new FrameSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        subscription.thread = ExecutionMode.start(subscription, "frame-publisher");
+    }
+
+    /**
+     * Creates publisher of frames received by a manager.
+     * @param manager manager the frames are received from
+     */
+    public FramePublisher(NetworkManager manager) {
+        this.manager = manager;
+        this.subscribed = new AtomicBoolean(false);
+    }
+}
@@ -0,0 +1,308 @@
+package pl.edu.pg.eti.ksr.project.network;
+
+import pl.edu.pg.eti.ksr.project.concurrent.ExecutionMode;
+import pl.edu.pg.eti.ksr.project.network.data.Frame;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single writer of a connection, owning its output stream and writing encoded frames queued by many senders.
+ *
+ * Frames are always written whole, so frames of different streams never interleave within a record.
+ * Interactive frames (see Frame.Type.isInteractive()) preempt bulk frames: they are taken from the queue first,
+ * so a chat message waits for at most one bulk frame that is already being written. Frames of the same priority
+ * are written in order of queueing, which interleaves concurrent streams frame by frame.
+ *
+ * Interactive senders never wait, even when the socket buffer is full. Bulk senders wait only when bulk frames
+ * queued and not written yet exceed BULK_LIMIT bytes, which keeps the producers of bulk data back-pressured.
+ *
+ * Stream is expected to be buffered with COALESCE_SIZE bytes. Frames are coalesced in the buffer while more
+ * of them are queued, the buffer is flushed after every interactive frame and whenever the queue runs empty,
+ * so a burst of small frames takes a few large socket writes without delaying any frame.
+ *
+ * Frames queued with writeAsync() are never waited for, their futures complete once the frames are flushed
+ * to the socket, which is the back-pressure signal of asynchronous senders.
+ */
+class FrameScheduler implements Runnable {
+
+    /**
+     * Size of the buffer frames are coalesced in, larger frames are written directly.
+     */
+    static final int COALESCE_SIZE = 64 * 1024;
+
+    /**
+     * Largest number of bytes of queued bulk frames, senders of further frames wait.
+     */
+    static final int BULK_LIMIT = 4 * COALESCE_SIZE;
+
+    /**
+     * Time in milliseconds between checks of the running flag while waiting.
+     */
+    private static final long POLL_TIMEOUT = 100;
+
+    /**
+     * Frame waiting to be written.
+     * @param encoded encoded frame
+     * @param interactive true if the frame preempts bulk frames
+     * @param order queueing order
+     * @param reserved bytes of the bulk limit taken by the frame
+     * @param flushed future completed when the frame is flushed, null if nobody waits for it
+     */
+    private record Pending(byte[] encoded, boolean interactive, long order, int reserved,
+                           CompletableFuture<Boolean> flushed) implements Comparable<Pending> {
+
+        @Override
+        public int compareTo(Pending other) {
+            if (interactive != other.interactive) return interactive ? -1 : 1;
+            return Long.compare(order, other.order);
+        }
+    }
+
+    /**
+     * Observer of written frames.
+     */
+    interface Listener {
+
+        /**
+         * Called by the writer after a frame is written.
+         * @param size size of the written frame
+         */
+        void written(int size);
+
+        /**
+         * Called by the writer when writing failed, the connection is unusable.
+         * @param e cause of the failure
+         */
+        void failed(IOException e);
+    }
+
+    /**
+     * Buffered output stream of the connection.
+     */
+    private final OutputStream out;
+
+    /**
+     * Observer of written frames.
+     */
+    private final Listener listener;
+
+    /**
+     * Frames waiting to be written, interactive frames first.
+     */
+    private final PriorityBlockingQueue<Pending> queue;
+
+    /**
+     * Bytes of bulk frames which may still be queued.
+     */
+    private final Semaphore bulkBytes;
+
+    /**
+     * Order given to the next queued frame.
+     */
+    private final AtomicLong nextOrder;
+
+    /**
+     * Writer running flag.
+     */
+    private final AtomicBoolean running;
+
+    /**
+     * Writer thread, null if not started.
+     */
+    private Thread writer;
+
+    /**
+     * Futures of frames written to the buffer but not flushed yet, used by the writer thread only.
+     */
+    private final List<CompletableFuture<Boolean>> unflushed;
+
+    /**
+     * Queues encoded frame to be written, according to the frame priority.
+     * @param type type of the frame
+     * @param encoded encoded frame
+     * @return true if queued, false if the writer is stopped
+     * @throws InterruptedIOException when interrupted while waiting for space of bulk frames
+     */
+    boolean write(Frame.Type type, byte[] encoded) throws InterruptedIOException {
+        if (!running.get()) return false;
+
+        boolean interactive = type.isInteractive();
+        int reserved = 0;
+        if (!interactive) {
+            reserved = Math.min(encoded.length, BULK_LIMIT);
+            try {
+                while (!bulkBytes.tryAcquire(reserved, POLL_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    if (!running.get()) return false;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Frame write interrupted");
+            }
+        }
+
+        enqueue(new Pending(encoded, interactive, nextOrder.getAndIncrement(), reserved, null));
+        return true;
+    }
+
+    /**
+     * Queues encoded frame to be written without waiting, even if the bulk limit is reached.
+     * Bulk frames queued past the limit do not take its bytes, so they do not hold back blocking senders.
+     * @param type type of the frame
+     * @param encoded encoded frame
+     * @return future completed with true once the frame is flushed, or false if the writer stopped before
+     */
+    CompletableFuture<Boolean> writeAsync(Frame.Type type, byte[] encoded) {
+        CompletableFuture<Boolean> flushed = new CompletableFuture<>();
+        if (!running.get()) {
+            flushed.complete(false);
+            return flushed;
+        }
+
+        boolean interactive = type.isInteractive();
+        int reserved = 0;
+        if (!interactive && bulkBytes.tryAcquire(Math.min(encoded.length, BULK_LIMIT))) {
+            reserved = Math.min(encoded.length, BULK_LIMIT);
+        }
+
+        enqueue(new Pending(encoded, interactive, nextOrder.getAndIncrement(), reserved, flushed));
+        return flushed;
+    }
+
+    /**
+     * Waits until all frames queued so far are written and flushed, e.g. before the connection is closed.
+     * @param timeout maximal time to wait in milliseconds
+     * @return true if all frames were flushed, false if the writer stopped, the time ran out or the caller is
+     * the writer itself
+     * @throws InterruptedException when interrupted while waiting
+     */
+    boolean drain(long timeout) throws InterruptedException {
+        if (!running.get() || Thread.currentThread() == writer) return false;
+
+        // empty marker queued after all bulk frames, interactive frames are taken before it anyway
+        CompletableFuture<Boolean> flushed = new CompletableFuture<>();
+        enqueue(new Pending(new byte[0], false, nextOrder.getAndIncrement(), 0, flushed));
+        try {
+            return flushed.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Closes the connection without waiting for it. Frames queued so far are written out by the writer thread,
+     * which then stops and runs the closer. If they are not written within the timeout, e.g. because the other
+     * client stopped reading, the writer is stopped, the frames are dropped and the closer runs anyway.
+     * @param timeout maximal time in milliseconds to linger for queued frames
+     * @param closer closes the connection, run once
+     */
+    void close(long timeout, Runnable closer) {
+        CompletableFuture<Boolean> flushed = new CompletableFuture<>();
+        flushed.completeOnTimeout(false, timeout, TimeUnit.MILLISECONDS).whenComplete((done, e) -> {
+            stop();
+            closer.run();
+        });
+        if (running.get()) {
+            // empty marker queued after all bulk frames, like the one of drain()
+            enqueue(new Pending(new byte[0], false, nextOrder.getAndIncrement(), 0, flushed));
+        } else {
+            flushed.complete(false);
+        }
+    }
+
+    /**
+     * Puts frame into the queue, dropping it if the writer stopped meanwhile.
+     * @param pending frame to be written
+     */
+    private void enqueue(Pending pending) {
+        queue.put(pending);
+        if (!running.get()) drop();
+    }
+
+    /**
+     * Drops frames not written yet, completing their futures with false.
+     */
+    private void drop() {
+        List<Pending> dropped = new ArrayList<>();
+        queue.drainTo(dropped);
+        for (Pending pending : dropped) {
+            if (pending.flushed() != null) pending.flushed().complete(false);
+        }
+    }
+
+    /**
+     * Starts the writer thread.
+     */
+    void start() {
+        running.set(true);
+        writer = ExecutionMode.start(this, "tcp-writer");
+    }
+
+    /**
+     * Stops the writer thread, frames not written yet are dropped.
+     */
+    void stop() {
+        running.set(false);
+        drop();
+        if (writer != null && writer != Thread.currentThread()) writer.interrupt();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running.get()) {
+                Pending next = queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+                if (next == null) continue;
+                // taken after stopping, completed below like the frames left in the queue
+                if (next.flushed() != null) unflushed.add(next.flushed());
+                if (!running.get()) break;
+
+                boolean marker = next.encoded().length == 0;
+                if (!marker) out.write(next.encoded());
+                if (next.reserved() > 0) bulkBytes.release(next.reserved());
+                if (next.interactive() || marker || queue.isEmpty()) {
+                    out.flush();
+                    for (CompletableFuture<Boolean> flushed : unflushed) flushed.complete(true);
+                    unflushed.clear();
+                }
+                if (!marker) listener.written(next.encoded().length);
+            }
+        } catch (InterruptedException e) {
+            // stopped together with the connection
+        } catch (IOException e) {
+            if (running.get()) listener.failed(e);
+        } finally {
+            // frames queued after the writer is gone would never be written
+            running.set(false);
+            for (CompletableFuture<Boolean> flushed : unflushed) flushed.complete(false);
+            unflushed.clear();
+            drop();
+        }
+    }
+
+    /**
+     * Creates writer of a connection, started by calling start().
+     * @param out buffered output stream of the connection
+     * @param listener observer of written frames
+     */
+    FrameScheduler(OutputStream out, Listener listener) {
+        this.out = out;
+        this.listener = listener;
+        this.queue = new PriorityBlockingQueue<>();
+        this.bulkBytes = new Semaphore(BULK_LIMIT);
+        this.nextOrder = new AtomicLong(0);
+        this.running = new AtomicBoolean(false);
+        this.unflushed = new ArrayList<>();
+    }
+}
@@ -0,0 +1,190 @@
+package pl.edu.pg.eti.ksr.project.network;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Measured properties of the network path to a single host, used for sizing socket buffers and pacing datagrams.
+ *
+ * Keeps smoothed round trip time and bandwidth, both updated with exponentially weighted moving averages
+ * (round trip time with the same 1/8 gain as tcp does). Bandwidth is the delivery rate confirmed by the receiver,
+ * not the rate of writes into the socket, which only shows how fast the send buffer takes data.
+ * Estimators are shared by all connections to the same host, so connections opened later start with the values
+ * measured by the earlier ones.
+ */
+public class LinkEstimator {
+
+    /**
+     * Round trip time in nanoseconds assumed before the first measurement.
+     */
+    public static final long DEFAULT_RTT = 10_000_000L;
+
+    /**
+     * Bandwidth in bytes per second assumed before the first measurement, 100 Mbit/s.
+     */
+    public static final long DEFAULT_BANDWIDTH = 12_500_000L;
+
+    /**
+     * Minimal number of bytes confirmed within a single bandwidth sample.
+     */
+    static final long SAMPLE_BYTES = 1024 * 1024;
+
+    /**
+     * Time in nanoseconds without confirmations after which the current bandwidth sample is dropped,
+     * as the sender had nothing to send.
+     */
+    static final long SAMPLE_IDLE = 1_000_000_000L;
+
+    /**
+     * Gain of a new round trip time sample.
+     */
+    private static final double RTT_GAIN = 1.0 / 8;
+
+    /**
+     * Gain of a new bandwidth sample.
+     */
+    private static final double BANDWIDTH_GAIN = 1.0 / 4;
+
+    /**
+     * Estimators of all hosts by their addresses.
+     */
+    private static final Map<String, LinkEstimator> hosts = new ConcurrentHashMap<>();
+
+    /**
+     * Smoothed round trip time in nanoseconds.
+     */
+    private double rtt;
+
+    /**
+     * Smoothed bandwidth in bytes per second.
+     */
+    private double bandwidth;
+
+    /**
+     * True once the first round trip time sample has been recorded.
+     */
+    private boolean rttMeasured;
+
+    /**
+     * True once the first bandwidth sample has been recorded.
+     */
+    private boolean bandwidthMeasured;
+
+    /**
+     * True while a bandwidth sample is taken.
+     */
+    private boolean sampling;
+
+    /**
+     * Start time of the current bandwidth sample in nanoseconds.
+     */
+    private long sampleStart;
+
+    /**
+     * Time of the latest confirmation of the current bandwidth sample in nanoseconds.
+     */
+    private long sampleLast;
+
+    /**
+     * Number of bytes confirmed within the current bandwidth sample.
+     */
+    private long sampleBytes;
+
+    /**
+     * Gets estimator of the path to a given host.
+     * @param host address of the host, null gives a new estimator not shared with anyone
+     * @return estimator of the host
+     */
+    public static LinkEstimator forHost(String host) {
+        if (host == null) return new LinkEstimator();
+        return hosts.computeIfAbsent(host, h -> new LinkEstimator());
+    }
+
+    /**
+     * Records measured round trip time.
+     * @param nanos round trip time in nanoseconds
+     */
+    public synchronized void recordRtt(long nanos) {
+        if (nanos <= 0) return;
+        if (!rttMeasured) {
+            rtt = nanos;
+            rttMeasured = true;
+        } else {
+            rtt += RTT_GAIN * (nanos - rtt);
+        }
+    }
+
+    /**
+     * Records bytes confirmed by the receiver as delivered, completing a bandwidth sample once enough data
+     * was confirmed. Confirmation starting a sample only marks its start, bytes confirmed by it were delivered
+     * before the sample.
+     * @param bytes number of delivered bytes
+     * @param now time of the confirmation in nanoseconds
+     * @return true if a new bandwidth sample was completed
+     */
+    public synchronized boolean recordDelivered(long bytes, long now) {
+        if (!sampling || now - sampleLast > SAMPLE_IDLE) {
+            sampling = true;
+            sampleStart = now;
+            sampleLast = now;
+            sampleBytes = 0;
+            return false;
+        }
+        sampleBytes += bytes;
+        sampleLast = now;
+
+        long elapsed = now - sampleStart;
+        if (sampleBytes < SAMPLE_BYTES || elapsed <= 0) return false;
+
+        double sample = sampleBytes * 1e9 / elapsed;
+        if (!bandwidthMeasured) {
+            bandwidth = sample;
+            bandwidthMeasured = true;
+        } else {
+            bandwidth += BANDWIDTH_GAIN * (sample - bandwidth);
+        }
+        // next sample starts where this one ended
+        sampleStart = now;
+        sampleBytes = 0;
+        return true;
+    }
+
+    /**
+     * Checks if bandwidth of the path has been measured.
+     * @return true once the first bandwidth sample has been recorded
+     */
+    public synchronized boolean isBandwidthMeasured() {
+        return bandwidthMeasured;
+    }
+
+    /**
+     * Gets smoothed round trip time.
+     * @return round trip time in nanoseconds
+     */
+    public synchronized long getRtt() {
+        return rttMeasured ? (long) rtt : DEFAULT_RTT;
+    }
+
+    /**
+     * Gets smoothed bandwidth.
+     * @return bandwidth in bytes per second
+     */
+    public synchronized long getBandwidth() {
+        return bandwidthMeasured ? (long) bandwidth : DEFAULT_BANDWIDTH;
+    }
+
+    /**
+     * Gets bandwidth-delay product, amount of data in flight needed to keep the path busy.
+     * @return product in bytes
+     */
+    public synchronized long getBandwidthDelayProduct() {
+        return (long) ((double) getBandwidth() * getRtt() / 1e9);
+    }
+
+    LinkEstimator() {
+        this.rttMeasured = false;
+        this.bandwidthMeasured = false;
+        this.sampling = false;
+        this.sampleBytes = 0;
+    }
+}
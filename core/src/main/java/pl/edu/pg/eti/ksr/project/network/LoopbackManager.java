@@ -0,0 +1,292 @@
+package pl.edu.pg.eti.ksr.project.network;
+
+import lombok.Getter;
+import pl.edu.pg.eti.ksr.project.network.data.Frame;
+import pl.edu.pg.eti.ksr.project.observer.Observer;
+import pl.edu.pg.eti.ksr.project.observer.Subject;
+
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Network manager implementation connecting two managers of the same process, without any sockets.
+ *
+ * Servers are registered under loopback ports, which are separate from real ports, so tests do not depend on
+ * free ports of the machine. Connected managers hand frames over through lock-free queues. Frames are neither
+ * encoded nor copied, the receiver gets the very objects passed to send(), so their data must not be changed
+ * after sending. Time spent on the communication is the cost of the protocol and cryptography only.
+ *
+ * Status changes the same way as for tcp manager: the other client notices disconnection when it tries
+ * to receive the next frame.
+ */
+public class LoopbackManager implements NetworkManager, Subject {
+
+    /**
+     * Address reported for the other side of every loopback connection.
+     */
+    public static final String HOST = "loopback";
+
+    /**
+     * First port given to servers listening on port 0.
+     */
+    private static final int FIRST_EPHEMERAL_PORT = 49152;
+
+    /**
+     * Longest time in nanoseconds a receiver stays parked before checking the connection again.
+     */
+    private static final long PARK_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * Listening managers, by their loopback ports.
+     */
+    private static final Map<Integer, LoopbackManager> servers = new ConcurrentHashMap<>();
+
+    /**
+     * Next port given to a server listening on port 0.
+     */
+    private static final AtomicInteger nextPort = new AtomicInteger(FIRST_EPHEMERAL_PORT);
+
+    /**
+     * List of all observers subscribing to this object.
+     */
+    private final Queue<Observer> observers;
+
+    /**
+     * Frames sent by the other client and not received yet.
+     */
+    private final Queue<Frame> inbox;
+
+    /**
+     * Current status of the manager.
+     */
+    @Getter
+    private volatile Status status;
+
+    /**
+     * Port the server is registered under, -1 if not listening.
+     */
+    private volatile int listeningPort;
+
+    /**
+     * Port of the connection, the port of the server for both clients.
+     */
+    private volatile int port;
+
+    /**
+     * Connected manager, null if not connected.
+     */
+    private volatile LoopbackManager peer;
+
+    /**
+     * Set when the other client disconnected, frames sent before are still received.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Thread parked in receive() waiting for frames, null if none.
+     */
+    private volatile Thread receiver;
+
+    /**
+     * Internal method used for changing manager status and publishing new status to the observers.
+     * @param status new status
+     */
+    private void changeStatus(Status status) {
+        if (status != this.status) {
+            this.status = status;
+            notifyObs(this.status);
+        }
+    }
+
+    @Override
+    public void attach(Observer observer) {
+        this.observers.add(observer);
+    }
+
+    @Override
+    public void detach(Observer observer) {
+        this.observers.remove(observer);
+    }
+
+    @Override
+    public void notifyObs(Object o) {
+        for (Observer observer : this.observers) {
+            observer.update(o);
+        }
+    }
+
+    @Override
+    public int getListeningPort() {
+        return status == Status.LISTENING ? listeningPort : -1;
+    }
+
+    @Override
+    public int getPort() {
+        return status == Status.CONNECTED ? port : -1;
+    }
+
+    @Override
+    public String getHost() {
+        return status == Status.CONNECTED ? HOST : null;
+    }
+
+    @Override
+    public synchronized boolean listenOn(int port) {
+        if (status == Status.CONNECTED) return false;
+        if (status == Status.LISTENING) stop();
+
+        int chosen = port;
+        if (chosen == 0) {
+            do {
+                chosen = nextPort.getAndIncrement();
+            } while (servers.putIfAbsent(chosen, this) != null);
+        } else if (servers.putIfAbsent(chosen, this) != null) {
+            return false;
+        }
+
+        listeningPort = chosen;
+        changeStatus(Status.LISTENING);
+        return true;
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (status != Status.LISTENING) return;
+        servers.remove(listeningPort, this);
+        listeningPort = -1;
+        changeStatus(Status.READY);
+    }
+
+    @Override
+    public boolean isListening() {
+        return status == Status.LISTENING;
+    }
+
+    /**
+     * Accepts connection of a client, the way the server socket would.
+     * @param client connecting manager
+     * @return true if accepted, false if the server stopped listening in the meantime
+     */
+    private synchronized boolean accept(LoopbackManager client) {
+        if (status != Status.LISTENING || !servers.remove(listeningPort, this)) return false;
+
+        open(client, listeningPort);
+        listeningPort = -1;
+        return true;
+    }
+
+    /**
+     * Starts connection with a given manager.
+     * @param other connected manager
+     * @param port port of the connection
+     */
+    private void open(LoopbackManager other, int port) {
+        inbox.clear();
+        closed = false;
+        this.port = port;
+        this.peer = other;
+    }
+
+    @Override
+    public boolean connect(String ip, int port) {
+        if (status == Status.LISTENING) stop();
+        if (status == Status.CONNECTED) disconnect();
+
+        LoopbackManager server = servers.get(port);
+        if (server == null || server == this) return false;
+
+        // both sides are ready to receive before any of them can send
+        open(server, port);
+        if (!server.accept(this)) {
+            peer = null;
+            return false;
+        }
+        server.changeStatus(Status.CONNECTED);
+        changeStatus(Status.CONNECTED);
+        return true;
+    }
+
+    @Override
+    public void disconnect() {
+        LoopbackManager other;
+        synchronized (this) {
+            if (status != Status.CONNECTED) return;
+            other = peer;
+            peer = null;
+        }
+
+        if (other != null) {
+            other.closed = true;
+            LockSupport.unpark(other.receiver);
+        }
+        inbox.clear();
+        changeStatus(Status.READY);
+    }
+
+    @Override
+    public boolean isConnected() {
+        return status == Status.CONNECTED;
+    }
+
+    /**
+     * Hands frame over to the connected client.
+     * Safe to be called from many threads, frames are received in order of sending.
+     * @param frame frame to be sent, not copied
+     * @return true if frame was sent
+     */
+    @Override
+    public boolean send(Frame frame) {
+        LoopbackManager other = peer;
+        if (status != Status.CONNECTED || other == null || closed) return false;
+
+        other.inbox.offer(frame);
+        Thread waiting = other.receiver;
+        if (waiting != null) LockSupport.unpark(waiting);
+        return true;
+    }
+
+    /**
+     * Receives the next frame sent by the connected client, waiting until there is one.
+     * Disconnects if the other client disconnected and all its frames were received.
+     * @param frame object for data to be written to
+     * @return true if frame was received, false if not connected
+     * @throws InterruptedIOException when the waiting thread was interrupted
+     */
+    @Override
+    public boolean receive(Frame frame) throws InterruptedIOException {
+        Frame received;
+        receiver = Thread.currentThread();
+        try {
+            while ((received = inbox.poll()) == null) {
+                if (status != Status.CONNECTED) return false;
+                if (closed) {
+                    disconnect();
+                    return false;
+                }
+                LockSupport.parkNanos(this, PARK_TIMEOUT);
+                if (Thread.interrupted()) throw new InterruptedIOException("Receiving interrupted");
+            }
+        } finally {
+            receiver = null;
+        }
+
+        frame.frameType = received.frameType;
+        frame.data = received.data;
+        frame.streamId = received.streamId;
+        return true;
+    }
+
+    public LoopbackManager() {
+        this.status = Status.READY;
+        this.observers = new ConcurrentLinkedQueue<>();
+        this.inbox = new ConcurrentLinkedQueue<>();
+        this.listeningPort = -1;
+        this.port = -1;
+    }
+}
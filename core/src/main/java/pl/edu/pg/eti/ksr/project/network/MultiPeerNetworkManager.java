@@ -0,0 +1,44 @@
+package pl.edu.pg.eti.ksr.project.network;
+
+import pl.edu.pg.eti.ksr.project.network.data.Frame;
+
+import java.util.Set;
+
+/**
+ * Network manager able to hold many simultaneous connections.
+ *
+ * Every connection is identified by a peer id assigned when the connection is established.
+ * Frames received through receive() can be associated with the sending peer by passing PeerFrame object.
+ * Frames sent through send(Frame) are delivered to all connected peers.
+ */
+public interface MultiPeerNetworkManager extends NetworkManager {
+
+    /**
+     * Gets ids of all currently connected peers.
+     * @return set of peer ids
+     */
+    Set<Integer> getPeers();
+
+    /**
+     * Gets remote port of a given peer.
+     * @param peerId peer id
+     * @return remote port of the peer connection or -1 if peer is not connected
+     */
+    int getPort(int peerId);
+
+    /**
+     * Sends frame to a given peer.
+     * If sending frame was unsuccessful, disconnects that peer.
+     * @param peerId peer id
+     * @param frame frame to be sent
+     * @return true if frame was accepted for sending, false if peer is not connected
+     */
+    boolean send(int peerId, Frame frame);
+
+    /**
+     * Terminates connection with a given peer.
+     * Other connections are not affected.
+     * @param peerId peer id
+     */
+    void disconnect(int peerId);
+}
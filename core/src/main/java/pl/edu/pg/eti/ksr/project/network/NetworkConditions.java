@@ -0,0 +1,68 @@
+package pl.edu.pg.eti.ksr.project.network;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Conditions of a simulated link, applied to frames sent through a simulated network manager.
+ * Fields left out of the builder leave the link unaffected.
+ */
+@Getter
+@Builder(toBuilder = true)
+public class NetworkConditions {
+
+    /**
+     * Link without any simulated conditions.
+     */
+    public static final NetworkConditions NONE = NetworkConditions.builder().build();
+
+    /**
+     * Typical long distance broadband link: 40 ms one way, 5 ms of jitter and 50 Mbit/s.
+     */
+    public static final NetworkConditions WAN = NetworkConditions.builder()
+            .latency(40)
+            .jitter(5)
+            .bandwidth(50_000_000 / 8)
+            .build();
+
+    /**
+     * Mobile link: 80 ms one way, 30 ms of jitter, 5 Mbit/s, some frames of different streams reordered.
+     */
+    public static final NetworkConditions MOBILE = NetworkConditions.builder()
+            .latency(80)
+            .jitter(30)
+            .bandwidth(5_000_000 / 8)
+            .reorderRate(0.01)
+            .reorderDelay(50)
+            .build();
+
+    /**
+     * One way delay of every frame in milliseconds.
+     */
+    private final long latency;
+
+    /**
+     * Largest random delay in milliseconds added to the latency.
+     */
+    private final long jitter;
+
+    /**
+     * Capacity of the link in bytes per second, 0 if unlimited.
+     */
+    private final long bandwidth;
+
+    /**
+     * Probability of delaying a frame, so frames of other streams sent later overtake it.
+     */
+    private final double reorderRate;
+
+    /**
+     * Additional delay of a reordered frame in milliseconds.
+     */
+    private final long reorderDelay;
+
+    /**
+     * Probability of losing the connection when a frame is delivered.
+     */
+    private final double disconnectRate;
+}
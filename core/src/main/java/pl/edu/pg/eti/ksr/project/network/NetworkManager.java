@@ -1,14 +1,18 @@
 package pl.edu.pg.eti.ksr.project.network;
 
 import pl.edu.pg.eti.ksr.project.network.data.Frame;
+import pl.edu.pg.eti.ksr.project.observer.Subject;
 
 import java.io.InterruptedIOException;
 import java.net.SocketException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
 
 /**
  * Basic functionality of Network Manager.
+ * Every status change is published to the observers of the manager.
  */
-public interface NetworkManager {
+public interface NetworkManager extends Subject {
 
     enum Status {
 
@@ -36,6 +40,22 @@ public interface NetworkManager {
      */
     int getPort();
 
+    /**
+     * Gets address of the connected client.
+     * @return address of the other side of the connection or null if not connected
+     */
+    default String getHost() {
+        return null;
+    }
+
+    /**
+     * Gets estimator of the path to the connected client.
+     * @return link estimator or null if not connected or the path is not measured
+     */
+    default LinkEstimator getLink() {
+        return null;
+    }
+
     /**
      * Starts server on given port.
      * @param port server port
@@ -76,6 +96,8 @@ public interface NetworkManager {
     /**
      * Disconnects from server, if connected.
      * If other client connected, terminates the connection.
+     * Never waits for the connection, managers with their own writer let it write out frames sent before
+     * and close the connection in the background.
      */
     void disconnect();
 
@@ -87,12 +109,31 @@ public interface NetworkManager {
 
     /**
      * Sends frame if connected.
-     * If sending frame was unsuccessful, disconnects.
+     * Managers with their own writer only queue the frame, a failure to write it later is not reported
+     * to the caller, the manager disconnects instead.
      * @param frame frame to be sent
-     * @return true if sent successfully, false otherwise
+     * @return true if sent or queued for sending, false if not connected or the frame was dropped
      */
     boolean send(Frame frame);
 
+    /**
+     * Sends frame if connected, without waiting for the connection.
+     * Default implementation sends the frame synchronously, managers with their own writer override it.
+     * @param frame frame to be sent
+     * @return future completed with true once the frame is written out, or false if it could not be sent
+     */
+    default CompletableFuture<Boolean> sendAsync(Frame frame) {
+        return CompletableFuture.completedFuture(send(frame));
+    }
+
+    /**
+     * Writes out frames held back by the manager for coalescing or queued for its writer, if any.
+     * Blocks until the frames are written, or the connection is closed.
+     * Should be called by a sender about to wait for the other client, so it gets all frames sent so far.
+     */
+    default void flush() {
+    }
+
     /**
      * Receives frame if connected.
      * All data is written to provided frame object.
@@ -105,4 +146,14 @@ public interface NetworkManager {
      */
     boolean receive(Frame frame) throws InterruptedIOException, SocketException;
 
+    /**
+     * Creates publisher of received frames, alternative to calling receive() in a loop.
+     * Frames are received only as far as the subscriber requested them, the rest stays in the connection.
+     * Only one receiving loop or publisher should be used at a time.
+     * @return publisher of frames received from this manager
+     */
+    default Flow.Publisher<Frame> frames() {
+        return new FramePublisher(this);
+    }
+
 }
@@ -0,0 +1,132 @@
+package pl.edu.pg.eti.ksr.project.network;
+
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single peer connection held by the selector tcp manager.
+ * Keeps non-blocking channel together with its partially read and pending outbound data.
+ *
+ * Both directions are bounded: senders of bulk frames wait when more than OUTBOUND_LIMIT bytes of bulk frames
+ * are queued, and the connection is not read from while more than INBOX_HIGH_WATER bytes of its frames wait
+ * to be received, until less than INBOX_LOW_WATER bytes are left.
+ */
+@Getter
+class PeerConnection {
+
+    /**
+     * Initial size of the read buffer, grows up to the maximum frame size if needed.
+     */
+    static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Largest number of bytes of queued bulk frames, senders of further bulk frames wait.
+     */
+    static final int OUTBOUND_LIMIT = 256 * 1024;
+
+    /**
+     * Number of bytes of frames waiting to be received above which the connection is not read from.
+     */
+    static final int INBOX_HIGH_WATER = 1024 * 1024;
+
+    /**
+     * Number of bytes of frames waiting to be received below which the connection is read from again.
+     */
+    static final int INBOX_LOW_WATER = 256 * 1024;
+
+    /**
+     * Identifier of the peer.
+     */
+    private final int id;
+
+    /**
+     * Non-blocking channel of the connection.
+     */
+    private final SocketChannel channel;
+
+    /**
+     * Selector loop serving this connection.
+     */
+    private final SelectorLoop loop;
+
+    /**
+     * Encoded bulk frames waiting to be written to the channel.
+     */
+    final Queue<ByteBuffer> outbound;
+
+    /**
+     * Encoded interactive frames waiting to be written to the channel, written before any bulk frame.
+     */
+    final Queue<ByteBuffer> interactive;
+
+    /**
+     * Frame being written, accessed by the loop thread only.
+     * Partially written frame is always completed before the next one is taken.
+     */
+    ByteBuffer current;
+
+    /**
+     * True if the frame being written was taken from the bulk queue, accessed by the loop thread only.
+     */
+    boolean currentBulk;
+
+    /**
+     * Free bytes of the outbound limit, taken by queued bulk frames until they are written.
+     */
+    final Semaphore outboundBytes;
+
+    /**
+     * Number of bytes of frames received from this connection and not taken from the inbox yet.
+     */
+    final AtomicLong inboxBytes;
+
+    /**
+     * True if reading is suspended because too many received frames are not taken yet.
+     */
+    final AtomicBoolean readPaused;
+
+    /**
+     * True if write interest is set or about to be set on the selection key.
+     */
+    final AtomicBoolean writeScheduled;
+
+    /**
+     * Buffer for partially received frames, kept in write mode between reads.
+     */
+    ByteBuffer readBuffer;
+
+    /**
+     * Selection key of the channel, set after registration in the selector loop.
+     */
+    SelectionKey key;
+
+    /**
+     * Gets number of bytes of the outbound limit a bulk frame takes.
+     * @param size size of the encoded frame
+     * @return bytes taken, frames larger than the limit take all of it
+     */
+    static int reserved(int size) {
+        return Math.min(size, OUTBOUND_LIMIT);
+    }
+
+    PeerConnection(int id, SocketChannel channel, SelectorLoop loop) {
+        this.id = id;
+        this.channel = channel;
+        this.loop = loop;
+        this.outbound = new ConcurrentLinkedQueue<>();
+        this.interactive = new ConcurrentLinkedQueue<>();
+        this.writeScheduled = new AtomicBoolean(false);
+        this.outboundBytes = new Semaphore(OUTBOUND_LIMIT);
+        this.inboxBytes = new AtomicLong(0);
+        this.readPaused = new AtomicBoolean(false);
+        this.readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    }
+}
@@ -0,0 +1,226 @@
+package pl.edu.pg.eti.ksr.project.network;
+
+import lombok.Getter;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * I/O thread of the selector tcp manager.
+ * Serves all connections registered in its selector: accepts, reads and decodes frames and writes pending data.
+ * Connections which received frames are not taken fast enough are not read from until they are,
+ * so a slow receiver slows down its peer through tcp flow control.
+ * All operations on selection keys are performed on this thread, other threads submit them as tasks.
+ */
+class SelectorLoop implements Runnable {
+
+    /**
+     * Reference to the selector tcp manager object.
+     */
+    private final SelectorTcpManager manager;
+
+    /**
+     * Selector multiplexing connections of this loop.
+     */
+    @Getter
+    private final Selector selector;
+
+    /**
+     * Tasks to be run on the loop thread before next select.
+     */
+    private final Queue<Runnable> tasks;
+
+    /**
+     * Flag used for safely stopping the loop.
+     */
+    private volatile boolean running;
+
+    /**
+     * Submits task to be run on the loop thread.
+     * @param task task to be run
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Stops the loop, selector is closed by the loop thread.
+     */
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                selector.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Handles ready operations of a single key.
+     * @param key selected key
+     */
+    private void handle(SelectionKey key) {
+        if (!key.isValid()) return;
+
+        if (key.isAcceptable()) {
+            try {
+                manager.accept((ServerSocketChannel) key.channel());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            return;
+        }
+
+        PeerConnection connection = (PeerConnection) key.attachment();
+        try {
+            if (key.isReadable()) read(connection);
+            if (key.isValid() && key.isWritable()) write(connection);
+        } catch (IOException e) {
+            manager.close(connection);
+        }
+    }
+
+    /**
+     * Reads available data and passes every complete frame to the manager.
+     * @param connection readable connection
+     * @throws IOException when connection was closed or data is corrupted
+     */
+    private void read(PeerConnection connection) throws IOException {
+        if (connection.getChannel().read(connection.readBuffer) < 0) {
+            throw new EOFException();
+        }
+
+        ByteBuffer buffer = connection.readBuffer;
+        buffer.flip();
+
+        int needed = 0;
+        while (buffer.remaining() >= FrameCodec.LENGTH_SIZE) {
+            int length = buffer.getInt(buffer.position());
+            if (length < FrameCodec.HEADER_SIZE || length > FrameCodec.MAX_FRAME_SIZE) {
+                throw new StreamCorruptedException("Invalid frame length: " + length);
+            }
+            if (buffer.remaining() < FrameCodec.LENGTH_SIZE + length) {
+                needed = FrameCodec.LENGTH_SIZE + length;
+                break;
+            }
+
+            ByteBuffer record = buffer.slice(buffer.position() + FrameCodec.LENGTH_SIZE, length);
+            buffer.position(buffer.position() + FrameCodec.LENGTH_SIZE + length);
+            try {
+                manager.received(connection, FrameCodec.decode(record), FrameCodec.LENGTH_SIZE + length);
+            } catch (StreamCorruptedException e) {
+                e.printStackTrace();
+            }
+        }
+        buffer.compact();
+
+        if (connection.inboxBytes.get() > PeerConnection.INBOX_HIGH_WATER) pause(connection);
+
+        if (needed > buffer.capacity()) {
+            ByteBuffer larger = ByteBuffer.allocate(needed);
+            buffer.flip();
+            larger.put(buffer);
+            connection.readBuffer = larger;
+        }
+    }
+
+    /**
+     * Writes pending frames until the socket buffer is full or nothing is left to write.
+     * Interactive frames are taken before bulk frames.
+     * @param connection writable connection
+     * @throws IOException when writing failed
+     */
+    private void write(PeerConnection connection) throws IOException {
+        while (true) {
+            if (connection.current == null) connection.current = connection.interactive.poll();
+            if (connection.current == null) {
+                connection.current = connection.outbound.poll();
+                connection.currentBulk = connection.current != null;
+            }
+            if (connection.current == null) break;
+
+            connection.getChannel().write(connection.current);
+            if (connection.current.hasRemaining()) return; // socket buffer full, wait for next writable event
+            if (connection.currentBulk) {
+                connection.outboundBytes.release(PeerConnection.reserved(connection.current.capacity()));
+                connection.currentBulk = false;
+            }
+            connection.current = null;
+        }
+
+        connection.key.interestOpsAnd(~SelectionKey.OP_WRITE);
+        connection.writeScheduled.set(false);
+
+        // frames queued after the last check would be left without write interest
+        if ((!connection.interactive.isEmpty() || !connection.outbound.isEmpty())
+                && connection.writeScheduled.compareAndSet(false, true)) {
+            connection.key.interestOpsOr(SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * Suspends reading from a connection whose received frames are not taken, called on the loop thread.
+     * @param connection connection not to be read from
+     */
+    private void pause(PeerConnection connection) {
+        if (connection.readPaused.get()) return;
+        connection.key.interestOpsAnd(~SelectionKey.OP_READ);
+        connection.readPaused.set(true);
+        // frames taken meanwhile would leave the connection suspended for good
+        if (connection.inboxBytes.get() <= PeerConnection.INBOX_LOW_WATER) resume(connection);
+    }
+
+    /**
+     * Resumes reading from a connection suspended by pause(), may be called from any thread.
+     * @param connection connection to be read from again
+     */
+    void resume(PeerConnection connection) {
+        if (!connection.readPaused.compareAndSet(true, false)) return;
+        execute(() -> {
+            if (!connection.readPaused.get() && connection.key != null && connection.key.isValid()) {
+                connection.key.interestOpsOr(SelectionKey.OP_READ);
+            }
+        });
+    }
+
+    SelectorLoop(SelectorTcpManager manager) throws IOException {
+        this.manager = manager;
+        this.selector = Selector.open();
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.running = true;
+    }
+}
@@ -0,0 +1,495 @@
+package pl.edu.pg.eti.ksr.project.network;
+
+import lombok.Getter;
+import lombok.Setter;
+import pl.edu.pg.eti.ksr.project.network.data.Frame;
+import pl.edu.pg.eti.ksr.project.network.data.PeerFrame;
+import pl.edu.pg.eti.ksr.project.observer.Observer;
+import pl.edu.pg.eti.ksr.project.observer.Subject;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Network manager implementation using non-blocking tcp channels.
+ *
+ * Accepts connections continuously while listening and keeps a registry of all connected peers.
+ * Connections are spread over a small fixed set of I/O threads, each one multiplexing its connections
+ * with a single selector. Frames use the same encoding as TcpManager, so both managers can talk to each other.
+ *
+ * Unlike TcpManager, connecting to other server neither stops the running server nor drops other connections.
+ *
+ * Every connection is back-pressured on its own, see PeerConnection: senders of bulk frames wait for queued frames
+ * to be written, and a peer whose frames are not received fast enough is not read from until they are.
+ *
+ * Should be closed by calling close() on teardown.
+ */
+public class SelectorTcpManager implements MultiPeerNetworkManager, Subject {
+
+    /**
+     * Default number of I/O threads.
+     */
+    public static final int DEFAULT_IO_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * Time in milliseconds between checks of connected peers while waiting for a frame.
+     */
+    private static final long RECEIVE_POLL = 100;
+
+    /**
+     * Time in milliseconds between checks of the connection while waiting for space of bulk frames.
+     */
+    private static final long SEND_POLL = 100;
+
+    /**
+     * Frame waiting in the inbox.
+     * @param connection connection the frame was received from
+     * @param frame received frame
+     * @param size size of the encoded frame in bytes
+     */
+    private record Received(PeerConnection connection, PeerFrame frame, int size) { }
+
+    /**
+     * List of all observers subscribing to this object.
+     */
+    private final Queue<Observer> observers;
+
+    /**
+     * I/O loops serving connections, the first one also accepts new connections.
+     */
+    private final SelectorLoop[] loops;
+
+    /**
+     * Registry of all connected peers by their ids.
+     */
+    private final Map<Integer, PeerConnection> connections;
+
+    /**
+     * Frames received from all peers, waiting to be taken by receive().
+     * Bounded per connection by suspending reading from connections with too many frames waiting.
+     */
+    private final BlockingQueue<Received> inbox;
+
+    /**
+     * Source of peer ids.
+     */
+    private final AtomicInteger nextPeerId;
+
+    /**
+     * Round-robin counter used for assigning connections to loops.
+     */
+    private final AtomicInteger nextLoop;
+
+    /**
+     * Profile applied to all channels of this manager, takes effect from the next connection.
+     */
+    @Getter
+    @Setter
+    private volatile SocketProfile profile;
+
+    /**
+     * Server channel used to listen for new connections.
+     */
+    private ServerSocketChannel serverChannel;
+
+    /**
+     * Current status of the manager.
+     */
+    @Getter
+    private Status status;
+
+    /**
+     * True if I/O threads have been started.
+     */
+    private boolean started;
+
+    @Override
+    public void attach(Observer observer) {
+        this.observers.add(observer);
+    }
+
+    @Override
+    public void detach(Observer observer) {
+        this.observers.remove(observer);
+    }
+
+    @Override
+    public void notifyObs(Object o) {
+        for (Observer observer : this.observers) {
+            observer.update(o);
+        }
+    }
+
+    /**
+     * Internal method used for recomputing manager status and publishing new status to the observers.
+     * Manager is connected as long as at least one peer is connected.
+     */
+    private synchronized void updateStatus() {
+        Status newStatus;
+        if (!connections.isEmpty()) newStatus = Status.CONNECTED;
+        else if (serverChannel != null) newStatus = Status.LISTENING;
+        else newStatus = Status.READY;
+
+        if (newStatus != status) {
+            status = newStatus;
+            notifyObs(status);
+        }
+    }
+
+    /**
+     * Starts I/O threads if not started yet.
+     */
+    private synchronized void start() {
+        if (started) return;
+        for (int i = 0; i < loops.length; i++) {
+            Thread thread = new Thread(loops[i], "selector-io-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        started = true;
+    }
+
+    /**
+     * Internal method called by the accepting loop when server channel is ready to accept.
+     * @param server server channel
+     * @throws IOException when accepting failed
+     */
+    void accept(ServerSocketChannel server) throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            InetSocketAddress remote = (InetSocketAddress) channel.getRemoteAddress();
+            profile.apply(channel.socket(), LinkEstimator.forHost(remote.getAddress().getHostAddress()));
+            register(channel);
+        }
+    }
+
+    /**
+     * Adds connected channel to the registry and assigns it to one of the loops.
+     * @param channel connected channel
+     * @return id of the new peer
+     * @throws IOException when channel cannot be switched to non-blocking mode
+     */
+    private int register(SocketChannel channel) throws IOException {
+        channel.configureBlocking(false);
+
+        SelectorLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+        PeerConnection connection = new PeerConnection(nextPeerId.incrementAndGet(), channel, loop);
+        connections.put(connection.getId(), connection);
+
+        loop.execute(() -> {
+            try {
+                int ops = SelectionKey.OP_READ;
+                if (connection.writeScheduled.get()) ops |= SelectionKey.OP_WRITE;
+                connection.key = channel.register(loop.getSelector(), ops, connection);
+            } catch (ClosedChannelException e) {
+                close(connection);
+            }
+        });
+
+        updateStatus();
+        return connection.getId();
+    }
+
+    /**
+     * Internal method called by the loops for every decoded frame.
+     * @param connection connection the frame was received from
+     * @param frame decoded frame
+     * @param size size of the encoded frame in bytes
+     */
+    void received(PeerConnection connection, Frame frame, int size) {
+        connection.inboxBytes.addAndGet(size);
+        inbox.add(new Received(connection,
+                new PeerFrame(connection.getId(), frame.frameType, frame.data, frame.streamId), size));
+    }
+
+    /**
+     * Internal method used for terminating a single connection.
+     * @param connection connection to be closed
+     */
+    void close(PeerConnection connection) {
+        if (connections.remove(connection.getId()) == null) return;
+
+        if (connection.key != null) connection.key.cancel();
+        try {
+            connection.getChannel().close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        connection.outbound.clear();
+        connection.interactive.clear();
+        // senders waiting for space see the connection removed
+        connection.outboundBytes.release(PeerConnection.OUTBOUND_LIMIT);
+        updateStatus();
+    }
+
+    /**
+     * Gets number of bytes of frames received from all peers and not taken by receive() yet.
+     * @return number of queued bytes
+     */
+    public long getQueued() {
+        return connections.values().stream().mapToLong(connection -> connection.inboxBytes.get()).sum();
+    }
+
+    @Override
+    public Set<Integer> getPeers() {
+        return Set.copyOf(connections.keySet());
+    }
+
+    @Override
+    public int getPort(int peerId) {
+        PeerConnection connection = connections.get(peerId);
+        return connection == null ? -1 : connection.getChannel().socket().getPort();
+    }
+
+    @Override
+    public int getPort() {
+        return connections.keySet().stream().min(Integer::compare).map(this::getPort).orElse(-1);
+    }
+
+    @Override
+    public synchronized int getListeningPort() {
+        return serverChannel != null ? serverChannel.socket().getLocalPort() : -1;
+    }
+
+    @Override
+    public synchronized boolean listenOn(int port) {
+        if (serverChannel != null) stop();
+        start();
+
+        try {
+            ServerSocketChannel server = ServerSocketChannel.open();
+            profile.apply(server.socket(), LinkEstimator.forHost(null));
+            server.bind(new InetSocketAddress(port));
+            server.configureBlocking(false);
+            serverChannel = server;
+
+            SelectorLoop loop = loops[0];
+            loop.execute(() -> {
+                try {
+                    server.register(loop.getSelector(), SelectionKey.OP_ACCEPT);
+                } catch (ClosedChannelException e) {
+                    // server stopped before registration
+                }
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+            serverChannel = null;
+            return false;
+        }
+
+        updateStatus();
+        return true;
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (serverChannel == null) return;
+
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            serverChannel = null;
+        }
+        updateStatus();
+    }
+
+    @Override
+    public synchronized boolean isListening() {
+        return serverChannel != null;
+    }
+
+    /**
+     * Connects to server with a given ip and port, keeping all current connections.
+     * @param ip of the server to be connected to
+     * @param port of the server to be connected to
+     * @return id of the new peer or -1 if connection failed
+     */
+    public int connectPeer(String ip, int port) {
+        start();
+
+        try {
+            InetSocketAddress address = new InetSocketAddress(ip, port);
+            if (address.isUnresolved()) throw new IOException("Unknown host " + ip);
+            LinkEstimator link = LinkEstimator.forHost(address.getAddress().getHostAddress());
+
+            SocketChannel channel = SocketChannel.open();
+            profile.apply(channel.socket(), link);
+            long start = System.nanoTime();
+            try {
+                channel.connect(address);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            link.recordRtt(System.nanoTime() - start);
+            return register(channel);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return -1;
+        }
+    }
+
+    @Override
+    public boolean connect(String ip, int port) {
+        return connectPeer(ip, port) != -1;
+    }
+
+    @Override
+    public void disconnect(int peerId) {
+        PeerConnection connection = connections.get(peerId);
+        if (connection != null) close(connection);
+    }
+
+    @Override
+    public void disconnect() {
+        for (PeerConnection connection : connections.values()) {
+            close(connection);
+        }
+    }
+
+    @Override
+    public boolean isConnected() {
+        return !connections.isEmpty();
+    }
+
+    /**
+     * Sends frame to a given peer.
+     * Interactive frames are queued at once, bulk frames wait while OUTBOUND_LIMIT bytes of bulk frames
+     * of the peer are queued and not written yet.
+     * @param peerId peer id
+     * @param frame frame to be sent
+     * @return true if frame was queued for sending, false if peer is not connected or waiting was interrupted
+     */
+    @Override
+    public boolean send(int peerId, Frame frame) {
+        PeerConnection connection = connections.get(peerId);
+        if (connection == null) return false;
+
+        try {
+            ByteBuffer encoded = ByteBuffer.wrap(FrameCodec.encode(frame));
+            if (frame.frameType.isInteractive()) {
+                connection.interactive.add(encoded);
+            } else {
+                int reserved = PeerConnection.reserved(encoded.capacity());
+                while (!connection.outboundBytes.tryAcquire(reserved, SEND_POLL, TimeUnit.MILLISECONDS)) {
+                    if (!connections.containsKey(peerId)) return false;
+                }
+                if (!connections.containsKey(peerId)) return false;
+                connection.outbound.add(encoded);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            close(connection);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        if (connection.writeScheduled.compareAndSet(false, true)) {
+            connection.getLoop().execute(() -> {
+                if (connection.key != null && connection.key.isValid()) {
+                    connection.key.interestOpsOr(SelectionKey.OP_WRITE);
+                }
+            });
+        }
+        return true;
+    }
+
+    /**
+     * Sends frame to all connected peers.
+     * @param frame frame to be sent
+     * @return true if sent to at least one peer
+     */
+    @Override
+    public boolean send(Frame frame) {
+        boolean sent = false;
+        for (Integer peerId : connections.keySet()) {
+            sent |= send(peerId, frame);
+        }
+        return sent;
+    }
+
+    /**
+     * Receives frame from any connected peer, blocking until one is available.
+     * Returns once the last peer disconnects or the manager is closed while waiting.
+     * If PeerFrame object is provided, id of the sending peer is written to it as well.
+     * @param frame object for data to be written to
+     * @return true if receive was successful, false if no frame is pending and no peer is connected
+     * @throws InterruptedIOException when waiting for the frame was interrupted
+     */
+    @Override
+    public boolean receive(Frame frame) throws InterruptedIOException {
+        if (connections.isEmpty() && inbox.isEmpty()) return false;
+
+        Received taken;
+        try {
+            // frames received before the disconnection are still taken
+            while ((taken = inbox.poll(RECEIVE_POLL, TimeUnit.MILLISECONDS)) == null) {
+                if (connections.isEmpty()) return false;
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Receive interrupted");
+        }
+
+        PeerConnection connection = taken.connection();
+        if (connection.inboxBytes.addAndGet(-taken.size()) <= PeerConnection.INBOX_LOW_WATER) {
+            connection.getLoop().resume(connection);
+        }
+
+        PeerFrame received = taken.frame();
+        frame.frameType = received.frameType;
+        frame.data = received.data;
+        frame.streamId = received.streamId;
+        if (frame instanceof PeerFrame) {
+            ((PeerFrame) frame).peerId = received.peerId;
+        }
+        return true;
+    }
+
+    /**
+     * Stops server, terminates all connections and stops I/O threads.
+     */
+    public void close() {
+        stop();
+        disconnect();
+        for (SelectorLoop loop : loops) {
+            loop.shutdown();
+        }
+    }
+
+    public SelectorTcpManager() throws IOException {
+        this(DEFAULT_IO_THREADS);
+    }
+
+    public SelectorTcpManager(int ioThreads) throws IOException {
+        this.status = Status.READY;
+        this.observers = new ConcurrentLinkedQueue<>();
+        this.profile = SocketProfile.getDefault();
+        this.connections = new ConcurrentHashMap<>();
+        this.inbox = new LinkedBlockingQueue<>();
+        this.nextPeerId = new AtomicInteger(0);
+        this.nextLoop = new AtomicInteger(0);
+        this.loops = new SelectorLoop[ioThreads];
+        for (int i = 0; i < ioThreads; i++) {
+            loops[i] = new SelectorLoop(this);
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package pl.edu.pg.eti.ksr.project.network;
+
+import lombok.Getter;
+import pl.edu.pg.eti.ksr.project.concurrent.ExecutionMode;
+import pl.edu.pg.eti.ksr.project.network.data.Frame;
+import pl.edu.pg.eti.ksr.project.observer.Observer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Network manager decorator simulating a slow or unreliable link on top of any other network manager.
+ *
+ * Frames passed to send() are held back and handed to the wrapped manager once their simulated time passes.
+ * Delay of a frame is the time it waits for the link to be free at the configured bandwidth, plus the latency
+ * and a random jitter. Frames are delivered in order of sending, except for reordered frames, which are
+ * delayed further so frames of other streams overtake them. Frames of a single stream are never reordered,
+ * as the protocol requires. Connection can also be lost on delivery of a frame.
+ *
+ * Conditions apply to sent frames only, both clients have to be wrapped to slow down both directions.
+ * All random choices come from a generator with a given seed, so a run with the same frames makes
+ * the same choices.
+ */
+public class SimulatedNetworkManager implements NetworkManager {
+
+    /**
+     * Frame waiting for its delivery time.
+     * @param frame frame to be delivered
+     * @param due delivery time in nanoseconds
+     * @param order sending order, breaks ties of the delivery time
+     * @param disconnect true if connection is lost instead of delivering the frame
+     */
+    private record Pending(Frame frame, long due, long order, boolean disconnect) implements Delayed {
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(due - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            Pending pending = (Pending) other;
+            int result = Long.compare(due, pending.due);
+            return result != 0 ? result : Long.compare(order, pending.order);
+        }
+    }
+
+    /**
+     * Wrapped network manager.
+     */
+    @Getter
+    private final NetworkManager delegate;
+
+    /**
+     * Conditions of the simulated link.
+     */
+    @Getter
+    private volatile NetworkConditions conditions;
+
+    /**
+     * Frames waiting for delivery.
+     */
+    private final DelayQueue<Pending> pending;
+
+    /**
+     * Generator of all random choices.
+     */
+    private Random random;
+
+    /**
+     * Time in nanoseconds the link becomes free, after sending all frames accepted so far.
+     */
+    private long linkFree;
+
+    /**
+     * Delivery time of the latest frame sent in order.
+     */
+    private long lastDue;
+
+    /**
+     * Delivery time of the latest frame of every stream.
+     */
+    private final Map<Integer, Long> streamDue;
+
+    /**
+     * Number of frames sent so far.
+     */
+    private long sent;
+
+    /**
+     * Number of reordered frames.
+     */
+    @Getter
+    private volatile long reordered;
+
+    /**
+     * Number of simulated disconnections.
+     */
+    @Getter
+    private volatile long disconnects;
+
+    /**
+     * Delivering thread running flag, every thread gets a new flag.
+     */
+    private volatile AtomicBoolean running;
+
+    /**
+     * Creates simulator of a link.
+     * @param delegate wrapped network manager
+     * @param conditions conditions of the link
+     * @param seed seed of random choices
+     */
+    public SimulatedNetworkManager(NetworkManager delegate, NetworkConditions conditions, long seed) {
+        this.delegate = delegate;
+        this.conditions = conditions;
+        this.random = new Random(seed);
+        this.pending = new DelayQueue<>();
+        this.streamDue = new HashMap<>();
+        this.running = new AtomicBoolean(false);
+        // attached before any other observer, so frames start being delivered before anyone sends
+        delegate.attach(this::statusChanged);
+        if (delegate.isConnected()) statusChanged(Status.CONNECTED);
+    }
+
+    /**
+     * Changes conditions of the link, frames already sent keep their delivery time.
+     * @param conditions new conditions
+     * @param seed new seed of random choices
+     */
+    public synchronized void setConditions(NetworkConditions conditions, long seed) {
+        this.conditions = conditions;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Starts delivering frames when wrapped manager connects, and drops frames in flight when it disconnects.
+     * @param o new status of the wrapped manager
+     */
+    private synchronized void statusChanged(Object o) {
+        running.set(false);
+        pending.clear();
+        streamDue.clear();
+        linkFree = 0;
+        lastDue = 0;
+
+        if (o == Status.CONNECTED) {
+            running = new AtomicBoolean(true);
+            AtomicBoolean flag = running;
+            ExecutionMode.start(() -> deliver(flag), "network-simulator");
+        }
+    }
+
+    /**
+     * Hands frames over to the wrapped manager once they are due.
+     * @param flag running flag of this thread
+     */
+    private void deliver(AtomicBoolean flag) {
+        try {
+            while (flag.get()) {
+                Pending next = pending.poll(100, TimeUnit.MILLISECONDS);
+                if (next == null || !flag.get()) continue;
+
+                if (next.disconnect()) {
+                    disconnects++;
+                    delegate.disconnect();
+                    return;
+                }
+                delegate.send(next.frame());
+                Pending following = pending.peek();
+                if (following == null || following.getDelay(TimeUnit.NANOSECONDS) > 0) delegate.flush();
+            }
+        } catch (InterruptedException e) {
+            // stopped together with the connection
+        }
+    }
+
+    /**
+     * Estimates number of bytes a frame takes on the link.
+     * @param frame sent frame
+     * @return encoded size of the frame
+     */
+    private static int size(Frame frame) {
+        if (frame.data instanceof byte[] data) return FrameCodec.LENGTH_SIZE + FrameCodec.HEADER_SIZE + data.length;
+        try {
+            return FrameCodec.LENGTH_SIZE + FrameCodec.encode(frame).length;
+        } catch (IOException e) {
+            return FrameCodec.LENGTH_SIZE + FrameCodec.HEADER_SIZE;
+        }
+    }
+
+    /**
+     * Schedules frame for delivery after its simulated delay.
+     * @param frame frame to be sent
+     * @return true if connected and frame was scheduled
+     */
+    @Override
+    public boolean send(Frame frame) {
+        if (!delegate.isConnected()) return false;
+        int size = size(frame);
+
+        synchronized (this) {
+            NetworkConditions link = conditions;
+            long now = System.nanoTime();
+
+            linkFree = Math.max(linkFree, now);
+            if (link.getBandwidth() > 0) linkFree += size * 1_000_000_000L / link.getBandwidth();
+
+            long jitter = link.getJitter() > 0 ? (long) (random.nextDouble() * link.getJitter() * 1_000_000L) : 0;
+            long due = linkFree + TimeUnit.MILLISECONDS.toNanos(link.getLatency()) + jitter;
+            due = Math.max(due, streamDue.getOrDefault(frame.streamId, 0L));
+
+            if (link.getReorderRate() > 0 && random.nextDouble() < link.getReorderRate()) {
+                due += TimeUnit.MILLISECONDS.toNanos(link.getReorderDelay());
+                reordered++;
+            } else {
+                due = Math.max(due, lastDue);
+                lastDue = due;
+            }
+            streamDue.put(frame.streamId, due);
+
+            boolean disconnect = link.getDisconnectRate() > 0 && random.nextDouble() < link.getDisconnectRate();
+            pending.put(new Pending(frame, due, sent++, disconnect));
+        }
+        return true;
+    }
+
+    @Override
+    public boolean receive(Frame frame) throws InterruptedIOException, SocketException {
+        return delegate.receive(frame);
+    }
+
+    @Override
+    public void attach(Observer observer) {
+        delegate.attach(observer);
+    }
+
+    @Override
+    public void detach(Observer observer) {
+        delegate.detach(observer);
+    }
+
+    @Override
+    public void notifyObs(Object o) {
+        delegate.notifyObs(o);
+    }
+
+    @Override
+    public String getHost() {
+        return delegate.getHost();
+    }
+
+    @Override
+    public LinkEstimator getLink() {
+        return delegate.getLink();
+    }
+
+    @Override
+    public int getListeningPort() {
+        return delegate.getListeningPort();
+    }
+
+    @Override
+    public int getPort() {
+        return delegate.getPort();
+    }
+
+    @Override
+    public boolean listenOn(int port) {
+        return delegate.listenOn(port);
+    }
+
+    @Override
+    public void stop() {
+        delegate.stop();
+    }
+
+    @Override
+    public boolean isListening() {
+        return delegate.isListening();
+    }
+
+    @Override
+    public boolean connect(String ip, int port) {
+        return delegate.connect(ip, port);
+    }
+
+    @Override
+    public void disconnect() {
+        delegate.disconnect();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return delegate.isConnected();
+    }
+}
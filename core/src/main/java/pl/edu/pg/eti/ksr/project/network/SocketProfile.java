@@ -0,0 +1,128 @@
+package pl.edu.pg.eti.ksr.project.network;
+
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Locale;
+
+/**
+ * Socket options for different classes of traffic.
+ *
+ * Profile is applied to every socket of a manager before it is connected, so receive buffer size
+ * is taken into account when tcp window scaling is negotiated. Buffers are never resized once connected.
+ * Buffers of the throughput profile are sized to the bandwidth-delay product measured on earlier connections
+ * to the same host, only when it exceeds MIN_BUFFER. Otherwise they are left to the autotuning of the system,
+ * which an explicit buffer size turns off.
+ *
+ * Default profile of new managers is read from system property "bsk.socket.profile"
+ * (e.g. -Dbsk.socket.profile=throughput).
+ */
+public enum SocketProfile {
+
+    // Chat, handshake and control frames, sent as soon as written and never queued behind large buffers
+    LATENCY(true, 0x10),
+
+    // Bulk file data, small writes are coalesced and buffers keep the whole path busy
+    THROUGHPUT(false, 0x08);
+
+    /**
+     * Name of the system property used for selecting default profile.
+     */
+    public static final String PROPERTY = "bsk.socket.profile";
+
+    /**
+     * Smallest bandwidth-delay product for which the throughput profile sets buffer sizes.
+     */
+    public static final int MIN_BUFFER = 64 * 1024;
+
+    /**
+     * Largest buffer size set by the throughput profile.
+     */
+    public static final int MAX_BUFFER = 16 * 1024 * 1024;
+
+    /**
+     * True if Nagle's algorithm is disabled.
+     */
+    private final boolean noDelay;
+
+    /**
+     * Type of service hint put in ip headers, may be ignored by the system.
+     */
+    private final int trafficClass;
+
+    SocketProfile(boolean noDelay, int trafficClass) {
+        this.noDelay = noDelay;
+        this.trafficClass = trafficClass;
+    }
+
+    public boolean isNoDelay() {
+        return noDelay;
+    }
+
+    /**
+     * Gets profile selected by the system property.
+     * @return default profile, LATENCY if property is not set
+     */
+    public static SocketProfile getDefault() {
+        return fromText(System.getProperty(PROPERTY));
+    }
+
+    /**
+     * Finds profile associated to provided text, ignoring case.
+     * @param text profile text representation
+     * @return associated profile, LATENCY if text is null or unknown
+     */
+    public static SocketProfile fromText(String text) {
+        if (text == null) return LATENCY;
+        for (SocketProfile profile : SocketProfile.values()) {
+            if (profile.name().equals(text.trim().toUpperCase(Locale.ROOT))) {
+                return profile;
+            }
+        }
+        return LATENCY;
+    }
+
+    /**
+     * Computes buffer size covering bandwidth-delay product of the path.
+     * @param link estimator of the path
+     * @return buffer size in bytes, 0 if system default and its autotuning should be kept
+     */
+    public int bufferSize(LinkEstimator link) {
+        if (this != THROUGHPUT || !link.isBandwidthMeasured()) return 0;
+        long product = link.getBandwidthDelayProduct();
+        if (product < MIN_BUFFER) return 0;
+        return (int) Math.min(MAX_BUFFER, product);
+    }
+
+    /**
+     * Applies profile to a socket, should be called before the socket is connected.
+     * @param socket client socket
+     * @param link estimator of the path
+     * @throws SocketException when options cannot be set
+     */
+    public void apply(Socket socket, LinkEstimator link) throws SocketException {
+        socket.setTcpNoDelay(noDelay);
+        try {
+            socket.setTrafficClass(trafficClass);
+        } catch (SocketException e) {
+            // type of service is only a hint, not supported on every system
+        }
+        int size = bufferSize(link);
+        if (size > 0) {
+            socket.setSendBufferSize(size);
+            socket.setReceiveBufferSize(size);
+        }
+    }
+
+    /**
+     * Applies profile to a server socket, should be called before the socket is bound.
+     * Options of the server socket are inherited by accepted sockets.
+     * @param serverSocket server socket
+     * @param link estimator of the path
+     * @throws SocketException when options cannot be set
+     */
+    public void apply(ServerSocket serverSocket, LinkEstimator link) throws SocketException {
+        int size = bufferSize(link);
+        if (size > 0) serverSocket.setReceiveBufferSize(size);
+    }
+}
@@ -0,0 +1,462 @@
+package pl.edu.pg.eti.ksr.project.network;
+
+import lombok.Getter;
+import lombok.Setter;
+import pl.edu.pg.eti.ksr.project.concurrent.ExecutionMode;
+import pl.edu.pg.eti.ksr.project.metrics.Meter;
+import pl.edu.pg.eti.ksr.project.metrics.MetricsRegistry;
+import pl.edu.pg.eti.ksr.project.network.data.Frame;
+import pl.edu.pg.eti.ksr.project.network.data.RelayInfo;
+import pl.edu.pg.eti.ksr.project.observer.Observer;
+import pl.edu.pg.eti.ksr.project.observer.Subject;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Network manager implementation using tcp sockets.
+ *
+ * Sockets are set up with the selected socket profile before connecting. Round trip time is measured when connecting,
+ * feeding the estimator of the connected host which sizes socket buffers of the throughput profile.
+ *
+ * Frames and bytes in both directions are counted by meters of the connection in the process-wide metrics registry,
+ * named "connection.host:port.localPort.sent" and "...received", removed when the connection ends.
+ */
+public class TcpManager implements NetworkManager, Subject {
+
+    /**
+     * Time in milliseconds to wait for the listener thread to finish after the server is stopped.
+     */
+    private static final long LISTENER_STOP_TIMEOUT = 1000;
+
+    /**
+     * Time in milliseconds the writer thread lingers to write out queued frames before the connection is closed.
+     */
+    private static final long LINGER_TIMEOUT = 1000;
+
+    /**
+     * List of all observers subscribing to this object.
+     */
+    private final Queue<Observer> observers;
+
+    /**
+     * Server socket used to listen for new connections.
+     */
+    ServerSocket serverSocket;
+
+    /**
+     * Client socket used for data exchange after connection is established.
+     */
+    Socket clientSocket;
+
+    /**
+     * Client socket input stream.
+     */
+    DataInputStream in;
+
+    /**
+     * Client socket output stream.
+     */
+    DataOutputStream out;
+
+    /**
+     * Profile applied to sockets of this manager, takes effect from the next connection.
+     */
+    @Getter
+    @Setter
+    private SocketProfile profile;
+
+    /**
+     * Estimator of the path to the connected host.
+     */
+    @Getter
+    private LinkEstimator link;
+
+    /**
+     * Scope of the metrics of the current connection.
+     */
+    private volatile String metricsScope;
+
+    /**
+     * Meter of frames written to the current connection.
+     */
+    private volatile Meter sentMeter;
+
+    /**
+     * Meter of frames read from the current connection.
+     */
+    private volatile Meter receivedMeter;
+
+    /**
+     * Writer of the current connection, ordering frames queued by concurrent senders.
+     */
+    private volatile FrameScheduler scheduler;
+
+    /**
+     * Current status of the manager.
+     */
+    @Getter
+    private Status status;
+
+    /**
+     * New connection listener thread.
+     */
+    @Getter
+    private Thread listenerThread;
+
+    /**
+     * Internal method used for changing manager status and publishing new status to the observers.
+     * @param status new status
+     */
+    void changeStatus(Status status) {
+        if (status != this.status) {
+            this.status = status;
+            notifyObs(this.status);
+        }
+    }
+
+    @Override
+    public void attach(Observer observer) {
+        this.observers.add(observer);
+    }
+
+    @Override
+    public void detach(Observer observer) {
+        this.observers.remove(observer);
+    }
+
+    @Override
+    public void notifyObs(Object o) {
+        for (Observer observer : this.observers) {
+            observer.update(o);
+        }
+    }
+
+    /**
+     * Internal method used for opening frame streams on a newly connected client socket.
+     * Input is buffered, output is owned by the writer thread, which coalesces small frames.
+     * @throws IOException when socket streams are not available
+     */
+    void openStreams() throws IOException {
+        if (link == null) link = LinkEstimator.forHost(clientSocket.getInetAddress().getHostAddress());
+        metricsScope = "connection." + clientSocket.getInetAddress().getHostAddress() + ":" + clientSocket.getPort()
+                + "." + clientSocket.getLocalPort();
+        sentMeter = MetricsRegistry.global().meter(metricsScope + ".sent");
+        receivedMeter = MetricsRegistry.global().meter(metricsScope + ".received");
+        out = new DataOutputStream(new BufferedOutputStream(clientSocket.getOutputStream(),
+                FrameScheduler.COALESCE_SIZE));
+        scheduler = new FrameScheduler(out, new FrameScheduler.Listener() {
+            @Override
+            public void written(int size) {
+                recordSent(size);
+            }
+
+            @Override
+            public void failed(IOException e) {
+                e.printStackTrace();
+                disconnect();
+            }
+        });
+        scheduler.start();
+        in = new DataInputStream(new BufferedInputStream(clientSocket.getInputStream()));
+    }
+
+    @Override
+    public int getPort() {
+        return status == Status.CONNECTED ? clientSocket.getPort() : -1;
+    }
+
+    /**
+     * Gets address of the connected client.
+     * @return ip address of the other side of the connection or null if not connected
+     */
+    @Override
+    public String getHost() {
+        return status == Status.CONNECTED ? clientSocket.getInetAddress().getHostAddress() : null;
+    }
+
+    @Override
+    public int getListeningPort() {
+        return status == Status.LISTENING ? serverSocket.getLocalPort() : -1;
+    }
+
+    @Override
+    public boolean listenOn(int port) {
+        if (status == Status.CONNECTED) return false;
+        if (status == Status.LISTENING) stop();
+
+        try {
+            serverSocket = new ServerSocket();
+            profile.apply(serverSocket, LinkEstimator.forHost(null));
+            serverSocket.bind(new InetSocketAddress(port));
+
+            listenerThread = ExecutionMode.start(new TcpServerListener(this), "tcp-listener");
+
+            changeStatus(Status.LISTENING);
+
+        } catch (IOException e) {
+            e.printStackTrace();
+            serverSocket = null;
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void stop() {
+        if (serverSocket != null && status == Status.LISTENING) {
+            try {
+                serverSocket.close();
+                // socket is released only after the blocked accept call returns
+                if (listenerThread != null) listenerThread.join(LISTENER_STOP_TIMEOUT);
+            } catch (IOException e) {
+                e.printStackTrace();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                serverSocket = null;
+            }
+        }
+    }
+
+    @Override
+    public boolean isListening() {
+        return status == Status.LISTENING;
+    }
+
+    @Override
+    public boolean connect(String ip, int port) {
+        return connect(ip, port, null);
+    }
+
+    /**
+     * Connects to another client through a relay, for clients which cannot connect to each other directly.
+     * Relay forwards frames once both clients have connected to it, naming each other.
+     * Frames sent before the other client connects are kept by the relay until it does.
+     * Data connections and datagram channels offered by the other client cannot be reached through the relay,
+     * so transfers fall back to the relayed connection.
+     * @param ip of the relay
+     * @param port of the relay
+     * @param username username of this client
+     * @param peer username of the client to be connected with
+     * @return true if connected to the relay
+     */
+    public boolean connectRelay(String ip, int port, String username, String peer) {
+        return connect(ip, port, new Frame(Frame.Type.RELAY_CONNECT, new RelayInfo(username, peer)));
+    }
+
+    /**
+     * Internal method used for connecting to a server.
+     * @param ip of the server to be connected to
+     * @param port of the server to be connected to
+     * @param first frame written before any frame of the observers notified about the connection, null if none
+     * @return true if connected
+     */
+    private boolean connect(String ip, int port, Frame first) {
+        if (status == Status.LISTENING) stop();
+        if (status == Status.CONNECTED) disconnect();
+
+        try {
+            InetSocketAddress address = new InetSocketAddress(ip, port);
+            if (address.isUnresolved()) throw new IOException("Unknown host " + ip);
+            link = LinkEstimator.forHost(address.getAddress().getHostAddress());
+
+            Socket socket = new Socket();
+            profile.apply(socket, link);
+            long start = System.nanoTime();
+            socket.connect(address);
+            // handshake takes a single round trip
+            link.recordRtt(System.nanoTime() - start);
+
+            clientSocket = socket;
+            openStreams();
+            if (first != null) scheduler.write(first.frameType, FrameCodec.encode(first));
+            changeStatus(Status.CONNECTED);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            clientSocket = null;
+            changeStatus(Status.READY);
+            return false;
+        }
+    }
+
+    /**
+     * Disconnects without waiting, callers include the heartbeat and the user interface.
+     * Frames sent before disconnecting are written out by the writer thread, which closes the socket afterwards,
+     * or once LINGER_TIMEOUT passes, dropping the frames left.
+     */
+    @Override
+    public void disconnect() {
+        if (status != Status.CONNECTED) return;
+
+        FrameScheduler current = scheduler;
+        DataInputStream input = in;
+        DataOutputStream output = out;
+        Socket socket = clientSocket;
+        Runnable close = () -> closeConnection(input, output, socket);
+        if (current != null) {
+            current.close(LINGER_TIMEOUT, close);
+        } else {
+            close.run();
+        }
+
+        try {
+            if (serverSocket != null) serverSocket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        if (metricsScope != null) MetricsRegistry.global().remove(metricsScope);
+
+        in = null;
+        out = null;
+        link = null;
+        clientSocket = null;
+        serverSocket = null;
+        changeStatus(Status.READY);
+    }
+
+    /**
+     * Internal method used for closing streams and socket of a connection.
+     * @param input input stream of the connection, null if not opened
+     * @param output output stream of the connection, null if not opened
+     * @param socket socket of the connection, null if not connected
+     */
+    private static void closeConnection(InputStream input, OutputStream output, Socket socket) {
+        try {
+            if (input != null) input.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        try {
+            if (output != null) output.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        try {
+            if (socket != null) socket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public boolean isConnected() {
+        return status == Status.CONNECTED;
+    }
+
+    /**
+     * Queues frame to be sent to the connected client by the writer thread.
+     * Safe to be called from many threads, interactive frames are written before pending bulk frames.
+     * Interactive frames never wait, bulk frames wait only when too many of them are queued already.
+     * If writing fails later, the manager disconnects.
+     * @param frame frame to be sent
+     * @return true if frame was queued
+     */
+    @Override
+    public boolean send(Frame frame) {
+        FrameScheduler current = scheduler;
+        if (status != Status.CONNECTED || current == null) return false;
+
+        try {
+            return current.write(frame.frameType, FrameCodec.encode(frame));
+        } catch (InterruptedIOException e) {
+            // sender stopped while waiting for its turn, connection is still usable
+            return false;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Queues frame to be sent to the connected client by the writer thread, never waiting.
+     * Bulk frames are queued even past the limit of blocking senders, callers should wait for the futures
+     * of frames sent earlier to keep the queue short.
+     * @param frame frame to be sent
+     * @return future completed with true once the frame is flushed to the socket, false if it was dropped
+     */
+    @Override
+    public CompletableFuture<Boolean> sendAsync(Frame frame) {
+        FrameScheduler current = scheduler;
+        if (status != Status.CONNECTED || current == null) return CompletableFuture.completedFuture(false);
+
+        try {
+            return current.writeAsync(frame.frameType, FrameCodec.encode(frame));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return CompletableFuture.completedFuture(false);
+        }
+    }
+
+    /**
+     * Waits until frames queued so far are written to the socket.
+     * Writer flushes on its own whenever it runs out of frames, so this is needed only before the connection
+     * is closed or when the caller must know its frames left.
+     */
+    @Override
+    public void flush() {
+        FrameScheduler current = scheduler;
+        if (current == null) return;
+        try {
+            current.drain(Long.MAX_VALUE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Records frame written by the writer thread.
+     * Rate of writes into the socket is not the bandwidth of the path, so it is only counted.
+     * @param size size of the written frame
+     */
+    private void recordSent(int size) {
+        Meter meter = sentMeter;
+        if (meter != null) meter.mark(size);
+    }
+
+    @Override
+    public boolean receive(Frame frame) throws InterruptedIOException, SocketException {
+        if (status != Status.CONNECTED) return false;
+
+        byte[] record;
+        try {
+            record = FrameCodec.readRecord(in);
+        } catch (InterruptedIOException | SocketException e) {
+            throw e;
+        } catch (IOException e) {
+            e.printStackTrace();
+            disconnect();
+            return false;
+        }
+        Meter meter = receivedMeter;
+        if (meter != null) meter.mark(FrameCodec.LENGTH_SIZE + record.length);
+
+        try {
+            // stream stays aligned on the frame boundary, so a malformed record does not break the connection
+            Frame received = FrameCodec.decode(ByteBuffer.wrap(record));
+            frame.frameType = received.frameType;
+            frame.data = received.data;
+            frame.streamId = received.streamId;
+        } catch (StreamCorruptedException e) {
+            e.printStackTrace();
+            return false;
+        }
+
+        return true;
+    }
+
+    public TcpManager() {
+        this.status = Status.READY;
+        this.observers = new ConcurrentLinkedQueue<>();
+        this.profile = SocketProfile.getDefault();
+    }
+}
@@ -5,8 +5,6 @@ import lombok.Getter;
 import lombok.Setter;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 
 /**
  * New connection listener thread.
@@ -25,8 +23,9 @@ public class TcpServerListener implements Runnable {
     public void run() {
         try {
             manager.clientSocket = manager.serverSocket.accept();
-            manager.out = new ObjectOutputStream(manager.clientSocket.getOutputStream());
-            manager.in = new ObjectInputStream(manager.clientSocket.getInputStream());
+            manager.getProfile().apply(manager.clientSocket,
+                    LinkEstimator.forHost(manager.clientSocket.getInetAddress().getHostAddress()));
+            manager.openStreams();
             manager.changeStatus(NetworkManager.Status.CONNECTED);
         } catch (IOException | NullPointerException e) {
             e.printStackTrace();
@@ -0,0 +1,832 @@
+package pl.edu.pg.eti.ksr.project.network;
+
+import lombok.Getter;
+import lombok.Setter;
+import pl.edu.pg.eti.ksr.project.concurrent.ExecutionMode;
+import pl.edu.pg.eti.ksr.project.network.data.Frame;
+import pl.edu.pg.eti.ksr.project.observer.Observer;
+import pl.edu.pg.eti.ksr.project.observer.Subject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.StreamCorruptedException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Network manager implementation using udp datagrams, meant for bulk transfers over a lossy local network.
+ *
+ * Frames are split into numbered packets forming a single ordered stream. The receiver acknowledges the next
+ * expected packet together with blocks of packets received out of order, so the sender retransmits only
+ * the packets which are really missing: a packet is considered lost when packets sent three later are already
+ * acknowledged, or when it stays unacknowledged for the retransmission timeout.
+ *
+ * Instead of slow start, packets are paced at a sending rate starting from the estimated bandwidth of the link.
+ * The rate grows by a fixed step every round trip without losses and is halved at most once per round trip
+ * when losses are detected. Number of packets in flight is additionally limited by the window.
+ *
+ * Packets:
+ * =====================================
+ * byte     packet type
+ * int      sequence number (DATA, DATA_END) or next expected sequence number (ACK)
+ * ...      fragment of the encoded frame (DATA, DATA_END), ranges of received packets (ACK), token (SYN)
+ * =====================================
+ *
+ * Both clients may set the same token, connection requests with a different token are ignored.
+ * Outgoing packets can be dropped on purpose with a given probability, for testing over localhost.
+ */
+public class UdpManager implements NetworkManager, Subject {
+
+    /**
+     * Maximum size of a frame fragment carried by a single packet, keeps packets below usual MTU.
+     */
+    public static final int MAX_PAYLOAD = 1200;
+
+    /**
+     * Maximum number of packets sent and not yet acknowledged.
+     */
+    public static final int WINDOW = 1024;
+
+    /**
+     * Lower limit of the sending rate in bytes per second.
+     */
+    public static final long MIN_RATE = 128 * 1024;
+
+    /**
+     * Upper limit of the sending rate in bytes per second.
+     */
+    public static final long MAX_RATE = 1_250_000_000L;
+
+    /**
+     * Sending rate added every round trip without losses, in bytes per second.
+     */
+    public static final long RATE_STEP = 1_250_000L;
+
+    /**
+     * Number of later packets acknowledged before a packet is considered lost.
+     */
+    static final int REORDER_THRESHOLD = 3;
+
+    /**
+     * Number of transmissions of a single packet after which the other client is declared dead.
+     */
+    static final int MAX_TRANSMISSIONS = 30;
+
+    /**
+     * Maximum number of out of order ranges reported by a single acknowledgement.
+     */
+    static final int MAX_RANGES = 32;
+
+    static final byte DATA = 0;
+    static final byte DATA_END = 1;
+    static final byte ACK = 2;
+    static final byte SYN = 3;
+    static final byte SYN_ACK = 4;
+    static final byte FIN = 5;
+
+    private static final int HEADER_SIZE = 1 + Integer.BYTES;
+
+    private static final long MIN_RTO = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final long MAX_RTO = TimeUnit.SECONDS.toNanos(2);
+    private static final long TICK = 5;
+    private static final long CONNECT_RETRY = 200;
+    private static final long CONNECT_TIMEOUT = 5000;
+    private static final long RECEIVE_POLL = 100;
+    private static final long PACING_SLACK = TimeUnit.MICROSECONDS.toNanos(200);
+    private static final int SOCKET_BUFFER = 4 * 1024 * 1024;
+
+    /**
+     * Packet sent and not yet acknowledged.
+     */
+    private static class Packet {
+        final byte[] datagram;
+        long sentAt;
+        int transmissions;
+
+        Packet(byte[] datagram) {
+            this.datagram = datagram;
+        }
+    }
+
+    /**
+     * List of all observers subscribing to this object.
+     */
+    private final Queue<Observer> observers;
+
+    /**
+     * Current status of the manager.
+     */
+    @Getter
+    private volatile Status status;
+
+    /**
+     * Token expected in connection requests and sent with own requests, null for accepting any request.
+     */
+    @Getter
+    @Setter
+    private byte[] token;
+
+    /**
+     * Estimator of the path to the connected host.
+     */
+    @Getter
+    private LinkEstimator link;
+
+    /**
+     * Channel of the current server or connection.
+     */
+    private DatagramChannel channel;
+
+    /**
+     * Address of the connected client.
+     */
+    private volatile SocketAddress peer;
+
+    /**
+     * Thread receiving packets, sending acknowledgements and retransmitting lost packets.
+     */
+    private Thread receiverThread;
+
+    /**
+     * Guards sender state, shared by sending threads and the receiver thread.
+     */
+    private final ReentrantLock lock;
+
+    /**
+     * Signalled when packets are acknowledged or the connection changes.
+     */
+    private final Condition changed;
+
+    /**
+     * Keeps fragments of a single frame contiguous when many threads send at once,
+     * held while waiting for the window and the pacing, so it is taken interruptibly.
+     */
+    private final ReentrantLock sendLock;
+
+    /**
+     * Frames received in order, waiting to be taken.
+     * Not bounded here, the communicator bounds outstanding transfer data with credits.
+     */
+    private final BlockingQueue<Frame> incoming;
+
+    /**
+     * Packets sent and not yet acknowledged, by sequence numbers.
+     */
+    private final TreeMap<Integer, Packet> unacked;
+
+    private int nextSeq;
+    private int highestAcked;
+    private long rate;
+    private long nextSendTime;
+    private long srtt;
+    private long rttvar;
+    private long rto;
+    private long lastRateChange;
+    private long lastLoss;
+
+    /**
+     * Packets received out of order, by sequence numbers, touched by the receiver thread only.
+     */
+    private final TreeMap<Integer, byte[]> outOfOrder;
+
+    /**
+     * Fragments of the frame being received, touched by the receiver thread only.
+     */
+    private final ByteArrayOutputStream assembled;
+
+    private int expectedSeq;
+
+    /**
+     * Probability of dropping an outgoing packet.
+     */
+    private double lossRate;
+
+    /**
+     * Source of dropped packets, seeded for repeatable tests.
+     */
+    private Random random;
+
+    /**
+     * Number of packets retransmitted since the manager was created.
+     */
+    @Getter
+    private volatile long retransmissions;
+
+    /**
+     * Number of outgoing packets dropped on purpose since the manager was created.
+     */
+    @Getter
+    private volatile long dropped;
+
+    /**
+     * Internal method used for changing manager status and publishing new status to the observers.
+     * @param status new status
+     */
+    void changeStatus(Status status) {
+        if (status != this.status) {
+            this.status = status;
+            notifyObs(this.status);
+        }
+    }
+
+    @Override
+    public void attach(Observer observer) {
+        this.observers.add(observer);
+    }
+
+    @Override
+    public void detach(Observer observer) {
+        this.observers.remove(observer);
+    }
+
+    @Override
+    public void notifyObs(Object o) {
+        for (Observer observer : this.observers) {
+            observer.update(o);
+        }
+    }
+
+    /**
+     * Drops outgoing packets on purpose, used for testing retransmission over localhost.
+     * @param lossRate probability of dropping a packet, 0 for sending all packets
+     * @param seed seed of the random source, the same seed drops the same packets
+     */
+    public synchronized void setLoss(double lossRate, long seed) {
+        this.lossRate = lossRate;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Gets current sending rate.
+     * @return rate in bytes per second
+     */
+    public long getRate() {
+        lock.lock();
+        try {
+            return rate;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getPort() {
+        return status == Status.CONNECTED ? ((InetSocketAddress) peer).getPort() : -1;
+    }
+
+    @Override
+    public int getListeningPort() {
+        try {
+            return status == Status.LISTENING ? ((InetSocketAddress) channel.getLocalAddress()).getPort() : -1;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Internal method used for opening a channel bound to a given port, 0 for any free port.
+     */
+    private void open(int port) throws IOException {
+        channel = DatagramChannel.open();
+        channel.setOption(StandardSocketOptions.SO_RCVBUF, SOCKET_BUFFER);
+        channel.setOption(StandardSocketOptions.SO_SNDBUF, SOCKET_BUFFER);
+        channel.bind(new InetSocketAddress(port));
+        channel.configureBlocking(false);
+        reset();
+
+        DatagramChannel opened = channel;
+        receiverThread = ExecutionMode.start(() -> receive(opened), "udp-receiver");
+    }
+
+    /**
+     * Internal method used for clearing state of the previous connection.
+     */
+    private void reset() {
+        lock.lock();
+        try {
+            unacked.clear();
+            nextSeq = 0;
+            highestAcked = -1;
+            srtt = 0;
+            rttvar = 0;
+            rto = MIN_RTO * 10;
+            nextSendTime = 0;
+            lastRateChange = System.nanoTime();
+            lastLoss = 0;
+        } finally {
+            lock.unlock();
+        }
+        outOfOrder.clear();
+        assembled.reset();
+        expectedSeq = 0;
+        incoming.clear();
+    }
+
+    @Override
+    public boolean listenOn(int port) {
+        if (status == Status.CONNECTED) return false;
+        if (status == Status.LISTENING) stop();
+
+        try {
+            open(port);
+            changeStatus(Status.LISTENING);
+        } catch (IOException e) {
+            e.printStackTrace();
+            close();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void stop() {
+        if (status == Status.LISTENING) {
+            close();
+            changeStatus(Status.READY);
+        }
+    }
+
+    @Override
+    public boolean isListening() {
+        return status == Status.LISTENING;
+    }
+
+    @Override
+    public boolean connect(String ip, int port) {
+        if (status == Status.LISTENING) stop();
+        if (status == Status.CONNECTED) disconnect();
+
+        try {
+            InetSocketAddress address = new InetSocketAddress(ip, port);
+            if (address.isUnresolved()) throw new IOException("Unknown host " + ip);
+            open(0);
+            peer = address;
+            startRate(address);
+
+            long start = System.nanoTime();
+            long deadline = start + TimeUnit.MILLISECONDS.toNanos(CONNECT_TIMEOUT);
+            lock.lockInterruptibly();
+            try {
+                while (status != Status.CONNECTED && System.nanoTime() - deadline < 0) {
+                    transmit(control(SYN, 0, token));
+                    changed.await(CONNECT_RETRY, TimeUnit.MILLISECONDS);
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (status != Status.CONNECTED) throw new IOException("No answer from " + ip + ":" + port);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        close();
+        changeStatus(Status.READY);
+        return false;
+    }
+
+    /**
+     * Internal method used for setting the initial sending rate from the estimated bandwidth of the link.
+     */
+    private void startRate(InetSocketAddress address) {
+        link = LinkEstimator.forHost(address.getAddress().getHostAddress());
+        lock.lock();
+        try {
+            rate = Math.min(MAX_RATE, Math.max(MIN_RATE, link.getBandwidth()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void disconnect() {
+        if (status != Status.CONNECTED) return;
+
+        try {
+            transmit(control(FIN, 0, null));
+        } catch (IOException e) {
+            // other client notices missing acknowledgements
+        }
+        close();
+        changeStatus(Status.READY);
+    }
+
+    /**
+     * Internal method used for closing channel and waking up threads waiting for the connection.
+     */
+    private void close() {
+        try {
+            if (channel != null) channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        signalChanged();
+        link = null;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return status == Status.CONNECTED;
+    }
+
+    /**
+     * Sends frame to the connected client.
+     * Waits for free space in the window and for the pacing of the sending rate.
+     * Safe to be called from many threads, fragments of a frame are never interleaved with other frames.
+     * @param frame frame to be sent
+     * @return true if all packets of the frame were sent, false if not connected
+     */
+    @Override
+    public boolean send(Frame frame) {
+        if (status != Status.CONNECTED) return false;
+
+        try {
+            byte[] encoded = FrameCodec.encode(frame);
+            sendLock.lockInterruptibly();
+            try {
+                int offset = 0;
+                do {
+                    int length = Math.min(MAX_PAYLOAD, encoded.length - offset);
+                    boolean last = offset + length == encoded.length;
+                    if (!sendFragment(encoded, offset, length, last)) return false;
+                    offset += length;
+                } while (offset < encoded.length);
+            } finally {
+                sendLock.unlock();
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (IOException e) {
+            e.printStackTrace();
+            disconnect();
+            return false;
+        }
+    }
+
+    private boolean sendFragment(byte[] encoded, int offset, int length, boolean last)
+            throws IOException, InterruptedException {
+        Packet packet;
+        long wait;
+        lock.lockInterruptibly();
+        try {
+            while (status == Status.CONNECTED && unacked.size() >= WINDOW) changed.await();
+            if (status != Status.CONNECTED) return false;
+
+            ByteBuffer datagram = ByteBuffer.allocate(HEADER_SIZE + length);
+            datagram.put(last ? DATA_END : DATA).putInt(nextSeq).put(encoded, offset, length);
+            packet = new Packet(datagram.array());
+            unacked.put(nextSeq++, packet);
+            wait = pace(packet.datagram.length);
+        } finally {
+            lock.unlock();
+        }
+        // small delays are gathered into bursts, sleeping is less precise than that
+        if (wait > PACING_SLACK) LockSupport.parkNanos(wait);
+        if (Thread.interrupted()) throw new InterruptedException();
+
+        lock.lock();
+        try {
+            packet.sentAt = System.nanoTime();
+            packet.transmissions++;
+        } finally {
+            lock.unlock();
+        }
+        transmit(packet.datagram);
+        return true;
+    }
+
+    /**
+     * Reserves time for sending a packet at the current rate, must be called holding the lock.
+     * @param size size of the packet in bytes
+     * @return time in nanoseconds to wait before sending
+     */
+    private long pace(int size) {
+        long now = System.nanoTime();
+        if (nextSendTime - now < 0) nextSendTime = now;
+        long wait = nextSendTime - now;
+        nextSendTime += size * 1_000_000_000L / rate;
+        return wait;
+    }
+
+    /**
+     * Sends a single datagram to the connected client, unless it is dropped on purpose.
+     */
+    private void transmit(byte[] datagram) throws IOException {
+        synchronized (this) {
+            if (random != null && random.nextDouble() < lossRate) {
+                dropped++;
+                return;
+            }
+        }
+        DatagramChannel current = channel;
+        SocketAddress address = peer;
+        // full socket buffer drops the datagram just like the network would
+        if (current != null && address != null) current.send(ByteBuffer.wrap(datagram), address);
+    }
+
+    private static byte[] control(byte type, int seq, byte[] payload) {
+        ByteBuffer datagram = ByteBuffer.allocate(HEADER_SIZE + (payload == null ? 0 : payload.length));
+        datagram.put(type).putInt(seq);
+        if (payload != null) datagram.put(payload);
+        return datagram.array();
+    }
+
+    @Override
+    public boolean receive(Frame frame) throws InterruptedIOException {
+        try {
+            while (status == Status.CONNECTED) {
+                Frame received = incoming.poll(RECEIVE_POLL, TimeUnit.MILLISECONDS);
+                if (received == null) continue;
+                frame.frameType = received.frameType;
+                frame.data = received.data;
+                frame.streamId = received.streamId;
+                return true;
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+        return false;
+    }
+
+    /**
+     * Receiver loop of a single channel.
+     */
+    private void receive(DatagramChannel channel) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + MAX_PAYLOAD + MAX_RANGES * 2 * Integer.BYTES);
+        try (Selector selector = Selector.open()) {
+            channel.register(selector, SelectionKey.OP_READ);
+            while (channel.isOpen()) {
+                selector.select(TICK);
+                selector.selectedKeys().clear();
+
+                boolean acknowledge = false;
+                SocketAddress address;
+                while ((address = channel.receive(buffer.clear())) != null) {
+                    buffer.flip();
+                    if (buffer.remaining() < HEADER_SIZE) continue;
+                    acknowledge |= handle(channel, address, buffer);
+                }
+                if (acknowledge) transmit(acknowledgement());
+                checkTimeouts();
+            }
+        } catch (IOException e) {
+            // channel closed by disconnect
+        }
+    }
+
+    /**
+     * Handles a single received packet.
+     * @return true if the packet has to be acknowledged
+     */
+    private boolean handle(DatagramChannel channel, SocketAddress address, ByteBuffer packet) throws IOException {
+        byte type = packet.get();
+        int seq = packet.getInt();
+
+        if (type == SYN) {
+            byte[] received = new byte[packet.remaining()];
+            packet.get(received);
+            if (token != null && !Arrays.equals(token, received)) return false;
+            if (status == Status.LISTENING) {
+                peer = address;
+                startRate((InetSocketAddress) address);
+                changeStatus(Status.CONNECTED);
+            }
+            // answered again when the previous answer was lost
+            if (address.equals(peer)) transmit(control(SYN_ACK, 0, null));
+            return false;
+        }
+        if (!address.equals(peer)) return false;
+
+        switch (type) {
+            case SYN_ACK -> {
+                if (status != Status.CONNECTED) {
+                    changeStatus(Status.CONNECTED);
+                    signalChanged();
+                }
+            }
+            case DATA, DATA_END -> {
+                data(seq, type == DATA_END, packet);
+                return true;
+            }
+            case ACK -> acknowledged(seq, packet);
+            case FIN -> {
+                close();
+                changeStatus(Status.READY);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stores received fragment and passes all frames completed in order.
+     */
+    private void data(int seq, boolean last, ByteBuffer packet) {
+        if (seq < expectedSeq || seq >= expectedSeq + WINDOW || outOfOrder.containsKey(seq)) return;
+
+        byte[] fragment = new byte[packet.remaining() + 1];
+        fragment[0] = (byte) (last ? 1 : 0);
+        packet.get(fragment, 1, fragment.length - 1);
+        outOfOrder.put(seq, fragment);
+
+        byte[] next;
+        while ((next = outOfOrder.remove(expectedSeq)) != null) {
+            expectedSeq++;
+            assembled.write(next, 1, next.length - 1);
+            if (next[0] == 1) {
+                byte[] encoded = assembled.toByteArray();
+                assembled.reset();
+                try {
+                    incoming.add(FrameCodec.decode(ByteBuffer.wrap(encoded, FrameCodec.LENGTH_SIZE,
+                            encoded.length - FrameCodec.LENGTH_SIZE)));
+                } catch (StreamCorruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds acknowledgement of the next expected packet and ranges of packets received out of order.
+     */
+    private byte[] acknowledgement() {
+        List<int[]> ranges = new ArrayList<>();
+        int[] range = null;
+        for (int seq : outOfOrder.keySet()) {
+            if (range != null && range[1] == seq) {
+                range[1]++;
+            } else {
+                if (ranges.size() == MAX_RANGES) break;
+                range = new int[]{seq, seq + 1};
+                ranges.add(range);
+            }
+        }
+
+        ByteBuffer ack = ByteBuffer.allocate(HEADER_SIZE + ranges.size() * 2 * Integer.BYTES);
+        ack.put(ACK).putInt(expectedSeq);
+        for (int[] r : ranges) ack.putInt(r[0]).putInt(r[1]);
+        return ack.array();
+    }
+
+    /**
+     * Removes acknowledged packets, measures round trip time and retransmits packets skipped by later ones.
+     */
+    private void acknowledged(int expected, ByteBuffer ranges) throws IOException {
+        List<byte[]> lost = new ArrayList<>();
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            boolean progress = acknowledge(unacked.headMap(expected), now);
+            highestAcked = Math.max(highestAcked, expected - 1);
+            while (ranges.remaining() >= 2 * Integer.BYTES) {
+                int start = ranges.getInt();
+                int end = ranges.getInt();
+                if (end <= start) continue;
+                progress |= acknowledge(unacked.subMap(start, end), now);
+                highestAcked = Math.max(highestAcked, end - 1);
+            }
+            if (!progress) return;
+
+            boolean loss = false;
+            for (Map.Entry<Integer, Packet> entry : unacked.headMap(highestAcked - REORDER_THRESHOLD + 1).entrySet()) {
+                Packet packet = entry.getValue();
+                // retransmitted once per round trip at most
+                if (packet.transmissions == 0 || now - packet.sentAt < Math.max(srtt, MIN_RTO / 4)) continue;
+                lost.add(retransmit(packet, now));
+                loss = true;
+            }
+            if (loss) {
+                lossDetected(now);
+            } else if (now - lastRateChange > srtt && now - lastLoss > srtt) {
+                rate = Math.min(MAX_RATE, rate + RATE_STEP);
+                lastRateChange = now;
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (byte[] datagram : lost) transmit(datagram);
+    }
+
+    /**
+     * Wakes up threads waiting for the window or for the connection.
+     */
+    private void signalChanged() {
+        lock.lock();
+        try {
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean acknowledge(Map<Integer, Packet> packets, long now) {
+        if (packets.isEmpty()) return false;
+        for (Packet packet : packets.values()) {
+            // retransmitted packets give ambiguous samples
+            if (packet.transmissions == 1) sampleRtt(now - packet.sentAt);
+        }
+        packets.clear();
+        return true;
+    }
+
+    private void sampleRtt(long rtt) {
+        if (srtt == 0) {
+            srtt = rtt;
+            rttvar = rtt / 2;
+        } else {
+            rttvar = (3 * rttvar + Math.abs(srtt - rtt)) / 4;
+            srtt = (7 * srtt + rtt) / 8;
+        }
+        rto = Math.min(MAX_RTO, Math.max(MIN_RTO, srtt + 4 * rttvar));
+        LinkEstimator current = link;
+        if (current != null) current.recordRtt(rtt);
+    }
+
+    private byte[] retransmit(Packet packet, long now) {
+        packet.sentAt = now;
+        packet.transmissions++;
+        retransmissions++;
+        return packet.datagram;
+    }
+
+    /**
+     * Halves the sending rate, at most once per round trip.
+     */
+    private void lossDetected(long now) {
+        if (now - lastLoss > Math.max(srtt, MIN_RTO)) {
+            rate = Math.max(MIN_RATE, rate / 2);
+            lastRateChange = now;
+        }
+        lastLoss = now;
+    }
+
+    /**
+     * Retransmits packets unacknowledged for the retransmission timeout, closes connection to a dead client.
+     */
+    private void checkTimeouts() throws IOException {
+        List<byte[]> lost = new ArrayList<>();
+        boolean dead = false;
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            Iterator<Packet> packets = unacked.values().iterator();
+            while (packets.hasNext() && lost.size() < WINDOW) {
+                Packet packet = packets.next();
+                if (packet.transmissions == 0 || now - packet.sentAt < rto) continue;
+                if (packet.transmissions >= MAX_TRANSMISSIONS) {
+                    dead = true;
+                    break;
+                }
+                lost.add(retransmit(packet, now));
+            }
+            if (!lost.isEmpty()) {
+                lossDetected(now);
+                rto = Math.min(MAX_RTO, rto * 2);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (dead) {
+            disconnect();
+            return;
+        }
+        for (byte[] datagram : lost) transmit(datagram);
+    }
+
+    public UdpManager() {
+        this.status = Status.READY;
+        this.observers = new ConcurrentLinkedQueue<>();
+        this.lock = new ReentrantLock();
+        this.changed = this.lock.newCondition();
+        this.sendLock = new ReentrantLock();
+        this.incoming = new LinkedBlockingQueue<>();
+        this.unacked = new TreeMap<>();
+        this.outOfOrder = new TreeMap<>();
+        this.assembled = new ByteArrayOutputStream();
+        this.rate = LinkEstimator.DEFAULT_BANDWIDTH;
+    }
+}
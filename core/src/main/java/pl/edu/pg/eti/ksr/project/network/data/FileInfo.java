@@ -0,0 +1,78 @@
+package pl.edu.pg.eti.ksr.project.network.data;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import pl.edu.pg.eti.ksr.project.crypto.Transformation;
+
+import java.io.Serializable;
+
+/**
+ * File info object.
+ * Consists all information associated with file.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class FileInfo implements Serializable {
+
+    /**
+     * Encrypted original file name.
+     */
+    byte[] fileName;
+
+    /**
+     * Encrypted original file size.
+     */
+    byte[] fileSize;
+
+    /**
+     * Number of extra data connections requested by the sender, 0 if data is sent over the control connection.
+     */
+    int stripes;
+
+    /**
+     * Stable identifier of the transfer, kept when the transfer is resumed over a new connection.
+     */
+    String resumeId;
+
+    /**
+     * Encrypted hash of the whole original file content.
+     */
+    byte[] hash;
+
+    /**
+     * Offset of the original file the sent data starts from, non zero for resumed transfers.
+     */
+    long offset;
+
+    /**
+     * Key the file data is encrypted with, encrypted with the session key.
+     * Set only for files encrypted once for many clients, data of other files is encrypted with the session key.
+     */
+    byte[] contentKey;
+
+    /**
+     * IV the file data is encrypted with, null if the content key is not set or its transformation uses no IV.
+     */
+    byte[] contentIv;
+
+    /**
+     * Transformation the file data is encrypted with, null if the content key is not set.
+     */
+    Transformation contentTransformation;
+
+    public FileInfo(byte[] fileName, byte[] fileSize) {
+        this(fileName, fileSize, 0);
+    }
+
+    public FileInfo(byte[] fileName, byte[] fileSize, int stripes) {
+        this(fileName, fileSize, stripes, null, null, 0);
+    }
+
+    public FileInfo(byte[] fileName, byte[] fileSize, int stripes, String resumeId, byte[] hash, long offset) {
+        this(fileName, fileSize, stripes, resumeId, hash, offset, null, null, null);
+    }
+}
@@ -0,0 +1,117 @@
+package pl.edu.pg.eti.ksr.project.network.data;
+
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * Frame encapsulating all data exchanged between clients.
+ */
+@NoArgsConstructor
+public class Frame implements Serializable {
+
+    /**
+     * All possible frame types.
+     * Interactive frames are always sent before pending bulk frames.
+     */
+    public enum Type {
+
+        // Public key and username exchange
+        COMMUNICATION_INIT(true),
+
+        // Informs about communication stop (disconnection from chat)
+        COMMUNICATION_STOP(true),
+
+        // Symmetric key and symmetric cyphering algorithm info exchange
+        SESSION_INIT(true),
+
+        // Simple text string message exchange
+        MESSAGE(true),
+
+        // File transfer initialization, small and keeps its order relative to session changes
+        TRANSFER_INIT(true),
+
+        // File data exchange
+        TRANSFER_DATA(false),
+
+        // Striped transfer data connections setup
+        TRANSFER_STRIPES(true),
+
+        // File data segment exchange over striped data connections
+        TRANSFER_SEGMENT(false),
+
+        // Grants sender credits for sending more file data of a transfer
+        TRANSFER_CREDIT(true),
+
+        // Asks sender to resume interrupted transfer from the offset saved by the receiver
+        TRANSFER_RESUME(true),
+
+        // Heartbeat request carrying time of sending, answered with a pong carrying the same time
+        PING(true),
+
+        // Heartbeat reply, lets the pinging side measure round trip time
+        PONG(true),
+
+        // Resumes communication and session with a cached ticket, replaces both handshakes after reconnection
+        SESSION_RESUME(true),
+
+        // Signed handshake establishing communication and the first session in a single round trip
+        HANDSHAKE(true),
+
+        // Offers datagram channel for transfer data, answered by connecting to it
+        DATAGRAM_INIT(true),
+
+        // Announces client to the relay, the only frame read by the relay itself
+        RELAY_CONNECT(true),
+
+        // Rejects transfer announced by the sender, which stops sending it
+        TRANSFER_CANCEL(true),
+
+        // Hash of the file of a transfer, sent once computed if its transfer init was sent without it
+        TRANSFER_HASH(true);
+
+        /**
+         * True if frames of this type are latency sensitive and should preempt bulk frames.
+         */
+        private final boolean interactive;
+
+        public boolean isInteractive() {
+            return interactive;
+        }
+
+        Type(boolean interactive) {
+            this.interactive = interactive;
+        }
+    }
+
+    /**
+     * Identifier of the control stream, used by all frames not related to any transfer.
+     */
+    public static final int CONTROL_STREAM = 0;
+
+    /**
+     * Frame type.
+     */
+    public Type frameType;
+
+    /**
+     * Data related to this frame.
+     */
+    public Object data;
+
+    /**
+     * Identifier of the stream this frame belongs to.
+     * Frames of a single stream are delivered in order, frames of different streams may be interleaved.
+     */
+    public int streamId;
+
+    public Frame(Type frameType, Object data) {
+        this(frameType, data, CONTROL_STREAM);
+    }
+
+    public Frame(Type frameType, Object data, int streamId) {
+        this.frameType = frameType;
+        this.data = data;
+        this.streamId = streamId;
+    }
+}
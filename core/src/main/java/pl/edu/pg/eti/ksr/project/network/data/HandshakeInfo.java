@@ -0,0 +1,73 @@
+package pl.edu.pg.eti.ksr.project.network.data;
+
+import lombok.*;
+import pl.edu.pg.eti.ksr.project.crypto.Transformation;
+
+import java.io.Serializable;
+import java.security.PublicKey;
+
+/**
+ * Used during signed handshake, establishing communication and the first session in a single round trip.
+ * Hello (num = 0) carries identity of the initiating client and proposed transformation,
+ * reply (num = 1) carries identity of the other client and its ephemeral key,
+ * finish (num = 2) carries only the signature of the initiating client.
+ * Public key is left out when the receiving client already knows it by its fingerprint,
+ * reply without ephemeral key asks for a hello with the key.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@Builder(toBuilder = true)
+public class HandshakeInfo implements Serializable {
+
+    /**
+     * Step of the handshake.
+     */
+    int num;
+
+    /**
+     * Username of the sending client.
+     */
+    String username;
+
+    /**
+     * Public key of the sending client, sent once per handshake, null if the other client knows it.
+     */
+    PublicKey userPublicKey;
+
+    /**
+     * Fingerprint of the public key of the sending client.
+     */
+    byte[] keyFingerprint;
+
+    /**
+     * Fingerprint of the public key of the other client known to the sending client, null if it is not known.
+     */
+    byte[] peerFingerprint;
+
+    /**
+     * Random nonce of the sending client, makes every handshake transcript unique.
+     */
+    byte[] nonce;
+
+    /**
+     * Transformation of the first session.
+     */
+    Transformation transformation;
+
+    /**
+     * Ephemeral EC public key of the sending client, new for every handshake.
+     */
+    PublicKey ephemeralKey;
+
+    /**
+     * IV of the first session.
+     */
+    byte[] iv;
+
+    /**
+     * Signature of the handshake transcript made with the private key of the sending client.
+     */
+    byte[] signature;
+}
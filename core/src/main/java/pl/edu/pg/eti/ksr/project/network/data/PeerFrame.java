@@ -0,0 +1,26 @@
+package pl.edu.pg.eti.ksr.project.network.data;
+
+import lombok.NoArgsConstructor;
+
+/**
+ * Frame associated with one of many connected peers.
+ * Used by network managers handling multiple simultaneous connections.
+ */
+@NoArgsConstructor
+public class PeerFrame extends Frame {
+
+    /**
+     * Identifier of the peer connection the frame was received from or is addressed to.
+     */
+    public int peerId;
+
+    public PeerFrame(int peerId, Type frameType, Object data) {
+        super(frameType, data);
+        this.peerId = peerId;
+    }
+
+    public PeerFrame(int peerId, Type frameType, Object data, int streamId) {
+        super(frameType, data, streamId);
+        this.peerId = peerId;
+    }
+}
@@ -0,0 +1,30 @@
+package pl.edu.pg.eti.ksr.project.network.data;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+
+/**
+ * Used for connecting through a relay.
+ * Sent as the first frame of a connection to the relay, to tell which client is connecting and which client
+ * its frames should be forwarded to.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class RelayInfo implements Serializable {
+
+    /**
+     * Username of the connecting client.
+     */
+    String username;
+
+    /**
+     * Username of the client to be connected with.
+     */
+    String peer;
+}
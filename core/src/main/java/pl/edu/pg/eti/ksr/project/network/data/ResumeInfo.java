@@ -0,0 +1,30 @@
+package pl.edu.pg.eti.ksr.project.network.data;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+
+/**
+ * Used for resuming interrupted transfer.
+ * Sent by the receiver after the session is established again, to tell the sender how much of the file
+ * has already been saved.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class ResumeInfo implements Serializable {
+
+    /**
+     * Stable identifier of the interrupted transfer.
+     */
+    String resumeId;
+
+    /**
+     * Number of bytes of the original file already saved by the receiver.
+     */
+    long offset;
+}
@@ -0,0 +1,29 @@
+package pl.edu.pg.eti.ksr.project.network.data;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+
+/**
+ * Segment of encrypted file data sent over one of many striped data connections.
+ * Segments may arrive out of order and are reassembled by their offsets.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class SegmentInfo implements Serializable {
+
+    /**
+     * Offset of the segment in the encrypted file data.
+     */
+    long offset;
+
+    /**
+     * Encrypted file data, empty array marks the end of the file.
+     */
+    byte[] data;
+}
@@ -0,0 +1,31 @@
+package pl.edu.pg.eti.ksr.project.network.data;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+
+/**
+ * Used during striped transfer initialization.
+ * Sent by the receiver over the control connection to announce where data connections should be opened,
+ * then sent back by the sender as the first frame of every data connection.
+ * Also used for offering the datagram channel, with the port of the offering client.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class StripeInfo implements Serializable {
+
+    /**
+     * Port the receiver accepts data connections on.
+     */
+    int port;
+
+    /**
+     * Random token identifying data connections of the transfer.
+     */
+    byte[] token;
+}
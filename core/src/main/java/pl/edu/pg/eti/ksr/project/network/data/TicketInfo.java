@@ -0,0 +1,39 @@
+package pl.edu.pg.eti.ksr.project.network.data;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+
+/**
+ * Used for resuming communication and session with a ticket cached during the previous session.
+ * Request (num = 0) is answered with a reply (num = 1), reply without nonce rejects the ticket.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class TicketInfo implements Serializable {
+
+    /**
+     * Step of the resumption.
+     */
+    int num;
+
+    /**
+     * Identifier of the ticket, derived by both clients from the previous session.
+     */
+    byte[] ticketId;
+
+    /**
+     * Random nonce of the sending client, new session key is derived from nonces of both clients.
+     */
+    byte[] nonce;
+
+    /**
+     * Proof of the ticket secret, computed over the nonces.
+     */
+    byte[] mac;
+}
@@ -0,0 +1,107 @@
+package pl.edu.pg.eti.ksr.project.relay;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * Single client connection held by the relay, used by the relay thread only.
+ * Keeps non-blocking channel together with the buffer frames are read into and frames waiting to be written.
+ */
+class RelayConnection {
+
+    /**
+     * Non-blocking channel of the connection.
+     */
+    final SocketChannel channel;
+
+    /**
+     * Selection key of the channel.
+     */
+    SelectionKey key;
+
+    /**
+     * Direct buffer data is read into, kept in write mode.
+     * Complete frames are handed out as slices, so the buffer is never compacted, a new one is taken instead.
+     */
+    ByteBuffer chunk;
+
+    /**
+     * Position in the chunk of the first byte not handed out yet.
+     */
+    int start;
+
+    /**
+     * Username of the client, null until the client announces itself.
+     */
+    String username;
+
+    /**
+     * Username of the client this client wants to be connected with.
+     */
+    String peer;
+
+    /**
+     * Connection of the other client of the route, null until it connects.
+     */
+    RelayConnection route;
+
+    /**
+     * Interactive frames waiting to be written, written before any bulk frame.
+     */
+    final Queue<ByteBuffer> interactive;
+
+    /**
+     * Bulk frames waiting to be written.
+     */
+    final Queue<ByteBuffer> outbound;
+
+    /**
+     * Frame being written, partially written frame is always completed before the next one is taken.
+     */
+    ByteBuffer current;
+
+    /**
+     * Number of bytes waiting to be written to this connection.
+     */
+    long queued;
+
+    /**
+     * Frames read from this connection before the other client connected.
+     */
+    final Queue<ByteBuffer> parked;
+
+    /**
+     * Number of bytes of the parked frames.
+     */
+    long parkedBytes;
+
+    /**
+     * True if reading from this connection is suspended until the other side catches up.
+     */
+    boolean paused;
+
+    /**
+     * True if the other client disconnected and this connection is closed once its frames are written.
+     */
+    boolean closing;
+
+    /**
+     * Checks if all frames have been written to this connection.
+     * @return true if nothing is waiting to be written
+     */
+    boolean isDrained() {
+        return current == null && interactive.isEmpty() && outbound.isEmpty();
+    }
+
+    RelayConnection(SocketChannel channel, int chunkSize) {
+        this.channel = channel;
+        this.chunk = ByteBuffer.allocateDirect(chunkSize);
+        this.start = 0;
+        this.interactive = new ArrayDeque<>();
+        this.outbound = new ArrayDeque<>();
+        this.parked = new ArrayDeque<>();
+    }
+}
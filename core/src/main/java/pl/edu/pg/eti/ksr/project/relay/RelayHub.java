@@ -0,0 +1,513 @@
+package pl.edu.pg.eti.ksr.project.relay;
+
+import pl.edu.pg.eti.ksr.project.metrics.Meter;
+import pl.edu.pg.eti.ksr.project.metrics.MetricsRegistry;
+import pl.edu.pg.eti.ksr.project.network.FrameCodec;
+import pl.edu.pg.eti.ksr.project.network.LinkEstimator;
+import pl.edu.pg.eti.ksr.project.network.NetworkManager;
+import pl.edu.pg.eti.ksr.project.network.SocketProfile;
+import pl.edu.pg.eti.ksr.project.network.data.Frame;
+import pl.edu.pg.eti.ksr.project.network.data.RelayInfo;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Relay forwarding frames between clients which cannot connect to each other directly, e.g. behind NAT.
+ *
+ * Every client connects to the relay and announces itself with a RELAY_CONNECT frame carrying its own username
+ * and the username of the client it wants to talk to. Two connections naming each other are joined into a route,
+ * from then on every frame read from one of them is written to the other one as it is. Frames sent before
+ * the other client connects are kept until it does.
+ *
+ * Until a client announces itself it may send only a small frame, so unknown clients cannot make the relay
+ * allocate large buffers. A route already claimed by a waiting client is not taken over by another one claiming
+ * the same usernames, the later connection is closed instead.
+ *
+ * Relay never decrypts anything: apart from the announcement only the frame headers are looked at, while
+ * session keys are exchanged by the clients under their public keys, so only the two clients can read them.
+ *
+ * Frames are forwarded without copying: data is read into direct buffers and complete frames are written
+ * to the other client as slices of the buffer they were read into. Only a frame split between two reads is copied,
+ * when the rest of the buffer cannot take it. Interactive frames are written before queued bulk frames,
+ * like TcpManager does.
+ *
+ * Every route has its own back-pressure: when more than HIGH_WATER bytes are waiting to be written to a client,
+ * the relay stops reading from the other client of the route until less than LOW_WATER bytes are left. A slow
+ * receiver slows down only its own sender through tcp flow control, other routes are not affected.
+ * When a client disconnects, frames already forwarded to the other client are written out and the other client
+ * is disconnected as well.
+ *
+ * All connections are served by a single thread multiplexing them with a selector.
+ * Forwarded frames are counted by meter "relay.forwarded" as events carrying their sizes in bytes, bytes waiting
+ * in the relay and routes by gauges "relay.queued" and "relay.routes" of the process-wide metrics registry.
+ *
+ * Can be run headless, with the port to listen on as an optional argument.
+ */
+public class RelayHub implements Runnable {
+
+    /**
+     * Number of bytes waiting for a client above which its sender is not read from.
+     */
+    public static final int HIGH_WATER = 1024 * 1024;
+
+    /**
+     * Number of bytes waiting for a client below which its sender is read from again.
+     */
+    public static final int LOW_WATER = 256 * 1024;
+
+    /**
+     * Size of the buffers data is read into, a larger one is taken for a larger frame.
+     */
+    public static final int CHUNK_SIZE = 256 * 1024;
+
+    /**
+     * Maximal length of the announcement, the first frame a client sends.
+     */
+    public static final int MAX_ANNOUNCEMENT_SIZE = 4096;
+
+    /**
+     * Free space of the read buffer below which a new buffer is taken before reading.
+     */
+    private static final int MIN_READ = 16 * 1024;
+
+    /**
+     * Frame types indexed by their ordinals.
+     */
+    private static final Frame.Type[] TYPES = Frame.Type.values();
+
+    /**
+     * Selector multiplexing all connections.
+     */
+    private final Selector selector;
+
+    /**
+     * Server channel used to accept clients.
+     */
+    private final ServerSocketChannel server;
+
+    /**
+     * Profile applied to accepted connections.
+     */
+    private final SocketProfile profile;
+
+    /**
+     * Connections of announced clients waiting for the other client of their routes,
+     * by username and peer username, used by the relay thread only.
+     */
+    private final Map<String, RelayConnection> waiting;
+
+    /**
+     * Meter of forwarded frames and their bytes.
+     */
+    private final Meter forwarded;
+
+    /**
+     * Number of bytes read and not written yet.
+     */
+    private final AtomicLong queued;
+
+    /**
+     * Number of established routes.
+     */
+    private final AtomicInteger routes;
+
+    /**
+     * Flag used for safely stopping the relay.
+     */
+    private volatile boolean running;
+
+    /**
+     * Relay thread started by start().
+     */
+    private Thread thread;
+
+    /**
+     * Runs relay until the process is terminated.
+     * @param args optional port to listen on, NetworkManager.DEFAULT_PORT if not given
+     */
+    public static void main(String[] args) {
+        int port = NetworkManager.DEFAULT_PORT;
+        if (args.length > 0) {
+            try {
+                port = Integer.parseInt(args[0]);
+            } catch (NumberFormatException e) {
+                System.err.println("Usage: RelayHub [port]");
+                return;
+            }
+        }
+
+        try {
+            RelayHub hub = new RelayHub(port);
+            System.out.println("Relay listening on port " + hub.getPort());
+            hub.run();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Gets port the relay accepts clients on.
+     * @return local port of the server channel
+     */
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * Gets number of bytes read from clients and not written to the other clients of their routes yet.
+     * @return number of queued bytes
+     */
+    public long getQueued() {
+        return queued.get();
+    }
+
+    /**
+     * Gets number of established routes.
+     * @return number of pairs of connected clients
+     */
+    public int getRoutes() {
+        return routes.get();
+    }
+
+    /**
+     * Starts relay on a new thread.
+     */
+    public synchronized void start() {
+        if (thread != null) return;
+        thread = new Thread(this, "relay-hub");
+        thread.start();
+    }
+
+    /**
+     * Stops relay and closes all connections.
+     */
+    public synchronized void close() {
+        running = false;
+        selector.wakeup();
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                try {
+                    key.channel().close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            MetricsRegistry.global().remove("relay");
+        }
+    }
+
+    /**
+     * Handles ready operations of a single key.
+     * @param key selected key
+     */
+    private void handle(SelectionKey key) {
+        if (!key.isValid()) return;
+
+        if (key.isAcceptable()) {
+            accept();
+            return;
+        }
+
+        RelayConnection connection = (RelayConnection) key.attachment();
+        try {
+            if (key.isReadable()) read(connection);
+            if (key.isValid() && key.isWritable()) write(connection);
+        } catch (IOException e) {
+            close(connection);
+        }
+    }
+
+    /**
+     * Accepts all pending clients.
+     */
+    private void accept() {
+        try {
+            SocketChannel channel;
+            while ((channel = server.accept()) != null) {
+                try {
+                    InetSocketAddress remote = (InetSocketAddress) channel.getRemoteAddress();
+                    profile.apply(channel.socket(), LinkEstimator.forHost(remote.getAddress().getHostAddress()));
+                    channel.configureBlocking(false);
+                    RelayConnection connection = new RelayConnection(channel, CHUNK_SIZE);
+                    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    channel.close();
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Reads available data and forwards every complete frame.
+     * @param connection readable connection
+     * @throws IOException when connection was closed or data is corrupted
+     */
+    private void read(RelayConnection connection) throws IOException {
+        if (connection.channel.read(connection.chunk) < 0) throw new EOFException();
+
+        ByteBuffer chunk = connection.chunk;
+        int needed = 0;
+        while (chunk.position() - connection.start >= FrameCodec.LENGTH_SIZE) {
+            int length = chunk.getInt(connection.start);
+            int limit = connection.username == null ? MAX_ANNOUNCEMENT_SIZE : FrameCodec.MAX_FRAME_SIZE;
+            if (length < FrameCodec.HEADER_SIZE || length > limit) {
+                throw new StreamCorruptedException("Invalid frame length: " + length);
+            }
+            int size = FrameCodec.LENGTH_SIZE + length;
+            if (chunk.position() - connection.start < size) {
+                needed = size;
+                break;
+            }
+
+            ByteBuffer frame = chunk.slice(connection.start, size);
+            connection.start += size;
+            if (connection.username == null) announced(connection, frame);
+            else forward(connection, frame);
+        }
+
+        // slices handed out keep the buffer, so data is never moved within it, only the split frame is copied
+        if (connection.start + needed > chunk.capacity() || chunk.capacity() - chunk.position() < MIN_READ) {
+            ByteBuffer next = ByteBuffer.allocateDirect(Math.max(CHUNK_SIZE, needed));
+            next.put(chunk.slice(connection.start, chunk.position() - connection.start));
+            connection.chunk = next;
+            connection.start = 0;
+        }
+    }
+
+    /**
+     * Handles the first frame of a connection, which must announce the client.
+     * Joins the connection with the connection of the other client if that one is waiting already.
+     * Announcement of a route another connection is waiting on already is rejected, the waiting connection is kept.
+     * @param connection connection of the announced client
+     * @param frame encoded announcement
+     * @throws StreamCorruptedException when the frame is not a valid announcement or the route is taken
+     */
+    private void announced(RelayConnection connection, ByteBuffer frame) throws StreamCorruptedException {
+        Frame announcement = FrameCodec.decode(frame.slice(FrameCodec.LENGTH_SIZE,
+                frame.remaining() - FrameCodec.LENGTH_SIZE));
+        if (announcement.frameType != Frame.Type.RELAY_CONNECT || !(announcement.data instanceof RelayInfo info)
+                || info.getUsername() == null || info.getPeer() == null) {
+            throw new StreamCorruptedException("Client did not announce itself");
+        }
+        String key = routeKey(info.getUsername(), info.getPeer());
+        if (waiting.containsKey(key)) {
+            throw new StreamCorruptedException("Route " + info.getUsername() + " to " + info.getPeer() + " is taken");
+        }
+        connection.username = info.getUsername();
+        connection.peer = info.getPeer();
+
+        RelayConnection other = waiting.remove(routeKey(connection.peer, connection.username));
+        if (other == null) {
+            waiting.put(key, connection);
+            return;
+        }
+
+        connection.route = other;
+        other.route = connection;
+        routes.incrementAndGet();
+
+        ByteBuffer parked;
+        while ((parked = other.parked.poll()) != null) {
+            other.parkedBytes -= parked.remaining();
+            queued.addAndGet(-parked.remaining());
+            enqueue(other, connection, parked);
+        }
+        if (connection.queued <= LOW_WATER) resume(other);
+    }
+
+    /**
+     * Forwards frame read from a connection to the other client of its route,
+     * or keeps it until the other client connects.
+     * @param source connection the frame was read from
+     * @param frame encoded frame
+     */
+    private void forward(RelayConnection source, ByteBuffer frame) {
+        if (source.route != null) {
+            enqueue(source, source.route, frame);
+            return;
+        }
+
+        source.parked.add(frame);
+        source.parkedBytes += frame.remaining();
+        queued.addAndGet(frame.remaining());
+        if (source.parkedBytes > HIGH_WATER) pause(source);
+    }
+
+    /**
+     * Queues frame to be written to a connection, suspending reading from the source if too much is queued.
+     * @param source connection the frame was read from
+     * @param destination connection the frame is written to
+     * @param frame encoded frame
+     */
+    private void enqueue(RelayConnection source, RelayConnection destination, ByteBuffer frame) {
+        int type = frame.get(FrameCodec.LENGTH_SIZE);
+        boolean interactive = type >= 0 && type < TYPES.length && TYPES[type].isInteractive();
+        if (interactive) destination.interactive.add(frame);
+        else destination.outbound.add(frame);
+
+        destination.queued += frame.remaining();
+        queued.addAndGet(frame.remaining());
+        if (destination.queued > HIGH_WATER) pause(source);
+        if (destination.key.isValid()) destination.key.interestOpsOr(SelectionKey.OP_WRITE);
+    }
+
+    /**
+     * Writes queued frames until the socket buffer is full or nothing is left to write.
+     * Resumes reading from the other client of the route once enough has been written.
+     * @param connection writable connection
+     * @throws IOException when writing failed
+     */
+    private void write(RelayConnection connection) throws IOException {
+        while (true) {
+            if (connection.current == null) connection.current = connection.interactive.poll();
+            if (connection.current == null) connection.current = connection.outbound.poll();
+            if (connection.current == null) break;
+
+            int written = connection.channel.write(connection.current);
+            connection.queued -= written;
+            queued.addAndGet(-written);
+            if (connection.current.hasRemaining()) break; // socket buffer full, wait for next writable event
+
+            forwarded.mark(connection.current.capacity());
+            connection.current = null;
+        }
+
+        if (connection.isDrained()) {
+            if (connection.closing) {
+                close(connection);
+                return;
+            }
+            connection.key.interestOpsAnd(~SelectionKey.OP_WRITE);
+        }
+        if (connection.route != null && connection.queued <= LOW_WATER) resume(connection.route);
+    }
+
+    /**
+     * Suspends reading from a connection.
+     * @param connection connection not to be read from
+     */
+    private void pause(RelayConnection connection) {
+        if (connection.paused || !connection.key.isValid()) return;
+        connection.paused = true;
+        connection.key.interestOpsAnd(~SelectionKey.OP_READ);
+    }
+
+    /**
+     * Resumes reading from a connection suspended by pause().
+     * @param connection connection to be read from again
+     */
+    private void resume(RelayConnection connection) {
+        if (!connection.paused || connection.closing || !connection.key.isValid()) return;
+        connection.paused = false;
+        connection.key.interestOpsOr(SelectionKey.OP_READ);
+    }
+
+    /**
+     * Closes connection, the other client of its route is disconnected once its queued frames are written.
+     * @param connection connection to be closed
+     */
+    private void close(RelayConnection connection) {
+        if (!connection.channel.isOpen()) return;
+
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        queued.addAndGet(-(connection.queued + connection.parkedBytes));
+        if (connection.username != null) waiting.remove(routeKey(connection.username, connection.peer), connection);
+
+        RelayConnection other = connection.route;
+        if (other == null) return;
+
+        connection.route = null;
+        other.route = null;
+        routes.decrementAndGet();
+
+        // frames already forwarded by the disconnected client are still delivered
+        other.closing = true;
+        pause(other);
+        if (other.isDrained()) close(other);
+    }
+
+    private static String routeKey(String username, String peer) {
+        return username + '\n' + peer;
+    }
+
+    /**
+     * Creates relay accepting clients on a given port, serving them after start() or run() is called.
+     * @param port port to listen on, 0 for any free port
+     * @throws IOException when the port cannot be bound
+     */
+    public RelayHub(int port) throws IOException {
+        this.profile = SocketProfile.getDefault();
+        this.waiting = new HashMap<>();
+        this.queued = new AtomicLong(0);
+        this.routes = new AtomicInteger(0);
+        this.running = true;
+
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        try {
+            profile.apply(server.socket(), LinkEstimator.forHost(null));
+            server.bind(new InetSocketAddress(port));
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            server.close();
+            selector.close();
+            throw e;
+        }
+
+        MetricsRegistry metrics = MetricsRegistry.global();
+        this.forwarded = metrics.meter("relay.forwarded");
+        metrics.gauge("relay.queued", queued::get);
+        metrics.gauge("relay.routes", routes::get);
+    }
+}
@@ -0,0 +1,51 @@
+package pl.edu.pg.eti.ksr.project.communication;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import pl.edu.pg.eti.ksr.project.concurrent.MemoryBudget;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+public class CreditingQueueTest {
+
+    private List<Object> grants;
+    private CreditingQueue queue;
+
+    @Before
+    public void init() {
+        grants = new CopyOnWriteArrayList<>();
+        queue = new CreditingQueue(4, MemoryBudget.global().child("test", 1024), 2, grants::add);
+    }
+
+    @Test
+    public void Should_GrantCredits_When_BatchOfPartsTaken() throws InterruptedException {
+        for (int i = 0; i < 3; i++) queue.put(new byte[]{(byte) i});
+
+        queue.take();
+        Assert.assertTrue(grants.isEmpty());
+
+        queue.poll(10, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(List.of(2), grants);
+
+        queue.take();
+        Assert.assertEquals(List.of(2), grants);
+    }
+
+    @Test
+    public void Should_NotGrantCredits_When_PollTimesOut() throws InterruptedException {
+        Assert.assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+        Assert.assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+
+        Assert.assertTrue(grants.isEmpty());
+    }
+
+    @Test
+    public void Should_RejectPart_When_WindowExceeded() {
+        for (int i = 0; i < 4; i++) Assert.assertTrue(queue.offer(new byte[0]));
+
+        Assert.assertFalse(queue.offer(new byte[0]));
+    }
+}
@@ -0,0 +1,1200 @@
+package pl.edu.pg.eti.ksr.project.communication;
+
+import org.awaitility.Awaitility;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import pl.edu.pg.eti.ksr.project.communication.data.FileData;
+import pl.edu.pg.eti.ksr.project.communication.data.Message;
+import pl.edu.pg.eti.ksr.project.crypto.EncryptionManager;
+import pl.edu.pg.eti.ksr.project.crypto.Transformation;
+import pl.edu.pg.eti.ksr.project.metrics.MetricsRegistry;
+import pl.edu.pg.eti.ksr.project.metrics.MetricsSnapshot;
+import pl.edu.pg.eti.ksr.project.network.LoopbackManager;
+import pl.edu.pg.eti.ksr.project.network.NetworkManager;
+import pl.edu.pg.eti.ksr.project.network.TcpManager;
+import pl.edu.pg.eti.ksr.project.network.UdpManager;
+import pl.edu.pg.eti.ksr.project.network.data.Frame;
+import pl.edu.pg.eti.ksr.project.network.data.TicketInfo;
+import pl.edu.pg.eti.ksr.project.relay.RelayHub;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class EncryptedTcpCommunicatorTest {
+
+    private TcpManager tcpManager1;
+    private TcpManager tcpManager2;
+
+    private EncryptionManager encryptionManager1;
+    private EncryptionManager encryptionManager2;
+    private Transformation transformation = Transformation.AES_CBC_PKCS5Padding;
+    private KeyPair keyPair1;
+    private KeyPair keyPair2;
+
+    private final String savedFilesPath = "./src/test/resources/";
+
+    private final Path sourceFile = Path.of("./src/test/resources/test.txt");
+    private final Path targetDecryptedFile = Path.of("./src/test/resources/test_1.txt");
+
+    private EncryptedTcpCommunicator encryptedTcpCommunicator1;
+    private EncryptedTcpCommunicator encryptedTcpCommunicator2;
+    private final String username1 = "test_username_1";
+    private final String username2 = "test_username_2";
+
+    @Before
+    public void init() throws NoSuchPaddingException, NoSuchAlgorithmException {
+        tcpManager1 = new TcpManager();
+        tcpManager2 = new TcpManager();
+
+        encryptionManager1 = new EncryptionManager(transformation.getText());
+        encryptionManager2 = new EncryptionManager(transformation.getText());
+
+        keyPair1 = EncryptionManager.generateKeyPair(Transformation.RSA_ECB_PKCS1Padding.getKeySize(),
+                Transformation.RSA_ECB_PKCS1Padding.getAlgorithm());
+        keyPair2 = EncryptionManager.generateKeyPair(Transformation.RSA_ECB_PKCS1Padding.getKeySize(),
+                Transformation.RSA_ECB_PKCS1Padding.getAlgorithm());
+
+        encryptedTcpCommunicator1 = new EncryptedTcpCommunicator(savedFilesPath, username1, keyPair1.getPublic(),
+                keyPair1.getPrivate(), Transformation.RSA_ECB_PKCS1Padding, tcpManager1, encryptionManager1);
+        encryptedTcpCommunicator2 = new EncryptedTcpCommunicator(savedFilesPath, username2, keyPair2.getPublic(),
+                keyPair2.getPrivate(), Transformation.RSA_ECB_PKCS1Padding, tcpManager2, encryptionManager2);
+    }
+
+    @After
+    public void teardown() {
+        tcpManager1.stop();
+        tcpManager1.disconnect();
+
+        tcpManager2.stop();
+        tcpManager2.disconnect();
+
+        encryptedTcpCommunicator1.close();
+        encryptedTcpCommunicator2.close();
+
+        File trgDecrypted = targetDecryptedFile.toFile();
+        if (trgDecrypted.exists()) trgDecrypted.delete();
+    }
+
+    private Callable<Boolean> communicator1IncomingHandlerIsAlive() {
+        return () -> encryptedTcpCommunicator1.getIncomingHandler().isAlive();
+    }
+
+    private Callable<Boolean> communicator1IncomingHandlerIsNotAlive() {
+        return () -> !encryptedTcpCommunicator1.getIncomingHandler().isAlive();
+    }
+
+    private Callable<Boolean> manager1HasStatusListening() {
+        return () -> tcpManager1.getStatus() == NetworkManager.Status.LISTENING;
+    }
+
+    private Callable<Boolean> manager2HasStatusConnected() {
+        return () -> tcpManager2.getStatus() == NetworkManager.Status.CONNECTED;
+    }
+
+    @Test
+    public void Should_IncomingHandlerThreadBeStopped_When_Disconnected() {
+        encryptedTcpCommunicator1.getTcpManager().listen();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(manager1HasStatusListening());
+
+        encryptedTcpCommunicator2.getTcpManager().connect("localhost", NetworkManager.DEFAULT_PORT);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(manager2HasStatusConnected());
+
+        encryptedTcpCommunicator1.startIncomingHandler();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1IncomingHandlerIsAlive());
+
+        encryptedTcpCommunicator1.getTcpManager().disconnect();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1IncomingHandlerIsNotAlive());
+    }
+
+    @Test
+    public void Should_IncomingHandlerStartAutomatically_When_CommunicatorInitiated() {
+        encryptedTcpCommunicator1.init();
+
+        encryptedTcpCommunicator1.getTcpManager().listen();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(manager1HasStatusListening());
+
+        encryptedTcpCommunicator2.getTcpManager().connect("localhost", NetworkManager.DEFAULT_PORT);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(manager2HasStatusConnected());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1IncomingHandlerIsAlive());
+    }
+
+    private Callable<Boolean> communicator2IncomingHandlerIsAlive() {
+        return () -> encryptedTcpCommunicator2.getIncomingHandler().isAlive();
+    }
+
+    private Callable<Boolean> communicator1ReceivedCommInfo2() {
+        return () -> Objects.equals(encryptedTcpCommunicator1.getOtherUsername(), username2) &&
+                encryptedTcpCommunicator1.getOtherUserPublicKey().equals(keyPair2.getPublic());
+    }
+
+    private Callable<Boolean> communicator2ReceivedCommInfo1() {
+        return () -> Objects.equals(encryptedTcpCommunicator2.getOtherUsername(), username1) &&
+                encryptedTcpCommunicator2.getOtherUserPublicKey().equals(keyPair1.getPublic());
+    }
+
+    @Test
+    public void Should_ProperlyExchangeUsernamesAndPublicKeys_When_InitiateCommunicationMethodCalled()
+            throws CommunicationException {
+        encryptedTcpCommunicator1.init();
+        encryptedTcpCommunicator2.init();
+
+        encryptedTcpCommunicator1.getTcpManager().listen();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(manager1HasStatusListening());
+
+        encryptedTcpCommunicator2.getTcpManager().connect("localhost", NetworkManager.DEFAULT_PORT);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(manager2HasStatusConnected());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1IncomingHandlerIsAlive());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2IncomingHandlerIsAlive());
+
+        encryptedTcpCommunicator1.initiateCommunication();
+
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1ReceivedCommInfo2());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2ReceivedCommInfo1());
+        Assert.assertEquals(1, encryptedTcpCommunicator1.getMessageQueue().size());
+        Assert.assertEquals(1, encryptedTcpCommunicator2.getMessageQueue().size());
+    }
+
+    private Callable<Boolean> communicator1SessionEstablished() {
+        return () -> encryptedTcpCommunicator1.sessionEstablished;
+    }
+
+    private Callable<Boolean> communicator2SessionEstablished() {
+        return () -> encryptedTcpCommunicator2.sessionEstablished;
+    }
+
+    @Test
+    public void Should_ProperlyGenerateAndExchangeSessionInfo_When_InitiateSessionMethodCalled()
+            throws CommunicationException, IllegalBlockSizeException, NoSuchAlgorithmException, BadPaddingException,
+            InvalidKeyException, NoSuchPaddingException {
+        encryptedTcpCommunicator1.init();
+        encryptedTcpCommunicator2.init();
+
+        encryptedTcpCommunicator1.getTcpManager().listen();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(manager1HasStatusListening());
+
+        encryptedTcpCommunicator2.getTcpManager().connect("localhost", NetworkManager.DEFAULT_PORT);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(manager2HasStatusConnected());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1IncomingHandlerIsAlive());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2IncomingHandlerIsAlive());
+
+        encryptedTcpCommunicator1.initiateCommunication();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1ReceivedCommInfo2());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2ReceivedCommInfo1());
+
+        encryptedTcpCommunicator1.initiateSession(Transformation.AES_CBC_PKCS5Padding);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1SessionEstablished());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2SessionEstablished());
+
+        Assert.assertEquals(2, encryptedTcpCommunicator2.getMessageQueue().size());
+        Assert.assertEquals(encryptedTcpCommunicator1.getSessionKey(), encryptedTcpCommunicator2.getSessionKey());
+        Assert.assertArrayEquals(encryptedTcpCommunicator1.getSessionIV().getIV(),
+                encryptedTcpCommunicator2.getSessionIV().getIV());
+        Assert.assertEquals(encryptedTcpCommunicator1.getSymmetricTransformation(),
+                encryptedTcpCommunicator2.getSymmetricTransformation());
+    }
+
+    @Test
+    public void Should_ReceiveMessageWhenMessageSend_When_CommunicationAndSessionProperlyInitiated()
+            throws CommunicationException, IllegalBlockSizeException, NoSuchPaddingException, NoSuchAlgorithmException,
+            BadPaddingException, InvalidKeyException, InvalidAlgorithmParameterException, InterruptedException {
+        encryptedTcpCommunicator1.init();
+        encryptedTcpCommunicator2.init();
+
+        encryptedTcpCommunicator1.getTcpManager().listen();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(manager1HasStatusListening());
+
+        encryptedTcpCommunicator2.getTcpManager().connect("localhost", NetworkManager.DEFAULT_PORT);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(manager2HasStatusConnected());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1IncomingHandlerIsAlive());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2IncomingHandlerIsAlive());
+
+        encryptedTcpCommunicator1.initiateCommunication();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1ReceivedCommInfo2());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2ReceivedCommInfo1());
+
+        encryptedTcpCommunicator1.initiateSession(Transformation.AES_CBC_PKCS5Padding);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1SessionEstablished());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2SessionEstablished());
+
+        encryptedTcpCommunicator1.getMessageQueue().clear();
+        encryptedTcpCommunicator2.getMessageQueue().clear();
+
+        String test = "test message";
+        encryptedTcpCommunicator1.send(test);
+
+        Message message = encryptedTcpCommunicator2.getMessageQueue().poll(5, TimeUnit.SECONDS);
+        Assert.assertNotNull(message);
+        Assert.assertEquals(Message.Type.MESSAGE, message.messageType);
+        Assert.assertEquals(test, message.data);
+    }
+
+    @Test
+    public void Should_ReceivedFileBeIdenticalToSent_When_PerformingFileTransferBetweenTwoCommunicators()
+            throws CommunicationException, IllegalBlockSizeException, NoSuchPaddingException, NoSuchAlgorithmException,
+            BadPaddingException, InvalidKeyException, InterruptedException, InvalidAlgorithmParameterException,
+            IOException {
+
+        encryptedTcpCommunicator1.init();
+        encryptedTcpCommunicator2.init();
+
+        encryptedTcpCommunicator1.getTcpManager().listen();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(manager1HasStatusListening());
+
+        encryptedTcpCommunicator2.getTcpManager().connect("localhost", NetworkManager.DEFAULT_PORT);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(manager2HasStatusConnected());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1IncomingHandlerIsAlive());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2IncomingHandlerIsAlive());
+
+        encryptedTcpCommunicator1.initiateCommunication();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1ReceivedCommInfo2());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2ReceivedCommInfo1());
+
+        encryptedTcpCommunicator1.initiateSession(Transformation.AES_CBC_PKCS5Padding);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1SessionEstablished());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2SessionEstablished());
+
+        encryptedTcpCommunicator1.getMessageQueue().clear();
+        encryptedTcpCommunicator2.getMessageQueue().clear();
+
+        Transfer transfer = encryptedTcpCommunicator2.send(sourceFile);
+
+        Message messageFile = encryptedTcpCommunicator1.getMessageQueue().poll(5, TimeUnit.SECONDS);
+        Assert.assertNotNull(messageFile);
+        Assert.assertEquals(Message.Type.FILE, messageFile.messageType);
+
+        Message messageFileReady = encryptedTcpCommunicator1.getMessageQueue().poll(5, TimeUnit.SECONDS);
+        Assert.assertNotNull(messageFileReady);
+        Assert.assertEquals(Message.Type.FILE_READY, messageFileReady.messageType);
+
+        Assert.assertTrue(new File(((FileData)messageFile.data).getFilePath()).exists());
+        long result = Files.mismatch(sourceFile, targetDecryptedFile);
+        Assert.assertEquals(-1L, result);
+
+        Assert.assertFalse(transfer.senderThread.isAlive());
+        Assert.assertFalse(encryptedTcpCommunicator1.cyphering);
+        Assert.assertFalse(encryptedTcpCommunicator2.cyphering);
+    }
+
+    @Test
+    public void Should_ReceivedFileBeIdenticalToSent_When_ConnectedOverLoopback()
+            throws CommunicationException, IllegalBlockSizeException, NoSuchPaddingException, NoSuchAlgorithmException,
+            BadPaddingException, InvalidKeyException, InterruptedException, InvalidAlgorithmParameterException,
+            IOException {
+        LoopbackManager loopbackManager1 = new LoopbackManager();
+        LoopbackManager loopbackManager2 = new LoopbackManager();
+        encryptedTcpCommunicator1.setTcpManager(loopbackManager1);
+        encryptedTcpCommunicator2.setTcpManager(loopbackManager2);
+
+        encryptedTcpCommunicator1.init();
+        encryptedTcpCommunicator2.init();
+        try {
+            Assert.assertTrue(loopbackManager1.listenOn(0));
+            Assert.assertTrue(loopbackManager2.connect(LoopbackManager.HOST, loopbackManager1.getListeningPort()));
+            Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1IncomingHandlerIsAlive());
+
+            encryptedTcpCommunicator2.initiateCommunication(transformation);
+            Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1SessionEstablished());
+            Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2SessionEstablished());
+
+            encryptedTcpCommunicator1.getMessageQueue().clear();
+            encryptedTcpCommunicator2.send(sourceFile);
+
+            Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> encryptedTcpCommunicator1.getMessageQueue()
+                    .stream().anyMatch(message -> message.messageType == Message.Type.FILE_READY));
+            Assert.assertEquals(-1L, Files.mismatch(sourceFile, targetDecryptedFile));
+
+            loopbackManager2.disconnect();
+            Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1IncomingHandlerIsNotAlive());
+            Assert.assertFalse(encryptedTcpCommunicator1.sessionEstablished);
+        } finally {
+            loopbackManager1.stop();
+            loopbackManager1.disconnect();
+            loopbackManager2.disconnect();
+        }
+    }
+
+    @Test
+    public void Should_ReceivedFileBeIdenticalToSent_When_ConnectedThroughRelay()
+            throws CommunicationException, IllegalBlockSizeException, NoSuchPaddingException, NoSuchAlgorithmException,
+            BadPaddingException, InvalidKeyException, InvalidAlgorithmParameterException, IOException {
+        RelayHub relay = new RelayHub(0);
+        relay.start();
+
+        encryptedTcpCommunicator1.init();
+        encryptedTcpCommunicator2.init();
+        try {
+            Assert.assertTrue(tcpManager1.connectRelay("localhost", relay.getPort(), username1, username2));
+            Assert.assertTrue(tcpManager2.connectRelay("localhost", relay.getPort(), username2, username1));
+            Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> relay.getRoutes() == 1);
+
+            encryptedTcpCommunicator2.initiateCommunication(transformation);
+            Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1SessionEstablished());
+            Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2SessionEstablished());
+
+            encryptedTcpCommunicator1.getMessageQueue().clear();
+            String test = "test message";
+            encryptedTcpCommunicator2.send(test);
+            encryptedTcpCommunicator2.send(sourceFile);
+
+            Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> encryptedTcpCommunicator1.getMessageQueue()
+                    .stream().anyMatch(message -> message.messageType == Message.Type.FILE_READY));
+            Assert.assertTrue(encryptedTcpCommunicator1.getMessageQueue().stream()
+                    .anyMatch(message -> message.messageType == Message.Type.MESSAGE && test.equals(message.data)));
+            Assert.assertEquals(-1L, Files.mismatch(sourceFile, targetDecryptedFile));
+
+            tcpManager2.disconnect();
+            Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> !tcpManager1.isConnected());
+        } finally {
+            relay.close();
+        }
+    }
+
+    @Test
+    public void Should_LimitTransferRateButNotMessages_When_PeerBandwidthLimited()
+            throws CommunicationException, IllegalBlockSizeException, NoSuchPaddingException, NoSuchAlgorithmException,
+            BadPaddingException, InvalidKeyException, InvalidAlgorithmParameterException, IOException {
+        LoopbackManager loopbackManager1 = new LoopbackManager();
+        LoopbackManager loopbackManager2 = new LoopbackManager();
+        encryptedTcpCommunicator1.setTcpManager(loopbackManager1);
+        encryptedTcpCommunicator2.setTcpManager(loopbackManager2);
+
+        encryptedTcpCommunicator1.init();
+        encryptedTcpCommunicator2.init();
+        try {
+            Assert.assertTrue(loopbackManager1.listenOn(0));
+            Assert.assertTrue(loopbackManager2.connect(LoopbackManager.HOST, loopbackManager1.getListeningPort()));
+            Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1IncomingHandlerIsAlive());
+
+            encryptedTcpCommunicator2.initiateCommunication(transformation);
+            Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1SessionEstablished());
+            Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2SessionEstablished());
+
+            // about a second for the whole file, after the first two kilobytes sent at once
+            encryptedTcpCommunicator2.getBandwidth().setRate(10 * 1024, 2 * 1024);
+            encryptedTcpCommunicator1.getMessageQueue().clear();
+            long start = System.nanoTime();
+            encryptedTcpCommunicator2.send(sourceFile);
+            Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> encryptedTcpCommunicator2.getBandwidth().getWaiting() > 0);
+
+            String test = "test message";
+            encryptedTcpCommunicator2.send(test);
+            Awaitility.await().atMost(200, TimeUnit.MILLISECONDS).until(() -> encryptedTcpCommunicator1
+                    .getMessageQueue().stream().anyMatch(message -> message.messageType == Message.Type.MESSAGE));
+
+            Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> encryptedTcpCommunicator1.getMessageQueue()
+                    .stream().anyMatch(message -> message.messageType == Message.Type.FILE_READY));
+            Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(700));
+            Assert.assertEquals(-1L, Files.mismatch(sourceFile, targetDecryptedFile));
+        } finally {
+            loopbackManager1.stop();
+            loopbackManager1.disconnect();
+            loopbackManager2.disconnect();
+        }
+    }
+
+    @Test
+    public void Should_RecordHandshakeAndTransferMetrics_When_FileTransferred()
+            throws CommunicationException, IllegalBlockSizeException, NoSuchPaddingException, NoSuchAlgorithmException,
+            BadPaddingException, InvalidKeyException, InvalidAlgorithmParameterException, IOException {
+        LoopbackManager loopbackManager1 = new LoopbackManager();
+        LoopbackManager loopbackManager2 = new LoopbackManager();
+        encryptedTcpCommunicator1.setTcpManager(loopbackManager1);
+        encryptedTcpCommunicator2.setTcpManager(loopbackManager2);
+        String scope1 = encryptedTcpCommunicator1.metricsScope;
+        String scope2 = encryptedTcpCommunicator2.metricsScope;
+
+        encryptedTcpCommunicator1.init();
+        encryptedTcpCommunicator2.init();
+        try {
+            Assert.assertTrue(loopbackManager1.listenOn(0));
+            Assert.assertTrue(loopbackManager2.connect(LoopbackManager.HOST, loopbackManager1.getListeningPort()));
+            Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1IncomingHandlerIsAlive());
+
+            encryptedTcpCommunicator2.initiateCommunication(transformation);
+            Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1SessionEstablished());
+            Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2SessionEstablished());
+
+            encryptedTcpCommunicator1.getMessageQueue().clear();
+            encryptedTcpCommunicator2.send(sourceFile);
+            Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> encryptedTcpCommunicator1.getMessageQueue()
+                    .stream().anyMatch(message -> message.messageType == Message.Type.FILE_READY));
+
+            MetricsSnapshot snapshot = MetricsRegistry.global().sample();
+            Assert.assertEquals(1, snapshot.get(scope1 + ".handshake.count"), 0);
+            Assert.assertEquals(1, snapshot.get(scope2 + ".handshake.count"), 0);
+            Assert.assertEquals(1, snapshot.get(scope1 + ".firstByte.count"), 0);
+            Assert.assertTrue(snapshot.get(scope1 + ".firstByte.last") > 0);
+            Assert.assertTrue(snapshot.get(scope1 + ".messageQueue") > 0);
+            Assert.assertTrue(snapshot.get(scope1 + ".budget.peer.peak") > 0);
+            Assert.assertTrue(snapshot.get(scope1 + ".budget.global.peak") >=
+                    snapshot.get(scope1 + ".budget.peer.peak"));
+            Assert.assertEquals(0, snapshot.get(scope1 + ".budget.peer.waiting"), 0);
+            Assert.assertTrue(snapshot.get("crypto.encrypted.total") >= Files.size(sourceFile));
+            // metrics of the finished transfer are removed
+            Assert.assertTrue(snapshot.values().keySet().stream().noneMatch(name ->
+                    name.startsWith(scope1 + ".transfer.")));
+        } finally {
+            loopbackManager1.stop();
+            loopbackManager1.disconnect();
+            loopbackManager2.disconnect();
+        }
+    }
+
+    @Test
+    public void Should_KeepMetricsOfTransfersApart_When_FilesSentInBothDirections()
+            throws CommunicationException, IllegalBlockSizeException, NoSuchPaddingException, NoSuchAlgorithmException,
+            BadPaddingException, InvalidKeyException, InvalidAlgorithmParameterException, IOException {
+
+        encryptedTcpCommunicator1.init();
+        encryptedTcpCommunicator2.init();
+        connectAndEstablishSession();
+        String scope1 = encryptedTcpCommunicator1.metricsScope;
+
+        // both transfers last long enough to be seen at once
+        encryptedTcpCommunicator1.bandwidth.setRate(256 * 1024);
+        encryptedTcpCommunicator2.bandwidth.setRate(256 * 1024);
+
+        Path file1 = Files.createTempFile("outgoing", ".bin");
+        Path file2 = Files.createTempFile("incoming", ".bin");
+        try {
+            byte[] content = new byte[4 * 1024 * 1024];
+            new Random(4).nextBytes(content);
+            Files.write(file1, content);
+            Files.write(file2, content);
+
+            encryptedTcpCommunicator1.send(file1);
+            encryptedTcpCommunicator2.send(file2);
+            Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() ->
+                    encryptedTcpCommunicator1.getOutgoingTransfers().size() == 1 &&
+                    encryptedTcpCommunicator1.getIncomingTransfers().size() == 1);
+
+            Transfer outgoing = encryptedTcpCommunicator1.getOutgoingTransfers().values().iterator().next();
+            Transfer incoming = encryptedTcpCommunicator1.getIncomingTransfers().values().iterator().next();
+            // ids of own transfers and of transfers of the peer are given out independently
+            Assert.assertEquals(outgoing.getId(), incoming.getId());
+
+            MetricsSnapshot snapshot = MetricsRegistry.global().sample();
+            Assert.assertFalse(Double.isNaN(snapshot.get(scope1 + ".transfer.out." + outgoing.getId() + ".queue")));
+            Assert.assertFalse(Double.isNaN(snapshot.get(scope1 + ".transfer.in." + incoming.getId() + ".queue")));
+
+            encryptedTcpCommunicator1.stopTransfer(outgoing);
+
+            snapshot = MetricsRegistry.global().sample();
+            Assert.assertTrue(Double.isNaN(snapshot.get(scope1 + ".transfer.out." + outgoing.getId() + ".queue")));
+            Assert.assertFalse(Double.isNaN(snapshot.get(scope1 + ".transfer.in." + incoming.getId() + ".queue")));
+        } finally {
+            file1.toFile().delete();
+            file2.toFile().delete();
+            Path.of(savedFilesPath + file1.getFileName()).toFile().delete();
+            Path.of(savedFilesPath + file2.getFileName()).toFile().delete();
+        }
+    }
+
+    @Test
+    public void Should_DropDatagramDataAtOnce_When_StreamClosed() throws InterruptedIOException {
+        LoopbackManager control1 = new LoopbackManager();
+        LoopbackManager control2 = new LoopbackManager();
+        LoopbackManager datagrams1 = new LoopbackManager();
+        LoopbackManager datagrams2 = new LoopbackManager();
+        encryptedTcpCommunicator1.setTcpManager(control1);
+        AtomicBoolean handlerRunning = new AtomicBoolean(true);
+        try {
+            Assert.assertTrue(control1.listenOn(0));
+            Assert.assertTrue(control2.connect(LoopbackManager.HOST, control1.getListeningPort()));
+            Assert.assertTrue(datagrams1.listenOn(0));
+            Assert.assertTrue(datagrams2.connect(LoopbackManager.HOST, datagrams1.getListeningPort()));
+            Awaitility.await().atMost(5, TimeUnit.SECONDS).until(control1::isConnected);
+            Awaitility.await().atMost(5, TimeUnit.SECONDS).until(datagrams1::isConnected);
+
+            // transfer rejected by the receiver, while the sender still had a window of data in flight
+            encryptedTcpCommunicator1.closeStream(7);
+            new Thread(new IncomingHandler(encryptedTcpCommunicator1, handlerRunning, datagrams1)).start();
+            for (int i = 0; i < 3; i++) datagrams2.send(new Frame(Frame.Type.TRANSFER_DATA, new byte[16], 7));
+            datagrams2.send(new Frame(Frame.Type.PING, 1L));
+
+            long start = System.nanoTime();
+            Frame pong = new Frame();
+            Assert.assertTrue(control2.receive(pong));
+            Assert.assertEquals(Frame.Type.PONG, pong.frameType);
+            Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        } finally {
+            handlerRunning.set(false);
+            control2.disconnect();
+            datagrams2.disconnect();
+            control1.stop();
+            datagrams1.stop();
+        }
+    }
+
+    @Test
+    public void Should_AnswerPingAtOnce_When_HandlingBlocks() throws InterruptedIOException {
+        LoopbackManager control1 = new LoopbackManager();
+        LoopbackManager control2 = new LoopbackManager();
+        LoopbackManager datagrams1 = new LoopbackManager();
+        LoopbackManager datagrams2 = new LoopbackManager();
+        encryptedTcpCommunicator1.setTcpManager(control1);
+        AtomicBoolean handlerRunning = new AtomicBoolean(true);
+        try {
+            Assert.assertTrue(control1.listenOn(0));
+            Assert.assertTrue(control2.connect(LoopbackManager.HOST, control1.getListeningPort()));
+            Assert.assertTrue(datagrams1.listenOn(0));
+            Assert.assertTrue(datagrams2.connect(LoopbackManager.HOST, datagrams1.getListeningPort()));
+            Awaitility.await().atMost(5, TimeUnit.SECONDS).until(control1::isConnected);
+            Awaitility.await().atMost(5, TimeUnit.SECONDS).until(datagrams1::isConnected);
+
+            // data of a transfer which init has not arrived yet is waited for
+            new Thread(new IncomingHandler(encryptedTcpCommunicator1, handlerRunning, datagrams1)).start();
+            datagrams2.send(new Frame(Frame.Type.TRANSFER_DATA, new byte[16], 9));
+            datagrams2.send(new Frame(Frame.Type.PING, 1L));
+
+            long start = System.nanoTime();
+            Frame pong = new Frame();
+            Assert.assertTrue(control2.receive(pong));
+            Assert.assertEquals(Frame.Type.PONG, pong.frameType);
+            Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        } finally {
+            handlerRunning.set(false);
+            control2.disconnect();
+            datagrams2.disconnect();
+            control1.stop();
+            datagrams1.stop();
+        }
+    }
+
+    @Test
+    public void Should_PublishRoundTripTime_When_HeartbeatRunning() {
+        encryptedTcpCommunicator1.setHeartbeatInterval(50);
+        encryptedTcpCommunicator2.setHeartbeatInterval(50);
+        encryptedTcpCommunicator1.init();
+        encryptedTcpCommunicator2.init();
+        String rtt = encryptedTcpCommunicator1.metricsScope + ".rtt";
+        Assert.assertTrue(Double.isNaN(MetricsRegistry.global().sample().get(rtt)));
+
+        tcpManager1.listen();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(manager1HasStatusListening());
+        tcpManager2.connect("localhost", NetworkManager.DEFAULT_PORT);
+
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> encryptedTcpCommunicator1.getLatestRtt() > 0);
+        Assert.assertTrue(MetricsRegistry.global().sample().get(rtt) > 0);
+    }
+
+    @Test
+    public void Should_ReceivedFileBeIdenticalToSent_When_TransferDataSentOverLossyDatagramChannel()
+            throws CommunicationException, IllegalBlockSizeException, NoSuchPaddingException, NoSuchAlgorithmException,
+            BadPaddingException, InvalidKeyException, InterruptedException, InvalidAlgorithmParameterException,
+            IOException {
+        UdpManager udpManager1 = new UdpManager();
+        UdpManager udpManager2 = new UdpManager();
+        encryptedTcpCommunicator1.setDatagramManager(udpManager1);
+        encryptedTcpCommunicator2.setDatagramManager(udpManager2);
+
+        encryptedTcpCommunicator1.init();
+        encryptedTcpCommunicator2.init();
+        connectAndEstablishSession();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> udpManager1.isConnected() &&
+                udpManager2.isConnected());
+        udpManager1.setLoss(0.05, 1);
+        udpManager2.setLoss(0.05, 2);
+
+        encryptedTcpCommunicator1.getMessageQueue().clear();
+        Path largeFile = Files.createTempFile("datagram", ".bin");
+        Path receivedFile = Path.of(savedFilesPath + largeFile.getFileName());
+        try {
+            byte[] content = new byte[2 * 1024 * 1024 + 123];
+            new Random(1).nextBytes(content);
+            Files.write(largeFile, content);
+
+            Transfer transfer = encryptedTcpCommunicator2.send(largeFile);
+            Assert.assertTrue(transfer.datagram);
+
+            Awaitility.await().atMost(20, TimeUnit.SECONDS).until(() -> encryptedTcpCommunicator1.getMessageQueue()
+                    .stream().anyMatch(message -> message.messageType == Message.Type.FILE_READY));
+            Assert.assertEquals(-1L, Files.mismatch(largeFile, receivedFile));
+            Assert.assertTrue(udpManager2.getRetransmissions() > 0);
+        } finally {
+            largeFile.toFile().delete();
+            receivedFile.toFile().delete();
+        }
+
+        // control frames stay on tcp
+        String test = "test message";
+        encryptedTcpCommunicator2.send(test);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> encryptedTcpCommunicator1.getMessageQueue()
+                .stream().anyMatch(message -> message.messageType == Message.Type.MESSAGE && test.equals(message.data)));
+    }
+
+    @Test
+    public void Should_ReceiveMessageAndIdenticalFile_When_MessageSentDuringFileTransfer()
+            throws CommunicationException, IllegalBlockSizeException, NoSuchPaddingException, NoSuchAlgorithmException,
+            BadPaddingException, InvalidKeyException, InterruptedException, InvalidAlgorithmParameterException,
+            IOException {
+
+        encryptedTcpCommunicator1.init();
+        encryptedTcpCommunicator2.init();
+
+        encryptedTcpCommunicator1.getTcpManager().listen();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(manager1HasStatusListening());
+
+        encryptedTcpCommunicator2.getTcpManager().connect("localhost", NetworkManager.DEFAULT_PORT);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(manager2HasStatusConnected());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1IncomingHandlerIsAlive());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2IncomingHandlerIsAlive());
+
+        encryptedTcpCommunicator1.initiateCommunication();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1ReceivedCommInfo2());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2ReceivedCommInfo1());
+
+        encryptedTcpCommunicator1.initiateSession(Transformation.AES_CBC_PKCS5Padding);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1SessionEstablished());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2SessionEstablished());
+
+        encryptedTcpCommunicator1.getMessageQueue().clear();
+        encryptedTcpCommunicator2.getMessageQueue().clear();
+
+        String test = "test message";
+        encryptedTcpCommunicator2.send(sourceFile);
+        encryptedTcpCommunicator2.send(test);
+
+        Message messageFile = encryptedTcpCommunicator1.getMessageQueue().poll(5, TimeUnit.SECONDS);
+        Assert.assertNotNull(messageFile);
+        Assert.assertEquals(Message.Type.FILE, messageFile.messageType);
+
+        boolean messageReceived = false;
+        boolean fileReady = false;
+        for (int i = 0; i < 2; i++) {
+            Message message = encryptedTcpCommunicator1.getMessageQueue().poll(5, TimeUnit.SECONDS);
+            Assert.assertNotNull(message);
+            if (message.messageType == Message.Type.MESSAGE) {
+                Assert.assertEquals(test, message.data);
+                messageReceived = true;
+            } else if (message.messageType == Message.Type.FILE_READY) {
+                fileReady = true;
+            }
+        }
+        Assert.assertTrue(messageReceived);
+        Assert.assertTrue(fileReady);
+
+        long result = Files.mismatch(sourceFile, targetDecryptedFile);
+        Assert.assertEquals(-1L, result);
+    }
+
+    @Test
+    public void Should_ReceiveAllFilesIdenticalToSent_When_SendingManyFilesConcurrently()
+            throws CommunicationException, IllegalBlockSizeException, NoSuchPaddingException, NoSuchAlgorithmException,
+            BadPaddingException, InvalidKeyException, InterruptedException, InvalidAlgorithmParameterException,
+            IOException {
+
+        encryptedTcpCommunicator1.init();
+        encryptedTcpCommunicator2.init();
+
+        encryptedTcpCommunicator1.getTcpManager().listen();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(manager1HasStatusListening());
+
+        encryptedTcpCommunicator2.getTcpManager().connect("localhost", NetworkManager.DEFAULT_PORT);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(manager2HasStatusConnected());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1IncomingHandlerIsAlive());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2IncomingHandlerIsAlive());
+
+        encryptedTcpCommunicator1.initiateCommunication();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1ReceivedCommInfo2());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2ReceivedCommInfo1());
+
+        encryptedTcpCommunicator1.initiateSession(Transformation.AES_CBC_PKCS5Padding);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1SessionEstablished());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2SessionEstablished());
+
+        encryptedTcpCommunicator1.getMessageQueue().clear();
+        encryptedTcpCommunicator2.getMessageQueue().clear();
+
+        Path secondTargetFile = Path.of("./src/test/resources/test_2.txt");
+        try {
+            Transfer transfer1 = encryptedTcpCommunicator2.send(sourceFile);
+            Transfer transfer2 = encryptedTcpCommunicator2.send(sourceFile);
+            Assert.assertNotEquals(transfer1.getId(), transfer2.getId());
+
+            int ready = 0;
+            while (ready < 2) {
+                Message message = encryptedTcpCommunicator1.getMessageQueue().poll(5, TimeUnit.SECONDS);
+                Assert.assertNotNull(message);
+                if (message.messageType == Message.Type.FILE_READY) ready++;
+            }
+
+            Assert.assertEquals(-1L, Files.mismatch(sourceFile, targetDecryptedFile));
+            Assert.assertEquals(-1L, Files.mismatch(sourceFile, secondTargetFile));
+            Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> !encryptedTcpCommunicator2.cyphering);
+            Assert.assertFalse(encryptedTcpCommunicator1.cyphering);
+            Assert.assertEquals(1.0, transfer1.getProgress(), 0.0);
+        } finally {
+            secondTargetFile.toFile().delete();
+        }
+    }
+
+    @Test
+    public void Should_ReceivedFileBeIdenticalToSent_When_PerformingStripedFileTransfer()
+            throws CommunicationException, IllegalBlockSizeException, NoSuchPaddingException, NoSuchAlgorithmException,
+            BadPaddingException, InvalidKeyException, InterruptedException, InvalidAlgorithmParameterException,
+            IOException {
+
+        encryptedTcpCommunicator1.init();
+        encryptedTcpCommunicator2.init();
+
+        encryptedTcpCommunicator1.getTcpManager().listen();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(manager1HasStatusListening());
+
+        encryptedTcpCommunicator2.getTcpManager().connect("localhost", NetworkManager.DEFAULT_PORT);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(manager2HasStatusConnected());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1IncomingHandlerIsAlive());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2IncomingHandlerIsAlive());
+
+        encryptedTcpCommunicator1.initiateCommunication();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1ReceivedCommInfo2());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2ReceivedCommInfo1());
+
+        encryptedTcpCommunicator1.initiateSession(Transformation.AES_CBC_PKCS5Padding);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1SessionEstablished());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2SessionEstablished());
+
+        encryptedTcpCommunicator1.getMessageQueue().clear();
+        encryptedTcpCommunicator2.getMessageQueue().clear();
+
+        Path largeFile = Files.createTempFile("striped", ".bin");
+        Path receivedFile = Path.of(savedFilesPath + largeFile.getFileName());
+        try {
+            byte[] content = new byte[4 * 1024 * 1024 + 123];
+            new Random(1).nextBytes(content);
+            Files.write(largeFile, content);
+
+            encryptedTcpCommunicator2.send(largeFile, 4);
+
+            Message messageFile = encryptedTcpCommunicator1.getMessageQueue().poll(5, TimeUnit.SECONDS);
+            Assert.assertNotNull(messageFile);
+            Assert.assertEquals(Message.Type.FILE, messageFile.messageType);
+
+            Message messageFileReady = encryptedTcpCommunicator1.getMessageQueue().poll(10, TimeUnit.SECONDS);
+            Assert.assertNotNull(messageFileReady);
+            Assert.assertEquals(Message.Type.FILE_READY, messageFileReady.messageType);
+
+            Assert.assertEquals(-1L, Files.mismatch(largeFile, receivedFile));
+            Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> !encryptedTcpCommunicator2.cyphering);
+        } finally {
+            largeFile.toFile().delete();
+            receivedFile.toFile().delete();
+        }
+    }
+
+    @Test
+    public void Should_MeasureRoundTripTime_When_HeartbeatRunning() {
+        encryptedTcpCommunicator1.setHeartbeatInterval(50);
+        encryptedTcpCommunicator2.setHeartbeatInterval(50);
+        encryptedTcpCommunicator1.init();
+        encryptedTcpCommunicator2.init();
+
+        tcpManager1.listen();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(manager1HasStatusListening());
+        tcpManager2.connect("localhost", NetworkManager.DEFAULT_PORT);
+
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> encryptedTcpCommunicator1.getLatestRtt() > 0 &&
+                encryptedTcpCommunicator2.getLatestRtt() > 0);
+        Assert.assertEquals(NetworkManager.Status.CONNECTED, tcpManager1.getStatus());
+        Assert.assertEquals(NetworkManager.Status.CONNECTED, tcpManager2.getStatus());
+    }
+
+    @Test
+    public void Should_Disconnect_When_PeerStopsAnsweringPings() {
+        encryptedTcpCommunicator1.setHeartbeatInterval(50);
+        encryptedTcpCommunicator1.setHeartbeatMisses(3);
+        encryptedTcpCommunicator1.init();
+        encryptedTcpCommunicator2.init();
+
+        tcpManager1.listen();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(manager1HasStatusListening());
+        tcpManager2.connect("localhost", NetworkManager.DEFAULT_PORT);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> encryptedTcpCommunicator1.getLatestRtt() > 0);
+
+        // connection stays open, but the peer no longer handles incoming frames
+        encryptedTcpCommunicator2.stopIncomingHandler();
+
+        Awaitility.await().atMost(5, TimeUnit.SECONDS)
+                .until(() -> tcpManager1.getStatus() != NetworkManager.Status.CONNECTED);
+    }
+
+    private void connectAndEstablishSession() throws CommunicationException, IllegalBlockSizeException,
+            NoSuchPaddingException, NoSuchAlgorithmException, BadPaddingException, InvalidKeyException {
+        encryptedTcpCommunicator1.getTcpManager().listen();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(manager1HasStatusListening());
+
+        encryptedTcpCommunicator2.getTcpManager().connect("localhost", NetworkManager.DEFAULT_PORT);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(manager2HasStatusConnected());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1IncomingHandlerIsAlive());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2IncomingHandlerIsAlive());
+
+        encryptedTcpCommunicator1.initiateCommunication();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> encryptedTcpCommunicator1.communicationEstablished &&
+                encryptedTcpCommunicator2.communicationEstablished);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1ReceivedCommInfo2());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2ReceivedCommInfo1());
+
+        // session may already be resumed with a ticket of the previous one
+        if (!encryptedTcpCommunicator1.sessionEstablished) {
+            encryptedTcpCommunicator1.initiateSession(Transformation.AES_CBC_PKCS5Padding);
+        }
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1SessionEstablished());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2SessionEstablished());
+    }
+
+    private void disconnect() {
+        tcpManager2.disconnect();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS)
+                .until(() -> tcpManager1.getStatus() == NetworkManager.Status.READY);
+    }
+
+    @Test
+    public void Should_ResumeSessionWithTicket_When_ReconnectedToSamePeer() throws CommunicationException,
+            IllegalBlockSizeException, NoSuchPaddingException, NoSuchAlgorithmException, BadPaddingException,
+            InvalidKeyException, InvalidAlgorithmParameterException {
+        encryptedTcpCommunicator1.init();
+        encryptedTcpCommunicator2.init();
+        connectAndEstablishSession();
+        Key previousKey = encryptedTcpCommunicator1.getSessionKey();
+
+        disconnect();
+        tcpManager1.listen();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(manager1HasStatusListening());
+        tcpManager2.connect("localhost", NetworkManager.DEFAULT_PORT);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1IncomingHandlerIsAlive());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2IncomingHandlerIsAlive());
+
+        // single request and reply establish both communication and session
+        encryptedTcpCommunicator2.initiateCommunication();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1SessionEstablished());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2SessionEstablished());
+
+        Assert.assertTrue(encryptedTcpCommunicator1.communicationEstablished);
+        Assert.assertTrue(encryptedTcpCommunicator2.communicationEstablished);
+        Assert.assertEquals(username2, encryptedTcpCommunicator1.getOtherUsername());
+        Assert.assertEquals(keyPair1.getPublic(), encryptedTcpCommunicator2.getOtherUserPublicKey());
+        Assert.assertArrayEquals(encryptedTcpCommunicator1.getSessionKey().getEncoded(),
+                encryptedTcpCommunicator2.getSessionKey().getEncoded());
+        Assert.assertFalse(Arrays.equals(previousKey.getEncoded(),
+                encryptedTcpCommunicator1.getSessionKey().getEncoded()));
+
+        String test = "test message";
+        encryptedTcpCommunicator2.send(test);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> encryptedTcpCommunicator1.getMessageQueue()
+                .stream().anyMatch(message -> message.messageType == Message.Type.MESSAGE && test.equals(message.data)));
+    }
+
+    @Test
+    public void Should_FallBackToFullHandshake_When_TicketRejected() throws CommunicationException,
+            IllegalBlockSizeException, NoSuchPaddingException, NoSuchAlgorithmException, BadPaddingException,
+            InvalidKeyException {
+        encryptedTcpCommunicator1.init();
+        encryptedTcpCommunicator2.init();
+        connectAndEstablishSession();
+
+        disconnect();
+        encryptedTcpCommunicator1.getTickets().clear();
+        tcpManager1.listen();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(manager1HasStatusListening());
+        tcpManager2.connect("localhost", NetworkManager.DEFAULT_PORT);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1IncomingHandlerIsAlive());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2IncomingHandlerIsAlive());
+
+        encryptedTcpCommunicator2.initiateCommunication();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> encryptedTcpCommunicator1.communicationEstablished &&
+                encryptedTcpCommunicator2.communicationEstablished);
+
+        Assert.assertFalse(encryptedTcpCommunicator1.sessionEstablished);
+        Assert.assertFalse(encryptedTcpCommunicator2.sessionEstablished);
+    }
+
+    @Test
+    public void Should_KeepTicket_When_ResumptionProofIsBogus() throws CommunicationException,
+            IllegalBlockSizeException, NoSuchPaddingException, NoSuchAlgorithmException, BadPaddingException,
+            InvalidKeyException {
+        encryptedTcpCommunicator1.init();
+        encryptedTcpCommunicator2.init();
+        connectAndEstablishSession();
+
+        disconnect();
+        tcpManager1.listen();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(manager1HasStatusListening());
+        tcpManager2.connect("localhost", NetworkManager.DEFAULT_PORT);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1IncomingHandlerIsAlive());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2IncomingHandlerIsAlive());
+
+        // ticket id seen on the wire, sent with a proof of not knowing the secret
+        byte[] ticketId = encryptedTcpCommunicator2.getTickets().values().iterator().next().getId();
+        tcpManager2.send(new Frame(Frame.Type.SESSION_RESUME,
+                new TicketInfo(0, ticketId, SessionTicket.nonce(), new byte[32])));
+        // rejection of the bogus request is handled before the real one is sent
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> encryptedTcpCommunicator2.handshakeStart != 0);
+
+        encryptedTcpCommunicator2.initiateCommunication();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1SessionEstablished());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2SessionEstablished());
+    }
+
+    @Test
+    public void Should_KeepSeparateTickets_When_PeersShareAddress() throws InvalidKeyException,
+            NoSuchAlgorithmException {
+        Key key = EncryptionManager.generateKey(Transformation.AES_CBC_PKCS5Padding.getKeySize(),
+                Transformation.AES_CBC_PKCS5Padding.getAlgorithm());
+        SessionTicket ticket1 = SessionTicket.derive("10.0.0.1", username1, keyPair1.getPublic(),
+                Transformation.AES_CBC_PKCS5Padding, key, null);
+        SessionTicket ticket2 = SessionTicket.derive("10.0.0.1", username2, keyPair2.getPublic(),
+                Transformation.AES_CBC_PKCS5Padding, key, null);
+        encryptedTcpCommunicator1.getTickets().put(ticket1.index(), ticket1);
+        encryptedTcpCommunicator1.getTickets().put(ticket2.index(), ticket2);
+
+        Assert.assertEquals(2, encryptedTcpCommunicator1.getTickets().size());
+        Assert.assertSame(ticket2, encryptedTcpCommunicator1.getTickets().get(SessionTicket.index("10.0.0.1",
+                KnownPeers.fingerprint(keyPair2.getPublic()))));
+    }
+
+    @Test
+    public void Should_EstablishCommunicationAndSession_When_SignedHandshakeUsed() throws CommunicationException,
+            IllegalBlockSizeException, NoSuchPaddingException, NoSuchAlgorithmException, BadPaddingException,
+            InvalidKeyException, InvalidAlgorithmParameterException {
+        encryptedTcpCommunicator1.init();
+        encryptedTcpCommunicator2.init();
+
+        tcpManager1.listen();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(manager1HasStatusListening());
+        tcpManager2.connect("localhost", NetworkManager.DEFAULT_PORT);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1IncomingHandlerIsAlive());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2IncomingHandlerIsAlive());
+
+        // hello, signed reply with the session key and signed finish establish both communication and session
+        encryptedTcpCommunicator2.initiateCommunication(Transformation.AES_CBC_PKCS5Padding);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1SessionEstablished());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2SessionEstablished());
+
+        Assert.assertTrue(encryptedTcpCommunicator1.communicationEstablished);
+        Assert.assertTrue(encryptedTcpCommunicator2.communicationEstablished);
+        Assert.assertEquals(username2, encryptedTcpCommunicator1.getOtherUsername());
+        Assert.assertEquals(username1, encryptedTcpCommunicator2.getOtherUsername());
+        Assert.assertEquals(keyPair2.getPublic(), encryptedTcpCommunicator1.getOtherUserPublicKey());
+        Assert.assertEquals(keyPair1.getPublic(), encryptedTcpCommunicator2.getOtherUserPublicKey());
+        Assert.assertEquals(Transformation.AES_CBC_PKCS5Padding, encryptedTcpCommunicator1.getSymmetricTransformation());
+        Assert.assertArrayEquals(encryptedTcpCommunicator1.getSessionKey().getEncoded(),
+                encryptedTcpCommunicator2.getSessionKey().getEncoded());
+        Assert.assertArrayEquals(encryptedTcpCommunicator1.getSessionIV().getIV(),
+                encryptedTcpCommunicator2.getSessionIV().getIV());
+
+        String test = "test message";
+        encryptedTcpCommunicator2.send(test);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> encryptedTcpCommunicator1.getMessageQueue()
+                .stream().anyMatch(message -> message.messageType == Message.Type.MESSAGE && test.equals(message.data)));
+    }
+
+    private void reconnectWithoutTickets() {
+        disconnect();
+        encryptedTcpCommunicator1.getTickets().clear();
+        encryptedTcpCommunicator2.getTickets().clear();
+        tcpManager1.listen();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(manager1HasStatusListening());
+        tcpManager2.connect("localhost", NetworkManager.DEFAULT_PORT);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1IncomingHandlerIsAlive());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2IncomingHandlerIsAlive());
+    }
+
+    @Test
+    public void Should_EstablishSessionWithKnownKeys_When_SignedHandshakeRepeated() throws CommunicationException {
+        encryptedTcpCommunicator1.init();
+        encryptedTcpCommunicator2.init();
+        tcpManager1.listen();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(manager1HasStatusListening());
+        tcpManager2.connect("localhost", NetworkManager.DEFAULT_PORT);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1IncomingHandlerIsAlive());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2IncomingHandlerIsAlive());
+
+        encryptedTcpCommunicator2.initiateCommunication(Transformation.AES_CBC_PKCS5Padding);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1SessionEstablished());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2SessionEstablished());
+        Assert.assertEquals(1, encryptedTcpCommunicator1.getKnownPeers().size());
+        Assert.assertEquals(1, encryptedTcpCommunicator2.getKnownPeers().size());
+
+        // both clients send only fingerprints of their keys
+        reconnectWithoutTickets();
+        encryptedTcpCommunicator2.initiateCommunication(Transformation.AES_CBC_PKCS5Padding);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1SessionEstablished());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2SessionEstablished());
+
+        Assert.assertEquals(keyPair2.getPublic(), encryptedTcpCommunicator1.getOtherUserPublicKey());
+        Assert.assertEquals(keyPair1.getPublic(), encryptedTcpCommunicator2.getOtherUserPublicKey());
+        Assert.assertArrayEquals(encryptedTcpCommunicator1.getSessionKey().getEncoded(),
+                encryptedTcpCommunicator2.getSessionKey().getEncoded());
+    }
+
+    @Test
+    public void Should_SendPublicKey_When_OtherClientForgotIt() throws CommunicationException {
+        encryptedTcpCommunicator1.init();
+        encryptedTcpCommunicator2.init();
+        tcpManager1.listen();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(manager1HasStatusListening());
+        tcpManager2.connect("localhost", NetworkManager.DEFAULT_PORT);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1IncomingHandlerIsAlive());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2IncomingHandlerIsAlive());
+
+        encryptedTcpCommunicator2.initiateCommunication(Transformation.AES_CBC_PKCS5Padding);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2SessionEstablished());
+
+        reconnectWithoutTickets();
+        encryptedTcpCommunicator1.setKnownPeers(new KnownPeers(null));
+        encryptedTcpCommunicator2.initiateCommunication(Transformation.AES_CBC_PKCS5Padding);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator1SessionEstablished());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(communicator2SessionEstablished());
+
+        Assert.assertEquals(keyPair2.getPublic(), encryptedTcpCommunicator1.getOtherUserPublicKey());
+        Assert.assertEquals(1, encryptedTcpCommunicator1.getKnownPeers().size());
+    }
+
+    @Test
+    public void Should_ResumeTransferFromSavedOffset_When_ConnectionLostDuringFileTransfer()
+            throws CommunicationException, IllegalBlockSizeException, NoSuchPaddingException, NoSuchAlgorithmException,
+            BadPaddingException, InvalidKeyException, InvalidAlgorithmParameterException, IOException {
+
+        encryptedTcpCommunicator1.init();
+        encryptedTcpCommunicator2.init();
+        connectAndEstablishSession();
+
+        // connection is dropped by the receiver once a part of the file is saved and the sender knows its hash
+        AtomicBoolean dropped = new AtomicBoolean(false);
+        encryptionManager1.attach(state -> {
+            if (state instanceof Double progress && progress > 0.3 && encryptedTcpCommunicator2.getOutgoingTransfers()
+                    .values().stream().anyMatch(transfer -> transfer.hash != null) && dropped.compareAndSet(false, true)) {
+                tcpManager1.disconnect();
+            }
+        });
+        List<Long> offsets = new CopyOnWriteArrayList<>();
+        encryptedTcpCommunicator1.attach(o -> {
+            if (o instanceof Message message && message.messageType == Message.Type.FILE) {
+                FileData fileData = (FileData) message.data;
+                offsets.add(encryptedTcpCommunicator1.getIncomingTransfers().get(fileData.getTransferId()).getOffset());
+            }
+        });
+
+        Path largeFile = Files.createTempFile("resumed", ".bin");
+        Path receivedFile = Path.of(savedFilesPath + largeFile.getFileName());
+        try {
+            byte[] content = new byte[8 * 1024 * 1024 + 123];
+            new Random(2).nextBytes(content);
+            Files.write(largeFile, content);
+
+            encryptedTcpCommunicator2.send(largeFile);
+
+            Awaitility.await().atMost(10, TimeUnit.SECONDS).until(() -> dropped.get() &&
+                    tcpManager2.getStatus() == NetworkManager.Status.READY &&
+                    !encryptedTcpCommunicator1.getSuspendedTransfers().isEmpty() &&
+                    !encryptedTcpCommunicator2.getSuspendedTransfers().isEmpty());
+
+            connectAndEstablishSession();
+
+            Awaitility.await().atMost(10, TimeUnit.SECONDS).until(() -> encryptedTcpCommunicator1.getMessageQueue()
+                    .stream().anyMatch(message -> message.messageType == Message.Type.FILE_READY));
+
+            Assert.assertEquals(2, offsets.size());
+            Assert.assertEquals(0L, (long) offsets.get(0));
+            Assert.assertTrue(offsets.get(1) > 0);
+            Assert.assertEquals(-1L, Files.mismatch(largeFile, receivedFile));
+            Assert.assertTrue(encryptedTcpCommunicator1.getSuspendedTransfers().isEmpty());
+            Assert.assertTrue(encryptedTcpCommunicator2.getSuspendedTransfers().isEmpty());
+        } finally {
+            largeFile.toFile().delete();
+            receivedFile.toFile().delete();
+        }
+    }
+
+    @Test
+    public void Should_StopOutgoingTransfer_When_ReceiverRejectsIt()
+            throws CommunicationException, IllegalBlockSizeException, NoSuchPaddingException, NoSuchAlgorithmException,
+            BadPaddingException, InvalidKeyException, InvalidAlgorithmParameterException, IOException {
+
+        encryptedTcpCommunicator1.init();
+        encryptedTcpCommunicator2.init();
+        connectAndEstablishSession();
+
+        Path file = Files.createTempFile("rejected", ".bin");
+        try {
+            byte[] content = new byte[64 * 1024];
+            new Random(3).nextBytes(content);
+            Files.write(file, content);
+
+            // receiver has not saved any part of this transfer, so it cannot be resumed from the middle
+            FileData fileData = new FileData(file.getFileName().toString(), file.getFileName().toString(),
+                    file.toString(), 0);
+            Transfer suspended = new Transfer(0, Transfer.Direction.OUTGOING, fileData,
+                    encryptedTcpCommunicator2.budget);
+            suspended.resumeId = "unknown";
+            suspended.hash = EncryptionManager.hash(file, new AtomicBoolean(true));
+            suspended.fileSize = content.length;
+
+            Transfer transfer = encryptedTcpCommunicator2.resume(suspended, content.length / 2);
+
+            Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> !transfer.running.get() &&
+                    !encryptedTcpCommunicator2.getOutgoingTransfers().containsKey(transfer.getId()));
+            Assert.assertTrue(encryptedTcpCommunicator1.getIncomingTransfers().isEmpty());
+        } finally {
+            file.toFile().delete();
+        }
+    }
+
+    @Test
+    public void Should_PublishFailedFile_When_ReceivedFileDoesNotMatchHash()
+            throws IOException, InterruptedException {
+
+        encryptedTcpCommunicator1.init();
+
+        Path file = Files.createTempFile("corrupted", ".bin");
+        try {
+            byte[] content = new byte[64 * 1024];
+            new Random(5).nextBytes(content);
+            Files.write(file, content);
+            byte[] sentHash = EncryptionManager.hash(file, new AtomicBoolean(true));
+
+            // a single byte of the saved file differs from the file hashed by the sender
+            content[content.length / 2] ^= 1;
+            Files.write(file, content);
+
+            FileData fileData = new FileData(file.getFileName().toString(), file.getFileName().toString(),
+                    file.toString(), 1);
+            Transfer transfer = new Transfer(1, Transfer.Direction.INCOMING, fileData,
+                    encryptedTcpCommunicator1.budget);
+            transfer.cypheringThread = new Thread(() -> { });
+            encryptedTcpCommunicator1.announceTransfer(transfer);
+            encryptedTcpCommunicator1.getMessageQueue().clear();
+
+            transfer.announcedHash.complete(sentHash);
+            encryptedTcpCommunicator1.finish(transfer);
+
+            Message message = encryptedTcpCommunicator1.getMessageQueue().poll(5, TimeUnit.SECONDS);
+            Assert.assertNotNull(message);
+            Assert.assertEquals(Message.Type.FILE_FAILED, message.messageType);
+            Assert.assertTrue(encryptedTcpCommunicator1.getIncomingTransfers().isEmpty());
+        } finally {
+            file.toFile().delete();
+        }
+    }
+}
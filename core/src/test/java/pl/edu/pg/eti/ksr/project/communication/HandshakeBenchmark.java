@@ -0,0 +1,141 @@
+package pl.edu.pg.eti.ksr.project.communication;
+
+import pl.edu.pg.eti.ksr.project.crypto.EncryptionManager;
+import pl.edu.pg.eti.ksr.project.crypto.Transformation;
+import pl.edu.pg.eti.ksr.project.network.NetworkManager;
+import pl.edu.pg.eti.ksr.project.network.TcpManager;
+
+import java.security.KeyPair;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Compares time of establishing communication and the first session using the challenge handshake
+ * followed by session init, the signed handshake and resumption with a session ticket.
+ *
+ * Clients are connected over loopback, so measured times are mostly the cost of cryptography and frame
+ * handling. Over a real link every handshake takes additionally its number of round trips times the round trip time.
+ *
+ * Not a unit test, run manually from the IDE or with:
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=pl.edu.pg.eti.ksr.project.communication.HandshakeBenchmark
+ */
+public class HandshakeBenchmark {
+
+    private static final int WARMUP_ROUNDS = 20;
+
+    private static final int ROUNDS = 100;
+
+    private static final long TIMEOUT = 5_000_000_000L;
+
+    private enum Mode {
+        CHALLENGE_AND_SESSION_INIT(3),
+        SIGNED_HANDSHAKE(1),
+        SESSION_TICKET(1);
+
+        /**
+         * Round trips made before the initiating client can send data.
+         */
+        final int roundTrips;
+
+        Mode(int roundTrips) {
+            this.roundTrips = roundTrips;
+        }
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TIMEOUT;
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() - deadline > 0) throw new IllegalStateException("Handshake timed out");
+            Thread.onSpinWait();
+        }
+    }
+
+    private static boolean established(EncryptedTcpCommunicator communicator1, EncryptedTcpCommunicator communicator2) {
+        return communicator1.sessionEstablished && communicator2.sessionEstablished;
+    }
+
+    private static void reconnect(TcpManager tcpManager1, TcpManager tcpManager2,
+                                  EncryptedTcpCommunicator communicator1, EncryptedTcpCommunicator communicator2) {
+        tcpManager2.disconnect();
+        // status changes before observers are notified, so handlers of the old connection are awaited instead
+        await(() -> !communicator1.getIncomingHandler().isAlive() && !communicator2.getIncomingHandler().isAlive());
+        tcpManager1.listen();
+        await(tcpManager1::isListening);
+        tcpManager2.connect("localhost", NetworkManager.DEFAULT_PORT);
+        await(() -> communicator1.getIncomingHandler() != null && communicator1.getIncomingHandler().isAlive() &&
+                communicator2.getIncomingHandler() != null && communicator2.getIncomingHandler().isAlive());
+    }
+
+    /**
+     * Establishes communication and session once.
+     * @return time in nanoseconds from starting the handshake until both clients have the session
+     */
+    private static long round(Mode mode, TcpManager tcpManager1, TcpManager tcpManager2,
+                              EncryptedTcpCommunicator communicator1, EncryptedTcpCommunicator communicator2,
+                              Transformation transformation) throws Exception {
+        reconnect(tcpManager1, tcpManager2, communicator1, communicator2);
+        if (mode != Mode.SESSION_TICKET) {
+            communicator1.getTickets().clear();
+            communicator2.getTickets().clear();
+        }
+
+        long start = System.nanoTime();
+        switch (mode) {
+            case CHALLENGE_AND_SESSION_INIT -> {
+                communicator2.initiateCommunication();
+                await(() -> communicator1.communicationEstablished && communicator2.communicationEstablished);
+                communicator2.initiateSession(transformation);
+            }
+            case SIGNED_HANDSHAKE, SESSION_TICKET -> communicator2.initiateCommunication(transformation);
+        }
+        await(() -> established(communicator1, communicator2));
+        return System.nanoTime() - start;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Transformation transformation = Transformation.AES_CBC_PKCS5Padding;
+        Transformation asymmetric = Transformation.RSA_ECB_PKCS1Padding;
+        KeyPair keyPair1 = EncryptionManager.generateKeyPair(asymmetric.getKeySize(), asymmetric.getAlgorithm());
+        KeyPair keyPair2 = EncryptionManager.generateKeyPair(asymmetric.getKeySize(), asymmetric.getAlgorithm());
+
+        TcpManager tcpManager1 = new TcpManager();
+        TcpManager tcpManager2 = new TcpManager();
+        EncryptedTcpCommunicator communicator1 = new EncryptedTcpCommunicator("./", "benchmark_1",
+                keyPair1.getPublic(), keyPair1.getPrivate(), asymmetric, tcpManager1,
+                new EncryptionManager(transformation.getText()));
+        EncryptedTcpCommunicator communicator2 = new EncryptedTcpCommunicator("./", "benchmark_2",
+                keyPair2.getPublic(), keyPair2.getPrivate(), asymmetric, tcpManager2,
+                new EncryptionManager(transformation.getText()));
+        communicator1.init();
+        communicator2.init();
+
+        // first connection gives the ticket used by the resumption rounds
+        tcpManager1.listen();
+        await(tcpManager1::isListening);
+        tcpManager2.connect("localhost", NetworkManager.DEFAULT_PORT);
+        await(() -> communicator1.getIncomingHandler() != null && communicator1.getIncomingHandler().isAlive());
+
+        System.out.printf("%-28s %12s %12s %12s%n", "handshake", "round trips", "median us", "mean us");
+        try {
+            for (Mode mode : Mode.values()) {
+                for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                    round(mode, tcpManager1, tcpManager2, communicator1, communicator2, transformation);
+                }
+                long[] times = new long[ROUNDS];
+                for (int i = 0; i < ROUNDS; i++) {
+                    times[i] = round(mode, tcpManager1, tcpManager2, communicator1, communicator2, transformation);
+                }
+                Arrays.sort(times);
+                System.out.printf("%-28s %12d %12.0f %12.0f%n", mode, mode.roundTrips,
+                        times[ROUNDS / 2] / 1000.0, Arrays.stream(times).average().orElse(0) / 1000.0);
+            }
+        } finally {
+            tcpManager1.stop();
+            tcpManager1.disconnect();
+            tcpManager2.disconnect();
+            communicator1.close();
+            communicator2.close();
+        }
+    }
+}
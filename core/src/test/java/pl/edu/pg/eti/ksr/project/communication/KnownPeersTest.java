@@ -0,0 +1,65 @@
+package pl.edu.pg.eti.ksr.project.communication;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import pl.edu.pg.eti.ksr.project.crypto.EncryptionManager;
+import pl.edu.pg.eti.ksr.project.crypto.Transformation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.NoSuchAlgorithmException;
+
+public class KnownPeersTest {
+
+    private Path path;
+    private KeyPair keyPair1;
+    private KeyPair keyPair2;
+
+    @Before
+    public void init() throws IOException, NoSuchAlgorithmException {
+        path = Files.createTempFile("known_peers", ".txt");
+        keyPair1 = EncryptionManager.generateKeyPair(Transformation.RSA_ECB_PKCS1Padding.getKeySize(),
+                Transformation.RSA_ECB_PKCS1Padding.getAlgorithm());
+        keyPair2 = EncryptionManager.generateKeyPair(Transformation.RSA_ECB_PKCS1Padding.getKeySize(),
+                Transformation.RSA_ECB_PKCS1Padding.getAlgorithm());
+    }
+
+    @After
+    public void teardown() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    @Test
+    public void Should_FindKeyByUsernameAndFingerprint_When_PeerRemembered() {
+        KnownPeers knownPeers = new KnownPeers(null);
+        knownPeers.remember("127.0.0.1", "user", keyPair1.getPublic());
+
+        Assert.assertEquals(keyPair1.getPublic(),
+                knownPeers.find("user", KnownPeers.fingerprint(keyPair1.getPublic())));
+        Assert.assertNull(knownPeers.find("other", KnownPeers.fingerprint(keyPair1.getPublic())));
+        Assert.assertNull(knownPeers.find("user", KnownPeers.fingerprint(keyPair2.getPublic())));
+        Assert.assertArrayEquals(KnownPeers.fingerprint(keyPair1.getPublic()), knownPeers.fingerprintAt("127.0.0.1"));
+        Assert.assertNull(knownPeers.fingerprintAt("127.0.0.2"));
+    }
+
+    @Test
+    public void Should_LoadSavedKeys_When_CreatedFromSameFile() throws IOException {
+        KnownPeers knownPeers = new KnownPeers(path);
+        knownPeers.remember("127.0.0.1", "user", keyPair1.getPublic());
+        knownPeers.remember("127.0.0.1", "user", keyPair1.getPublic());
+        knownPeers.remember("127.0.0.1", "user", keyPair2.getPublic());
+
+        Assert.assertEquals(2, Files.readAllLines(path).size());
+
+        KnownPeers loaded = new KnownPeers(path);
+        Assert.assertEquals(2, loaded.size());
+        Assert.assertEquals(keyPair1.getPublic(), loaded.find("user", KnownPeers.fingerprint(keyPair1.getPublic())));
+        Assert.assertEquals(keyPair2.getPublic(), loaded.find("user", KnownPeers.fingerprint(keyPair2.getPublic())));
+        // the latest key seen at the address is expected
+        Assert.assertArrayEquals(KnownPeers.fingerprint(keyPair2.getPublic()), loaded.fingerprintAt("127.0.0.1"));
+    }
+}
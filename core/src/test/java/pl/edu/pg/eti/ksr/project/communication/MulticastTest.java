@@ -0,0 +1,143 @@
+package pl.edu.pg.eti.ksr.project.communication;
+
+import org.awaitility.Awaitility;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import pl.edu.pg.eti.ksr.project.communication.data.Message;
+import pl.edu.pg.eti.ksr.project.crypto.EncryptionManager;
+import pl.edu.pg.eti.ksr.project.crypto.Transformation;
+import pl.edu.pg.eti.ksr.project.metrics.MetricsRegistry;
+import pl.edu.pg.eti.ksr.project.network.LoopbackManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+public class MulticastTest {
+
+    private static final int RECIPIENTS = 3;
+
+    private final Path sourceFile = Path.of("./src/test/resources/test.txt");
+
+    private final List<LoopbackManager> managers = new ArrayList<>();
+
+    private final List<EncryptedTcpCommunicator> senders = new ArrayList<>();
+
+    private final List<EncryptedTcpCommunicator> receivers = new ArrayList<>();
+
+    private final List<Path> directories = new ArrayList<>();
+
+    @Before
+    public void init() throws GeneralSecurityException, IOException, CommunicationException {
+        Transformation asymmetric = Transformation.RSA_ECB_PKCS1Padding;
+        KeyPair senderKeys = EncryptionManager.generateKeyPair(asymmetric.getKeySize(), asymmetric.getAlgorithm());
+        KeyPair receiverKeys = EncryptionManager.generateKeyPair(asymmetric.getKeySize(), asymmetric.getAlgorithm());
+
+        for (int i = 0; i < RECIPIENTS; i++) {
+            LoopbackManager senderManager = new LoopbackManager();
+            LoopbackManager receiverManager = new LoopbackManager();
+            managers.add(senderManager);
+            managers.add(receiverManager);
+
+            Path directory = Files.createTempDirectory("multicast");
+            directories.add(directory);
+
+            EncryptedTcpCommunicator sender = new EncryptedTcpCommunicator("./", "sender",
+                    senderKeys.getPublic(), senderKeys.getPrivate(), asymmetric, senderManager,
+                    new EncryptionManager(Transformation.AES_CBC_PKCS5Padding.getText()));
+            // sessions of the clients use different transformations than the multicast content
+            Transformation session = i % 2 == 0 ? Transformation.AES_ECB_PKCS5Padding :
+                    Transformation.DESede_CBC_PKCS5Padding;
+            EncryptedTcpCommunicator receiver = new EncryptedTcpCommunicator(directory + File.separator,
+                    "receiver_" + i, receiverKeys.getPublic(), receiverKeys.getPrivate(), asymmetric,
+                    receiverManager, new EncryptionManager(session.getText()));
+            senders.add(sender);
+            receivers.add(receiver);
+            sender.init();
+            receiver.init();
+
+            Assert.assertTrue(receiverManager.listenOn(0));
+            Assert.assertTrue(senderManager.connect(LoopbackManager.HOST, receiverManager.getListeningPort()));
+            Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> receiver.getIncomingHandler() != null
+                    && receiver.getIncomingHandler().isAlive());
+            sender.initiateCommunication(session);
+            Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> sender.sessionEstablished
+                    && receiver.sessionEstablished);
+        }
+    }
+
+    @After
+    public void teardown() throws IOException {
+        managers.forEach(LoopbackManager::disconnect);
+        senders.forEach(EncryptedTcpCommunicator::close);
+        receivers.forEach(EncryptedTcpCommunicator::close);
+        for (Path directory : directories) {
+            try (var files = Files.list(directory)) {
+                for (Path file : files.toList()) Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void Should_DeliverIdenticalFileToAllClients_When_EncryptedOnce() throws IOException,
+            GeneralSecurityException {
+        long fileSize = Files.size(sourceFile);
+        long encryptedBefore = MetricsRegistry.global().meter("crypto.encrypted").getTotal();
+        receivers.forEach(receiver -> receiver.getMessageQueue().clear());
+
+        Multicast multicast = Multicast.send(sourceFile, senders);
+        Assert.assertEquals(RECIPIENTS, multicast.getTransfers().size());
+
+        for (int i = 0; i < RECIPIENTS; i++) {
+            EncryptedTcpCommunicator receiver = receivers.get(i);
+            Awaitility.await().atMost(10, TimeUnit.SECONDS).until(() -> receiver.getMessageQueue().stream()
+                    .anyMatch(message -> message.messageType == Message.Type.FILE_READY));
+            Assert.assertEquals(-1L, Files.mismatch(sourceFile, directories.get(i).resolve("test.txt")));
+        }
+
+        // a single padded copy of the file was encrypted, not one for every client
+        long encrypted = MetricsRegistry.global().meter("crypto.encrypted").getTotal() - encryptedBefore;
+        Assert.assertTrue(encrypted >= fileSize);
+        Assert.assertTrue(encrypted <= fileSize + Transformation.AES_CBC_PKCS5Padding.getBlockSize());
+    }
+
+    @Test
+    public void Should_KeepSendingToOtherClients_When_SlowestTransferStopped() throws IOException,
+            GeneralSecurityException {
+        // large enough to fill the window of the slowest transfer
+        Path largeFile = Files.createTempFile("multicast", ".bin");
+        byte[] data = new byte[1024 * 1024];
+        new Random(7).nextBytes(data);
+        Files.write(largeFile, data);
+        try {
+            receivers.forEach(receiver -> receiver.getMessageQueue().clear());
+            senders.get(0).getBandwidth().setRate(1, 1);
+
+            Multicast multicast = Multicast.send(largeFile, senders);
+            Transfer slowest = multicast.getTransfers().get(0);
+            // everyone waits for the slowest client once its window is full
+            Awaitility.await().atMost(10, TimeUnit.SECONDS).until(() -> slowest.queue.remainingCapacity() == 0);
+            senders.get(0).stopTransfer(slowest);
+
+            for (int i = 1; i < RECIPIENTS; i++) {
+                EncryptedTcpCommunicator receiver = receivers.get(i);
+                Awaitility.await().atMost(10, TimeUnit.SECONDS).until(() -> receiver.getMessageQueue().stream()
+                        .anyMatch(message -> message.messageType == Message.Type.FILE_READY));
+                Assert.assertEquals(-1L, Files.mismatch(largeFile,
+                        directories.get(i).resolve(largeFile.getFileName())));
+            }
+        } finally {
+            Files.delete(largeFile);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package pl.edu.pg.eti.ksr.project.communication;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class SegmentReassemblerTest {
+
+    private BlockingQueue<byte[]> target;
+    private SegmentReassembler reassembler;
+
+    @Before
+    public void init() {
+        target = new LinkedBlockingQueue<>();
+        reassembler = new SegmentReassembler(target);
+    }
+
+    @Test
+    public void Should_PassSegmentsInOrder_When_SegmentsArriveOutOfOrder() throws InterruptedException {
+        Assert.assertFalse(reassembler.add(4, new byte[]{2, 2}));
+        Assert.assertFalse(reassembler.add(2, new byte[]{1, 1}));
+        Assert.assertTrue(target.isEmpty());
+        Assert.assertEquals(2, reassembler.getPendingCount());
+
+        Assert.assertFalse(reassembler.add(0, new byte[]{0, 0}));
+
+        Assert.assertArrayEquals(new byte[]{0, 0}, target.take());
+        Assert.assertArrayEquals(new byte[]{1, 1}, target.take());
+        Assert.assertArrayEquals(new byte[]{2, 2}, target.take());
+        Assert.assertEquals(0, reassembler.getPendingCount());
+    }
+
+    @Test
+    public void Should_ReturnTrue_When_EndOfFileReachedAfterAllSegments() throws InterruptedException {
+        Assert.assertFalse(reassembler.add(3, new byte[0]));
+        Assert.assertTrue(reassembler.add(0, new byte[]{1, 2, 3}));
+
+        Assert.assertEquals(3, target.take().length);
+        Assert.assertEquals(0, target.take().length);
+    }
+
+    @Test
+    public void Should_DropSegment_When_SegmentDuplicated() throws InterruptedException {
+        reassembler.add(0, new byte[]{1});
+        reassembler.add(0, new byte[]{1});
+
+        Assert.assertEquals(1, target.size());
+    }
+
+    @Test(timeout = 10000)
+    public void Should_LetWaitingThreadsGo_When_TargetQueueFull() throws InterruptedException {
+        target = new ArrayBlockingQueue<>(1);
+        reassembler = new SegmentReassembler(target);
+        reassembler.add(0, new byte[]{0});
+
+        Thread passing = new Thread(() -> {
+            try {
+                reassembler.add(1, new byte[]{1});
+            } catch (InterruptedException e) {
+                // stopped by the test
+            }
+        });
+        passing.start();
+        while (passing.getState() != Thread.State.WAITING) Thread.sleep(10);
+
+        AtomicBoolean interrupted = new AtomicBoolean(false);
+        Thread waiting = new Thread(() -> {
+            try {
+                reassembler.add(2, new byte[]{2});
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+        });
+        waiting.start();
+        while (waiting.getState() != Thread.State.WAITING) Thread.sleep(10);
+
+        Assert.assertEquals(0, reassembler.getPendingCount());
+        waiting.interrupt();
+        waiting.join();
+        Assert.assertTrue(interrupted.get());
+
+        passing.interrupt();
+        passing.join();
+    }
+}
@@ -0,0 +1,154 @@
+package pl.edu.pg.eti.ksr.project.communication;
+
+import pl.edu.pg.eti.ksr.project.communication.data.Message;
+import pl.edu.pg.eti.ksr.project.crypto.EncryptionManager;
+import pl.edu.pg.eti.ksr.project.crypto.Transformation;
+import pl.edu.pg.eti.ksr.project.network.LoopbackManager;
+import pl.edu.pg.eti.ksr.project.network.NetworkConditions;
+import pl.edu.pg.eti.ksr.project.network.NetworkManager;
+import pl.edu.pg.eti.ksr.project.network.SimulatedNetworkManager;
+import pl.edu.pg.eti.ksr.project.network.TcpManager;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Compares throughput of encrypted file transfers between clients connected in memory and over tcp loopback.
+ *
+ * The in-memory connection leaves only the cost of the protocol and cryptography, the difference to tcp
+ * is the cost of the kernel networking. The simulated link shows the throughput over a long distance link,
+ * with the same delays in every run.
+ *
+ * Not a unit test, run manually from the IDE or with:
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=pl.edu.pg.eti.ksr.project.communication.TransferBenchmark
+ */
+public class TransferBenchmark {
+
+    private static final int WARMUP_ROUNDS = 3;
+
+    private static final int ROUNDS = 10;
+
+    private static final long TIMEOUT = 60;
+
+    private static final long SEED = 1;
+
+    private enum Connection {
+        IN_MEMORY(LoopbackManager::new, LoopbackManager.HOST, 32 * 1024 * 1024),
+        TCP_LOOPBACK(TcpManager::new, "localhost", 32 * 1024 * 1024),
+        // transfers over long distance links are limited by the credit window, so a smaller file is sent
+        SIMULATED_WAN(() -> new SimulatedNetworkManager(new LoopbackManager(), NetworkConditions.WAN, SEED),
+                LoopbackManager.HOST, 2 * 1024 * 1024);
+
+        final Supplier<NetworkManager> managers;
+
+        final String host;
+
+        final int fileSize;
+
+        Connection(Supplier<NetworkManager> managers, String host, int fileSize) {
+            this.managers = managers;
+            this.host = host;
+            this.fileSize = fileSize;
+        }
+    }
+
+    private static void await(EncryptedTcpCommunicator communicator, Message.Type type) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT);
+        Message message;
+        do {
+            message = communicator.getMessageQueue().poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (message == null) throw new IllegalStateException("Transfer timed out");
+        } while (message.messageType != type);
+    }
+
+    /**
+     * Sends the file once.
+     * @return time in nanoseconds from sending until the receiver has the whole file deciphered
+     */
+    private static long round(EncryptedTcpCommunicator sender, EncryptedTcpCommunicator receiver, Path file,
+                              Path received) throws Exception {
+        receiver.getMessageQueue().clear();
+        long start = System.nanoTime();
+        sender.send(file);
+        await(receiver, Message.Type.FILE_READY);
+        long time = System.nanoTime() - start;
+        Files.deleteIfExists(received);
+        return time;
+    }
+
+    private static void measure(Connection connection, Path directory, KeyPair keyPair1, KeyPair keyPair2,
+                                Transformation transformation) throws Exception {
+        Transformation asymmetric = Transformation.RSA_ECB_PKCS1Padding;
+        NetworkManager manager1 = connection.managers.get();
+        NetworkManager manager2 = connection.managers.get();
+        EncryptedTcpCommunicator communicator1 = new EncryptedTcpCommunicator(directory + "/", "benchmark_1",
+                keyPair1.getPublic(), keyPair1.getPrivate(), asymmetric, manager1,
+                new EncryptionManager(transformation.getText()));
+        EncryptedTcpCommunicator communicator2 = new EncryptedTcpCommunicator(directory + "/", "benchmark_2",
+                keyPair2.getPublic(), keyPair2.getPrivate(), asymmetric, manager2,
+                new EncryptionManager(transformation.getText()));
+        communicator1.init();
+        communicator2.init();
+
+        Path file = Files.createTempFile("transfer_benchmark", ".bin");
+        Path received = directory.resolve(file.getFileName());
+        try {
+            byte[] content = new byte[connection.fileSize];
+            new Random(1).nextBytes(content);
+            Files.write(file, content);
+
+            if (!manager1.listenOn(0) || !manager2.connect(connection.host, manager1.getListeningPort())) {
+                throw new IllegalStateException("Connection failed");
+            }
+            communicator2.initiateCommunication(transformation);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT);
+            while (!communicator1.sessionEstablished || !communicator2.sessionEstablished) {
+                if (System.nanoTime() - deadline > 0) throw new IllegalStateException("Handshake timed out");
+                Thread.sleep(1);
+            }
+
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                round(communicator2, communicator1, file, received);
+            }
+            long[] times = new long[ROUNDS];
+            for (int i = 0; i < ROUNDS; i++) {
+                times[i] = round(communicator2, communicator1, file, received);
+            }
+            Arrays.sort(times);
+            double megabytes = connection.fileSize / (1024.0 * 1024.0);
+            System.out.printf("%-16s %12.1f %12.1f%n", connection,
+                    megabytes / (times[ROUNDS / 2] / 1e9), megabytes / (times[0] / 1e9));
+        } finally {
+            manager1.stop();
+            manager2.disconnect();
+            manager1.disconnect();
+            communicator1.close();
+            communicator2.close();
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(received);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Transformation transformation = Transformation.AES_CBC_PKCS5Padding;
+        Transformation asymmetric = Transformation.RSA_ECB_PKCS1Padding;
+        KeyPair keyPair1 = EncryptionManager.generateKeyPair(asymmetric.getKeySize(), asymmetric.getAlgorithm());
+        KeyPair keyPair2 = EncryptionManager.generateKeyPair(asymmetric.getKeySize(), asymmetric.getAlgorithm());
+
+        Path directory = Files.createTempDirectory("transfer_benchmark");
+        try {
+            System.out.printf("%-16s %12s %12s%n", "connection", "median MB/s", "best MB/s");
+            for (Connection connection : Connection.values()) {
+                measure(connection, directory, keyPair1, keyPair2, transformation);
+            }
+        } finally {
+            Files.deleteIfExists(directory);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package pl.edu.pg.eti.ksr.project.concurrent;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class ExecutionModeTest {
+
+    @After
+    public void teardown() {
+        ExecutionMode.setCurrent(ExecutionMode.PLATFORM);
+    }
+
+    @Test
+    public void Should_ReturnProperMode_When_FromTextMethodCalled() {
+        Assert.assertEquals(ExecutionMode.VIRTUAL, ExecutionMode.fromText("virtual"));
+        Assert.assertEquals(ExecutionMode.PLATFORM, ExecutionMode.fromText("PLATFORM"));
+        Assert.assertEquals(ExecutionMode.PLATFORM, ExecutionMode.fromText(null));
+        Assert.assertEquals(ExecutionMode.PLATFORM, ExecutionMode.fromText("unknown"));
+    }
+
+    @Test
+    public void Should_StartVirtualThread_When_VirtualModeSelected() throws InterruptedException {
+        ExecutionMode.setCurrent(ExecutionMode.VIRTUAL);
+
+        Thread thread = ExecutionMode.start(() -> { }, "test");
+        thread.join();
+
+        Assert.assertTrue(thread.isVirtual());
+        Assert.assertEquals("test", thread.getName());
+    }
+
+    @Test
+    public void Should_StartPlatformThread_When_PlatformModeSelected() throws InterruptedException {
+        Thread thread = ExecutionMode.start(() -> { }, "test");
+        thread.join();
+
+        Assert.assertFalse(thread.isVirtual());
+    }
+
+    @Test
+    public void Should_HoldTensOfThousandsOfBlockedTasks_When_VirtualModeSelected() throws InterruptedException {
+        ExecutionMode.setCurrent(ExecutionMode.VIRTUAL);
+        int count = 20_000;
+        BlockingQueue<Integer> gate = new LinkedBlockingQueue<>();
+        BlockingQueue<Integer> done = new LinkedBlockingQueue<>();
+
+        List<Thread> threads = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            threads.add(ExecutionMode.start(() -> {
+                try {
+                    done.put(gate.take());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "blocked-" + i));
+        }
+
+        for (int i = 0; i < count; i++) gate.put(i);
+        for (Thread thread : threads) {
+            Assert.assertTrue(thread.join(Duration.ofSeconds(10)));
+        }
+        Assert.assertEquals(count, done.size());
+        Assert.assertNull(gate.poll(0, TimeUnit.SECONDS));
+    }
+}
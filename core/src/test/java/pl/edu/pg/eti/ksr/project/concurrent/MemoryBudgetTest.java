@@ -0,0 +1,86 @@
+package pl.edu.pg.eti.ksr.project.concurrent;
+
+import org.awaitility.Awaitility;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+public class MemoryBudgetTest {
+
+    @Test
+    public void Should_ReserveFromAllAncestors_When_ReservingFromChild() throws InterruptedException {
+        MemoryBudget parent = MemoryBudget.global().child("parent", 100);
+        MemoryBudget child = parent.child("child", 50);
+
+        child.reserve(30);
+
+        Assert.assertEquals(30, child.getUsed());
+        Assert.assertEquals(30, parent.getUsed());
+
+        child.release(30);
+
+        Assert.assertEquals(0, parent.getUsed());
+        Assert.assertEquals(30, parent.getPeak());
+    }
+
+    @Test
+    public void Should_BlockUntilReleased_When_BudgetExhausted() throws InterruptedException {
+        MemoryBudget budget = MemoryBudget.global().child("budget", 100);
+        budget.reserve(80);
+
+        Thread waiting = ExecutionMode.start(() -> {
+            try {
+                budget.reserve(40);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }, "waiting");
+
+        Awaitility.await().atMost(Duration.ofSeconds(5)).until(() -> budget.getWaiting() == 1);
+        Assert.assertEquals(80, budget.getUsed());
+
+        budget.release(80);
+        waiting.join(5000);
+
+        Assert.assertEquals(40, budget.getUsed());
+    }
+
+    @Test
+    public void Should_KeepNothingReserved_When_ParentExhausted() throws InterruptedException {
+        MemoryBudget parent = MemoryBudget.global().child("parent", 100);
+        MemoryBudget first = parent.child("first", 100);
+        MemoryBudget second = parent.child("second", 100);
+        first.reserve(90);
+
+        Assert.assertFalse(second.tryReserve(20, 10, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(0, second.getUsed());
+        Assert.assertEquals(90, parent.getUsed());
+    }
+
+    @Test
+    public void Should_GrantOversizedReservation_When_NothingElseReserved() throws InterruptedException {
+        MemoryBudget budget = MemoryBudget.global().child("budget", 10);
+
+        Assert.assertTrue(budget.tryReserve(50, 10, TimeUnit.MILLISECONDS));
+        Assert.assertFalse(budget.tryReserve(1, 10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void Should_ReleaseMemory_When_ElementsTakenOrCleared() throws InterruptedException {
+        MemoryBudget budget = MemoryBudget.global().child("queue", 10);
+        BudgetedQueue<byte[]> queue = new BudgetedQueue<>(budget, data -> data.length);
+
+        queue.put(new byte[4]);
+        queue.put(new byte[6]);
+        Assert.assertFalse(queue.offer(new byte[1]));
+        Assert.assertEquals(10, budget.getUsed());
+
+        queue.take();
+        Assert.assertEquals(6, budget.getUsed());
+
+        queue.clear();
+        Assert.assertEquals(0, budget.getUsed());
+    }
+}
@@ -0,0 +1,78 @@
+package pl.edu.pg.eti.ksr.project.concurrent;
+
+import org.awaitility.Awaitility;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class TokenBucketTest {
+
+    @Test
+    public void Should_NotWait_When_Unlimited() throws InterruptedException {
+        TokenBucket bucket = TokenBucket.global().child("unlimited");
+        Assert.assertTrue(bucket.tryAcquire(1024 * 1024 * 1024, 0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void Should_LetBurstThroughAndLimitRate_When_RateSet() throws InterruptedException {
+        TokenBucket bucket = TokenBucket.global().child("bucket", 10_000, 1_000);
+
+        // full bucket lets the burst through at once
+        Assert.assertTrue(bucket.tryAcquire(1_000, 0, TimeUnit.MILLISECONDS));
+        Assert.assertFalse(bucket.tryAcquire(1_000, 10, TimeUnit.MILLISECONDS));
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) bucket.acquire(500);
+        // 2500 bytes at 10000 bytes per second, part of it refilled while the previous attempt was waiting
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+    }
+
+    @Test
+    public void Should_WaitForAncestor_When_ParentLimited() throws InterruptedException {
+        TokenBucket parent = TokenBucket.global().child("parent", 10_000, 1_000);
+        TokenBucket child = parent.child("child");
+
+        Assert.assertTrue(child.tryAcquire(1_000, 0, TimeUnit.MILLISECONDS));
+        Assert.assertFalse(child.tryAcquire(1_000, 10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void Should_ReturnOwnTokens_When_AncestorTimedOut() throws InterruptedException {
+        TokenBucket parent = TokenBucket.global().child("parent", 10_000, 1_000);
+        TokenBucket child = parent.child("child", 10_000, 1_000);
+        parent.acquire(1_000);
+
+        Assert.assertFalse(child.tryAcquire(1_000, 10, TimeUnit.MILLISECONDS));
+        parent.setRate(0);
+        // tokens of the child were not used up by the failed attempt
+        Assert.assertTrue(child.tryAcquire(1_000, 0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void Should_WakeWaitingSender_When_RateChanged() throws InterruptedException {
+        TokenBucket bucket = TokenBucket.global().child("bucket", 1, 1);
+        bucket.acquire(1);
+
+        Thread waiting = ExecutionMode.start(() -> {
+            try {
+                bucket.acquire(1_000);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }, "waiting");
+
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> bucket.getWaiting() == 1);
+        bucket.setRate(0);
+        waiting.join(TimeUnit.SECONDS.toMillis(5));
+        Assert.assertFalse(waiting.isAlive());
+    }
+
+    @Test
+    public void Should_BeUnlimited_When_PropertyInvalid() {
+        Assert.assertEquals(0, TokenBucket.parseKilobytes(null));
+        Assert.assertEquals(0, TokenBucket.parseKilobytes("fast"));
+        Assert.assertEquals(0, TokenBucket.parseKilobytes("-5"));
+        Assert.assertEquals(1024, TokenBucket.parseKilobytes(" 1024 "));
+    }
+}
@@ -15,8 +15,10 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.*;
+import java.util.Arrays;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class EncryptionManagerTest {
 
@@ -269,6 +271,46 @@ public class EncryptionManagerTest {
         Assert.assertFalse(blockingQueue.isEmpty());
     }
 
+    @Test
+    public void Should_NotEncryptFile_When_OperationStoppedBeforeStart()
+            throws NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException,
+            InterruptedException, IOException {
+
+        BlockingQueue<byte[]> blockingQueue = new LinkedBlockingDeque<>(1024);
+        AtomicBoolean running = new AtomicBoolean(false);
+
+        Key key = EncryptionManager.generateKey(transformation.getKeySize(), transformation.getAlgorithm());
+        IvParameterSpec iv = EncryptionManager.generateIv(transformation.getBlockSize());
+
+        manager.encrypt(sourceFile, blockingQueue, key, iv, Files.size(sourceFile), running, state -> {}).join();
+
+        Assert.assertFalse(running.get());
+        // only the end of file marker
+        Assert.assertEquals(1, blockingQueue.size());
+        Assert.assertEquals(0, blockingQueue.take().length);
+    }
+
+    @Test
+    public void Should_KeepCurrentWork_When_IndependentOperationStarted()
+            throws NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException,
+            InterruptedException, IOException {
+
+        Key key = EncryptionManager.generateKey(transformation.getKeySize(), transformation.getAlgorithm());
+        IvParameterSpec iv = EncryptionManager.generateIv(transformation.getBlockSize());
+
+        manager.encrypt(sourceFile, new LinkedBlockingDeque<>(1024), key, iv, Files.size(sourceFile));
+        Thread current = manager.getEncryptorThread();
+
+        BlockingQueue<byte[]> blockingQueue = new LinkedBlockingDeque<>(1024);
+        Thread independent = manager.encrypt(sourceFile, blockingQueue, key, iv, Files.size(sourceFile),
+                new AtomicBoolean(true), state -> {});
+
+        Assert.assertSame(current, manager.getEncryptorThread());
+        Assert.assertNotSame(independent, manager.getEncryptorThread());
+        current.join();
+        independent.join();
+    }
+
     @Test
     public void Should_SourceFileAndDecryptedSourceFileBeIdentical_When_PerformingFileEncryptionAndDecryptionUsingBlockingQueueMethod()
             throws NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException,
@@ -308,4 +350,39 @@ public class EncryptionManagerTest {
 
         Assert.assertEquals(key, decryptedKey);
     }
+
+    @Test
+    public void Should_RejectSignature_When_SignedDataChanged()
+            throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+
+        KeyPair keyPair = EncryptionManager.generateKeyPair(Transformation.RSA_ECB_PKCS1Padding.getKeySize(),
+                Transformation.RSA_ECB_PKCS1Padding.getAlgorithm());
+        byte[] data = "Example text".getBytes(StandardCharsets.UTF_8);
+
+        byte[] signature = EncryptionManager.sign(data, keyPair.getPrivate());
+        Assert.assertTrue(EncryptionManager.verify(data, signature, keyPair.getPublic()));
+
+        data[0] ^= 1;
+        Assert.assertFalse(EncryptionManager.verify(data, signature, keyPair.getPublic()));
+        Assert.assertFalse(EncryptionManager.verify(data, null, keyPair.getPublic()));
+    }
+
+    @Test
+    public void Should_DeriveSameKey_When_BothSidesAgreeOnEphemeralKeys() throws InvalidKeyException {
+        KeyPair first = EncryptionManager.generateEphemeralKeyPair();
+        KeyPair second = EncryptionManager.generateEphemeralKeyPair();
+        byte[] transcript = {1, 2, 3};
+
+        Key firstKey = EncryptionManager.deriveKey(EncryptionManager.agree(first.getPrivate(), second.getPublic()),
+                Transformation.DESede_CBC_PKCS5Padding, transcript);
+        Key secondKey = EncryptionManager.deriveKey(EncryptionManager.agree(second.getPrivate(), first.getPublic()),
+                Transformation.DESede_CBC_PKCS5Padding, transcript);
+        Key otherTranscriptKey = EncryptionManager.deriveKey(
+                EncryptionManager.agree(second.getPrivate(), first.getPublic()),
+                Transformation.DESede_CBC_PKCS5Padding, new byte[]{1, 2, 4});
+
+        Assert.assertArrayEquals(firstKey.getEncoded(), secondKey.getEncoded());
+        Assert.assertEquals(24, firstKey.getEncoded().length);
+        Assert.assertFalse(Arrays.equals(firstKey.getEncoded(), otherTranscriptKey.getEncoded()));
+    }
 }
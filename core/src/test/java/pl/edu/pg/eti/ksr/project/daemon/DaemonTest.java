@@ -0,0 +1,174 @@
+package pl.edu.pg.eti.ksr.project.daemon;
+
+import org.awaitility.Awaitility;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import pl.edu.pg.eti.ksr.project.concurrent.ExecutionMode;
+import pl.edu.pg.eti.ksr.project.crypto.Transformation;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class DaemonTest {
+
+    private static final Path ACCOUNTS_PATH = Path.of("./BSK_files");
+
+    private final List<Daemon> daemons = new ArrayList<>();
+
+    private final List<Path> directories = new ArrayList<>();
+
+    private boolean accountsExisted = Files.exists(ACCOUNTS_PATH);
+
+    @After
+    public void teardown() throws IOException {
+        daemons.forEach(Daemon::close);
+        if (!accountsExisted) directories.add(ACCOUNTS_PATH);
+        for (Path directory : directories) {
+            if (!Files.exists(directory)) continue;
+            try (var files = Files.walk(directory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void Should_ReadAllOptions_When_ArgumentsGiven() {
+        Daemon.Options options = Daemon.Options.parse(new String[]{"--user=alice", "--create",
+                "--listen=5000", "--connect=10.0.0.1:6000", "--transformation=DESede/ECB/PKCS5Padding",
+                "--files=/tmp/files", "--execution=virtual"});
+
+        Assert.assertEquals("alice", options.getUsername());
+        Assert.assertTrue(options.isCreate());
+        Assert.assertEquals(5000, options.getListenPort());
+        Assert.assertEquals("10.0.0.1", options.getConnectHost());
+        Assert.assertEquals(6000, options.getConnectPort());
+        Assert.assertEquals(Transformation.DESede_ECB_PKCS5Padding, options.getTransformation());
+        Assert.assertEquals("/tmp/files/", options.getFilesPath());
+        Assert.assertEquals(ExecutionMode.VIRTUAL, options.getExecutionMode());
+    }
+
+    @Test
+    public void Should_UseDefaults_When_OnlyUserGiven() {
+        Daemon.Options options = Daemon.Options.parse(new String[]{"--user=alice"});
+
+        Assert.assertFalse(options.isCreate());
+        Assert.assertEquals(-1, options.getListenPort());
+        Assert.assertNull(options.getConnectHost());
+        Assert.assertNull(options.getPassword());
+        Assert.assertEquals(Transformation.AES_CBC_PKCS5Padding, options.getTransformation());
+        Assert.assertEquals(Daemon.FILES_PATH, options.getFilesPath());
+    }
+
+    @Test
+    public void Should_Throw_When_ArgumentsInvalid() {
+        Assert.assertThrows(IllegalArgumentException.class, () -> Daemon.Options.parse(new String[]{"--create"}));
+        Assert.assertThrows(IllegalArgumentException.class, () -> Daemon.Options.parse(new String[]{
+                "--user=alice", "--listen=port"}));
+        Assert.assertThrows(IllegalArgumentException.class, () -> Daemon.Options.parse(new String[]{
+                "--user=alice", "--connect=10.0.0.1"}));
+        Assert.assertThrows(IllegalArgumentException.class, () -> Daemon.Options.parse(new String[]{
+                "--user=alice", "--transformation=RSA/ECB/PKCS1Padding"}));
+        Assert.assertThrows(IllegalArgumentException.class, () -> Daemon.Options.parse(new String[]{
+                "--user=alice", "--verbose"}));
+    }
+
+    @Test
+    public void Should_RejectPassword_When_GivenAsArgument() {
+        Assert.assertThrows(IllegalArgumentException.class, () -> Daemon.Options.parse(new String[]{
+                "--user=alice", "--password=secret"}));
+    }
+
+    @Test
+    public void Should_ReadPasswordFromFile_When_FileGiven() throws IOException {
+        Path file = Files.createTempFile("password", ".txt");
+        try {
+            Files.writeString(file, "secret\nignored\n");
+            Daemon.Options options = Daemon.Options.parse(new String[]{"--user=alice", "--password-file=" + file});
+
+            options.readPassword(Map.of(Daemon.PASSWORD_VARIABLE, "other"), null);
+
+            Assert.assertEquals("secret", options.getPassword());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void Should_ReadPasswordFromEnvironment_When_NoFileGiven() {
+        Daemon.Options options = Daemon.Options.parse(new String[]{"--user=alice"});
+
+        options.readPassword(Map.of(Daemon.PASSWORD_VARIABLE, "secret"), null);
+
+        Assert.assertEquals("secret", options.getPassword());
+    }
+
+    @Test
+    public void Should_Throw_When_NoPasswordSource() {
+        Daemon.Options options = Daemon.Options.parse(new String[]{"--user=alice"});
+        Daemon.Options missingFile = Daemon.Options.parse(new String[]{"--user=alice",
+                "--password-file=./missing_password.txt"});
+
+        Assert.assertThrows(IllegalArgumentException.class, () -> options.readPassword(Map.of(), null));
+        Assert.assertThrows(IllegalArgumentException.class, () -> missingFile.readPassword(Map.of(), null));
+    }
+
+    @Test
+    public void Should_DeliverMessageAndFile_When_TwoDaemonsConnected() throws IOException {
+        String suffix = String.valueOf(System.nanoTime());
+        ByteArrayOutputStream output1 = new ByteArrayOutputStream();
+        ByteArrayOutputStream output2 = new ByteArrayOutputStream();
+        Daemon daemon1 = startDaemon("alice_" + suffix, "--listen=0", output1);
+        Daemon daemon2 = startDaemon("bob_" + suffix, null, output2);
+
+        Assert.assertTrue(daemon2.connect("localhost", daemon1.getTcpManager().getListeningPort()));
+        Awaitility.await().atMost(10, TimeUnit.SECONDS).until(() ->
+                daemon1.getCommunicator().isCommunicationEstablished()
+                        && daemon2.getCommunicator().isCommunicationEstablished());
+
+        Path source = Files.createTempFile("daemon", ".txt");
+        directories.add(source);
+        byte[] content = "content of the file sent by the daemon\n".repeat(1000).getBytes(StandardCharsets.UTF_8);
+        Files.write(source, content);
+        daemon2.serve(new BufferedReader(new StringReader("hello\n/file " + source + "\n")));
+
+        Awaitility.await().atMost(10, TimeUnit.SECONDS).until(() ->
+                output1.toString(StandardCharsets.UTF_8).contains("[bob_" + suffix + "]: hello"));
+        Awaitility.await().atMost(10, TimeUnit.SECONDS).until(() -> output1.toString(StandardCharsets.UTF_8)
+                .contains("Transfer of " + source.getFileName() + " is complete"));
+        Path received = Path.of(daemon1.getCommunicator().getSavedFilesPath(), source.getFileName().toString());
+        Assert.assertArrayEquals(content, Files.readAllBytes(received));
+
+        // serving till the end of input keeps the client running, "/quit" closes it
+        daemon2.serve(new BufferedReader(new StringReader("/quit\n")));
+
+        Awaitility.await().atMost(10, TimeUnit.SECONDS).until(() ->
+                daemon1.getTcpManager().getListeningPort() > 0);
+        Assert.assertTrue(output1.toString(StandardCharsets.UTF_8).contains("bob_" + suffix + " exited"));
+    }
+
+    private Daemon startDaemon(String username, String listen, ByteArrayOutputStream output) throws IOException {
+        Path files = Files.createTempDirectory("daemon_" + username);
+        directories.add(files);
+        List<String> args = new ArrayList<>(List.of("--user=" + username, "--create", "--files=" + files));
+        if (listen != null) args.add(listen);
+        Daemon.Options options = Daemon.Options.parse(args.toArray(new String[0]));
+        options.readPassword(Map.of(Daemon.PASSWORD_VARIABLE, "secret_" + username), null);
+
+        Daemon daemon = new Daemon(options, new PrintStream(output, true, StandardCharsets.UTF_8));
+        daemons.add(daemon);
+        Assert.assertTrue(daemon.start());
+        return daemon;
+    }
+}
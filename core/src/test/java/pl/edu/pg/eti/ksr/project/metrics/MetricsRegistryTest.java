@@ -0,0 +1,115 @@
+package pl.edu.pg.eti.ksr.project.metrics;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MetricsRegistryTest {
+
+    private MetricsRegistry registry;
+
+    @Before
+    public void init() {
+        registry = new MetricsRegistry();
+    }
+
+    @Test
+    public void Should_MeasureRates_When_MeterMarked() throws InterruptedException {
+        registry.sample();
+        Meter meter = registry.meter("connection.sent");
+        for (int i = 0; i < 10; i++) meter.mark(100);
+        Thread.sleep(100);
+
+        MetricsSnapshot snapshot = registry.sample();
+        Assert.assertEquals(1000, snapshot.get("connection.sent.total"), 0);
+        Assert.assertEquals(10, snapshot.get("connection.sent.events"), 0);
+        // ten events within a bit more than a tenth of a second
+        Assert.assertTrue(snapshot.get("connection.sent.rate") > 1000 && snapshot.get("connection.sent.rate") <= 10000);
+        Assert.assertTrue(snapshot.get("connection.sent.eventRate") > 10);
+
+        snapshot = registry.sample();
+        Assert.assertEquals(0, snapshot.get("connection.sent.rate"), 0);
+    }
+
+    @Test
+    public void Should_KeepDurationStatistics_When_TimerRecorded() {
+        Timer timer = registry.timer("handshake");
+        timer.record(TimeUnit.MILLISECONDS.toNanos(10));
+        timer.record(TimeUnit.MILLISECONDS.toNanos(30));
+
+        MetricsSnapshot snapshot = registry.sample();
+        Assert.assertEquals(2, snapshot.get("handshake.count"), 0);
+        Assert.assertEquals(30, snapshot.get("handshake.last"), 1e-9);
+        Assert.assertEquals(20, snapshot.get("handshake.mean"), 1e-9);
+        Assert.assertEquals(30, snapshot.get("handshake.max"), 1e-9);
+    }
+
+    @Test
+    public void Should_ReadGaugesAndRemoveWholeScope_When_Sampled() {
+        AtomicInteger depth = new AtomicInteger(3);
+        registry.gauge("transfer.1.queue", depth::get);
+        registry.gauge("transfer.10.queue", () -> 7);
+        registry.meter("transfer.1.sent").mark(1);
+        Assert.assertEquals(3, registry.sample().get("transfer.1.queue"), 0);
+
+        depth.set(5);
+        Assert.assertEquals(5, registry.sample().get("transfer.1.queue"), 0);
+
+        registry.remove("transfer.1");
+        MetricsSnapshot snapshot = registry.sample();
+        Assert.assertTrue(Double.isNaN(snapshot.get("transfer.1.queue")));
+        Assert.assertTrue(Double.isNaN(snapshot.get("transfer.1.sent.total")));
+        Assert.assertEquals(7, snapshot.get("transfer.10.queue"), 0);
+    }
+
+    @Test
+    public void Should_PublishSnapshotToObservers_When_Sampled() {
+        List<Object> events = new ArrayList<>();
+        registry.attach(events::add);
+        registry.gauge("messageQueue", () -> 1);
+
+        MetricsSnapshot snapshot = registry.sample();
+        Assert.assertEquals(List.of(snapshot), events);
+        Assert.assertSame(snapshot, registry.getLatest());
+    }
+
+    @Test
+    public void Should_KeepSampling_When_GaugeOrObserverThrows() {
+        List<Object> events = new ArrayList<>();
+        registry.gauge("broken", () -> {
+            throw new IllegalStateException("closed");
+        });
+        registry.gauge("working", () -> 7);
+        registry.attach(o -> {
+            throw new IllegalStateException("closed");
+        });
+        registry.attach(events::add);
+
+        MetricsSnapshot snapshot = registry.sample();
+        Assert.assertTrue(Double.isNaN(snapshot.get("broken")));
+        Assert.assertEquals(7, snapshot.get("working"), 0);
+        Assert.assertEquals(List.of(snapshot), events);
+    }
+
+    @Test
+    public void Should_ExposeValuesOverJmx_When_GlobalRegistryUsed() throws JMException {
+        MetricsRegistry.global().gauge("test.jmx", () -> 42);
+        MetricsRegistry.global().sample();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MetricsRegistry.OBJECT_NAME);
+            Assert.assertEquals(42.0, server.getAttribute(name, "test.jmx"));
+        } finally {
+            MetricsRegistry.global().remove("test");
+        }
+    }
+}
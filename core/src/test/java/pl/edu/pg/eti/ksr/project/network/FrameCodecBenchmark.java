@@ -0,0 +1,123 @@
+package pl.edu.pg.eti.ksr.project.network;
+
+import pl.edu.pg.eti.ksr.project.crypto.EncryptionManager;
+import pl.edu.pg.eti.ksr.project.crypto.Transformation;
+import pl.edu.pg.eti.ksr.project.network.data.CommunicationInfo;
+import pl.edu.pg.eti.ksr.project.network.data.FileInfo;
+import pl.edu.pg.eti.ksr.project.network.data.Frame;
+import pl.edu.pg.eti.ksr.project.network.data.SessionInfo;
+
+import java.io.*;
+import java.security.KeyPair;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Compares per-frame overhead of java serialization and frame codec.
+ *
+ * Not a unit test, run manually from the IDE or with:
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=pl.edu.pg.eti.ksr.project.network.FrameCodecBenchmark
+ */
+public class FrameCodecBenchmark {
+
+    private static final int BATCH = 1_000;
+
+    private static final int WARMUP_ROUNDS = 20;
+
+    private static final int ROUNDS = 100;
+
+    /**
+     * Bytes written to a long living object stream per frame, the way tcp manager used to send frames.
+     * Every frame carries a new payload object, as it does during real communication.
+     */
+    private static long serializedSize(Supplier<Frame> frames) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(frames.get()); // class descriptors are sent once per stream
+        out.flush();
+        int before = bytes.size();
+        out.writeObject(frames.get());
+        out.flush();
+        return bytes.size() - before;
+    }
+
+    /**
+     * Writes and reads one batch of frames using java serialization.
+     */
+    private static void serializedRound(Frame frame, ByteArrayOutputStream bytes)
+            throws IOException, ClassNotFoundException {
+        bytes.reset();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        for (int i = 0; i < BATCH; i++) {
+            out.writeObject(new Frame(frame.frameType, frame.data));
+            out.reset(); // without reset every written array is kept by the stream
+        }
+        out.flush();
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        for (int i = 0; i < BATCH; i++) {
+            in.readObject();
+        }
+    }
+
+    /**
+     * Writes and reads one batch of frames using frame codec.
+     */
+    private static void codecRound(Frame frame, ByteArrayOutputStream bytes) throws IOException {
+        bytes.reset();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (int i = 0; i < BATCH; i++) {
+            FrameCodec.write(out, frame);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        for (int i = 0; i < BATCH; i++) {
+            FrameCodec.read(in);
+        }
+    }
+
+    private static double serializedNanos(Frame frame) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (int i = 0; i < WARMUP_ROUNDS; i++) serializedRound(frame, bytes);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) serializedRound(frame, bytes);
+        return (double) (System.nanoTime() - start) / (ROUNDS * BATCH);
+    }
+
+    private static double codecNanos(Frame frame) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (int i = 0; i < WARMUP_ROUNDS; i++) codecRound(frame, bytes);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) codecRound(frame, bytes);
+        return (double) (System.nanoTime() - start) / (ROUNDS * BATCH);
+    }
+
+    public static void main(String[] args) throws Exception {
+        KeyPair keyPair = EncryptionManager.generateKeyPair(Transformation.RSA_ECB_PKCS1Padding.getKeySize(),
+                Transformation.RSA_ECB_PKCS1Padding.getAlgorithm());
+
+        Map<String, Supplier<Frame>> frames = new LinkedHashMap<>();
+        frames.put("TRANSFER_DATA 8 KiB", () -> new Frame(Frame.Type.TRANSFER_DATA, new byte[8192]));
+        frames.put("TRANSFER_DATA 16 B", () -> new Frame(Frame.Type.TRANSFER_DATA, new byte[16]));
+        frames.put("MESSAGE 32 B", () -> new Frame(Frame.Type.MESSAGE, new byte[32]));
+        frames.put("COMMUNICATION_INIT", () -> new Frame(Frame.Type.COMMUNICATION_INIT, CommunicationInfo.builder()
+                .username("test_username").userPublicKey(keyPair.getPublic()).num(2).challenge("12345")
+                .challengeResponse(new byte[256]).build()));
+        frames.put("SESSION_INIT", () -> new Frame(Frame.Type.SESSION_INIT, SessionInfo.builder()
+                .encryptedSessionKey(new byte[256]).iv(new byte[16])
+                .transformation(Transformation.AES_CBC_PKCS5Padding).build()));
+        frames.put("TRANSFER_INIT", () -> new Frame(Frame.Type.TRANSFER_INIT,
+                new FileInfo(new byte[16], new byte[16])));
+
+        System.out.printf("%-22s %14s %14s %14s %14s%n", "frame", "serial bytes", "codec bytes",
+                "serial ns", "codec ns");
+        for (Map.Entry<String, Supplier<Frame>> entry : frames.entrySet()) {
+            Frame frame = entry.getValue().get();
+            System.out.printf("%-22s %14d %14d %14.0f %14.0f%n", entry.getKey(),
+                    serializedSize(entry.getValue()), FrameCodec.encode(frame).length,
+                    serializedNanos(frame), codecNanos(frame));
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package pl.edu.pg.eti.ksr.project.network;
+
+import org.junit.Assert;
+import org.junit.Test;
+import pl.edu.pg.eti.ksr.project.crypto.EncryptionManager;
+import pl.edu.pg.eti.ksr.project.crypto.Transformation;
+import pl.edu.pg.eti.ksr.project.network.data.CommunicationInfo;
+import pl.edu.pg.eti.ksr.project.network.data.FileInfo;
+import pl.edu.pg.eti.ksr.project.network.data.Frame;
+import pl.edu.pg.eti.ksr.project.network.data.HandshakeInfo;
+import pl.edu.pg.eti.ksr.project.network.data.RelayInfo;
+import pl.edu.pg.eti.ksr.project.network.data.SegmentInfo;
+import pl.edu.pg.eti.ksr.project.network.data.SessionInfo;
+import pl.edu.pg.eti.ksr.project.network.data.StripeInfo;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class FrameCodecTest {
+
+    private Frame roundTrip(Frame frame) throws IOException {
+        byte[] encoded = FrameCodec.encode(frame);
+        return FrameCodec.read(new DataInputStream(new ByteArrayInputStream(encoded)));
+    }
+
+    @Test
+    public void Should_DecodeIdenticalBytes_When_DataFrameEncoded() throws IOException {
+        byte[] data = new byte[8192];
+        Arrays.fill(data, (byte) 7);
+
+        Frame decoded = roundTrip(new Frame(Frame.Type.TRANSFER_DATA, data));
+
+        Assert.assertEquals(Frame.Type.TRANSFER_DATA, decoded.frameType);
+        Assert.assertArrayEquals(data, (byte[]) decoded.data);
+    }
+
+    @Test
+    public void Should_UseTenBytesOfOverhead_When_DataFrameEncoded() throws IOException {
+        byte[] data = new byte[100];
+
+        byte[] encoded = FrameCodec.encode(new Frame(Frame.Type.TRANSFER_DATA, data));
+
+        Assert.assertEquals(data.length + FrameCodec.LENGTH_SIZE + FrameCodec.HEADER_SIZE + Integer.BYTES,
+                encoded.length);
+    }
+
+    @Test
+    public void Should_KeepStreamId_When_FrameEncoded() throws IOException {
+        Frame decoded = roundTrip(new Frame(Frame.Type.TRANSFER_DATA, new byte[]{1}, 42));
+
+        Assert.assertEquals(42, decoded.streamId);
+        Assert.assertEquals(Frame.CONTROL_STREAM, roundTrip(new Frame(Frame.Type.MESSAGE, "text")).streamId);
+    }
+
+    @Test
+    public void Should_DecodeEqualSegmentAndStripeInfo_When_StripedTransferFramesEncoded() throws IOException {
+        SegmentInfo segment = (SegmentInfo) roundTrip(new Frame(Frame.Type.TRANSFER_SEGMENT,
+                new SegmentInfo(1L << 40, new byte[]{1, 2, 3}), 5)).data;
+        StripeInfo stripes = (StripeInfo) roundTrip(new Frame(Frame.Type.TRANSFER_STRIPES,
+                new StripeInfo(4321, new byte[]{9, 8}), 5)).data;
+
+        Assert.assertEquals(1L << 40, segment.getOffset());
+        Assert.assertArrayEquals(new byte[]{1, 2, 3}, segment.getData());
+        Assert.assertEquals(4321, stripes.getPort());
+        Assert.assertArrayEquals(new byte[]{9, 8}, stripes.getToken());
+    }
+
+    @Test
+    public void Should_DecodeEqualInteger_When_CreditFrameEncoded() throws IOException {
+        Frame decoded = roundTrip(new Frame(Frame.Type.TRANSFER_CREDIT, 16, 7));
+
+        Assert.assertEquals(Frame.Type.TRANSFER_CREDIT, decoded.frameType);
+        Assert.assertEquals(16, decoded.data);
+        Assert.assertEquals(7, decoded.streamId);
+    }
+
+    @Test
+    public void Should_DecodeEqualLong_When_PingFrameEncoded() throws IOException {
+        long sent = System.nanoTime();
+        Frame decoded = roundTrip(new Frame(Frame.Type.PING, sent));
+
+        Assert.assertEquals(Frame.Type.PING, decoded.frameType);
+        Assert.assertEquals(sent, decoded.data);
+    }
+
+    @Test
+    public void Should_DecodeNullData_When_EmptyFrameEncoded() throws IOException {
+        Frame decoded = roundTrip(new Frame(Frame.Type.COMMUNICATION_STOP, null));
+
+        Assert.assertEquals(Frame.Type.COMMUNICATION_STOP, decoded.frameType);
+        Assert.assertNull(decoded.data);
+    }
+
+    @Test
+    public void Should_DecodeEqualCommunicationInfo_When_CommunicationInfoEncoded()
+            throws IOException, NoSuchAlgorithmException {
+        KeyPair keyPair = EncryptionManager.generateKeyPair(Transformation.RSA_ECB_PKCS1Padding.getKeySize(),
+                Transformation.RSA_ECB_PKCS1Padding.getAlgorithm());
+        CommunicationInfo info = CommunicationInfo.builder()
+                .username("test_username")
+                .userPublicKey(keyPair.getPublic())
+                .num(2)
+                .challenge("12345")
+                .challengeResponse(new byte[]{1, 2, 3})
+                .build();
+
+        CommunicationInfo decoded = (CommunicationInfo) roundTrip(
+                new Frame(Frame.Type.COMMUNICATION_INIT, info)).data;
+
+        Assert.assertEquals(info.getUsername(), decoded.getUsername());
+        Assert.assertEquals(info.getUserPublicKey(), decoded.getUserPublicKey());
+        Assert.assertEquals(info.getNum(), decoded.getNum());
+        Assert.assertEquals(info.getChallenge(), decoded.getChallenge());
+        Assert.assertArrayEquals(info.getChallengeResponse(), decoded.getChallengeResponse());
+    }
+
+    @Test
+    public void Should_DecodeEqualSessionInfo_When_SessionInfoEncoded() throws IOException {
+        SessionInfo info = SessionInfo.builder()
+                .encryptedSessionKey(new byte[]{4, 5, 6})
+                .iv(new byte[16])
+                .transformation(Transformation.AES_CBC_PKCS5Padding)
+                .build();
+
+        SessionInfo decoded = (SessionInfo) roundTrip(new Frame(Frame.Type.SESSION_INIT, info)).data;
+
+        Assert.assertArrayEquals(info.getEncryptedSessionKey(), decoded.getEncryptedSessionKey());
+        Assert.assertArrayEquals(info.getIv(), decoded.getIv());
+        Assert.assertEquals(info.getTransformation(), decoded.getTransformation());
+    }
+
+    @Test
+    public void Should_DecodeEqualHandshakeInfo_When_HandshakeReplyEncoded() throws IOException {
+        KeyPair ephemeral = EncryptionManager.generateEphemeralKeyPair();
+        HandshakeInfo info = HandshakeInfo.builder()
+                .num(1)
+                .username("test_username")
+                .keyFingerprint(new byte[]{1, 2})
+                .nonce(new byte[]{3, 4})
+                .ephemeralKey(ephemeral.getPublic())
+                .iv(new byte[16])
+                .signature(new byte[]{5, 6})
+                .build();
+
+        HandshakeInfo decoded = (HandshakeInfo) roundTrip(new Frame(Frame.Type.HANDSHAKE, info)).data;
+
+        Assert.assertEquals(info.getNum(), decoded.getNum());
+        Assert.assertEquals(info.getUsername(), decoded.getUsername());
+        Assert.assertNull(decoded.getUserPublicKey());
+        Assert.assertArrayEquals(info.getKeyFingerprint(), decoded.getKeyFingerprint());
+        Assert.assertArrayEquals(info.getNonce(), decoded.getNonce());
+        Assert.assertEquals(info.getEphemeralKey(), decoded.getEphemeralKey());
+        Assert.assertArrayEquals(info.getIv(), decoded.getIv());
+        Assert.assertArrayEquals(info.getSignature(), decoded.getSignature());
+    }
+
+    @Test
+    public void Should_DecodeEqualFileInfo_When_FileInfoEncoded() throws IOException {
+        FileInfo info = new FileInfo(new byte[]{1, 2}, new byte[]{3});
+
+        FileInfo decoded = (FileInfo) roundTrip(new Frame(Frame.Type.TRANSFER_INIT, info)).data;
+
+        Assert.assertArrayEquals(info.getFileName(), decoded.getFileName());
+        Assert.assertArrayEquals(info.getFileSize(), decoded.getFileSize());
+    }
+
+    @Test
+    public void Should_DecodeText_When_StringFrameEncoded() throws IOException {
+        Frame decoded = roundTrip(new Frame(Frame.Type.MESSAGE, "zażółć"));
+
+        Assert.assertEquals("zażółć", decoded.data);
+    }
+
+    @Test
+    public void Should_DecodeEqualRelayInfo_When_RelayConnectFrameEncoded() throws IOException {
+        RelayInfo info = (RelayInfo) roundTrip(new Frame(Frame.Type.RELAY_CONNECT, new RelayInfo("alice", "bob"))).data;
+
+        Assert.assertEquals("alice", info.getUsername());
+        Assert.assertEquals("bob", info.getPeer());
+    }
+
+    @Test(expected = StreamCorruptedException.class)
+    public void Should_ThrowException_When_RecordTruncated() throws IOException {
+        byte[] encoded = FrameCodec.encode(new Frame(Frame.Type.TRANSFER_DATA, new byte[10]));
+
+        FrameCodec.decode(ByteBuffer.wrap(encoded, FrameCodec.LENGTH_SIZE, 8));
+    }
+
+    @Test(expected = NotSerializableException.class)
+    public void Should_ThrowException_When_PayloadTypeUnsupported() throws IOException {
+        FrameCodec.encode(new Frame(Frame.Type.MESSAGE, new ArrayList<String>()));
+    }
+
+    @Test(expected = StreamCorruptedException.class)
+    public void Should_ThrowException_When_SerializedPayloadReceived() throws IOException {
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(serialized)) {
+            out.writeObject(new ArrayList<String>());
+        }
+        // record of a java serialized payload, as sent by older clients
+        ByteBuffer record = ByteBuffer.allocate(FrameCodec.HEADER_SIZE + Integer.BYTES + serialized.size());
+        record.put((byte) Frame.Type.MESSAGE.ordinal());
+        record.putInt(Frame.CONTROL_STREAM);
+        record.put((byte) 6);
+        record.putInt(serialized.size());
+        record.put(serialized.toByteArray());
+        record.flip();
+
+        FrameCodec.decode(record);
+    }
+}
@@ -0,0 +1,125 @@
+package pl.edu.pg.eti.ksr.project.network;
+
+import org.awaitility.Awaitility;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import pl.edu.pg.eti.ksr.project.network.data.Frame;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+public class FramePublisherTest {
+
+    /**
+     * Subscriber collecting frames, requesting them only when asked to.
+     */
+    private static class CollectingSubscriber implements Flow.Subscriber<Frame> {
+
+        final List<Object> received = new CopyOnWriteArrayList<>();
+
+        final List<Throwable> errors = new CopyOnWriteArrayList<>();
+
+        volatile Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(Frame item) {
+            received.add(item.data);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            errors.add(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+
+    private LoopbackManager manager1;
+    private LoopbackManager manager2;
+    private CollectingSubscriber subscriber;
+
+    @Before
+    public void init() {
+        manager1 = new LoopbackManager();
+        manager2 = new LoopbackManager();
+        subscriber = new CollectingSubscriber();
+    }
+
+    @After
+    public void teardown() {
+        if (subscriber.subscription != null) subscriber.subscription.cancel();
+
+        manager1.stop();
+        manager1.disconnect();
+
+        manager2.stop();
+        manager2.disconnect();
+    }
+
+    private void connect() {
+        Assert.assertTrue(manager1.listenOn(0));
+        Assert.assertTrue(manager2.connect(LoopbackManager.HOST, manager1.getListeningPort()));
+    }
+
+    @Test
+    public void Should_PublishOnlyRequestedFrames_When_MoreFramesSent() throws InterruptedException {
+        connect();
+        manager1.frames().subscribe(subscriber);
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(manager2.send(new Frame(Frame.Type.MESSAGE, i)));
+        }
+
+        subscriber.subscription.request(2);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> subscriber.received.size() == 2);
+        Thread.sleep(100);
+        Assert.assertEquals(List.of(0, 1), subscriber.received);
+
+        subscriber.subscription.request(3);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> subscriber.received.size() == 5);
+        Assert.assertEquals(List.of(0, 1, 2, 3, 4), subscriber.received);
+    }
+
+    @Test
+    public void Should_PublishFrames_When_ConnectedAfterSubscribing() {
+        manager1.frames().subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        connect();
+        Assert.assertTrue(manager2.send(new Frame(Frame.Type.MESSAGE, "test")));
+
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> subscriber.received.size() == 1);
+        Assert.assertEquals("test", subscriber.received.get(0));
+    }
+
+    @Test
+    public void Should_SignalError_When_NonPositiveNumberRequested() {
+        manager1.frames().subscribe(subscriber);
+        subscriber.subscription.request(0);
+
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> subscriber.errors.size() == 1);
+        Assert.assertTrue(subscriber.errors.get(0) instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void Should_RejectSecondSubscriber_When_AlreadySubscribed() {
+        Flow.Publisher<Frame> publisher = manager1.frames();
+        publisher.subscribe(subscriber);
+
+        CollectingSubscriber second = new CollectingSubscriber();
+        publisher.subscribe(second);
+
+        Assert.assertEquals(1, second.errors.size());
+        Assert.assertTrue(second.errors.get(0) instanceof IllegalStateException);
+    }
+}
@@ -0,0 +1,218 @@
+package pl.edu.pg.eti.ksr.project.network;
+
+import org.awaitility.Awaitility;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import pl.edu.pg.eti.ksr.project.network.data.Frame;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FrameSchedulerTest {
+
+    /**
+     * Socket stream counting writes, blocked until opened like a socket with a full buffer.
+     */
+    private static class BlockedStream extends OutputStream {
+
+        final CountDownLatch opened = new CountDownLatch(1);
+
+        final ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+        volatile int writes;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                opened.await();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            synchronized (written) {
+                written.write(b, off, len);
+            }
+            writes++;
+        }
+
+        byte[] bytes() {
+            synchronized (written) {
+                return written.toByteArray();
+            }
+        }
+    }
+
+    private BlockedStream socket;
+    private FrameScheduler scheduler;
+    private AtomicInteger written;
+
+    @Before
+    public void init() {
+        socket = new BlockedStream();
+        written = new AtomicInteger();
+        scheduler = new FrameScheduler(new BufferedOutputStream(socket, FrameScheduler.COALESCE_SIZE),
+                new FrameScheduler.Listener() {
+                    @Override
+                    public void written(int size) {
+                        written.incrementAndGet();
+                    }
+
+                    @Override
+                    public void failed(IOException e) {
+                        Assert.fail();
+                    }
+                });
+        scheduler.start();
+    }
+
+    @After
+    public void teardown() {
+        socket.opened.countDown();
+        scheduler.stop();
+    }
+
+    @Test
+    public void Should_CoalesceQueuedFrames_When_SocketBlocked() throws InterruptedIOException {
+        // the first frame is flushed at once and blocks the writer
+        Assert.assertTrue(scheduler.write(Frame.Type.MESSAGE, new byte[10]));
+        Awaitility.await().atMost(1, TimeUnit.SECONDS).until(() -> written.get() == 0 && socket.writes == 0);
+
+        int frames = 200;
+        for (int i = 0; i < frames; i++) {
+            Assert.assertTrue(scheduler.write(Frame.Type.TRANSFER_DATA, new byte[512]));
+        }
+        socket.opened.countDown();
+
+        Awaitility.await().atMost(1, TimeUnit.SECONDS).until(() -> written.get() == frames + 1);
+        Awaitility.await().atMost(1, TimeUnit.SECONDS).until(() -> socket.bytes().length == 10 + frames * 512);
+        Assert.assertTrue(socket.writes <= 1 + frames * 512 / FrameScheduler.COALESCE_SIZE + 1);
+    }
+
+    @Test
+    public void Should_WriteInteractiveFrameFirst_When_QueuedAfterBulkFrames() throws InterruptedIOException {
+        Assert.assertTrue(scheduler.write(Frame.Type.MESSAGE, new byte[]{0}));
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(scheduler.write(Frame.Type.TRANSFER_DATA, new byte[]{1}));
+        }
+        // queued without waiting, although the socket is blocked
+        Assert.assertTrue(scheduler.write(Frame.Type.MESSAGE, new byte[]{2}));
+        socket.opened.countDown();
+
+        Awaitility.await().atMost(1, TimeUnit.SECONDS).until(() -> socket.bytes().length == 12);
+        byte[] bytes = socket.bytes();
+        Assert.assertEquals(0, bytes[0]);
+        // at most one bulk frame was taken by the writer before the interactive frame was queued
+        Assert.assertTrue(bytes[1] == 2 || bytes[2] == 2);
+    }
+
+    @Test
+    public void Should_CompleteFutureOnlyAfterFlush_When_WrittenAsynchronously() {
+        CompletableFuture<Boolean> first = scheduler.writeAsync(Frame.Type.TRANSFER_DATA,
+                new byte[FrameScheduler.BULK_LIMIT]);
+        // past the bulk limit, but asynchronous senders never wait
+        CompletableFuture<Boolean> second = scheduler.writeAsync(Frame.Type.TRANSFER_DATA, new byte[10]);
+        Assert.assertFalse(first.isDone());
+
+        socket.opened.countDown();
+        Assert.assertTrue(first.join());
+        Assert.assertTrue(second.join());
+        Assert.assertEquals(FrameScheduler.BULK_LIMIT + 10, socket.bytes().length);
+    }
+
+    @Test
+    public void Should_CompleteFutureWithFalse_When_StoppedBeforeWriting() throws InterruptedIOException {
+        Assert.assertTrue(scheduler.write(Frame.Type.MESSAGE, new byte[10]));
+        CompletableFuture<Boolean> pending = scheduler.writeAsync(Frame.Type.MESSAGE, new byte[10]);
+
+        scheduler.stop();
+        Assert.assertFalse(pending.join());
+        Assert.assertFalse(scheduler.writeAsync(Frame.Type.MESSAGE, new byte[10]).join());
+    }
+
+    @Test
+    public void Should_WaitForQueuedFrames_When_Drained() throws InterruptedException, InterruptedIOException {
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(scheduler.write(Frame.Type.TRANSFER_DATA, new byte[512]));
+        }
+        Assert.assertFalse(scheduler.drain(50));
+
+        socket.opened.countDown();
+        Assert.assertTrue(scheduler.drain(1000));
+        Assert.assertEquals(10 * 512, socket.bytes().length);
+        Assert.assertEquals(10, written.get());
+    }
+
+    @Test
+    public void Should_CloseAfterQueuedFramesWritten_When_ClosedWithoutWaiting() throws InterruptedIOException {
+        CountDownLatch closed = new CountDownLatch(1);
+        Assert.assertTrue(scheduler.write(Frame.Type.TRANSFER_DATA, new byte[512]));
+
+        // returns at once, while the socket is still blocked
+        scheduler.close(5000, closed::countDown);
+        Assert.assertEquals(1, closed.getCount());
+
+        socket.opened.countDown();
+        Awaitility.await().atMost(1, TimeUnit.SECONDS).until(() -> closed.getCount() == 0);
+        Assert.assertEquals(512, socket.bytes().length);
+        Assert.assertFalse(scheduler.write(Frame.Type.MESSAGE, new byte[10]));
+    }
+
+    @Test
+    public void Should_CloseAfterTimeout_When_SocketStaysBlocked() throws InterruptedIOException {
+        CountDownLatch closed = new CountDownLatch(1);
+        Assert.assertTrue(scheduler.write(Frame.Type.TRANSFER_DATA, new byte[512]));
+
+        scheduler.close(100, closed::countDown);
+
+        Awaitility.await().atMost(2, TimeUnit.SECONDS).until(() -> closed.getCount() == 0);
+        Assert.assertEquals(0, socket.bytes().length);
+    }
+
+    @Test(timeout = 30000)
+    public void Should_CompleteAllFutures_When_StoppedWhileFramesQueued() throws InterruptedException {
+        for (int round = 0; round < 200; round++) {
+            FrameScheduler racing = new FrameScheduler(OutputStream.nullOutputStream(),
+                    new FrameScheduler.Listener() {
+                        @Override
+                        public void written(int size) {
+                        }
+
+                        @Override
+                        public void failed(IOException e) {
+                        }
+                    });
+            racing.start();
+
+            // frames are queued while the writer is stopped, some of them are taken by the writer meanwhile
+            List<CompletableFuture<Boolean>> futures = new CopyOnWriteArrayList<>();
+            Thread sender = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    futures.add(racing.writeAsync(i % 2 == 0 ? Frame.Type.MESSAGE : Frame.Type.TRANSFER_DATA,
+                            new byte[64]));
+                }
+            });
+            sender.start();
+            Thread.sleep(0, 100000);
+            racing.stop();
+            sender.join();
+
+            Awaitility.await().pollInterval(1, TimeUnit.MILLISECONDS).atMost(1, TimeUnit.SECONDS)
+                    .until(() -> futures.stream().allMatch(CompletableFuture::isDone));
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package pl.edu.pg.eti.ksr.project.network;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LinkEstimatorTest {
+
+    @Test
+    public void Should_ComputeBandwidthDelayProduct_When_RttAndBandwidthMeasured() {
+        LinkEstimator link = new LinkEstimator();
+        link.recordRtt(20_000_000L);
+
+        // first confirmation only starts the sample
+        Assert.assertFalse(link.recordDelivered(LinkEstimator.SAMPLE_BYTES, 0));
+        Assert.assertFalse(link.recordDelivered(LinkEstimator.SAMPLE_BYTES / 2, 50_000_000L));
+        Assert.assertTrue(link.recordDelivered(LinkEstimator.SAMPLE_BYTES / 2, 100_000_000L));
+
+        // 1 MiB per 100 ms over 20 ms of round trip time
+        Assert.assertTrue(link.isBandwidthMeasured());
+        Assert.assertEquals(LinkEstimator.SAMPLE_BYTES * 10, link.getBandwidth());
+        Assert.assertEquals(LinkEstimator.SAMPLE_BYTES * 2 / 10, link.getBandwidthDelayProduct());
+    }
+
+    @Test
+    public void Should_SmoothRtt_When_ManySamplesRecorded() {
+        LinkEstimator link = new LinkEstimator();
+        link.recordRtt(8_000_000L);
+        link.recordRtt(16_000_000L);
+
+        Assert.assertEquals(9_000_000L, link.getRtt());
+    }
+
+    @Test
+    public void Should_DropSample_When_ConnectionIdle() {
+        LinkEstimator link = new LinkEstimator();
+        link.recordDelivered(LinkEstimator.SAMPLE_BYTES / 2, 0);
+
+        Assert.assertFalse(link.recordDelivered(LinkEstimator.SAMPLE_BYTES, LinkEstimator.SAMPLE_IDLE + 1));
+        Assert.assertFalse(link.isBandwidthMeasured());
+        Assert.assertEquals(LinkEstimator.DEFAULT_BANDWIDTH, link.getBandwidth());
+    }
+
+    @Test
+    public void Should_KeepSystemBuffers_When_PathNotMeasured() {
+        LinkEstimator link = new LinkEstimator();
+
+        Assert.assertEquals(0, SocketProfile.LATENCY.bufferSize(link));
+        Assert.assertEquals(0, SocketProfile.THROUGHPUT.bufferSize(link));
+    }
+
+    @Test
+    public void Should_SizeBuffersToBandwidthDelayProduct_When_PathMeasured() {
+        LinkEstimator link = new LinkEstimator();
+        link.recordRtt(100_000_000L);
+        link.recordDelivered(0, 0);
+        link.recordDelivered(LinkEstimator.SAMPLE_BYTES, 100_000_000L);
+
+        // 10 MiB/s over 100 ms of round trip time
+        Assert.assertEquals(0, SocketProfile.LATENCY.bufferSize(link));
+        Assert.assertEquals(LinkEstimator.SAMPLE_BYTES, SocketProfile.THROUGHPUT.bufferSize(link));
+
+        // small product is left to the autotuning of the system
+        for (int i = 0; i < 100; i++) link.recordRtt(1000);
+        Assert.assertEquals(0, SocketProfile.THROUGHPUT.bufferSize(link));
+    }
+}
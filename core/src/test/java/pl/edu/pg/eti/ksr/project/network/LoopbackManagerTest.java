@@ -0,0 +1,101 @@
+package pl.edu.pg.eti.ksr.project.network;
+
+import org.awaitility.Awaitility;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import pl.edu.pg.eti.ksr.project.network.data.Frame;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class LoopbackManagerTest {
+
+    private LoopbackManager manager1;
+    private LoopbackManager manager2;
+
+    @Before
+    public void init() {
+        manager1 = new LoopbackManager();
+        manager2 = new LoopbackManager();
+    }
+
+    @After
+    public void teardown() {
+        manager1.stop();
+        manager1.disconnect();
+
+        manager2.stop();
+        manager2.disconnect();
+    }
+
+    private void connect() {
+        Assert.assertTrue(manager1.listenOn(0));
+        Assert.assertTrue(manager2.connect(LoopbackManager.HOST, manager1.getListeningPort()));
+    }
+
+    @Test
+    public void Should_HaveStatusConnected_When_ConnectedToListeningManager() {
+        connect();
+        Assert.assertEquals(NetworkManager.Status.CONNECTED, manager1.getStatus());
+        Assert.assertEquals(NetworkManager.Status.CONNECTED, manager2.getStatus());
+        Assert.assertEquals(LoopbackManager.HOST, manager1.getHost());
+        Assert.assertEquals(manager1.getPort(), manager2.getPort());
+    }
+
+    @Test
+    public void Should_NotConnect_When_NoManagerListening() {
+        Assert.assertTrue(manager1.listenOn(0));
+        int port = manager1.getListeningPort();
+        manager1.stop();
+
+        Assert.assertFalse(manager2.connect(LoopbackManager.HOST, port));
+        Assert.assertEquals(NetworkManager.Status.READY, manager2.getStatus());
+    }
+
+    @Test
+    public void Should_ReceiveSameFramesInOrder_When_SentFromOtherThread() throws InterruptedException,
+            InterruptedIOException {
+        connect();
+        int frames = 10_000;
+        Frame[] sent = new Frame[frames];
+        Thread sender = new Thread(() -> {
+            for (int i = 0; i < frames; i++) {
+                sent[i] = new Frame(Frame.Type.TRANSFER_DATA, new byte[]{(byte) i}, i);
+                Assert.assertTrue(manager2.send(sent[i]));
+            }
+        });
+        sender.start();
+
+        for (int i = 0; i < frames; i++) {
+            Frame frame = new Frame();
+            Assert.assertTrue(manager1.receive(frame));
+            Assert.assertEquals(i, frame.streamId);
+            // frame data is handed over without copying
+            Assert.assertSame(sent[i].data, frame.data);
+        }
+        sender.join();
+    }
+
+    @Test
+    public void Should_HaveStatusReady_When_OtherClientDisconnected() throws InterruptedException {
+        connect();
+        AtomicReference<Boolean> received = new AtomicReference<>();
+        Thread receiver = new Thread(() -> {
+            try {
+                received.set(manager1.receive(new Frame()));
+            } catch (InterruptedIOException e) {
+                received.set(null);
+            }
+        });
+        receiver.start();
+
+        manager2.disconnect();
+        receiver.join(5000);
+        Assert.assertEquals(Boolean.FALSE, received.get());
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> manager1.getStatus() == NetworkManager.Status.READY);
+        Assert.assertFalse(manager1.send(new Frame(Frame.Type.MESSAGE, "test")));
+    }
+}
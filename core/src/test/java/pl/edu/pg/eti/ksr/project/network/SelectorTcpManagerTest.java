@@ -0,0 +1,270 @@
+package pl.edu.pg.eti.ksr.project.network;
+
+import org.awaitility.Awaitility;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import pl.edu.pg.eti.ksr.project.network.data.Frame;
+import pl.edu.pg.eti.ksr.project.network.data.PeerFrame;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SelectorTcpManagerTest {
+
+    private SelectorTcpManager server;
+    private List<TcpManager> clients;
+
+    @Before
+    public void init() throws IOException {
+        server = new SelectorTcpManager(2);
+        clients = new ArrayList<>();
+    }
+
+    @After
+    public void teardown() {
+        for (TcpManager client : clients) {
+            client.disconnect();
+        }
+        server.close();
+    }
+
+    private TcpManager connectClient() {
+        TcpManager client = new TcpManager();
+        clients.add(client);
+        Assert.assertTrue(client.connect("localhost", server.getListeningPort()));
+        return client;
+    }
+
+    private CompletableFuture<Boolean> receiveInBackground(SelectorTcpManager manager) {
+        CompletableFuture<Boolean> received = new CompletableFuture<>();
+        Thread receiver = new Thread(() -> {
+            try {
+                received.complete(manager.receive(new Frame()));
+            } catch (IOException e) {
+                received.completeExceptionally(e);
+            }
+        });
+        receiver.start();
+        // receiver is already waiting for a frame
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() ->
+                receiver.getState() == Thread.State.WAITING || receiver.getState() == Thread.State.TIMED_WAITING);
+        return received;
+    }
+
+    @Test
+    public void Should_HaveStatusListening_When_ListenCalled() {
+        server.listenOn(0);
+
+        Assert.assertEquals(NetworkManager.Status.LISTENING, server.getStatus());
+        Assert.assertTrue(server.getListeningPort() > 0);
+    }
+
+    @Test
+    public void Should_KeepListening_When_ManyClientsConnected() {
+        server.listenOn(0);
+
+        for (int i = 0; i < 3; i++) connectClient();
+
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> server.getPeers().size() == 3);
+        Assert.assertEquals(NetworkManager.Status.CONNECTED, server.getStatus());
+        Assert.assertTrue(server.isListening());
+    }
+
+    @Test
+    public void Should_RouteReplyToSendingPeer_When_ManyClientsSendFrames() throws IOException {
+        server.listenOn(0);
+        for (int i = 0; i < 5; i++) {
+            connectClient().send(new Frame(Frame.Type.MESSAGE, "client " + i));
+        }
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> server.getPeers().size() == 5);
+
+        for (int i = 0; i < 5; i++) {
+            PeerFrame frame = new PeerFrame();
+            Assert.assertTrue(server.receive(frame));
+            Assert.assertTrue(server.send(frame.peerId, new Frame(Frame.Type.MESSAGE, frame.data)));
+        }
+
+        for (int i = 0; i < 5; i++) {
+            Frame reply = new Frame();
+            Assert.assertTrue(clients.get(i).receive(reply));
+            Assert.assertEquals("client " + i, reply.data);
+        }
+    }
+
+    @Test
+    public void Should_ReceiveWholeFrame_When_FrameLargerThanReadBuffer() throws IOException {
+        server.listenOn(0);
+        byte[] data = new byte[PeerConnection.READ_BUFFER_SIZE * 4 + 3];
+        for (int i = 0; i < data.length; i++) data[i] = (byte) i;
+
+        connectClient().send(new Frame(Frame.Type.TRANSFER_DATA, data));
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(server::isConnected);
+
+        Frame frame = new Frame();
+        Assert.assertTrue(server.receive(frame));
+        Assert.assertArrayEquals(data, (byte[]) frame.data);
+    }
+
+    @Test
+    public void Should_ServeAllPeers_When_HundredsOfClientsConnected() throws IOException {
+        server.listenOn(0);
+        int count = 200;
+
+        for (int i = 0; i < count; i++) {
+            connectClient().send(new Frame(Frame.Type.MESSAGE, String.valueOf(i)));
+        }
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(server::isConnected);
+
+        Set<Integer> peers = new HashSet<>();
+        Set<Object> messages = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            PeerFrame frame = new PeerFrame();
+            Assert.assertTrue(server.receive(frame));
+            peers.add(frame.peerId);
+            messages.add(frame.data);
+        }
+
+        Assert.assertEquals(count, peers.size());
+        Assert.assertEquals(count, messages.size());
+    }
+
+    @Test
+    public void Should_RemovePeer_When_ClientDisconnects() {
+        server.listenOn(0);
+        TcpManager client = connectClient();
+        connectClient();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> server.getPeers().size() == 2);
+
+        client.disconnect();
+
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> server.getPeers().size() == 1);
+        Assert.assertEquals(NetworkManager.Status.CONNECTED, server.getStatus());
+    }
+
+    @Test
+    public void Should_ConnectToOtherSelectorManager_When_ConnectPeerCalled() throws IOException {
+        server.listenOn(0);
+        SelectorTcpManager other = new SelectorTcpManager(1);
+        try {
+            int peerId = other.connectPeer("localhost", server.getListeningPort());
+            Assert.assertTrue(peerId > 0);
+
+            other.send(peerId, new Frame(Frame.Type.MESSAGE, "hello"));
+            Awaitility.await().atMost(5, TimeUnit.SECONDS).until(server::isConnected);
+
+            Frame frame = new Frame();
+            Assert.assertTrue(server.receive(frame));
+            Assert.assertEquals("hello", frame.data);
+        } finally {
+            other.close();
+        }
+    }
+
+    @Test
+    public void Should_StopWaitingForFrame_When_LastClientDisconnects() throws Exception {
+        server.listenOn(0);
+        TcpManager client = connectClient();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> server.getPeers().size() == 1);
+
+        CompletableFuture<Boolean> received = receiveInBackground(server);
+        client.disconnect();
+
+        Assert.assertFalse(received.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void Should_StopWaitingForFrame_When_ManagerClosed() throws Exception {
+        server.listenOn(0);
+        connectClient();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> server.getPeers().size() == 1);
+
+        CompletableFuture<Boolean> received = receiveInBackground(server);
+        server.close();
+
+        Assert.assertFalse(received.get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Sends bulk frames in the background until stopped or sending fails.
+     */
+    private Thread flood(NetworkManager sender, AtomicBoolean flooding, AtomicInteger sent) {
+        byte[] data = new byte[64 * 1024];
+        Thread thread = new Thread(() -> {
+            while (flooding.get() && sender.send(new Frame(Frame.Type.TRANSFER_DATA, data, 1))) {
+                sent.incrementAndGet();
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Waits until a counter stops growing.
+     */
+    private void awaitStalled(AtomicInteger counter) {
+        AtomicInteger previous = new AtomicInteger(-1);
+        Awaitility.await().atMost(20, TimeUnit.SECONDS).pollInterval(500, TimeUnit.MILLISECONDS)
+                .until(() -> previous.getAndSet(counter.get()) == counter.get());
+    }
+
+    @Test(timeout = 60000)
+    public void Should_StopReadingPeer_When_FramesNotReceived() throws Exception {
+        server.listenOn(0);
+        TcpManager client = connectClient();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> server.getPeers().size() == 1);
+
+        AtomicBoolean flooding = new AtomicBoolean(true);
+        AtomicInteger sent = new AtomicInteger();
+        Thread flood = flood(client, flooding, sent);
+        awaitStalled(sent);
+        Assert.assertTrue(flood.isAlive());
+        Assert.assertTrue(server.getQueued() <= PeerConnection.INBOX_HIGH_WATER + 2 * 64 * 1024 + 64);
+
+        // reading is resumed once frames are taken
+        flooding.set(false);
+        int received = 0;
+        Frame frame = new Frame();
+        while (flood.isAlive() || received < sent.get()) {
+            Assert.assertTrue(server.receive(frame));
+            received++;
+        }
+        Assert.assertEquals(sent.get(), received);
+    }
+
+    @Test(timeout = 60000)
+    public void Should_WaitForQueuedFrames_When_PeerDoesNotRead() throws Exception {
+        server.listenOn(0);
+        TcpManager client = connectClient();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> server.getPeers().size() == 1);
+
+        AtomicBoolean flooding = new AtomicBoolean(true);
+        AtomicInteger sent = new AtomicInteger();
+        Thread flood = flood(server, flooding, sent);
+        awaitStalled(sent);
+        Assert.assertTrue(flood.isAlive());
+
+        // chat is not held back by the waiting bulk sender
+        Assert.assertTrue(server.send(new Frame(Frame.Type.MESSAGE, "hello")));
+
+        flooding.set(false);
+        int received = 0;
+        Frame frame = new Frame();
+        boolean chat = false;
+        while (flood.isAlive() || received < sent.get()) {
+            Assert.assertTrue(client.receive(frame));
+            if (frame.frameType == Frame.Type.MESSAGE) chat = true;
+            else received++;
+        }
+        Assert.assertEquals(sent.get(), received);
+        Assert.assertTrue(chat || client.receive(frame) && frame.frameType == Frame.Type.MESSAGE);
+    }
+}
@@ -0,0 +1,124 @@
+package pl.edu.pg.eti.ksr.project.network;
+
+import org.awaitility.Awaitility;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import pl.edu.pg.eti.ksr.project.network.data.Frame;
+
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class SimulatedNetworkManagerTest {
+
+    private LoopbackManager manager1;
+    private LoopbackManager manager2;
+
+    @Before
+    public void init() {
+        manager1 = new LoopbackManager();
+        manager2 = new LoopbackManager();
+    }
+
+    @After
+    public void teardown() {
+        manager1.stop();
+        manager1.disconnect();
+
+        manager2.stop();
+        manager2.disconnect();
+    }
+
+    private SimulatedNetworkManager connect(NetworkConditions conditions, long seed) {
+        SimulatedNetworkManager simulated = new SimulatedNetworkManager(manager2, conditions, seed);
+        Assert.assertTrue(manager1.listenOn(0));
+        Assert.assertTrue(simulated.connect(LoopbackManager.HOST, manager1.getListeningPort()));
+        return simulated;
+    }
+
+    /**
+     * Sends frames of two streams and gets streams of received frames, in order of receiving.
+     */
+    private List<Integer> exchange(SimulatedNetworkManager simulated, int frames)
+            throws InterruptedIOException, SocketException {
+        for (int i = 0; i < frames; i++) {
+            Assert.assertTrue(simulated.send(new Frame(Frame.Type.TRANSFER_DATA, new byte[]{(byte) i}, 1 + i % 2)));
+        }
+
+        List<Integer> streams = new ArrayList<>();
+        int[] expected = new int[3];
+        for (int i = 0; i < frames; i++) {
+            Frame frame = new Frame();
+            Assert.assertTrue(manager1.receive(frame));
+            // frames of every stream stay in order
+            Assert.assertEquals((byte) (expected[frame.streamId] * 2 + frame.streamId - 1), ((byte[]) frame.data)[0]);
+            expected[frame.streamId]++;
+            streams.add(frame.streamId);
+        }
+        return streams;
+    }
+
+    @Test
+    public void Should_DelayFrames_When_LatencySet() throws InterruptedIOException, SocketException {
+        SimulatedNetworkManager simulated = connect(NetworkConditions.builder().latency(100).build(), 1);
+
+        long start = System.nanoTime();
+        simulated.send(new Frame(Frame.Type.MESSAGE, "test"));
+        Frame frame = new Frame();
+        Assert.assertTrue(manager1.receive(frame));
+
+        Assert.assertEquals("test", frame.data);
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    public void Should_LimitThroughput_When_BandwidthSet() throws InterruptedIOException, SocketException {
+        SimulatedNetworkManager simulated = connect(NetworkConditions.builder().bandwidth(1024 * 1024).build(), 1);
+
+        long start = System.nanoTime();
+        byte[] data = new byte[64 * 1024];
+        for (int i = 0; i < 4; i++) {
+            simulated.send(new Frame(Frame.Type.TRANSFER_DATA, data, 1));
+            Assert.assertTrue(manager1.receive(new Frame()));
+        }
+
+        // quarter of a megabyte takes a quarter of a second
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(250));
+    }
+
+    @Test
+    public void Should_ReorderFramesOfDifferentStreamsAlike_When_SameSeedUsed()
+            throws InterruptedIOException, SocketException {
+        NetworkConditions conditions = NetworkConditions.builder().latency(1).reorderRate(0.2).reorderDelay(20)
+                .build();
+        SimulatedNetworkManager simulated = connect(conditions, 7);
+        List<Integer> first = exchange(simulated, 200);
+        long reordered = simulated.getReordered();
+
+        simulated.setConditions(conditions, 7);
+        List<Integer> second = exchange(simulated, 200);
+
+        List<Integer> sent = new ArrayList<>();
+        for (int i = 0; i < 200; i++) sent.add(1 + i % 2);
+
+        Assert.assertTrue(reordered > 0);
+        Assert.assertEquals(2 * reordered, simulated.getReordered());
+        Assert.assertNotEquals(sent, first);
+        Assert.assertEquals(first, second);
+    }
+
+    @Test
+    public void Should_Disconnect_When_DisconnectRateSet() {
+        SimulatedNetworkManager simulated = connect(NetworkConditions.builder().disconnectRate(1).build(), 1);
+
+        Assert.assertTrue(simulated.send(new Frame(Frame.Type.MESSAGE, "test")));
+
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> !simulated.isConnected());
+        Assert.assertEquals(1, simulated.getDisconnects());
+        Assert.assertFalse(simulated.send(new Frame(Frame.Type.MESSAGE, "test")));
+    }
+}
@@ -10,9 +10,13 @@ import pl.edu.pg.eti.ksr.project.network.data.Frame;
 import pl.edu.pg.eti.ksr.project.observer.Observer;
 
 import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
 import java.net.SocketException;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class TcpManagerTest {
 
@@ -153,6 +157,66 @@ public class TcpManagerTest {
         Assert.assertTrue(ifReceived);
     }
 
+    @Test
+    public void Should_DeliverMessageBeforePendingTransferData_When_TransferSaturatesConnection()
+            throws InterruptedIOException, SocketException, InterruptedException {
+        manager1.listen();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(manager1HasStatusListening());
+        manager2.connect("localhost", NetworkManager.DEFAULT_PORT);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(manager2HasStatusConnected());
+
+        int count = 500;
+        Thread transfer = new Thread(() -> {
+            for (int i = 0; i < count; i++) {
+                manager1.send(new Frame(Frame.Type.TRANSFER_DATA, new byte[64 * 1024], 1));
+            }
+        });
+        transfer.start();
+        Thread.sleep(200); // let the transfer fill socket buffers
+        Thread chat = new Thread(() -> manager1.send(new Frame(Frame.Type.MESSAGE, "chat")));
+        chat.start();
+        Thread.sleep(200);
+
+        int messageIndex = -1;
+        for (int i = 0; i <= count; i++) {
+            Frame frame = new Frame();
+            Assert.assertTrue(manager2.receive(frame));
+            if (frame.frameType == Frame.Type.MESSAGE) {
+                messageIndex = i;
+                Assert.assertEquals(Frame.CONTROL_STREAM, frame.streamId);
+            } else {
+                Assert.assertEquals(1, frame.streamId);
+            }
+        }
+        transfer.join();
+
+        Assert.assertTrue(messageIndex >= 0);
+        Assert.assertTrue(messageIndex < count / 2);
+    }
+
+    @Test
+    public void Should_CompleteSendAsync_When_FrameFlushed()
+            throws InterruptedException, ExecutionException, TimeoutException, InterruptedIOException, SocketException {
+        manager1.listen();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(manager1HasStatusListening());
+        manager2.connect("localhost", NetworkManager.DEFAULT_PORT);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(manager2HasStatusConnected());
+
+        CompletableFuture<Boolean> sent = manager2.sendAsync(new Frame(Frame.Type.MESSAGE, "test"));
+        Assert.assertTrue(sent.get(5, TimeUnit.SECONDS));
+
+        Frame receivedFrame = new Frame();
+        Assert.assertTrue(manager1.receive(receivedFrame));
+        Assert.assertEquals("test", receivedFrame.data);
+    }
+
+    @Test
+    public void Should_CompleteSendAsyncWithFalse_When_NotConnected() {
+        CompletableFuture<Boolean> sent = manager1.sendAsync(new Frame(Frame.Type.MESSAGE, "test"));
+        Assert.assertTrue(sent.isDone());
+        Assert.assertFalse(sent.join());
+    }
+
     @Test
     public void Should_NotifyObservers_When_StateChanged() {
         Observer observer = Mockito.mock(Observer.class);
@@ -162,4 +226,25 @@ public class TcpManagerTest {
         Mockito.verify(observer)
                 .update(NetworkManager.Status.LISTENING);
     }
+
+    @Test
+    public void Should_ApplySocketProfiles_When_ConnectionEstablished() throws SocketException {
+        // delivery rate confirmed on an earlier connection sizes buffers before connecting
+        LinkEstimator link = LinkEstimator.forHost(new InetSocketAddress("localhost", 0).getAddress().getHostAddress());
+        link.recordRtt(100_000_000L);
+        link.recordDelivered(0, 0);
+        link.recordDelivered(LinkEstimator.SAMPLE_BYTES, 100_000_000L);
+        manager1.setProfile(SocketProfile.LATENCY);
+        manager2.setProfile(SocketProfile.THROUGHPUT);
+        manager1.listen();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(manager1HasStatusListening());
+
+        manager2.connect("localhost", NetworkManager.DEFAULT_PORT);
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(manager1HasStatusConnected());
+
+        Assert.assertTrue(manager1.clientSocket.getTcpNoDelay());
+        Assert.assertFalse(manager2.clientSocket.getTcpNoDelay());
+        Assert.assertTrue(manager2.clientSocket.getSendBufferSize() >= SocketProfile.MIN_BUFFER);
+        Assert.assertTrue(manager2.getLink().getRtt() > 0);
+    }
 }
@@ -0,0 +1,97 @@
+package pl.edu.pg.eti.ksr.project.network;
+
+import org.awaitility.Awaitility;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import pl.edu.pg.eti.ksr.project.network.data.Frame;
+
+import java.io.InterruptedIOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+public class UdpManagerTest {
+
+    private UdpManager manager1;
+    private UdpManager manager2;
+
+    @Before
+    public void init() {
+        manager1 = new UdpManager();
+        manager2 = new UdpManager();
+    }
+
+    @After
+    public void teardown() {
+        manager1.stop();
+        manager1.disconnect();
+
+        manager2.stop();
+        manager2.disconnect();
+    }
+
+    private void connect() {
+        Assert.assertTrue(manager1.listenOn(0));
+        Assert.assertTrue(manager2.connect("localhost", manager1.getListeningPort()));
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(manager1::isConnected);
+    }
+
+    private void exchange(int frames, int size) throws InterruptedIOException {
+        Random random = new Random(0);
+        byte[][] sent = new byte[frames][];
+        Thread sender = new Thread(() -> {
+            for (int i = 0; i < frames; i++) {
+                sent[i] = new byte[size];
+                random.nextBytes(sent[i]);
+                manager2.send(new Frame(Frame.Type.TRANSFER_DATA, sent[i], i));
+            }
+        });
+        sender.start();
+
+        for (int i = 0; i < frames; i++) {
+            Frame frame = new Frame();
+            Assert.assertTrue(manager1.receive(frame));
+            Assert.assertEquals(Frame.Type.TRANSFER_DATA, frame.frameType);
+            Assert.assertEquals(i, frame.streamId);
+            Assert.assertArrayEquals(sent[i], (byte[]) frame.data);
+        }
+    }
+
+    @Test
+    public void Should_HaveStatusConnected_When_ConnectedWithMatchingToken() {
+        manager1.setToken(new byte[]{1, 2, 3});
+        manager2.setToken(new byte[]{1, 2, 3});
+        connect();
+        Assert.assertTrue(manager2.isConnected());
+    }
+
+    @Test
+    public void Should_ReceiveFramesInOrder_When_NoPacketsLost() throws InterruptedIOException {
+        connect();
+        exchange(200, 8192);
+        // kernel may still drop packets of a busy socket, but only a small part of them is sent again
+        long packets = 200L * ((8192 + FrameCodec.HEADER_SIZE) / UdpManager.MAX_PAYLOAD + 1);
+        Assert.assertTrue(manager2.getRetransmissions() < packets / 10);
+    }
+
+    @Test
+    public void Should_ReceiveFramesInOrder_When_PacketsLostInBothDirections() throws InterruptedIOException {
+        connect();
+        manager1.setLoss(0.1, 1);
+        manager2.setLoss(0.1, 2);
+
+        exchange(200, 8192);
+
+        Assert.assertTrue(manager2.getDropped() > 0);
+        Assert.assertTrue(manager2.getRetransmissions() > 0);
+        Assert.assertTrue(manager2.getRate() >= UdpManager.MIN_RATE);
+    }
+
+    @Test
+    public void Should_HaveStatusReady_When_OtherClientDisconnected() {
+        connect();
+        manager2.disconnect();
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> manager1.getStatus() == NetworkManager.Status.READY);
+    }
+}
@@ -0,0 +1,134 @@
+package pl.edu.pg.eti.ksr.project.relay;
+
+import org.awaitility.Awaitility;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import pl.edu.pg.eti.ksr.project.concurrent.ExecutionMode;
+import pl.edu.pg.eti.ksr.project.network.FrameCodec;
+import pl.edu.pg.eti.ksr.project.network.TcpManager;
+import pl.edu.pg.eti.ksr.project.network.data.Frame;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class RelayHubTest {
+
+    private RelayHub relay;
+
+    private final List<TcpManager> managers = List.of(new TcpManager(), new TcpManager(), new TcpManager(),
+            new TcpManager());
+
+    @Before
+    public void init() throws IOException {
+        relay = new RelayHub(0);
+        relay.start();
+    }
+
+    @After
+    public void teardown() {
+        managers.forEach(TcpManager::disconnect);
+        relay.close();
+    }
+
+    @Test
+    public void Should_DeliverEarlierFrames_When_OtherClientConnectsLater() throws InterruptedIOException,
+            SocketException {
+        TcpManager alice = managers.get(0);
+        TcpManager bob = managers.get(1);
+
+        Assert.assertTrue(alice.connectRelay("localhost", relay.getPort(), "alice", "bob"));
+        Assert.assertTrue(alice.send(new Frame(Frame.Type.MESSAGE, "hello")));
+        Assert.assertTrue(alice.send(new Frame(Frame.Type.TRANSFER_DATA, new byte[]{1, 2, 3}, 7)));
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> relay.getQueued() > 0);
+        Assert.assertEquals(0, relay.getRoutes());
+
+        Assert.assertTrue(bob.connectRelay("localhost", relay.getPort(), "bob", "alice"));
+        Frame frame = new Frame();
+        Assert.assertTrue(bob.receive(frame));
+        Assert.assertEquals("hello", frame.data);
+        Assert.assertTrue(bob.receive(frame));
+        Assert.assertEquals(7, frame.streamId);
+        Assert.assertArrayEquals(new byte[]{1, 2, 3}, (byte[]) frame.data);
+        Assert.assertEquals(1, relay.getRoutes());
+    }
+
+    @Test(timeout = 30000)
+    public void Should_KeepOtherRoutesGoing_When_ReceiverStopsReading() throws InterruptedException,
+            InterruptedIOException, SocketException {
+        TcpManager sender = managers.get(0);
+        TcpManager slowReceiver = managers.get(1);
+        TcpManager alice = managers.get(2);
+        TcpManager bob = managers.get(3);
+
+        Assert.assertTrue(sender.connectRelay("localhost", relay.getPort(), "sender", "receiver"));
+        Assert.assertTrue(slowReceiver.connectRelay("localhost", relay.getPort(), "receiver", "sender"));
+        Assert.assertTrue(alice.connectRelay("localhost", relay.getPort(), "alice", "bob"));
+        Assert.assertTrue(bob.connectRelay("localhost", relay.getPort(), "bob", "alice"));
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> relay.getRoutes() == 2);
+
+        // receiver never reads, so the relay fills socket buffers and then stops reading from the sender
+        AtomicBoolean flooding = new AtomicBoolean(true);
+        byte[] data = new byte[64 * 1024];
+        Thread flood = ExecutionMode.start(() -> {
+            while (flooding.get() && sender.send(new Frame(Frame.Type.TRANSFER_DATA, data, 1))) {
+            }
+        }, "flood");
+        Awaitility.await().atMost(20, TimeUnit.SECONDS).until(() -> relay.getQueued() > RelayHub.LOW_WATER);
+
+        Assert.assertTrue(alice.send(new Frame(Frame.Type.MESSAGE, "hello")));
+        Frame frame = new Frame();
+        Assert.assertTrue(bob.receive(frame));
+        Assert.assertEquals("hello", frame.data);
+
+        Thread.sleep(200);
+        Assert.assertTrue(flood.isAlive());
+        Assert.assertTrue(relay.getQueued() <= RelayHub.HIGH_WATER + RelayHub.CHUNK_SIZE);
+
+        flooding.set(false);
+        sender.disconnect();
+        flood.join();
+    }
+
+    @Test(timeout = 30000)
+    public void Should_CloseConnection_When_FirstFrameTooLarge() throws IOException {
+        try (Socket socket = new Socket("localhost", relay.getPort())) {
+            socket.setSoTimeout(5000);
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeInt(FrameCodec.MAX_FRAME_SIZE);
+            out.writeByte(Frame.Type.RELAY_CONNECT.ordinal());
+            out.flush();
+
+            Assert.assertEquals(-1, socket.getInputStream().read());
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void Should_KeepWaitingClient_When_OtherClientClaimsSameRoute() throws InterruptedIOException,
+            SocketException {
+        TcpManager alice = managers.get(0);
+        TcpManager impostor = managers.get(1);
+        TcpManager bob = managers.get(2);
+
+        Assert.assertTrue(alice.connectRelay("localhost", relay.getPort(), "alice", "bob"));
+        Assert.assertTrue(alice.send(new Frame(Frame.Type.MESSAGE, "hello")));
+        Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> relay.getQueued() > 0);
+        Assert.assertTrue(impostor.connectRelay("localhost", relay.getPort(), "alice", "bob"));
+        Assert.assertFalse(impostor.receive(new Frame()));
+
+        Assert.assertTrue(bob.connectRelay("localhost", relay.getPort(), "bob", "alice"));
+        Frame frame = new Frame();
+        Assert.assertTrue(bob.receive(frame));
+        Assert.assertEquals("hello", frame.data);
+        Assert.assertTrue(bob.send(new Frame(Frame.Type.MESSAGE, "hi")));
+        Assert.assertTrue(alice.receive(frame));
+        Assert.assertEquals("hi", frame.data);
+    }
+}
@@ -2,7 +2,7 @@ module pl.edu.pg.eti.ksr.project {
     requires javafx.controls;
     requires javafx.fxml;
     requires lombok;
-    requires org.json;
+    requires pl.edu.pg.eti.ksr.project.core;
 
     opens pl.edu.pg.eti.ksr.project to javafx.fxml;
     exports pl.edu.pg.eti.ksr.project;
@@ -7,6 +7,7 @@ import javafx.scene.Scene;
 import javafx.scene.image.Image;
 import javafx.stage.Stage;
 import pl.edu.pg.eti.ksr.project.accounts.AccountManager;
+import pl.edu.pg.eti.ksr.project.concurrent.ExecutionMode;
 
 import java.io.IOException;
 import java.util.Objects;
@@ -16,6 +17,11 @@ import java.util.Objects;
  */
 public class App extends Application {
 
+    /**
+     * Command line argument used for selecting execution mode, e.g. "--execution=virtual".
+     */
+    private static final String EXECUTION_ARG = "--execution=";
+
     /**
      * Current scene.
      */
@@ -73,6 +79,11 @@ public class App extends Application {
     }
 
     public static void main(String[] args) {
+        for (String arg : args) {
+            if (arg.startsWith(EXECUTION_ARG)) {
+                ExecutionMode.setCurrent(ExecutionMode.fromText(arg.substring(EXECUTION_ARG.length())));
+            }
+        }
         launch();
     }
 
@@ -16,6 +16,7 @@ import lombok.Getter;
 import pl.edu.pg.eti.ksr.project.accounts.AccountManager;
 import pl.edu.pg.eti.ksr.project.communication.CommunicationException;
 import pl.edu.pg.eti.ksr.project.communication.EncryptedTcpCommunicator;
+import pl.edu.pg.eti.ksr.project.communication.KnownPeers;
 import pl.edu.pg.eti.ksr.project.communication.data.FileData;
 import pl.edu.pg.eti.ksr.project.communication.data.Message;
 import pl.edu.pg.eti.ksr.project.communication.data.SessionData;
@@ -32,10 +33,9 @@ import java.io.File;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.net.URL;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.*;
-import java.security.spec.PKCS8EncodedKeySpec;
-import java.security.spec.X509EncodedKeySpec;
 import java.util.Objects;
 import java.util.ResourceBundle;
 
@@ -49,6 +49,11 @@ public class SecondaryController implements Initializable {
      */
     public static String FILES_PATH = "./BSK_files/file/";
 
+    /**
+     * Dir with public keys of known peers, one file per local account.
+     */
+    public static String KNOWN_PEERS_PATH = "./BSK_files/known_peers/";
+
     /**
      * TCP manager used for communication.
      */
@@ -197,24 +202,24 @@ public class SecondaryController implements Initializable {
                                 + data.getOriginalFileName());
                         controller.sendingAlgorithm.setDisable(true);
                         controller.sendingChoice.setDisable(true);
-                        controller.sendingSendFile.setDisable(true);
-                        controller.textChatSend.setDisable(true);
                         controller.stateArrow.setRotate(0.0);
                         controller.stateArrow.setVisible(true);
                         controller.stateArrow.setTranslateY(0.0);
                         controller.arrowAnimDown.play();
                     });
                 }
-                case FILE_READY -> {
-                    FileData data = controller.communicator.getLatestFileData();
+                case FILE_READY, FILE_FAILED -> {
+                    FileData data = (FileData) message.data;
+                    boolean transfersLeft = controller.communicator.isCyphering();
+                    String result = message.messageType == Message.Type.FILE_READY ? " is complete" :
+                            " failed, received file does not match the file sent";
                     controller.progress = 0;
                     Platform.runLater(() -> {
-                        controller.chatPutMessage("Transfer of " + data.getOriginalFileName() + " is complete");
+                        controller.chatPutMessage("Transfer of " + data.getOriginalFileName() + result);
+                        if (transfersLeft) return;
                         controller.updateProgress(0);
                         controller.sendingAlgorithm.setDisable(false);
                         controller.sendingChoice.setDisable(false);
-                        controller.sendingSendFile.setDisable(false);
-                        controller.textChatSend.setDisable(false);
                         controller.arrowAnimDown.stop();
                         controller.arrowAnimUp.stop();
                         controller.stateArrow.setVisible(false);
@@ -343,11 +348,12 @@ public class SecondaryController implements Initializable {
         }
         encryptionManager.attach(new EncryptionManagerObserver(this));
 
-        PublicKey publicKey = getPublicKey();
-        PrivateKey privateKey = getPrivateKey();
+        PublicKey publicKey = AccountManager.loadPublicKey();
+        PrivateKey privateKey = AccountManager.loadPrivateKey();
 
         communicator = new EncryptedTcpCommunicator(FILES_PATH, AccountManager.getUsername(), publicKey, privateKey,
                 Transformation.RSA_ECB_PKCS1Padding, tcpManager, encryptionManager);
+        communicator.setKnownPeers(new KnownPeers(Path.of(KNOWN_PEERS_PATH, AccountManager.getUsername() + ".txt")));
         communicator.attach(new CommunicatorObserver(this));
         communicator.init();
 
@@ -372,12 +378,13 @@ public class SecondaryController implements Initializable {
 
     /**
      * Tries to connect to other client.
+     * Communication and the first session with selected settings are established together.
      */
     @FXML
     void connectAction(ActionEvent event) {
         if (tcpManager.connect(connectIP.getText(), Integer.parseInt(connectPort.getText()))) {
             try {
-                communicator.initiateCommunication();
+                communicator.initiateCommunication(readSessionSettings());
             } catch (CommunicationException e) {
                 e.printStackTrace();
             }
@@ -488,8 +495,10 @@ public class SecondaryController implements Initializable {
             updateSession();
 
             try {
-                communicator.send(Path.of(sendFilePath));
-            } catch (CommunicationException | IOException | NoSuchPaddingException | NoSuchAlgorithmException |
+                Path path = Path.of(sendFilePath);
+                communicator.send(path, Files.size(path) >= EncryptedTcpCommunicator.STRIPING_THRESHOLD ?
+                        EncryptedTcpCommunicator.DEFAULT_STRIPES : 0);
+            } catch (IOException | NoSuchPaddingException | NoSuchAlgorithmException |
                     BadPaddingException | IllegalBlockSizeException | InvalidKeyException |
                     InvalidAlgorithmParameterException e) {
                 e.printStackTrace();
@@ -499,8 +508,6 @@ public class SecondaryController implements Initializable {
 
             sendingAlgorithm.setDisable(true);
             sendingChoice.setDisable(true);
-            sendingSendFile.setDisable(true);
-            textChatSend.setDisable(true);
             stateArrow.setRotate(180.0);
             stateArrow.setVisible(true);
             stateArrow.setTranslateY(60);
@@ -592,42 +599,4 @@ public class SecondaryController implements Initializable {
         return "\n[" + username + "]: " + message;
     }
 
-    /**
-     * Gets user private key.
-     * @return private key
-     */
-    private PrivateKey getPrivateKey() {
-        try {
-            byte[] privateKeyBytes = AccountManager.decryptFile(
-                    "./BSK_files/private/" + AccountManager.getUsername() + "_encprivate.key",
-                    AccountManager.getPassHash());
-
-            KeyFactory keyFactory = KeyFactory.getInstance("RSA");
-            PKCS8EncodedKeySpec privateKeySpec = new PKCS8EncodedKeySpec(privateKeyBytes);
-            return keyFactory.generatePrivate(privateKeySpec);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return null;
-    }
-
-    /**
-     * Gets user public key.
-     * @return public key
-     */
-    private PublicKey getPublicKey() {
-        try {
-            byte[] publicKeyBytes = AccountManager.decryptFile(
-                    "./BSK_files/public/" + AccountManager.getUsername() + "_encpublic.key",
-                    AccountManager.getPassHash());
-
-            KeyFactory keyFactory = KeyFactory.getInstance("RSA");
-            X509EncodedKeySpec publicKeySpec = new X509EncodedKeySpec(publicKeyBytes);
-            return keyFactory.generatePublic(publicKeySpec);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return null;
-    }
-
 }